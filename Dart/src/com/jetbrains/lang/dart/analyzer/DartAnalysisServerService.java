@@ -19,7 +19,9 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.dart.server.*;
 import com.google.dart.server.generated.AnalysisServer;
 import com.google.dart.server.internal.remote.DebugPrintStream;
+import com.google.dart.server.internal.remote.RecordingServerSocket;
 import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.RequestStatistics;
 import com.google.dart.server.internal.remote.StdioServerSocket;
 import com.google.dart.server.utilities.logging.Logging;
 import com.google.gson.JsonObject;
@@ -30,6 +32,7 @@ import com.intellij.openapi.application.ApplicationInfo;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationNamesInfo;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
@@ -53,6 +56,7 @@ import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
@@ -148,6 +152,8 @@ public class DartAnalysisServerService implements Disposable {
   private final Map<String, Long> myFilePathWithOverlaidContentToTimestamp = new THashMap<>();
   private final List<String> myVisibleFiles = new ArrayList<>();
   private final Set<Document> myChangedDocuments = new THashSet<>();
+  // edits made since the last analysis_updateContent request, allow to send ChangeContentOverlay instead of the whole text
+  private final Map<Document, DartDocumentDeltas> myDocumentDeltas = new THashMap<>();
   private final Alarm myUpdateFilesAlarm;
 
   @NotNull private final Queue<CompletionInfo> myCompletionInfos = new LinkedList<>();
@@ -663,6 +669,10 @@ public class DartAnalysisServerService implements Disposable {
 
         final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
         if (isLocalAnalyzableFile(file)) {
+          synchronized (myLock) {
+            myDocumentDeltas.computeIfAbsent(e.getDocument(), DartDocumentDeltas::new).add(e);
+          }
+
           for (VirtualFile fileInEditor : FileEditorManager.getInstance(myProject).getOpenFiles()) {
             if (fileInEditor.equals(file)) {
               synchronized (myLock) {
@@ -705,6 +715,15 @@ public class DartAnalysisServerService implements Disposable {
     analysis_setSubscriptions();
   }
 
+  /**
+   * @return latency statistics of the requests to and notifications from the currently running server, {@code null} if it is not running
+   */
+  @Nullable
+  public RequestStatistics getRequestStatistics() {
+    final AnalysisServer server = myServer;
+    return server instanceof RemoteAnalysisServerImpl ? ((RemoteAnalysisServerImpl)server).getStatistics() : null;
+  }
+
   @NotNull
   public List<DartServerData.DartError> getErrors(@NotNull final VirtualFile file) {
     return myServerData.getErrors(file);
@@ -729,16 +748,40 @@ public class DartAnalysisServerService implements Disposable {
     return myServerData.getOverrideMembers(file);
   }
 
+  /**
+   * @return override regions that intersect the given range
+   */
+  @NotNull
+  public List<DartServerData.DartOverrideMember> getOverrideMembers(@NotNull final VirtualFile file, @NotNull final TextRange range) {
+    return myServerData.getOverrideMembers(file, range);
+  }
+
   @NotNull
   public List<DartServerData.DartRegion> getImplementedClasses(@NotNull final VirtualFile file) {
     return myServerData.getImplementedClasses(file);
   }
 
+  /**
+   * @return implemented class regions that intersect the given range
+   */
+  @NotNull
+  public List<DartServerData.DartRegion> getImplementedClasses(@NotNull final VirtualFile file, @NotNull final TextRange range) {
+    return myServerData.getImplementedClasses(file, range);
+  }
+
   @NotNull
   public List<DartServerData.DartRegion> getImplementedMembers(@NotNull final VirtualFile file) {
     return myServerData.getImplementedMembers(file);
   }
 
+  /**
+   * @return implemented member regions that intersect the given range
+   */
+  @NotNull
+  public List<DartServerData.DartRegion> getImplementedMembers(@NotNull final VirtualFile file, @NotNull final TextRange range) {
+    return myServerData.getImplementedMembers(file, range);
+  }
+
   @Nullable
   @Contract("null -> null")
   public Outline getOutline(@Nullable final VirtualFile file) {
@@ -800,8 +843,6 @@ public class DartAnalysisServerService implements Disposable {
   }
 
   private void doUpdateFilesContent() {
-    // may be use DocumentListener to collect deltas instead of sending the whole Document.getText() each time?
-
     AnalysisServer server = myServer;
     if (server == null) {
       return;
@@ -829,12 +870,18 @@ public class DartAnalysisServerService implements Disposable {
 
           final Long oldTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
           if (oldTimestamp == null || document.getModificationStamp() != oldTimestamp) {
-            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), new AddContentOverlay(document.getText()));
+            final DartDocumentDeltas deltas = oldTimestamp == null ? null : myDocumentDeltas.get(document);
+            final List<SourceEdit> edits = deltas == null ? null : deltas.getEdits(document, oldTimestamp);
+            final Object overlay = edits != null ? new ChangeContentOverlay(edits) : new AddContentOverlay(document.getText());
+            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), overlay);
             myFilePathWithOverlaidContentToTimestamp.put(file.getPath(), document.getModificationStamp());
           }
         }
       }
 
+      // deltas are relative to the content sent by this request from now on
+      myDocumentDeltas.clear();
+
       // oldTrackedFiles at this point contains only those files that are not in FileDocumentManager.getUnsavedDocuments() any more
       for (String oldPath : oldTrackedFiles) {
         final Long removed = myFilePathWithOverlaidContentToTimestamp.remove(oldPath);
@@ -944,7 +991,7 @@ public class DartAnalysisServerService implements Disposable {
 
     final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.analysis_getHover(filePath, offset, new GetHoverConsumer() {
+    final GetHoverConsumer consumer = new GetHoverConsumer() {
       @Override
       public void computedHovers(HoverInformation[] hovers) {
         Collections.addAll(result, hovers);
@@ -956,9 +1003,10 @@ public class DartAnalysisServerService implements Disposable {
         logError("analysis_getHover()", filePath, error);
         latch.countDown();
       }
-    });
+    };
+    server.analysis_getHover(filePath, offset, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT, consumer);
     return result;
   }
 
@@ -978,7 +1026,7 @@ public class DartAnalysisServerService implements Disposable {
     LOG.debug("analysis_getNavigation(" + filePath + ")");
 
     final int offset = getOriginalOffset(file, _offset);
-    server.analysis_getNavigation(filePath, offset, length, new GetNavigationConsumer() {
+    final GetNavigationConsumer consumer = new GetNavigationConsumer() {
       @Override
       public void computedNavigation(final List<NavigationRegion> regions) {
         final List<DartServerData.DartNavigationRegion> dartRegions = new ArrayList<>(regions.size());
@@ -1003,9 +1051,10 @@ public class DartAnalysisServerService implements Disposable {
 
         latch.countDown();
       }
-    });
+    };
+    server.analysis_getNavigation(filePath, offset, length, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT, consumer);
 
     if (latch.getCount() > 0) {
       LOG.info("analysis_getNavigation() took more than " + GET_NAVIGATION_TIMEOUT + "ms for file " + filePath);
@@ -1027,7 +1076,7 @@ public class DartAnalysisServerService implements Disposable {
     final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
     final int length = getOriginalOffset(file, _offset + _length) - offset;
-    server.edit_getAssists(filePath, offset, length, new GetAssistsConsumer() {
+    final GetAssistsConsumer consumer = new GetAssistsConsumer() {
       @Override
       public void computedSourceChanges(List<SourceChange> sourceChanges) {
         results.addAll(sourceChanges);
@@ -1039,9 +1088,10 @@ public class DartAnalysisServerService implements Disposable {
         logError("edit_getAssists()", filePath, error);
         latch.countDown();
       }
-    });
+    };
+    server.edit_getAssists(filePath, offset, length, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT, consumer);
     return results;
   }
 
@@ -1111,7 +1161,7 @@ public class DartAnalysisServerService implements Disposable {
     final Ref<SourceChange> resultRef = Ref.create();
     final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.edit_getPostfixCompletion(filePath, key, offset, new GetPostfixCompletionConsumer() {
+    final GetPostfixCompletionConsumer consumer = new GetPostfixCompletionConsumer() {
       @Override
       public void computedSourceChange(SourceChange sourceChange) {
         resultRef.set(sourceChange);
@@ -1123,9 +1173,10 @@ public class DartAnalysisServerService implements Disposable {
         logError("edit_getPostfixCompletion()", filePath, error);
         latch.countDown();
       }
-    });
+    };
+    server.edit_getPostfixCompletion(filePath, key, offset, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT, consumer);
     return resultRef.get();
   }
 
@@ -1141,7 +1192,7 @@ public class DartAnalysisServerService implements Disposable {
     final Ref<SourceChange> resultRef = Ref.create();
     final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.edit_getStatementCompletion(filePath, offset, new GetStatementCompletionConsumer() {
+    final GetStatementCompletionConsumer consumer = new GetStatementCompletionConsumer() {
       @Override
       public void computedSourceChange(SourceChange sourceChange) {
         resultRef.set(sourceChange);
@@ -1153,9 +1204,10 @@ public class DartAnalysisServerService implements Disposable {
         latch.countDown();
         logError("edit_getStatementCompletion()", filePath, error);
       }
-    });
+    };
+    server.edit_getStatementCompletion(filePath, offset, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, STATEMENT_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, STATEMENT_COMPLETION_TIMEOUT, consumer);
     return resultRef.get();
   }
 
@@ -1303,7 +1355,7 @@ public class DartAnalysisServerService implements Disposable {
 
     final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.completion_getSuggestions(filePath, offset, new GetSuggestionsConsumer() {
+    final GetSuggestionsConsumer consumer = new GetSuggestionsConsumer() {
       @Override
       public void computedCompletionId(@NotNull final String completionId) {
         resultRef.set(completionId);
@@ -1315,9 +1367,10 @@ public class DartAnalysisServerService implements Disposable {
         // Not a problem. Happens if a file is outside of the project, or server is just not ready yet.
         latch.countDown();
       }
-    });
+    };
+    server.completion_getSuggestions(filePath, offset, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT, consumer);
     return resultRef.get();
   }
 
@@ -1773,8 +1826,17 @@ public class DartAnalysisServerService implements Disposable {
                               debugStream);
       myServerSocket.setClientId(getClientId());
       myServerSocket.setClientVersion(getClientVersion());
+      myServerSocket.setUseStreamingDecoder(Registry.is("dart.server.streaming.decoder", false));
 
-      final AnalysisServer startedServer = new RemoteAnalysisServerImpl(myServerSocket);
+      AnalysisServerSocket socket = myServerSocket;
+      if (Registry.is("dart.server.record.traffic", false)) {
+        // the recording can be replayed by ReplayServerSocket
+        final File recording = new File(PathManager.getLogPath(), "dart-analysis-server-" + System.currentTimeMillis() + ".gz");
+        LOG.info("Recording Dart Analysis Server traffic to " + recording.getPath());
+        socket = new RecordingServerSocket(socket, recording);
+      }
+
+      final AnalysisServer startedServer = new RemoteAnalysisServerImpl(socket);
 
       try {
         startedServer.start();
@@ -1917,6 +1979,7 @@ public class DartAnalysisServerService implements Disposable {
       myFilePathWithOverlaidContentToTimestamp.clear();
       myVisibleFiles.clear();
       myChangedDocuments.clear();
+      myDocumentDeltas.clear();
       myServerData.clearData();
       myRootsHandler.reset();
 
@@ -2003,6 +2066,26 @@ public class DartAnalysisServerService implements Disposable {
            ", error code = " + error.getCode() + ": " + error.getMessage();
   }
 
+  /**
+   * Same as {@link #awaitForLatchCheckingCanceled(AnalysisServer, CountDownLatch, long)}, but if the response doesn't come in time or
+   * the caller is canceled, then the request is canceled as well, so that it is dropped if still queued and its late response is ignored.
+   */
+  private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
+                                                       @NotNull final CountDownLatch latch,
+                                                       final long timeoutInMillis,
+                                                       @NotNull final com.google.dart.server.Consumer consumer) {
+    boolean received = false;
+    try {
+      received = awaitForLatchCheckingCanceled(server, latch, timeoutInMillis);
+      return received;
+    }
+    finally {
+      if (!received) {
+        server.cancelRequest(consumer);
+      }
+    }
+  }
+
   private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
                                                        @NotNull final CountDownLatch latch,
                                                        long timeoutInMillis) {
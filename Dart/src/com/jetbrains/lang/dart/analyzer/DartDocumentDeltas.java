@@ -0,0 +1,64 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Edits made to a document since its content was last sent to the Dart Analysis Server. They allow sending a
+ * {@link org.dartlang.analysis.server.protocol.ChangeContentOverlay} instead of the whole document text. Edits are recorded in the
+ * order they happen, which matches the order the server applies them in.
+ */
+class DartDocumentDeltas {
+  private static final int MAX_EDITS = 1000;
+
+  private final long myBaseModificationStamp;
+  private final int myBaseLength;
+  private final List<SourceEdit> myEdits = new ArrayList<>();
+  private int myExpectedLength;
+  private int myReplacementsLength;
+  private boolean myOverflow;
+
+  /**
+   * @param document document before the first recorded change is applied
+   */
+  DartDocumentDeltas(@NotNull final Document document) {
+    myBaseModificationStamp = document.getModificationStamp();
+    myBaseLength = document.getTextLength();
+    myExpectedLength = myBaseLength;
+  }
+
+  void add(@NotNull final DocumentEvent e) {
+    if (myOverflow) return;
+
+    final CharSequence newFragment = e.getNewFragment();
+    myReplacementsLength += newFragment.length();
+    myExpectedLength += newFragment.length() - e.getOldLength();
+
+    // If edits outweigh the document itself, sending the whole text is both cheaper and safer.
+    if (myEdits.size() >= MAX_EDITS || myReplacementsLength > Math.max(myBaseLength, myExpectedLength)) {
+      myOverflow = true;
+      myEdits.clear();
+      return;
+    }
+
+    myEdits.add(new SourceEdit(e.getOffset(), e.getOldLength(), newFragment.toString(), null));
+  }
+
+  /**
+   * Returns edits that transform the content sent to the server at {@code sentModificationStamp} into the current document content,
+   * or {@code null} if they can't be trusted and the whole document should be sent instead.
+   */
+  @Nullable
+  List<SourceEdit> getEdits(@NotNull final Document document, final long sentModificationStamp) {
+    if (myOverflow || myBaseModificationStamp != sentModificationStamp || myExpectedLength != document.getTextLength()) {
+      return null;
+    }
+    return myEdits;
+  }
+}
@@ -0,0 +1,214 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+import static com.jetbrains.lang.dart.analyzer.DartServerData.*;
+
+/**
+ * Regions of one kind (highlights, errors, navigation, etc.) for one file, sorted by offset.
+ * <p>
+ * Typing shifts all regions that follow the caret. Instead of updating each of them, a shift is recorded in a Fenwick tree over
+ * region indices, so that a document change costs O(log n) plus the number of regions it touches, and
+ * {@link DartRegion#getOffset()} costs O(log n). Regions deleted by typing are marked as such and skipped by {@link #getRegions()};
+ * they are dropped for good when the server sends fresh data for the file.
+ * <p>
+ * Regions are changed only in {@link #onDocumentChanged(DocumentEvent, boolean)}, i.e. under write action, so readers in read action
+ * always see a consistent state. New data from the server is published as a new store, the lists returned by {@link #getRegions()}
+ * are never modified.
+ */
+class DartRegionStore<T extends DartRegion> {
+  private final String myFilePath;
+  private final T[] myRegions;
+  // myShifts[i + 1] is a Fenwick tree node, offset of region i is its base offset plus the sum of shifts of regions 0..i
+  private final int[] myShifts;
+  // navigation targets in the same file, their offsets are shifted as well
+  private final List<DartNavigationTarget> myLocalTargets;
+  private BitSet myDeleted;
+  private int myMaxLength;
+  private volatile List<T> myLiveRegions;
+
+  @SuppressWarnings("unchecked")
+  DartRegionStore(@NotNull final String filePath, @NotNull final List<? extends T> regions) {
+    myFilePath = filePath;
+    myRegions = (T[])regions.toArray(new DartRegion[0]);
+    Arrays.sort(myRegions, Comparator.comparingInt(region -> region.myOffset)); // stable, keeps server order for equal offsets
+    myShifts = new int[myRegions.length + 1];
+
+    List<DartNavigationTarget> localTargets = null;
+    for (int i = 0; i < myRegions.length; i++) {
+      final T region = myRegions[i];
+      region.attach(this, i);
+      myMaxLength = Math.max(myMaxLength, region.myLength);
+
+      if (region instanceof DartNavigationRegion) {
+        for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
+          if (target.getFile().equals(filePath)) {
+            if (localTargets == null) localTargets = new ArrayList<>();
+            localTargets.add(target);
+          }
+        }
+      }
+    }
+    myLocalTargets = localTargets != null ? localTargets : Collections.emptyList();
+    myLiveRegions = Collections.unmodifiableList(Arrays.asList(myRegions));
+  }
+
+  /**
+   * @return regions that have not been deleted by typing, sorted by offset
+   */
+  @NotNull
+  List<T> getRegions() {
+    List<T> result = myLiveRegions;
+    if (result == null) {
+      final List<T> live = new ArrayList<>(myRegions.length - myDeleted.cardinality());
+      for (int i = 0; i < myRegions.length; i++) {
+        if (!myDeleted.get(i)) {
+          live.add(myRegions[i]);
+        }
+      }
+      myLiveRegions = result = Collections.unmodifiableList(live);
+    }
+    return result;
+  }
+
+  /**
+   * @return regions that intersect the given range, sorted by offset
+   */
+  @NotNull
+  List<T> getRegions(final int startOffset, final int endOffset) {
+    final List<T> result = new ArrayList<>();
+    for (int i = firstIndexWithOffsetAtLeast(startOffset - myMaxLength); i < myRegions.length; i++) {
+      final T region = myRegions[i];
+      final int offset = getOffset(i);
+      if (offset >= endOffset) break;
+      if (offset + region.myLength > startOffset && !isDeleted(i)) {
+        result.add(region);
+      }
+    }
+    return result;
+  }
+
+  boolean isEmpty() {
+    return getRegions().isEmpty();
+  }
+
+  int getOffset(final int index) {
+    int sum = 0;
+    for (int i = index + 1; i > 0; i -= i & -i) {
+      sum += myShifts[i];
+    }
+    return myRegions[index].myOffset + sum;
+  }
+
+  /**
+   * Shifts regions that follow the change and deletes or updates the touched ones.
+   *
+   * @param deleteTouched if {@code true} then touched regions are deleted, otherwise they are extended or shrunk when possible
+   * @return {@code true} if at least one region has been deleted, {@code false} if updated only or nothing done at all
+   */
+  boolean onDocumentChanged(@NotNull final DocumentEvent e, final boolean deleteTouched) {
+    final int eventOffset = e.getOffset();
+    final int deltaLength = e.getNewLength() - e.getOldLength();
+
+    for (DartNavigationTarget target : myLocalTargets) {
+      // may be we'd better delete target touched by editing?
+      if (target.myConvertedOffset >= eventOffset) {
+        target.myConvertedOffset += deltaLength;
+      }
+    }
+
+    if (deltaLength == 0 || myRegions.length == 0) return false;
+
+    // regions starting at or after shiftFrom are untouched and only need to be shifted
+    final int shiftFrom = deltaLength > 0 ? eventOffset : eventOffset - deltaLength;
+    final int firstShifted = firstIndexWithOffsetAtLeast(shiftFrom);
+    boolean regionDeleted = false;
+
+    // only regions that start within myMaxLength before shiftFrom may be touched
+    for (int i = firstIndexWithOffsetAtLeast(eventOffset - myMaxLength); i < firstShifted; i++) {
+      final T region = myRegions[i];
+      final int regionOffset = getOffset(i);
+
+      if (isDeleted(i)) {
+        // keep offsets of deleted regions within the change so that offsets stay sorted after the shift
+        if (regionOffset > eventOffset) {
+          region.myOffset += eventOffset - regionOffset;
+        }
+        continue;
+      }
+      final int regionRightOffset = regionOffset + region.myLength;
+
+      if (deltaLength > 0) {
+        // Something was typed. Delete or update touched regions.
+        if (regionOffset < eventOffset && eventOffset < regionRightOffset) {
+          if (deleteTouched) {
+            delete(i, regionOffset);
+            regionDeleted = true;
+          }
+          else {
+            region.myLength += deltaLength;
+            myMaxLength = Math.max(myMaxLength, region.myLength);
+          }
+        }
+      }
+      else {
+        // Some text was deleted. Delete or update touched regions.
+        final int eventRightOffset = eventOffset - deltaLength;
+        if (!deleteTouched &&
+            regionOffset <= eventOffset &&
+            eventRightOffset <= regionRightOffset &&
+            region.myLength != -deltaLength) {
+          region.myLength += deltaLength;
+        }
+        else if (eventOffset < regionRightOffset) {
+          delete(i, Math.min(regionOffset, eventOffset));
+          regionDeleted = true;
+        }
+      }
+    }
+
+    if (firstShifted < myRegions.length) {
+      for (int i = firstShifted + 1; i <= myRegions.length; i += i & -i) {
+        myShifts[i] += deltaLength;
+      }
+    }
+
+    return regionDeleted;
+  }
+
+  private void delete(final int index, final int newOffset) {
+    if (myDeleted == null) myDeleted = new BitSet(myRegions.length);
+    myDeleted.set(index);
+    final T region = myRegions[index];
+    region.myOffset += newOffset - getOffset(index);
+    myLiveRegions = null;
+  }
+
+  private boolean isDeleted(final int index) {
+    return myDeleted != null && myDeleted.get(index);
+  }
+
+  private int firstIndexWithOffsetAtLeast(final int offset) {
+    int low = 0;
+    int high = myRegions.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (getOffset(mid) < offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public String toString() {
+    return "DartRegionStore(" + myFilePath + ", " + ContainerUtil.map(getRegions(), region -> region.getOffset()) + ")";
+  }
+}
@@ -7,6 +7,7 @@ import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -14,7 +15,7 @@ import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.util.EventDispatcher;
 import com.intellij.util.SmartList;
-import gnu.trove.THashMap;
+import com.intellij.util.containers.ContainerUtil;
 import org.dartlang.analysis.server.protocol.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -31,13 +32,15 @@ public class DartServerData {
 
   private final EventDispatcher<OutlineListener> myEventDispatcher = EventDispatcher.create(OutlineListener.class);
 
-  private final Map<String, List<DartError>> myErrorData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartHighlightRegion>> myHighlightData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartNavigationRegion>> myNavigationData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartOverrideMember>> myOverrideData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedClassData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedMemberData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, Outline> myOutlineData = Collections.synchronizedMap(new THashMap<>());
+  // Per-file data is published by replacing the whole DartRegionStore, so readers never wait for the Analysis Server reader thread.
+  // Stores are changed in place only by onDocumentChanged(), i.e. in write action, which readers in read action never overlap with.
+  private final Map<String, DartRegionStore<DartError>> myErrorData = ContainerUtil.newConcurrentMap();
+  private final Map<String, DartRegionStore<DartHighlightRegion>> myHighlightData = ContainerUtil.newConcurrentMap();
+  private final Map<String, DartRegionStore<DartNavigationRegion>> myNavigationData = ContainerUtil.newConcurrentMap();
+  private final Map<String, DartRegionStore<DartOverrideMember>> myOverrideData = ContainerUtil.newConcurrentMap();
+  private final Map<String, DartRegionStore<DartRegion>> myImplementedClassData = ContainerUtil.newConcurrentMap();
+  private final Map<String, DartRegionStore<DartRegion>> myImplementedMemberData = ContainerUtil.newConcurrentMap();
+  private final Map<String, Outline> myOutlineData = ContainerUtil.newConcurrentMap();
 
   private final Set<String> myFilePathsWithUnsentChanges = Sets.newConcurrentHashSet();
 
@@ -69,7 +72,7 @@ public class DartServerData {
     }
 
     myFilePathsWithLostErrorInfo.remove(filePath);
-    myErrorData.put(filePath, newErrors);
+    myErrorData.put(filePath, new DartRegionStore<>(filePath, newErrors));
 
     if (restartHighlighting) {
       forceFileAnnotation(file, false);
@@ -98,7 +101,7 @@ public class DartServerData {
       }
     }
 
-    myHighlightData.put(filePath, newRegions);
+    myHighlightData.put(filePath, new DartRegionStore<>(filePath, newRegions));
     forceFileAnnotation(file, false);
   }
 
@@ -115,7 +118,7 @@ public class DartServerData {
       }
     }
 
-    myNavigationData.put(filePath, newRegions);
+    myNavigationData.put(filePath, new DartRegionStore<>(filePath, newRegions));
     forceFileAnnotation(file, true);
   }
 
@@ -155,7 +158,7 @@ public class DartServerData {
       }
     }
 
-    myOverrideData.put(filePath, newOverrides);
+    myOverrideData.put(filePath, new DartRegionStore<>(filePath, newOverrides));
     forceFileAnnotation(file, false);
   }
 
@@ -181,16 +184,18 @@ public class DartServerData {
     }
 
     boolean hasChanges = false;
-    final List<DartRegion> oldClasses = myImplementedClassData.get(filePath);
-    if (oldClasses == null || !oldClasses.equals(newImplementedClasses)) {
+    final DartRegionStore<DartRegion> oldClasses = myImplementedClassData.get(filePath);
+    final DartRegionStore<DartRegion> newClasses = new DartRegionStore<>(filePath, newImplementedClasses);
+    if (oldClasses == null || !oldClasses.getRegions().equals(newClasses.getRegions())) {
       hasChanges = true;
-      myImplementedClassData.put(filePath, newImplementedClasses);
+      myImplementedClassData.put(filePath, newClasses);
     }
 
-    final List<DartRegion> oldMembers = myImplementedMemberData.get(filePath);
-    if (oldMembers == null || !oldMembers.equals(newImplementedMembers)) {
+    final DartRegionStore<DartRegion> oldMembers = myImplementedMemberData.get(filePath);
+    final DartRegionStore<DartRegion> newMembers = new DartRegionStore<>(filePath, newImplementedMembers);
+    if (oldMembers == null || !oldMembers.getRegions().equals(newMembers.getRegions())) {
       hasChanges = true;
-      myImplementedMemberData.put(filePath, newImplementedMembers);
+      myImplementedMemberData.put(filePath, newMembers);
     }
 
     if (hasChanges) {
@@ -202,12 +207,11 @@ public class DartServerData {
   List<DartError> getErrors(@NotNull final SearchScope scope) {
     final List<DartError> errors = new ArrayList<>();
 
-    synchronized (myErrorData) {
-      for (Map.Entry<String, List<DartError>> entry : myErrorData.entrySet()) {
-        final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(entry.getKey());
-        if (file != null && scope.contains(file)) {
-          errors.addAll(entry.getValue());
-        }
+    // iteration over the concurrent map doesn't block writers, files updated meanwhile are seen either with old or with new errors
+    for (Map.Entry<String, DartRegionStore<DartError>> entry : myErrorData.entrySet()) {
+      final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(entry.getKey());
+      if (file != null && scope.contains(file)) {
+        errors.addAll(entry.getValue().getRegions());
       }
     }
 
@@ -216,38 +220,61 @@ public class DartServerData {
 
   @NotNull
   List<DartError> getErrors(@NotNull final VirtualFile file) {
-    final List<DartError> errors = myErrorData.get(file.getPath());
-    return errors != null ? errors : Collections.emptyList();
+    final DartRegionStore<DartError> errors = myErrorData.get(file.getPath());
+    return errors != null ? errors.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
-    final List<DartHighlightRegion> regions = myHighlightData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionStore<DartHighlightRegion> regions = myHighlightData.get(file.getPath());
+    return regions != null ? regions.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartNavigationRegion> getNavigation(@NotNull final VirtualFile file) {
-    final List<DartNavigationRegion> regions = myNavigationData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionStore<DartNavigationRegion> regions = myNavigationData.get(file.getPath());
+    return regions != null ? regions.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartOverrideMember> getOverrideMembers(@NotNull final VirtualFile file) {
-    final List<DartOverrideMember> regions = myOverrideData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionStore<DartOverrideMember> regions = myOverrideData.get(file.getPath());
+    return regions != null ? regions.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartRegion> getImplementedClasses(@NotNull final VirtualFile file) {
-    final List<DartRegion> classes = myImplementedClassData.get(file.getPath());
-    return classes != null ? classes : Collections.emptyList();
+    final DartRegionStore<DartRegion> classes = myImplementedClassData.get(file.getPath());
+    return classes != null ? classes.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartRegion> getImplementedMembers(@NotNull final VirtualFile file) {
-    final List<DartRegion> classes = myImplementedMemberData.get(file.getPath());
-    return classes != null ? classes : Collections.emptyList();
+    final DartRegionStore<DartRegion> classes = myImplementedMemberData.get(file.getPath());
+    return classes != null ? classes.getRegions() : Collections.emptyList();
+  }
+
+  @NotNull
+  List<DartOverrideMember> getOverrideMembers(@NotNull final VirtualFile file, @NotNull final TextRange range) {
+    return getRegions(myOverrideData, file, range);
+  }
+
+  @NotNull
+  List<DartRegion> getImplementedClasses(@NotNull final VirtualFile file, @NotNull final TextRange range) {
+    return getRegions(myImplementedClassData, file, range);
+  }
+
+  @NotNull
+  List<DartRegion> getImplementedMembers(@NotNull final VirtualFile file, @NotNull final TextRange range) {
+    return getRegions(myImplementedMemberData, file, range);
+  }
+
+  @NotNull
+  private static <T extends DartRegion> List<T> getRegions(@NotNull final Map<String, DartRegionStore<T>> data,
+                                                           @NotNull final VirtualFile file,
+                                                           @NotNull final TextRange range) {
+    final DartRegionStore<T> regions = data.get(file.getPath());
+    return regions != null ? regions.getRegions(range.getStartOffset(), range.getEndOffset()) : Collections.emptyList();
   }
 
   @Nullable
@@ -349,121 +376,46 @@ public class DartServerData {
     final String filePath = file.getPath();
     myFilePathsWithUnsentChanges.add(filePath);
 
-    boolean someRegionDeleted = updateRegionsDeletingTouched(filePath, myErrorData.get(filePath), e);
+    boolean someRegionDeleted = updateRegions(myErrorData.get(filePath), e, true);
     if (someRegionDeleted) {
       myFilePathsWithLostErrorInfo.add(filePath);
     }
-    updateRegionsUpdatingTouched(myHighlightData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myNavigationData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myOverrideData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedClassData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedMemberData.get(filePath), e);
+    updateRegions(myHighlightData.get(filePath), e, false);
+    updateRegions(myNavigationData.get(filePath), e, true);
+    updateRegions(myOverrideData.get(filePath), e, true);
+    updateRegions(myImplementedClassData.get(filePath), e, true);
+    updateRegions(myImplementedMemberData.get(filePath), e, true);
     // A bit outdated outline data is not a big problem, updated data will come shortly
   }
 
   /**
    * @return {@code true} if at least one region has been deleted, {@code false} if updated only or nothing done at all
    */
-  private static boolean updateRegionsDeletingTouched(@NotNull final String filePath,
-                                                      @Nullable final List<? extends DartRegion> regions,
-                                                      @NotNull final DocumentEvent e) {
-    if (regions == null) return false;
-
-    boolean regionDeleted = false;
-
-    // delete touched regions, shift untouched
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (region instanceof DartNavigationRegion) {
-        // may be we'd better delete target touched by editing?
-        for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
-          if (target.myFile.equals(filePath) && target.myConvertedOffset >= eventOffset) {
-            target.myConvertedOffset += deltaLength;
-          }
-        }
-      }
-
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, delete touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-          regionDeleted = true;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-          regionDeleted = true;
-        }
-      }
-    }
-
-    return regionDeleted;
-  }
-
-  private static void updateRegionsUpdatingTouched(@Nullable final List<? extends DartRegion> regions,
-                                                   @NotNull final DocumentEvent e) {
-    if (regions == null) return;
-
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, update touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          region.myLength += deltaLength;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete or update touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-        final int regionRightOffset = region.myOffset + region.myLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset <= eventOffset && eventRightOffset <= regionRightOffset && region.myLength != -deltaLength) {
-          region.myLength += deltaLength;
-        }
-        else if (eventOffset < regionRightOffset) {
-          iterator.remove();
-        }
-      }
-    }
+  private static boolean updateRegions(@Nullable final DartRegionStore<?> regions,
+                                       @NotNull final DocumentEvent e,
+                                       final boolean deleteTouched) {
+    return regions != null && regions.onDocumentChanged(e, deleteTouched);
   }
 
   public static class DartRegion {
-    protected int myOffset;
+    // offset as sent by the server; once the region is in a DartRegionStore, the store adds shifts caused by typing
+    int myOffset;
     protected int myLength;
+    @Nullable private DartRegionStore<?> myStore;
+    private int myIndex;
 
     DartRegion(final int offset, final int length) {
       myOffset = offset;
       myLength = length;
     }
 
+    void attach(@NotNull final DartRegionStore<?> store, final int index) {
+      myStore = store;
+      myIndex = index;
+    }
+
     public final int getOffset() {
-      return myOffset;
+      return myStore != null ? myStore.getOffset(myIndex) : myOffset;
     }
 
     public final int getLength() {
@@ -472,12 +424,12 @@ public class DartServerData {
 
     @Override
     public boolean equals(Object o) {
-      return o instanceof DartRegion && myOffset == ((DartRegion)o).myOffset && myLength == ((DartRegion)o).myLength;
+      return o instanceof DartRegion && getOffset() == ((DartRegion)o).getOffset() && myLength == ((DartRegion)o).myLength;
     }
 
     @Override
     public int hashCode() {
-      return myOffset * 31 + myLength;
+      return getOffset() * 31 + myLength;
     }
   }
 
@@ -540,7 +492,7 @@ public class DartServerData {
 
     @Override
     public String toString() {
-      return "DartNavigationRegion(" + myOffset + ", " + myLength + ")";
+      return "DartNavigationRegion(" + getOffset() + ", " + myLength + ")";
     }
 
     public List<DartNavigationTarget> getTargets() {
@@ -553,7 +505,7 @@ public class DartServerData {
     private final int myOriginalOffset;
     private final String myKind;
 
-    private int myConvertedOffset = -1;
+    int myConvertedOffset = -1;
 
     private DartNavigationTarget(@NotNull final NavigationTarget target) {
       myFile = FileUtil.toSystemIndependentName(target.getFile().trim()).intern();
@@ -15,82 +15,141 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.intellij.util.containers.hash.HashMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+/**
+ * Coverage data written by the Dart VM, i.e. <code>{"coverage": [{"source": "...", "hits": [line, count, line, count, ...]}, ...]}</code>,
+ * with the hits for the same source merged. Hits are merged while the file is being parsed, so memory consumption depends on the size
+ * of the covered sources rather than on the size of the coverage file.
+ */
 public class DartCoverageData {
-  @Nullable private List<DartFileCoverageData> coverage;
+  private static final int NO_DATA = -1;
 
-  @Nullable
-  public List<DartFileCoverageData> getCoverage() {
-    return coverage;
-  }
+  // source -> hit count per line, NO_DATA for lines that are not mentioned in coverage data
+  private final Map<String, int[]> myMergedHits = new THashMap<>();
+  private final Map<String, Integer> myMaxLines = new THashMap<>();
 
-  public void setCoverage(@Nullable List<DartFileCoverageData> coverage) {
-    this.coverage = coverage;
+  // reused for each coverage item because "hits" may come before "source"
+  private int[] myHitsBuffer = new int[1024];
+
+  private DartCoverageData() {
   }
 
+  /**
+   * @throws IOException if the data can't be read, is not valid JSON or has unexpected structure
+   */
   @NotNull
-  public Map<String, SortedMap<Integer, Integer>> getMergedDartFileCoverageData() {
-    Map<String, SortedMap<Integer, Integer>> mergedCoverageData = new HashMap<>();
-    List<DartFileCoverageData> coverageData = getCoverage();
-    if (coverageData != null) {
-      for (DartFileCoverageData item : coverageData) {
-        String source = item.getSource();
-        if (source == null) {
-          continue;
-        }
-        if (!mergedCoverageData.containsKey(source)) {
-          mergedCoverageData.put(source, new TreeMap<>());
-        }
-
-        SortedMap<Integer, Integer> fileData = mergedCoverageData.get(source);
-        List<Integer> hits = item.getHits();
-        if (hits == null) {
-          continue;
-        }
-        for (int i = 0; i < hits.size(); i += 2) {
-          Integer lineNumber = hits.get(i);
-          Integer hitCount = hits.get(i + 1);
-          if (!fileData.containsKey(lineNumber)) {
-            fileData.put(lineNumber, 0);
+  public static DartCoverageData read(@NotNull final Reader reader) throws IOException {
+    final DartCoverageData data = new DartCoverageData();
+    final JsonReader jsonReader = new JsonReader(reader);
+    try {
+      jsonReader.beginObject();
+      while (jsonReader.hasNext()) {
+        if ("coverage".equals(jsonReader.nextName()) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+          jsonReader.beginArray();
+          while (jsonReader.hasNext()) {
+            data.readItem(jsonReader);
           }
-
-          fileData.put(lineNumber, fileData.get(lineNumber) + hitCount);
+          jsonReader.endArray();
+        }
+        else {
+          jsonReader.skipValue();
         }
       }
+      jsonReader.endObject();
     }
+    catch (IllegalStateException | NumberFormatException e) {
+      // valid JSON of unexpected structure, e.g. a string instead of a hit count
+      throw new IOException(e.getMessage(), e);
+    }
+    return data;
+  }
 
-    return mergedCoverageData;
+  /**
+   * Calls {@code consumer} for each source with the merged hit counts indexed by line number.
+   * Lines without coverage data have negative hit count. The array is empty if there is no data for the source at all.
+   */
+  public void processMergedHits(@NotNull final MergedHitsConsumer consumer) {
+    for (Map.Entry<String, int[]> entry : myMergedHits.entrySet()) {
+      final int length = myMaxLines.get(entry.getKey()) + 1;
+      final int[] hits = entry.getValue();
+      consumer.consume(entry.getKey(), hits.length == length ? hits : Arrays.copyOf(hits, length));
+    }
+  }
+
+  public interface MergedHitsConsumer {
+    void consume(@NotNull String source, @NotNull int[] lineHits);
   }
-}
 
+  private void readItem(@NotNull final JsonReader reader) throws IOException {
+    String source = null;
+    int hitsLength = -1;
 
-class DartFileCoverageData {
-  @Nullable private String source;
-  @Nullable private List<Integer> hits;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if ("source".equals(name) && reader.peek() == JsonToken.STRING) {
+        source = reader.nextString();
+      }
+      else if ("hits".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        hitsLength = readHits(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
 
-  @Nullable
-  public String getSource() {
-    return source;
+    if (source != null) {
+      merge(source, hitsLength);
+    }
   }
 
-  public void setSource(@Nullable String source) {
-    this.source = source;
+  private int readHits(@NotNull final JsonReader reader) throws IOException {
+    int length = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (length == myHitsBuffer.length) {
+        myHitsBuffer = Arrays.copyOf(myHitsBuffer, length * 2);
+      }
+      myHitsBuffer[length++] = reader.nextInt();
+    }
+    reader.endArray();
+    return length;
   }
 
-  @Nullable
-  public List<Integer> getHits() {
-    return hits;
-  }
+  private void merge(@NotNull final String source, final int hitsLength) {
+    int[] fileHits = myMergedHits.get(source);
+    if (fileHits == null) {
+      fileHits = new int[0];
+      myMergedHits.put(source, fileHits);
+      myMaxLines.put(source, -1);
+    }
+    if (hitsLength <= 0) return;
+
+    int maxLine = myMaxLines.get(source);
+    for (int i = 0; i + 1 < hitsLength; i += 2) {
+      final int line = myHitsBuffer[i];
+      final int hitCount = myHitsBuffer[i + 1];
+      if (line < 0) continue;
 
-  public void setHits(@Nullable List<Integer> hits) {
-    this.hits = hits;
+      if (line >= fileHits.length) {
+        final int oldLength = fileHits.length;
+        fileHits = Arrays.copyOf(fileHits, Math.max(line + 1, oldLength * 3 / 2));
+        Arrays.fill(fileHits, oldLength, fileHits.length, NO_DATA);
+        myMergedHits.put(source, fileHits);
+      }
+      fileHits[line] = fileHits[line] == NO_DATA ? hitCount : fileHits[line] + hitCount;
+      maxLine = Math.max(maxLine, line);
+    }
+    myMaxLines.put(source, maxLine);
   }
-}
\ No newline at end of file
+}
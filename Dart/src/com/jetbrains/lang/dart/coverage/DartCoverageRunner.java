@@ -15,8 +15,6 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import com.intellij.coverage.CoverageEngine;
 import com.intellij.coverage.CoverageRunner;
 import com.intellij.coverage.CoverageSuite;
@@ -35,10 +33,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.util.Map;
-import java.util.SortedMap;
+import java.io.IOException;
+import java.io.Reader;
 
 public class DartCoverageRunner extends CoverageRunner {
   private static final String ID = "DartCoverageRunner";
@@ -97,38 +94,34 @@ public class DartCoverageRunner extends CoverageRunner {
 
     final ProjectData projectData = new ProjectData();
 
-    try {
-      DartCoverageData data = new Gson().fromJson(new BufferedReader(new FileReader(sessionDataFile)), DartCoverageData.class);
-      if (data == null) {
-        LOG.warn("Coverage file does not contain valid data.");
-        return null;
-      }
+    try (Reader reader = new BufferedReader(new FileReader(sessionDataFile))) {
+      final DartCoverageData data = DartCoverageData.read(reader);
 
-      for (Map.Entry<String, SortedMap<Integer, Integer>> entry : data.getMergedDartFileCoverageData().entrySet()) {
+      data.processMergedHits((source, lineHits) -> {
         ProgressManager.checkCanceled();
 
-        String filePath = getFileForUri(project, contextId, entry.getKey());
+        String filePath = getFileForUri(project, contextId, source);
         if (filePath == null) {
           // File is not found.
-          continue;
+          return;
         }
-        SortedMap<Integer, Integer> lineHits = entry.getValue();
         ClassData classData = projectData.getOrCreateClassData(filePath);
-        if (lineHits.size() == 0) {
+        if (lineHits.length == 0) {
           classData.setLines(new LineData[1]);
-          continue;
+          return;
         }
-        LineData[] lines = new LineData[lineHits.lastKey() + 1];
-        for (Map.Entry<Integer, Integer> hit : lineHits.entrySet()) {
-          LineData lineData = new LineData(hit.getKey(), null);
-          lineData.setHits(hit.getValue());
-          lines[hit.getKey()] = lineData;
+        LineData[] lines = new LineData[lineHits.length];
+        for (int line = 0; line < lineHits.length; line++) {
+          if (lineHits[line] < 0) continue;
+          LineData lineData = new LineData(line, null);
+          lineData.setHits(lineHits[line]);
+          lines[line] = lineData;
         }
         classData.setLines(lines);
-      }
+      });
     }
-    catch (FileNotFoundException | JsonSyntaxException e) {
-      LOG.warn(e);
+    catch (IOException | IllegalStateException | NumberFormatException e) {
+      LOG.warn("Coverage file does not contain valid data.", e);
     }
     finally {
       DartAnalysisServerService.getInstance(project).execution_deleteContext(contextId);
@@ -0,0 +1,68 @@
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.google.dart.server.internal.remote.RequestStatistics;
+import com.intellij.openapi.actionSystem.ActionManager;
+import com.intellij.openapi.actionSystem.DefaultActionGroup;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.SimpleToolWindowPanel;
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.components.JBTextArea;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.util.Alarm;
+import com.jetbrains.lang.dart.DartBundle;
+import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+
+/**
+ * Shows live latency statistics of the Dart Analysis Server requests and notifications, see {@link RequestStatistics}.
+ * Available if the {@code dart.server.statistics.tool.window} registry key is set.
+ */
+public class DartAnalysisServerStatisticsToolWindowFactory implements ToolWindowFactory, DumbAware, Condition<Project> {
+  private static final int REFRESH_PERIOD = 1000;
+
+  @Override
+  public boolean value(final Project project) {
+    return Registry.is("dart.server.statistics.tool.window", false);
+  }
+
+  @Override
+  public void createToolWindowContent(@NotNull final Project project, @NotNull final ToolWindow toolWindow) {
+    final JBTextArea textArea = new JBTextArea();
+    textArea.setEditable(false);
+    textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, textArea.getFont().getSize()));
+
+    final SimpleToolWindowPanel panel = new SimpleToolWindowPanel(false, true);
+    panel.setContent(new JBScrollPane(textArea));
+    final DefaultActionGroup group = new DefaultActionGroup(new DumpDartAnalysisServerStatisticsAction());
+    panel.setToolbar(ActionManager.getInstance().createActionToolbar("DartAnalysisServerStatistics", group, false).getComponent());
+
+    final Content content = ContentFactory.SERVICE.getInstance().createContent(panel, "", false);
+    toolWindow.getContentManager().addContent(content);
+
+    final Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, content);
+    final Runnable refresh = new Runnable() {
+      @Override
+      public void run() {
+        if (project.isDisposed()) return;
+
+        if (toolWindow.isVisible()) {
+          final RequestStatistics statistics = DartAnalysisServerService.getInstance(project).getRequestStatistics();
+          final String text = statistics != null ? statistics.getReport() : DartBundle.message("analysis.server.statistics.not.running");
+          if (!text.equals(textArea.getText())) {
+            textArea.setText(text);
+          }
+        }
+        alarm.addRequest(this, REFRESH_PERIOD);
+      }
+    };
+    alarm.addRequest(refresh, 0);
+  }
+}
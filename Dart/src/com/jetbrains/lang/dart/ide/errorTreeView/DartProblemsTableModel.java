@@ -10,6 +10,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ui.ColumnInfo;
 import com.intellij.util.ui.ListTableModel;
 import com.jetbrains.lang.dart.ide.annotator.DartAnnotator;
+import gnu.trove.THashMap;
 import icons.DartIcons;
 import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
@@ -66,10 +67,13 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   @NotNull private final DartProblemsPresentationHelper myPresentationHelper;
 
   // Kind of hack to keep a reference to the live collection used in a super class, but it allows to improve performance greatly.
-  // Having it in hand we can do bulk rows removal with a single fireTableRowsDeleted() call afterwards
+  // Having it in hand we can replace rows in bulk with a single fireTableDataChanged() call afterwards
   private final List<DartProblem> myItems;
 
   private RowSorter.SortKey mySortKey = new RowSorter.SortKey(1, SortOrder.ASCENDING);
+  // sort key and grouping that myItems are currently sorted by
+  private RowSorter.SortKey myItemsSortKey = mySortKey;
+  private boolean myItemsGroupBySeverity;
 
   private int myErrorCount = 0;
   private int myWarningCount = 0;
@@ -86,6 +90,7 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     myProject = project;
     myPresentationHelper = presentationHelper;
     myItems = new ArrayList<>();
+    myItemsGroupBySeverity = presentationHelper.isGroupBySeverity();
     setColumnInfos(new ColumnInfo[]{createDescriptionColumn(), createLocationColumn()});
     setItems(myItems);
     setSortable(true);
@@ -157,21 +162,6 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     return false;
   }
 
-  public void removeRows(final int firstRow, final int lastRow) {
-    assert lastRow >= firstRow;
-
-    for (int i = lastRow; i >= firstRow; i--) {
-      final DartProblem removed = myItems.remove(i);
-
-      if (AnalysisErrorSeverity.ERROR.equals(removed.getSeverity())) myErrorCount--;
-      if (AnalysisErrorSeverity.WARNING.equals(removed.getSeverity())) myWarningCount--;
-      if (AnalysisErrorSeverity.INFO.equals(removed.getSeverity())) myHintCount--;
-      updateProblemsCountAfterFilter(removed, false);
-    }
-
-    fireTableRowsDeleted(firstRow, lastRow);
-  }
-
   public void removeAll() {
     final int rowCount = getRowCount();
     if (rowCount > 0) {
@@ -188,102 +178,68 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   }
 
   /**
-   * If {@code selectedProblem} was removed and similar one added again then this method returns the added one,
-   * so that the caller could update selected row in the table
+   * Converts errors to problems and calculates their presentable locations, so that sorting them later in EDT doesn't touch VFS.
+   * Errors of files that are not in the project content are replaced with an empty list. Must be called in read action.
    */
-  @Nullable
-  public DartProblem setErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                               @Nullable final DartProblem selectedProblem) {
-    final boolean selectedProblemRemoved = removeRowsForFilesInSet(filePathToErrors.keySet(), selectedProblem);
-    return addErrorsAndReturnReplacementForSelection(filePathToErrors, selectedProblemRemoved ? selectedProblem : null);
-  }
-
-  private boolean removeRowsForFilesInSet(@NotNull final Set<String> filePaths, @Nullable final DartProblem selectedProblem) {
-    // Looks for regions in table items that should be removed and removes them.
-    // For performance reasons we try to call removeRows() as rare as possible, that means with regions as big as possible.
-    // Logic is based on the fact that all errors for each particular file are stored continuously in the myItems model
-
-    boolean selectedProblemRemoved = false;
-
-    int matchedFilesCount = 0;
+  @NotNull
+  static Map<String, List<DartProblem>> createProblems(@NotNull final Project project,
+                                                      @NotNull final Map<String, List<AnalysisError>> filePathToErrors) {
+    final Map<String, List<DartProblem>> result = new THashMap<>(filePathToErrors.size());
+    final ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
 
-    for (int i = getRowCount() - 1; i >= 0; i--) {
-      final DartProblem problem = getItem(i);
-      if (filePaths.contains(problem.getSystemIndependentPath())) {
-        matchedFilesCount++;
-        final int lastRowToDelete = i;
+    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
+      final String filePath = entry.getKey();
+      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
+      final List<AnalysisError> errors = vFile != null && fileIndex.isInContent(vFile) ? entry.getValue() : AnalysisError.EMPTY_LIST;
 
-        if (problem == selectedProblem) {
-          selectedProblemRemoved = true;
+      final List<DartProblem> problems = new ArrayList<>(errors.size());
+      for (AnalysisError analysisError : errors) {
+        if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
+          continue;
         }
 
-        DartProblem lastProblemForCurrentFile = problem;
-
-        int j = i - 1;
-        while (j >= 0) {
-          final DartProblem previousProblem = getItem(j);
-
-          if (previousProblem.getSystemIndependentPath().equals(lastProblemForCurrentFile.getSystemIndependentPath())) {
-            // previousProblem should be removed from the table as well
-            j--;
-
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
-
-            continue;
-          }
-
-          if (filePaths.contains(previousProblem.getSystemIndependentPath())) {
-            matchedFilesCount++;
-            // continue iterating the table because we met a range of problems for another file that also should be removed
-            lastProblemForCurrentFile = previousProblem;
-            j--;
-
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
-
-            continue;
-          }
+        final DartProblem problem = new DartProblem(project, analysisError);
+        problem.getPresentableLocationWithoutLineNumber();
+        problems.add(problem);
+      }
+      result.put(filePath, problems);
+    }
 
-          break;
-        }
+    return result;
+  }
 
-        final int firstRowToDelete = j + 1;
-        removeRows(firstRowToDelete, lastRowToDelete);
+  /**
+   * Replaces problems for the given files with a single table change event. Items are kept sorted in the same order as the table sorter
+   * sorts them, so the new problems are merged in linear time and the sorter finds the rows already sorted.
+   *
+   * @return the problem that should be selected in the table: {@code selectedProblem} if it is still there, a similar one added
+   * instead of it if it was removed, or {@code null}
+   */
+  @Nullable
+  public DartProblem setProblemsAndReturnSelection(@NotNull final Map<String, List<DartProblem>> filePathToProblems,
+                                                   @Nullable final DartProblem selectedProblem) {
+    final Set<String> filePaths = filePathToProblems.keySet();
+    final List<DartProblem> keptProblems = new ArrayList<>(myItems.size());
+    boolean selectedProblemRemoved = false;
 
-        if (matchedFilesCount == filePaths.size()) {
-          break;
+    for (DartProblem problem : myItems) {
+      if (filePaths.contains(problem.getSystemIndependentPath())) {
+        if (problem == selectedProblem) {
+          selectedProblemRemoved = true;
         }
-
-        //noinspection AssignmentToForLoopParameter
-        i = j + 1; // rewind according to the amount of removed rows
+        updateProblemsCount(problem, false);
+      }
+      else {
+        keptProblems.add(problem);
       }
     }
 
-    return selectedProblemRemoved;
-  }
-
-  @Nullable
-  private DartProblem addErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                                @Nullable final DartProblem oldSelectedProblem) {
+    final DartProblem oldSelectedProblem = selectedProblemRemoved ? selectedProblem : null;
     DartProblem newSelectedProblem = null;
-
     final List<DartProblem> problemsToAdd = new ArrayList<>();
-    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
-      final String filePath = entry.getKey();
-      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
-      final List<AnalysisError> errors = vFile != null && ProjectFileIndex.getInstance(myProject).isInContent(vFile)
-                                         ? entry.getValue()
-                                         : AnalysisError.EMPTY_LIST;
 
-      for (AnalysisError analysisError : errors) {
-        if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
-          continue;
-        }
-
-        final DartProblem problem = new DartProblem(myProject, analysisError);
+    for (List<DartProblem> problems : filePathToProblems.values()) {
+      for (DartProblem problem : problems) {
         problemsToAdd.add(problem);
 
         if (oldSelectedProblem != null &&
@@ -295,18 +251,75 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
           newSelectedProblem = problem;
         }
 
-        if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCount++;
-        if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCount++;
-        if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCount++;
-        updateProblemsCountAfterFilter(problem, true);
+        updateProblemsCount(problem, true);
       }
     }
 
-    if (!problemsToAdd.isEmpty()) {
-      addRows(problemsToAdd);
+    if (keptProblems.size() == myItems.size() && problemsToAdd.isEmpty()) {
+      return selectedProblem;
+    }
+
+    final List<DartProblem> newItems = mergeSorted(keptProblems, problemsToAdd);
+    myItems.clear();
+    myItems.addAll(newItems);
+    fireTableDataChanged();
+
+    return selectedProblemRemoved ? newSelectedProblem : selectedProblem;
+  }
+
+  @NotNull
+  private List<DartProblem> mergeSorted(@NotNull final List<DartProblem> sortedProblems, @NotNull final List<DartProblem> problemsToAdd) {
+    final Comparator<DartProblem> comparator = getItemsComparator();
+    if (comparator == null) {
+      sortedProblems.addAll(problemsToAdd);
+      return sortedProblems;
+    }
+
+    final boolean groupBySeverity = myPresentationHelper.isGroupBySeverity();
+    if (!mySortKey.equals(myItemsSortKey) || groupBySeverity != myItemsGroupBySeverity) {
+      // sorting changed since previous update, items are in the old order
+      sortedProblems.addAll(problemsToAdd);
+      sortedProblems.sort(comparator);
+      myItemsSortKey = mySortKey;
+      myItemsGroupBySeverity = groupBySeverity;
+      return sortedProblems;
     }
 
-    return newSelectedProblem;
+    problemsToAdd.sort(comparator);
+
+    final List<DartProblem> result = new ArrayList<>(sortedProblems.size() + problemsToAdd.size());
+    int i = 0;
+    int j = 0;
+    while (i < sortedProblems.size() && j < problemsToAdd.size()) {
+      // existing problems go first if equal, as if added problems were appended and stable sorted
+      if (comparator.compare(problemsToAdd.get(j), sortedProblems.get(i)) < 0) {
+        result.add(problemsToAdd.get(j++));
+      }
+      else {
+        result.add(sortedProblems.get(i++));
+      }
+    }
+    result.addAll(sortedProblems.subList(i, sortedProblems.size()));
+    result.addAll(problemsToAdd.subList(j, problemsToAdd.size()));
+    return result;
+  }
+
+  /**
+   * Comparator that orders problems the same way as the table row sorter does for the current sort key, or {@code null} if unsorted.
+   */
+  @Nullable
+  private Comparator<DartProblem> getItemsComparator() {
+    final Comparator<DartProblem> comparator = mySortKey.getColumn() == DartProblemsComparator.MESSAGE_COLUMN_ID
+                                               ? myDescriptionComparator
+                                               : myLocationComparator;
+    switch (mySortKey.getSortOrder()) {
+      case ASCENDING:
+        return comparator;
+      case DESCENDING:
+        return comparator.reversed();
+      default:
+        return null;
+    }
   }
 
   private static boolean lookSimilar(@NotNull final DartProblem problem1, @NotNull final DartProblem problem2) {
@@ -315,6 +328,14 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
            problem1.getSystemIndependentPath().equals(problem2.getSystemIndependentPath());
   }
 
+  private void updateProblemsCount(@NotNull final DartProblem problem, final boolean incrementNotDecrement) {
+    final int delta = incrementNotDecrement ? 1 : -1;
+    if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCount += delta;
+    if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCount += delta;
+    if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCount += delta;
+    updateProblemsCountAfterFilter(problem, incrementNotDecrement);
+  }
+
   private void updateProblemsCountAfterFilter(@NotNull final DartProblem problem, final boolean incrementNotDecrement) {
     if (myPresentationHelper.shouldShowProblem(problem)) {
       if (incrementNotDecrement) {
@@ -24,6 +24,7 @@ import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.*;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
@@ -68,8 +69,10 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   private final DartProblemsPresentationHelper myPresentationHelper;
   private DartProblemsViewPanel myPanel;
 
-  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors and myAlarm
+  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors, myUpdateInProgress, myClearCount and myAlarm
   private final Map<String, List<AnalysisError>> myScheduledFilePathToErrors = new THashMap<>();
+  private boolean myUpdateInProgress;
+  private int myClearCount;
   private final Alarm myAlarm;
 
   private ToolWindow myToolWindow;
@@ -80,32 +83,63 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   private Notification myNotification;
   private boolean myDisabledForSession = false;
 
+  /**
+   * Runs in a pooled thread: converts all errors received since the previous run to {@link DartProblem}s and passes them to EDT
+   * as a single batch. Runs are sequential, so batches are applied in the order they were received.
+   */
   private final Runnable myUpdateRunnable = new Runnable() {
     @Override
     public void run() {
-      if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
-        final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
-        if (myFilesWithErrorsHash != hash) {
-          // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
-          myFilesWithErrorsHash = hash;
-          ProjectView.getInstance(myProject).refresh();
-        }
-      }
-
       final Map<String, List<AnalysisError>> filePathToErrors;
+      final int clearCount;
       synchronized (myLock) {
         filePathToErrors = new THashMap<>(myScheduledFilePathToErrors);
         myScheduledFilePathToErrors.clear();
+        clearCount = myClearCount;
       }
 
-      myPanel.setErrors(filePathToErrors);
+      try {
+        final Map<String, List<DartProblem>> filePathToProblems =
+          ReadAction.compute(() -> myProject.isDisposed() ? null : DartProblemsTableModel.createProblems(myProject, filePathToErrors));
+
+        if (filePathToProblems != null) {
+          ApplicationManager.getApplication().invokeLater(() -> applyProblems(filePathToProblems, clearCount),
+                                                          ModalityState.NON_MODAL, myProject.getDisposed());
+        }
+      }
+      finally {
+        synchronized (myLock) {
+          myUpdateInProgress = false;
+          if (!myScheduledFilePathToErrors.isEmpty()) {
+            myUpdateInProgress = true;
+            myAlarm.addRequest(this, TABLE_REFRESH_PERIOD);
+          }
+        }
+      }
     }
   };
 
+  private void applyProblems(@NotNull final Map<String, List<DartProblem>> filePathToProblems, final int clearCount) {
+    synchronized (myLock) {
+      if (clearCount != myClearCount) return; // clearAll() has been called since these errors were received
+    }
+
+    if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
+      final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
+      if (myFilesWithErrorsHash != hash) {
+        // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
+        myFilesWithErrorsHash = hash;
+        ProjectView.getInstance(myProject).refresh();
+      }
+    }
+
+    myPanel.setProblems(filePathToProblems);
+  }
+
   public DartProblemsView(@NotNull final Project project, @NotNull final ToolWindowManager toolWindowManager) {
     myProject = project;
     myPresentationHelper = new DartProblemsPresentationHelper(project);
-    myAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
     Disposer.register(project, myAlarm);
 
     UIUtil.invokeLaterIfNeeded(() -> {
@@ -127,6 +161,7 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
       toolWindowEx.setTitleActions(new AnalysisServerFeedbackAction());
       ArrayList<AnAction> gearActions = new ArrayList<>();
       gearActions.add(new AnalysisServerDiagnosticsAction());
+      gearActions.add(new DumpDartAnalysisServerStatisticsAction());
       toolWindowEx.setAdditionalGearActions(new DefaultActionGroup(gearActions));
 
       myPanel.setToolWindowUpdater(new ToolWindowUpdater() {
@@ -279,8 +314,9 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
 
   public void updateErrorsForFile(@NotNull final String filePath, @NotNull final List<AnalysisError> errors) {
     synchronized (myLock) {
-      if (myScheduledFilePathToErrors.isEmpty()) {
-        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD, ModalityState.NON_MODAL);
+      if (myScheduledFilePathToErrors.isEmpty() && !myUpdateInProgress) {
+        myUpdateInProgress = true;
+        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD);
       }
 
       myScheduledFilePathToErrors.put(filePath, errors);
@@ -293,8 +329,11 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
     ProjectView.getInstance(myProject).refresh(); // refresh red waves managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
 
     synchronized (myLock) {
-      myAlarm.cancelAllRequests();
+      if (myAlarm.cancelAllRequests() > 0) {
+        myUpdateInProgress = false;
+      }
       myScheduledFilePathToErrors.clear();
+      myClearCount++;
     }
 
     myPanel.clearAll();
@@ -41,7 +41,6 @@ import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import com.jetbrains.lang.dart.assists.AssistUtils;
 import com.jetbrains.lang.dart.assists.DartSourceEditException;
 import icons.DartIcons;
-import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorFixes;
 import org.dartlang.analysis.server.protocol.SourceChange;
 import org.jetbrains.annotations.NonNls;
@@ -357,14 +356,22 @@ public class DartProblemsViewPanel extends SimpleToolWindowPanel implements Data
     }
   }
 
-  public void setErrors(@NotNull final Map<String, List<AnalysisError>> filePathToErrors) {
+  public void setProblems(@NotNull final Map<String, List<DartProblem>> filePathToProblems) {
     final DartProblemsTableModel model = (DartProblemsTableModel)myTable.getModel();
     final DartProblem oldSelectedProblem = myTable.getSelectedObject();
 
-    final DartProblem updatedSelectedProblem = model.setErrorsAndReturnReplacementForSelection(filePathToErrors, oldSelectedProblem);
+    final DartProblem newSelectedProblem = model.setProblemsAndReturnSelection(filePathToProblems, oldSelectedProblem);
 
-    if (updatedSelectedProblem != null) {
-      myTable.setSelection(Collections.singletonList(updatedSelectedProblem));
+    if (newSelectedProblem != null && newSelectedProblem != oldSelectedProblem) {
+      myTable.setSelection(Collections.singletonList(newSelectedProblem));
+    }
+    else if (newSelectedProblem != null && myTable.getSelectedObject() != newSelectedProblem) {
+      // table data changed event clears selection, restore it without scrolling
+      final int modelIndex = model.indexOf(newSelectedProblem);
+      final int viewIndex = modelIndex < 0 ? -1 : myTable.convertRowIndexToView(modelIndex);
+      if (viewIndex >= 0) {
+        myTable.getSelectionModel().setSelectionInterval(viewIndex, viewIndex);
+      }
     }
 
     updateStatusDescription();
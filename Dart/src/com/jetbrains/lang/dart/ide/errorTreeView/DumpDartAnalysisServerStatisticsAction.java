@@ -0,0 +1,56 @@
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.google.dart.server.internal.remote.RequestStatistics;
+import com.intellij.icons.AllIcons;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.jetbrains.lang.dart.DartBundle;
+import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.datatransfer.StringSelection;
+
+/**
+ * Writes the Dart Analysis Server latency statistics to the IDE log and copies them to the clipboard, so that they can be compared
+ * between plugin builds.
+ */
+public class DumpDartAnalysisServerStatisticsAction extends DumbAwareAction {
+  private static final Logger LOG = Logger.getInstance(DumpDartAnalysisServerStatisticsAction.class);
+  private static final String GROUP_DISPLAY_ID = "Dart Analysis Server";
+
+  public DumpDartAnalysisServerStatisticsAction() {
+    super(DartBundle.message("analysis.server.statistics.dump.text"),
+          DartBundle.message("analysis.server.statistics.dump.description"),
+          AllIcons.Actions.Dump);
+  }
+
+  @Override
+  public void update(@NotNull final AnActionEvent e) {
+    final Project project = e.getProject();
+    e.getPresentation().setEnabledAndVisible(project != null &&
+                                             DartAnalysisServerService.getInstance(project).getRequestStatistics() != null);
+  }
+
+  @Override
+  public void actionPerformed(@NotNull final AnActionEvent e) {
+    final Project project = e.getProject();
+    if (project == null) return;
+
+    final RequestStatistics statistics = DartAnalysisServerService.getInstance(project).getRequestStatistics();
+    if (statistics == null) return;
+
+    final String report = statistics.getReport();
+    LOG.info("Dart Analysis Server statistics:\n" + report);
+    CopyPasteManager.getInstance().setContents(new StringSelection(report));
+    Notifications.Bus.notify(new Notification(GROUP_DISPLAY_ID,
+                                              DartBundle.message("analysis.server.statistics.dump.text"),
+                                              DartBundle.message("analysis.server.statistics.dumped"),
+                                              NotificationType.INFORMATION), project);
+  }
+}
@@ -1,24 +1,32 @@
 package com.jetbrains.lang.dart.ide.index;
 
+import com.intellij.openapi.util.Pair;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.DataInputOutputUtil;
 import com.intellij.util.io.IOUtil;
 import com.jetbrains.lang.dart.DartComponentType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Component type and the presence of the library name are written as a single varint, which takes one byte for all component types.
+ * Read values are interned: there are only a few distinct (type, library name) pairs, but the same pair is stored for many keys.
+ */
 public class DartComponentInfoExternalizer implements DataExternalizer<DartComponentInfo> {
+  // keys don't reference the values, so unused infos are collected
+  private static final ConcurrentMap<Pair<DartComponentType, String>, DartComponentInfo> ourInternedInfos =
+    ContainerUtil.createConcurrentWeakValueMap();
 
   @Override
   public void save(@NotNull final DataOutput out, @NotNull final DartComponentInfo componentInfo) throws IOException {
-    final DartComponentType dartComponentType = componentInfo.getComponentType();
-    final int key = dartComponentType == null ? -1 : dartComponentType.getKey();
-    DataInputOutputUtil.writeINT(out, key);
     final String libraryName = componentInfo.getLibraryName();
-    out.writeBoolean(libraryName != null);
+    writeComponentTypeAndFlag(out, componentInfo.getComponentType(), libraryName != null);
     if (libraryName != null) {
       IOUtil.writeUTF(out, libraryName);
     }
@@ -26,9 +34,35 @@ public class DartComponentInfoExternalizer implements DataExternalizer<DartCompo
 
   @Override
   public DartComponentInfo read(@NotNull DataInput in) throws IOException {
-    final int componentTypeKey = DataInputOutputUtil.readINT(in);
-    final boolean hasLibraryName = in.readBoolean();
-    final String libraryName = hasLibraryName ? IOUtil.readUTF(in) : null;
-    return new DartComponentInfo(DartComponentType.valueOf(componentTypeKey), libraryName);
+    final int typeAndFlag = DataInputOutputUtil.readINT(in);
+    final String libraryName = getFlag(typeAndFlag) ? IOUtil.readUTF(in) : null;
+    return intern(getComponentType(typeAndFlag), libraryName);
+  }
+
+  private static void writeComponentTypeAndFlag(@NotNull final DataOutput out,
+                                                @Nullable final DartComponentType componentType,
+                                                final boolean flag) throws IOException {
+    final int typeKey = componentType == null ? 0 : componentType.getKey() + 1;
+    DataInputOutputUtil.writeINT(out, typeKey << 1 | (flag ? 1 : 0));
+  }
+
+  @Nullable
+  private static DartComponentType getComponentType(final int typeAndFlag) {
+    return DartComponentType.valueOf((typeAndFlag >>> 1) - 1);
+  }
+
+  private static boolean getFlag(final int typeAndFlag) {
+    return (typeAndFlag & 1) != 0;
+  }
+
+  @NotNull
+  private static DartComponentInfo intern(@Nullable final DartComponentType componentType, @Nullable final String libraryName) {
+    final Pair<DartComponentType, String> key = Pair.create(componentType, libraryName);
+    final DartComponentInfo interned = ourInternedInfos.get(key);
+    if (interned != null) return interned;
+
+    final DartComponentInfo info = new DartComponentInfo(componentType, libraryName);
+    final DartComponentInfo previous = ourInternedInfos.putIfAbsent(key, info);
+    return previous != null ? previous : info;
   }
 }
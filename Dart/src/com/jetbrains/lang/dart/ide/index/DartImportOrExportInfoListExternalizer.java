@@ -0,0 +1,129 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.IOUtil;
+import gnu.trove.THashSet;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
+
+/**
+ * Kind and the presence of the import prefix are written as a single varint. Import prefixes and show/hide names are enumerated per list:
+ * the first occurrence of a name is written as 0 followed by the name, later occurrences as its 1-based index.
+ * <p>
+ * Read values are interned, because the same imports (like <code>import 'dart:async';</code>) are found in many files. Interned infos
+ * are shared, so their show/hide sets are unmodifiable.
+ */
+public class DartImportOrExportInfoListExternalizer implements DataExternalizer<List<DartImportOrExportInfo>> {
+  // keys don't reference the values, so unused infos are collected
+  private static final ConcurrentMap<List<Object>, DartImportOrExportInfo> ourInternedInfos = ContainerUtil.createConcurrentWeakValueMap();
+
+  @Override
+  public void save(@NotNull final DataOutput out, @NotNull final List<DartImportOrExportInfo> infos) throws IOException {
+    DataInputOutputUtil.writeINT(out, infos.size());
+
+    final TObjectIntHashMap<String> nameToIndex = new TObjectIntHashMap<>();
+    for (DartImportOrExportInfo info : infos) {
+      final String importPrefix = info.getImportPrefix();
+      DataInputOutputUtil.writeINT(out, info.getKind().ordinal() << 1 | (importPrefix != null ? 1 : 0));
+      IOUtil.writeUTF(out, info.getUri());
+      if (importPrefix != null) {
+        writeName(out, importPrefix, nameToIndex);
+      }
+      writeNames(out, info.getShowComponents(), nameToIndex);
+      writeNames(out, info.getHideComponents(), nameToIndex);
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<DartImportOrExportInfo> read(@NotNull final DataInput in) throws IOException {
+    final int size = DataInputOutputUtil.readINT(in);
+    if (size == 0) return Collections.emptyList();
+
+    final List<DartImportOrExportInfo> result = new ArrayList<>(size);
+    final List<String> names = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      final int kindAndFlag = DataInputOutputUtil.readINT(in);
+      final Kind[] kinds = Kind.values();
+      if (kindAndFlag >>> 1 >= kinds.length) {
+        throw new IOException("Incorrect import or export kind: " + (kindAndFlag >>> 1));
+      }
+      final Kind kind = kinds[kindAndFlag >>> 1];
+      final String uri = IOUtil.readUTF(in);
+      final String importPrefix = (kindAndFlag & 1) != 0 ? readName(in, names) : null;
+      final Set<String> showComponentNames = readNames(in, names);
+      final Set<String> hideComponentNames = readNames(in, names);
+      result.add(intern(kind, uri, importPrefix, showComponentNames, hideComponentNames));
+    }
+    return result;
+  }
+
+  private static void writeNames(@NotNull final DataOutput out,
+                                 @NotNull final Set<String> componentNames,
+                                 @NotNull final TObjectIntHashMap<String> nameToIndex) throws IOException {
+    DataInputOutputUtil.writeINT(out, componentNames.size());
+    for (String name : componentNames) {
+      writeName(out, name, nameToIndex);
+    }
+  }
+
+  private static void writeName(@NotNull final DataOutput out,
+                                @NotNull final String name,
+                                @NotNull final TObjectIntHashMap<String> nameToIndex) throws IOException {
+    final int index = nameToIndex.get(name);
+    DataInputOutputUtil.writeINT(out, index);
+    if (index == 0) {
+      IOUtil.writeUTF(out, name);
+      nameToIndex.put(name, nameToIndex.size() + 1);
+    }
+  }
+
+  @NotNull
+  private static Set<String> readNames(@NotNull final DataInput in, @NotNull final List<String> names) throws IOException {
+    final int size = DataInputOutputUtil.readINT(in);
+    if (size == 0) return Collections.emptySet();
+    if (size == 1) return Collections.singleton(readName(in, names));
+
+    final Set<String> result = new THashSet<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(readName(in, names));
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  @NotNull
+  private static String readName(@NotNull final DataInput in, @NotNull final List<String> names) throws IOException {
+    final int index = DataInputOutputUtil.readINT(in);
+    if (index != 0) return names.get(index - 1);
+
+    final String name = IOUtil.readUTF(in);
+    names.add(name);
+    return name;
+  }
+
+  @NotNull
+  private static DartImportOrExportInfo intern(@NotNull final Kind kind,
+                                               @NotNull final String uri,
+                                               @Nullable final String importPrefix,
+                                               @NotNull final Set<String> showComponentNames,
+                                               @NotNull final Set<String> hideComponentNames) {
+    final List<Object> key = Arrays.asList(kind, uri, importPrefix, showComponentNames, hideComponentNames);
+    final DartImportOrExportInfo interned = ourInternedInfos.get(key);
+    if (interned != null) return interned;
+
+    final DartImportOrExportInfo info = new DartImportOrExportInfo(kind, uri, importPrefix, showComponentNames, hideComponentNames);
+    final DartImportOrExportInfo previous = ourInternedInfos.putIfAbsent(key, info);
+    return previous != null ? previous : info;
+  }
+}
@@ -0,0 +1,274 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.lang.*;
+import com.intellij.psi.impl.source.CharTableImpl;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartLanguage;
+import com.jetbrains.lang.dart.DartParser;
+import com.jetbrains.lang.dart.DartTokenTypesSets;
+import com.jetbrains.lang.dart.lexer.DartLexer;
+import com.jetbrains.lang.dart.util.DartPsiImplUtil;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.jetbrains.lang.dart.DartTokenTypes.*;
+import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
+
+/**
+ * Computes {@link DartFileIndexData} from the light tree built by {@link DartParser}, without creating AST and PSI. Function bodies are
+ * lazy-parseable blocks, so they are not parsed at all.
+ * <p>
+ * The result is the same as the one computed from PSI by {@link DartIndexUtil}. Syntax that can't be handled without PSI (e.g. library
+ * name of a <code>part of 'uri';</code> file) or unexpected trees produced by error recovery make {@link #indexFile(CharSequence, String)}
+ * return {@code null}, and the caller falls back to PSI.
+ */
+class DartLightIndexer {
+  private static final TokenSet CLASSES = TokenSet.create(CLASS_DEFINITION, ENUM_DEFINITION);
+  private static final TokenSet TOP_LEVEL_FUNCTIONS =
+    TokenSet.create(FUNCTION_DECLARATION_WITH_BODY_OR_NATIVE, GETTER_DECLARATION, SETTER_DECLARATION);
+  private static final TokenSet METHODS = TokenSet.create(METHOD_DECLARATION, GETTER_DECLARATION, SETTER_DECLARATION);
+  private static final TokenSet IMPORTS_AND_EXPORTS = TokenSet.create(IMPORT_STATEMENT, EXPORT_STATEMENT);
+
+  // element types of DartComponent implementations
+  private static final TokenSet COMPONENTS = TokenSet.create(
+    CLASS_DEFINITION, ENUM_CONSTANT_DECLARATION, ENUM_DEFINITION, FACTORY_CONSTRUCTOR_DECLARATION, FUNCTION_DECLARATION_WITH_BODY,
+    FUNCTION_DECLARATION_WITH_BODY_OR_NATIVE, FUNCTION_FORMAL_PARAMETER, FUNCTION_TYPE_ALIAS, GETTER_DECLARATION, LABEL,
+    METHOD_DECLARATION, NAMED_CONSTRUCTOR_DECLARATION, SETTER_DECLARATION, SIMPLE_FORMAL_PARAMETER, TYPE_PARAMETER,
+    VAR_ACCESS_DECLARATION, VAR_DECLARATION_LIST_PART);
+
+  @NotNull private final CharSequence myText;
+  @NotNull private final LighterAST myTree;
+  @NotNull private final DartFileIndexData myResult = new DartFileIndexData();
+
+  private DartLightIndexer(@NotNull final CharSequence text, @NotNull final LighterAST tree) {
+    myText = text;
+    myTree = tree;
+  }
+
+  /**
+   * @return index data or {@code null} if the file should be indexed using PSI
+   */
+  @Nullable
+  static DartFileIndexData indexFile(@NotNull final CharSequence text, @NotNull final String fileName) {
+    final ParserDefinition parserDefinition = LanguageParserDefinitions.INSTANCE.forLanguage(DartLanguage.INSTANCE);
+    final PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(parserDefinition, new DartLexer(), text);
+    new DartParser().parseLight(DartTokenTypesSets.DART_FILE, builder);
+
+    final LighterAST tree = new FCTSBackedLighterAST(new CharTableImpl(), builder.getLightTree());
+    final DartLightIndexer indexer = new DartLightIndexer(text, tree);
+    return indexer.index(fileName) ? indexer.myResult : null;
+  }
+
+  private boolean index(@NotNull final String fileName) {
+    final LighterASTNode root = myTree.getRoot();
+    final List<LighterASTNode> children = myTree.getChildren(root);
+
+    final String libraryName = getLibraryName(root, fileName);
+    if (libraryName == null) return false;
+
+    myResult.setLibraryName(libraryName);
+    myResult.setIsPart(LightTreeUtil.firstChildOfType(myTree, root, PART_OF_STATEMENT) != null);
+
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == VAR_DECLARATION_LIST) {
+        if (!addTopLevelVariables(child)) return false;
+      }
+      else if (COMPONENTS.contains(type) && type != VAR_ACCESS_DECLARATION && type != VAR_DECLARATION_LIST_PART) {
+        if (!addTopLevelComponent(child)) return false;
+      }
+    }
+
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (IMPORTS_AND_EXPORTS.contains(type)) {
+        if (!addImportOrExport(child)) return false;
+      }
+      else if (type == PART_STATEMENT) {
+        final String uri = getUriString(child);
+        if (uri == null) return false;
+        myResult.addPartUri(uri);
+      }
+    }
+
+    return true;
+  }
+
+  @Nullable
+  private String getLibraryName(@NotNull final LighterASTNode root, @NotNull final String fileName) {
+    final LighterASTNode libraryStatement = LightTreeUtil.firstChildOfType(myTree, root, LIBRARY_STATEMENT);
+    if (libraryStatement != null) {
+      final LighterASTNode nameElement = LightTreeUtil.firstChildOfType(myTree, libraryStatement, LIBRARY_NAME_ELEMENT);
+      if (nameElement == null) return null;
+
+      final StringBuilder name = new StringBuilder();
+      for (LighterASTNode id : LightTreeUtil.getChildrenOfType(myTree, nameElement, ID)) {
+        if (name.length() > 0) {
+          name.append('.');
+        }
+        name.append(getText(id));
+      }
+      return name.toString();
+    }
+
+    final LighterASTNode partOfStatement = LightTreeUtil.firstChildOfType(myTree, root, PART_OF_STATEMENT);
+    if (partOfStatement != null) {
+      // library name of 'part of "uri";' is taken from another file
+      final LighterASTNode libraryId = LightTreeUtil.firstChildOfType(myTree, partOfStatement, LIBRARY_ID);
+      return libraryId == null ? null : getText(libraryId);
+    }
+
+    return fileName;
+  }
+
+  private boolean addTopLevelVariables(@NotNull final LighterASTNode varDeclarationList) {
+    final LighterASTNode varAccessDeclaration = LightTreeUtil.firstChildOfType(myTree, varDeclarationList, VAR_ACCESS_DECLARATION);
+    if (varAccessDeclaration == null || !addTopLevelDeclaration(varAccessDeclaration, DartComponentType.VARIABLE)) return false;
+
+    for (LighterASTNode part : LightTreeUtil.getChildrenOfType(myTree, varDeclarationList, VAR_DECLARATION_LIST_PART)) {
+      if (!addTopLevelDeclaration(part, DartComponentType.VARIABLE)) return false;
+    }
+    return true;
+  }
+
+  private boolean addTopLevelComponent(@NotNull final LighterASTNode component) {
+    final IElementType type = component.getTokenType();
+    if (CLASSES.contains(type)) return addTopLevelDeclaration(component, DartComponentType.CLASS);
+    if (type == FUNCTION_TYPE_ALIAS) return addTopLevelDeclaration(component, DartComponentType.TYPEDEF);
+    if (TOP_LEVEL_FUNCTIONS.contains(type)) return addTopLevelDeclaration(component, DartComponentType.FUNCTION);
+    return false;
+  }
+
+  private boolean addTopLevelDeclaration(@NotNull final LighterASTNode component, @NotNull final DartComponentType componentType) {
+    final String name = getFirstComponentName(component);
+    if (name == null) return false;
+
+    myResult.addSymbol(name);
+    myResult.addComponentInfo(name, new DartComponentInfo(componentType, myResult.getLibraryName()));
+
+    if (componentType == DartComponentType.CLASS) {
+      myResult.addClassName(name);
+      return component.getTokenType() == ENUM_DEFINITION ? addEnumConstants(component) : addClassMembers(component);
+    }
+    return true;
+  }
+
+  private boolean addEnumConstants(@NotNull final LighterASTNode enumDefinition) {
+    for (LighterASTNode enumConstant : LightTreeUtil.getChildrenOfType(myTree, enumDefinition, ENUM_CONSTANT_DECLARATION)) {
+      if (!addMemberSymbol(getFirstComponentName(enumConstant))) return false;
+    }
+    return true;
+  }
+
+  private boolean addClassMembers(@NotNull final LighterASTNode classDefinition) {
+    final LighterASTNode classBody = LightTreeUtil.firstChildOfType(myTree, classDefinition, CLASS_BODY);
+    if (classBody == null) return true; // mixin application
+
+    final LighterASTNode classMembers = LightTreeUtil.firstChildOfType(myTree, classBody, CLASS_MEMBERS);
+    if (classMembers == null) return false;
+
+    final List<LighterASTNode> members = myTree.getChildren(classMembers);
+    for (LighterASTNode member : members) {
+      final IElementType type = member.getTokenType();
+      if (!COMPONENTS.contains(type)) continue;
+
+      final String name;
+      if (METHODS.contains(type)) {
+        name = getFirstComponentName(member);
+      }
+      else if (type == NAMED_CONSTRUCTOR_DECLARATION || type == FACTORY_CONSTRUCTOR_DECLARATION) {
+        name = getConstructorName(member);
+      }
+      else {
+        return false;
+      }
+
+      if (!addMemberSymbol(name)) return false;
+    }
+
+    // fields after methods and constructors, as in DartResolveUtil.getNamedSubComponents()
+    for (LighterASTNode member : members) {
+      if (member.getTokenType() != VAR_DECLARATION_LIST) continue;
+
+      final LighterASTNode varAccessDeclaration = LightTreeUtil.firstChildOfType(myTree, member, VAR_ACCESS_DECLARATION);
+      if (varAccessDeclaration == null || !addMemberSymbol(getFirstComponentName(varAccessDeclaration))) return false;
+
+      for (LighterASTNode part : LightTreeUtil.getChildrenOfType(myTree, member, VAR_DECLARATION_LIST_PART)) {
+        if (!addMemberSymbol(getFirstComponentName(part))) return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean addMemberSymbol(@Nullable final String name) {
+    if (name == null) return false;
+    myResult.addSymbol(name);
+    return true;
+  }
+
+  /**
+   * Mimics {@link DartPsiImplUtil#getComponentName(com.jetbrains.lang.dart.psi.DartNamedConstructorDeclaration)} and
+   * {@link DartPsiImplUtil#getComponentName(com.jetbrains.lang.dart.psi.DartFactoryConstructorDeclaration)}.
+   */
+  @Nullable
+  private String getConstructorName(@NotNull final LighterASTNode constructor) {
+    final List<LighterASTNode> names = LightTreeUtil.getChildrenOfType(myTree, constructor, COMPONENT_NAME);
+    if (names.size() == 2) return getText(names.get(1));
+    if (names.size() == 1 && constructor.getTokenType() == FACTORY_CONSTRUCTOR_DECLARATION) return getText(names.get(0));
+    return null;
+  }
+
+  private boolean addImportOrExport(@NotNull final LighterASTNode importOrExportStatement) {
+    final String uri = getUriString(importOrExportStatement);
+    if (uri == null) return false;
+
+    final Set<String> showComponentNames = getCombinatorNames(importOrExportStatement, SHOW_COMBINATOR);
+    final Set<String> hideComponentNames = getCombinatorNames(importOrExportStatement, HIDE_COMBINATOR);
+
+    final boolean isImport = importOrExportStatement.getTokenType() == IMPORT_STATEMENT;
+    final String importPrefix = isImport ? getFirstComponentName(importOrExportStatement) : null;
+
+    final Kind kind = isImport ? Kind.Import : Kind.Export;
+    myResult.addImportInfo(new DartImportOrExportInfo(kind, uri, importPrefix, showComponentNames, hideComponentNames));
+    myResult.addComponentInfo(importPrefix, new DartComponentInfo(DartComponentType.LABEL, null));
+    return true;
+  }
+
+  @NotNull
+  private Set<String> getCombinatorNames(@NotNull final LighterASTNode importOrExportStatement, @NotNull final IElementType combinatorType) {
+    final Set<String> result = new THashSet<>();
+    for (LighterASTNode combinator : LightTreeUtil.getChildrenOfType(myTree, importOrExportStatement, combinatorType)) {
+      final LighterASTNode libraryReferenceList = LightTreeUtil.firstChildOfType(myTree, combinator, LIBRARY_REFERENCE_LIST);
+      if (libraryReferenceList != null) {
+        for (LighterASTNode expression : LightTreeUtil
+          .getChildrenOfType(myTree, libraryReferenceList, LIBRARY_COMPONENT_REFERENCE_EXPRESSION)) {
+          result.add(getText(expression));
+        }
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private String getUriString(@NotNull final LighterASTNode uriBasedDirective) {
+    final LighterASTNode uriElement = LightTreeUtil.firstChildOfType(myTree, uriBasedDirective, URI_ELEMENT);
+    return uriElement == null ? null : DartPsiImplUtil.getUnquotedDartStringAndItsRange(getText(uriElement)).first;
+  }
+
+  @Nullable
+  private String getFirstComponentName(@NotNull final LighterASTNode component) {
+    final LighterASTNode componentName = LightTreeUtil.firstChildOfType(myTree, component, COMPONENT_NAME);
+    return componentName == null ? null : getText(componentName);
+  }
+
+  @NotNull
+  private String getText(@NotNull final LighterASTNode node) {
+    return myText.subSequence(node.getStartOffset(), node.getEndOffset()).toString();
+  }
+}
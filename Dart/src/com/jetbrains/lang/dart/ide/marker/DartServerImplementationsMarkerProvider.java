@@ -21,6 +21,7 @@ import com.intellij.codeInsight.daemon.impl.PsiElementListNavigator;
 import com.intellij.icons.AllIcons;
 import com.intellij.ide.util.DefaultPsiElementCellRenderer;
 import com.intellij.openapi.editor.markup.GutterIconRenderer;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.search.GlobalSearchScope;
@@ -61,20 +62,21 @@ public class DartServerImplementationsMarkerProvider implements LineMarkerProvid
     if (file == null || !file.isInLocalFileSystem()) {
       return null;
     }
-    final int nameOffset = name.getTextRange().getStartOffset();
+    final TextRange nameRange = name.getTextRange();
+    final int nameOffset = nameRange.getStartOffset();
     final int nameLength = name.getTextLength();
     // ignore Object
     if ("Object".equals(name.getName())) {
       return null;
     }
     // classes
-    for (DartServerData.DartRegion implementedClassRegion : service.getImplementedClasses(file)) {
+    for (DartServerData.DartRegion implementedClassRegion : service.getImplementedClasses(file, nameRange)) {
       if (implementedClassRegion.getOffset() == nameOffset && implementedClassRegion.getLength() == nameLength) {
         return createMarkerClass(name);
       }
     }
     // members
-    for (DartServerData.DartRegion implementedMemberRegion : service.getImplementedMembers(file)) {
+    for (DartServerData.DartRegion implementedMemberRegion : service.getImplementedMembers(file, nameRange)) {
       if (implementedMemberRegion.getOffset() == nameOffset && implementedMemberRegion.getLength() == nameLength) {
         return createMarkerMember(name);
       }
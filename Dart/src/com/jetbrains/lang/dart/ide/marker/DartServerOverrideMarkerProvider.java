@@ -25,6 +25,7 @@ import com.intellij.icons.AllIcons;
 import com.intellij.ide.util.DefaultPsiElementCellRenderer;
 import com.intellij.openapi.editor.markup.GutterIconRenderer;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.util.PsiTreeUtil;
@@ -77,10 +78,11 @@ public class DartServerOverrideMarkerProvider implements LineMarkerProvider {
       return null;
     }
 
+    final TextRange nameRange = componentName.getTextRange();
     final List<DartServerData.DartOverrideMember> overrideMembers =
-      DartAnalysisServerService.getInstance(componentName.getProject()).getOverrideMembers(virtualFile);
+      DartAnalysisServerService.getInstance(componentName.getProject()).getOverrideMembers(virtualFile, nameRange);
     final Project project = componentName.getProject();
-    final int nameOffset = componentName.getTextRange().getStartOffset();
+    final int nameOffset = nameRange.getStartOffset();
     DartComponent superclassComponent = null;
     List<DartComponent> interfaceComponents = Lists.newArrayList();
     for (DartServerData.DartOverrideMember overrideMember : overrideMembers) {
@@ -13,6 +13,7 @@
 // limitations under the License.
 package com.jetbrains.lang.dart.ide.runner.server.vmService;
 
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.xdebugger.breakpoints.XBreakpointHandler;
 import com.intellij.xdebugger.breakpoints.XBreakpointProperties;
 import com.intellij.xdebugger.breakpoints.XLineBreakpoint;
@@ -28,8 +29,9 @@ public class DartVmServiceBreakpointHandler extends XBreakpointHandler<XLineBrea
 
   private final DartVmServiceDebugProcess myDebugProcess;
   private final Set<XLineBreakpoint<XBreakpointProperties>> myXBreakpoints = new THashSet<>();
-  private final Map<String, IsolateBreakpointInfo> myIsolateInfo = new THashMap<>();
-  private final Map<String, XLineBreakpoint<XBreakpointProperties>> myVmBreakpointIdToXBreakpointMap = new THashMap<>();
+  // updated by VM service responses for several isolates at once
+  private final Map<String, IsolateBreakpointInfo> myIsolateInfo = ContainerUtil.newConcurrentMap();
+  private final Map<String, XLineBreakpoint<XBreakpointProperties>> myVmBreakpointIdToXBreakpointMap = ContainerUtil.newConcurrentMap();
 
   public DartVmServiceBreakpointHandler(@NotNull final DartVmServiceDebugProcess debugProcess) {
     super(DartLineBreakpointType.class);
@@ -88,12 +90,7 @@ public class DartVmServiceBreakpointHandler extends XBreakpointHandler<XLineBrea
   }
 
   private IsolateBreakpointInfo getIsolateInfo(String isolateId) {
-    IsolateBreakpointInfo info = myIsolateInfo.get(isolateId);
-    if (info == null) {
-      info = new IsolateBreakpointInfo(isolateId, myDebugProcess);
-      myIsolateInfo.put(isolateId, info);
-    }
-    return info;
+    return myIsolateInfo.computeIfAbsent(isolateId, id -> new IsolateBreakpointInfo(id, myDebugProcess));
   }
 
   public void breakpointResolved(@NotNull final Breakpoint vmBreakpoint) {
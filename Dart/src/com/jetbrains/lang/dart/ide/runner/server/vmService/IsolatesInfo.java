@@ -1,24 +1,33 @@
 package com.jetbrains.lang.dart.ide.runner.server.vmService;
 
-import gnu.trove.THashMap;
+import com.intellij.util.containers.ContainerUtil;
 import org.dartlang.vm.service.element.Isolate;
 import org.dartlang.vm.service.element.IsolateRef;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
+/**
+ * Known isolates and their state. Updated concurrently by VM service responses and events, so isolates are kept in a concurrent map and
+ * the state of an isolate is kept in atomic fields.
+ */
 public class IsolatesInfo {
 
   public static class IsolateInfo {
     private final String myIsolateId;
     private final String myIsolateName;
-    private boolean breakpointsSet = false;
-    private boolean shouldInitialResume = false;
-    private CompletableFuture<Isolate> myCachedIsolate;
+    private volatile boolean breakpointsSet = false;
+    private volatile boolean shouldInitialResume = false;
+    private volatile long myPauseStartTime;
+    private final AtomicBoolean myInitialResumeDone = new AtomicBoolean();
+    private final AtomicReference<CompletableFuture<Isolate>> myCachedIsolate = new AtomicReference<>();
+    private final ConcurrentMap<String, CompletableFuture<ScriptInfo>> myCachedScripts = ContainerUtil.newConcurrentMap();
 
     private IsolateInfo(@NotNull final String isolateId, @NotNull final String isolateName) {
       myIsolateId = isolateId;
@@ -26,15 +35,8 @@ public class IsolatesInfo {
     }
 
     void invalidateCache() {
-      myCachedIsolate = null;
-    }
-
-    CompletableFuture<Isolate> getCachedIsolate() {
-      return myCachedIsolate;
-    }
-
-    void setCachedIsolate(CompletableFuture<Isolate> cachedIsolate) {
-      myCachedIsolate = cachedIsolate;
+      myCachedIsolate.set(null);
+      myCachedScripts.clear();
     }
 
     public String getIsolateId() {
@@ -50,68 +52,109 @@ public class IsolatesInfo {
     }
   }
 
-  private final Map<String, IsolateInfo> myIsolateIdToInfoMap = new THashMap<>();
-
-  public synchronized boolean addIsolate(@NotNull final IsolateRef isolateRef) {
-    if (myIsolateIdToInfoMap.containsKey(isolateRef.getId())) {
-      return false;
-    }
-
-    myIsolateIdToInfoMap.put(isolateRef.getId(), new IsolateInfo(isolateRef.getId(), isolateRef.getName()));
+  private final ConcurrentMap<String, IsolateInfo> myIsolateIdToInfoMap = ContainerUtil.newConcurrentMap();
 
-    return true;
+  public boolean addIsolate(@NotNull final IsolateRef isolateRef) {
+    return myIsolateIdToInfoMap.putIfAbsent(isolateRef.getId(), new IsolateInfo(isolateRef.getId(), isolateRef.getName())) == null;
   }
 
-  public synchronized void setBreakpointsSet(@NotNull final IsolateRef isolateRef) {
+  public void setBreakpointsSet(@NotNull final IsolateRef isolateRef) {
     IsolateInfo info = myIsolateIdToInfoMap.get(isolateRef.getId());
     if (info != null) {
       info.breakpointsSet = true;
     }
   }
 
-  public synchronized void setShouldInitialResume(@NotNull final IsolateRef isolateRef) {
+  public void setShouldInitialResume(@NotNull final IsolateRef isolateRef) {
     IsolateInfo info = myIsolateIdToInfoMap.get(isolateRef.getId());
     if (info != null) {
+      info.myPauseStartTime = System.nanoTime();
       info.shouldInitialResume = true;
     }
   }
 
-  public synchronized boolean getShouldInitialResume(@NotNull final IsolateRef isolateRef) {
+  /**
+   * Returns {@code true} if the isolate is paused at start, its breakpoints are set and nobody has resumed it yet. Returns {@code true}
+   * only once per isolate, so that the isolate paused at start is not resumed twice when breakpoints are set and the PauseStart event
+   * arrives at the same time.
+   */
+  public boolean startInitialResume(@NotNull final IsolateRef isolateRef) {
     IsolateInfo info = myIsolateIdToInfoMap.get(isolateRef.getId());
-    if (info != null) {
-      return info.breakpointsSet && info.shouldInitialResume;
-    }
-    else {
-      return false;
+    return info != null && info.breakpointsSet && info.shouldInitialResume && info.myInitialResumeDone.compareAndSet(false, true);
+  }
+
+  /**
+   * @return time in milliseconds since the isolate was found paused at start, or -1 if unknown
+   */
+  public long getMillisSincePauseStart(@NotNull final IsolateRef isolateRef) {
+    IsolateInfo info = myIsolateIdToInfoMap.get(isolateRef.getId());
+    if (info == null || !info.shouldInitialResume) {
+      return -1;
     }
+    return (System.nanoTime() - info.myPauseStartTime) / 1_000_000;
   }
 
-  public synchronized void deleteIsolate(@NotNull final IsolateRef isolateRef) {
+  public void deleteIsolate(@NotNull final IsolateRef isolateRef) {
     myIsolateIdToInfoMap.remove(isolateRef.getId());
   }
 
-  public synchronized void invalidateCache(String isolateId) {
+  public void invalidateCache(String isolateId) {
     IsolateInfo info = myIsolateIdToInfoMap.get(isolateId);
     if (info != null) {
       info.invalidateCache();
     }
   }
 
-  public synchronized CompletableFuture<Isolate> getCachedIsolate(String isolateId, Supplier<CompletableFuture<Isolate>> isolateSupplier) {
+  public CompletableFuture<Isolate> getCachedIsolate(String isolateId, Supplier<CompletableFuture<Isolate>> isolateSupplier) {
     IsolateInfo info = myIsolateIdToInfoMap.get(isolateId);
     if (info == null) {
       return null;
     }
-    CompletableFuture<Isolate> cachedIsolate = info.getCachedIsolate();
+    CompletableFuture<Isolate> cachedIsolate = info.myCachedIsolate.get();
     if (cachedIsolate != null) {
       return cachedIsolate;
     }
-    cachedIsolate = isolateSupplier.get();
-    info.setCachedIsolate(cachedIsolate);
-    return cachedIsolate;
+    // the supplier sends a request, so make sure that only one of concurrent callers calls it
+    synchronized (info) {
+      cachedIsolate = info.myCachedIsolate.get();
+      if (cachedIsolate == null) {
+        cachedIsolate = isolateSupplier.get();
+        info.myCachedIsolate.set(cachedIsolate);
+      }
+      return cachedIsolate;
+    }
+  }
+
+  /**
+   * Scripts are cached until the isolate is reloaded or exits. Failed requests are not cached.
+   */
+  public CompletableFuture<ScriptInfo> getCachedScript(String isolateId,
+                                                      String scriptId,
+                                                      Supplier<CompletableFuture<ScriptInfo>> scriptSupplier) {
+    IsolateInfo info = myIsolateIdToInfoMap.get(isolateId);
+    if (info == null) {
+      return null;
+    }
+    return info.myCachedScripts.compute(scriptId,
+                                        (id, cachedScript) -> isMissingOrFailed(cachedScript) ? scriptSupplier.get() : cachedScript);
+  }
+
+  /**
+   * Forgets the given request if it is still cached for the script.
+   */
+  public void removeCachedScript(String isolateId, String scriptId, CompletableFuture<ScriptInfo> scriptFuture) {
+    IsolateInfo info = myIsolateIdToInfoMap.get(isolateId);
+    if (info != null) {
+      info.myCachedScripts.remove(scriptId, scriptFuture);
+    }
+  }
+
+  private static boolean isMissingOrFailed(CompletableFuture<ScriptInfo> cachedScript) {
+    return cachedScript == null ||
+           cachedScript.isDone() && (cachedScript.isCompletedExceptionally() || cachedScript.getNow(null) == null);
   }
 
-  public synchronized Collection<IsolateInfo> getIsolateInfos() {
+  public Collection<IsolateInfo> getIsolateInfos() {
     return new ArrayList<>(myIsolateIdToInfoMap.values());
   }
 }
@@ -0,0 +1,151 @@
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.PathUtil;
+import com.jetbrains.lang.dart.DartFileType;
+import org.dartlang.vm.service.element.Script;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The part of a VM service {@link Script} that the debugger needs to compute source positions. Scripts don't change while the isolate
+ * lives (unless it is reloaded), so instances are cached per isolate, see {@link VmServiceWrapper#getCachedScript(String, String)}.
+ * <p>
+ * The token position table is kept as sorted arrays instead of the boxed lists provided by {@link Script#getTokenPosTable()}.
+ */
+public class ScriptInfo {
+  private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+  @NotNull private final String myUri;
+  @Nullable private final String mySource;
+  // sorted token positions with 0-based lines and columns at the same indices
+  @NotNull private final int[] myTokenPositions;
+  @NotNull private final int[] myLines;
+  @NotNull private final int[] myColumns;
+
+  @Nullable private LightVirtualFile mySourceFile;
+
+  private ScriptInfo(@NotNull final String uri,
+                     @Nullable final String source,
+                     @NotNull final int[] tokenPositions,
+                     @NotNull final int[] lines,
+                     @NotNull final int[] columns) {
+    myUri = uri;
+    mySource = source;
+    myTokenPositions = tokenPositions;
+    myLines = lines;
+    myColumns = columns;
+  }
+
+  @NotNull
+  public static ScriptInfo create(@NotNull final Script script) {
+    final JsonElement sourceElement = script.getJson().get("source");
+    final String source = sourceElement != null && sourceElement.isJsonPrimitive() ? sourceElement.getAsString() : null;
+
+    final JsonElement tableElement = script.getJson().get("tokenPosTable");
+    if (tableElement == null || !tableElement.isJsonArray()) {
+      return new ScriptInfo(script.getUri(), source, EMPTY_INT_ARRAY, EMPTY_INT_ARRAY, EMPTY_INT_ARRAY);
+    }
+
+    // Each subarray consists of a line number followed by (tokenPos, columnNumber) pairs
+    // see https://github.com/dart-lang/vm_service_drivers/blob/master/dart/tool/service.md#script
+    final JsonArray table = tableElement.getAsJsonArray();
+    int size = 0;
+    for (JsonElement lineAndPairs : table) {
+      size += (lineAndPairs.getAsJsonArray().size() - 1) / 2;
+    }
+
+    int[] tokenPositions = new int[size];
+    int[] lines = new int[size];
+    int[] columns = new int[size];
+    int index = 0;
+    boolean sorted = true;
+    for (JsonElement element : table) {
+      final JsonArray lineAndPairs = element.getAsJsonArray();
+      final int line = Math.max(0, lineAndPairs.get(0).getAsInt() - 1);
+      for (int i = 1; i + 1 < lineAndPairs.size(); i += 2) {
+        tokenPositions[index] = lineAndPairs.get(i).getAsInt();
+        lines[index] = line;
+        columns[index] = Math.max(0, lineAndPairs.get(i + 1).getAsInt() - 1);
+        if (index > 0 && tokenPositions[index] <= tokenPositions[index - 1]) {
+          sorted = false;
+        }
+        index++;
+      }
+    }
+
+    if (!sorted) {
+      final Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      final int[] unsortedTokenPositions = tokenPositions;
+      // stable sort, so that the last of duplicated token positions wins as it did with the map
+      Arrays.sort(order, (i1, i2) -> Integer.compare(unsortedTokenPositions[i1], unsortedTokenPositions[i2]));
+
+      final int[] sortedTokenPositions = new int[size];
+      final int[] sortedLines = new int[size];
+      final int[] sortedColumns = new int[size];
+      int sortedSize = 0;
+      for (int i = 0; i < size; i++) {
+        final int from = order[i];
+        if (sortedSize > 0 && sortedTokenPositions[sortedSize - 1] == tokenPositions[from]) {
+          sortedSize--;
+        }
+        sortedTokenPositions[sortedSize] = tokenPositions[from];
+        sortedLines[sortedSize] = lines[from];
+        sortedColumns[sortedSize] = columns[from];
+        sortedSize++;
+      }
+      tokenPositions = Arrays.copyOf(sortedTokenPositions, sortedSize);
+      lines = Arrays.copyOf(sortedLines, sortedSize);
+      columns = Arrays.copyOf(sortedColumns, sortedSize);
+    }
+
+    return new ScriptInfo(script.getUri(), source, tokenPositions, lines, columns);
+  }
+
+  @NotNull
+  public String getUri() {
+    return myUri;
+  }
+
+  /**
+   * @return index to be passed to {@link #getLine(int)} and {@link #getColumn(int)}, or -1 if the token position is unknown
+   */
+  public int findTokenPos(final int tokenPos) {
+    final int index = Arrays.binarySearch(myTokenPositions, tokenPos);
+    return index >= 0 ? index : -1;
+  }
+
+  /**
+   * @return 0-based line
+   */
+  public int getLine(final int index) {
+    return myLines[index];
+  }
+
+  /**
+   * @return 0-based column
+   */
+  public int getColumn(final int index) {
+    return myColumns[index];
+  }
+
+  /**
+   * Read-only file with the script source, for scripts that can't be mapped to a local file (SDK patch files, remote scripts).
+   */
+  @NotNull
+  public synchronized LightVirtualFile getSourceFile() {
+    if (mySourceFile == null) {
+      mySourceFile = new LightVirtualFile(PathUtil.getFileName(myUri), DartFileType.INSTANCE, StringUtil.notNullize(mySource));
+      mySourceFile.setWritable(false);
+    }
+    return mySourceFile;
+  }
+}
@@ -0,0 +1,231 @@
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
+import org.dartlang.vm.service.VmService;
+import org.dartlang.vm.service.consumer.EvaluateConsumer;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.ErrorRef;
+import org.dartlang.vm.service.element.InstanceRef;
+import org.dartlang.vm.service.element.Obj;
+import org.dartlang.vm.service.element.RPCError;
+import org.dartlang.vm.service.element.Sentinel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * getObject() responses received while an isolate is paused. Object ids and object states are valid only while the isolate stays paused,
+ * so cached objects are dropped when it is resumed, paused again or exits, and after evaluations that may change object states.
+ */
+class VmObjectCache {
+
+  private static final int MAX_OBJECTS_TO_PREFETCH = 20;
+
+  private final VmService myVmService;
+  private final Predicate<String> myIsolateSuspended;
+  private final Consumer<Runnable> myRequestScheduler;
+  // isolate id -> cache key -> response
+  private final ConcurrentMap<String, ConcurrentMap<String, CachedObject>> myObjectCache = ContainerUtil.newConcurrentMap();
+
+  /**
+   * @param requestScheduler runs VM service requests and cached responses asynchronously
+   */
+  VmObjectCache(@NotNull final VmService vmService,
+                @NotNull final Predicate<String> isolateSuspended,
+                @NotNull final Consumer<Runnable> requestScheduler) {
+    myVmService = vmService;
+    myIsolateSuspended = isolateSuspended;
+    myRequestScheduler = requestScheduler;
+  }
+
+  void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
+    getCachedObject(isolateId, objectId, requestConsumer -> myVmService.getObject(isolateId, objectId, requestConsumer), consumer);
+  }
+
+  void getCollectionObject(@NotNull final String isolateId,
+                           @NotNull final String objectId,
+                           final int offset,
+                           final int count,
+                           @NotNull final GetObjectConsumer consumer) {
+    getCachedObject(isolateId, objectId + "[" + offset + ":" + count + "]",
+                    requestConsumer -> myVmService.getObject(isolateId, objectId, offset, count, requestConsumer), consumer);
+  }
+
+  void prefetchObjects(@NotNull final String isolateId, @NotNull final Collection<String> objectIds) {
+    final ConcurrentMap<String, CachedObject> cache = getObjectCache(isolateId);
+    if (cache == null) return;
+
+    final List<Runnable> requests = new SmartList<>();
+    int objectCount = 0;
+    for (String objectId : objectIds) {
+      if (objectCount++ == MAX_OBJECTS_TO_PREFETCH) break;
+
+      final CachedObject cachedObject = startCachedObjectRequest(cache, objectId, null);
+      if (cachedObject != null) {
+        requests.add(() -> myVmService.getObject(isolateId, objectId, cachedObject));
+      }
+    }
+
+    if (!requests.isEmpty()) {
+      myRequestScheduler.accept(() -> requests.forEach(Runnable::run));
+    }
+  }
+
+  /**
+   * @param keepCachedObjects {@code true} for internal evaluations such as {@code toString()} for value presentation, that must not make
+   *                          the children prefetched for the same values requested again. User-initiated evaluations drop cached objects.
+   */
+  void evaluate(@NotNull final String isolateId,
+                @NotNull final String targetId,
+                @NotNull final String expression,
+                final boolean keepCachedObjects,
+                @NotNull final EvaluateConsumer consumer) {
+    myRequestScheduler.accept(() -> myVmService.evaluate(isolateId, targetId, expression, new EvaluateConsumer() {
+      @Override
+      public void received(InstanceRef response) {
+        evaluated();
+        consumer.received(response);
+      }
+
+      @Override
+      public void received(Sentinel response) {
+        evaluated();
+        consumer.received(response);
+      }
+
+      @Override
+      public void received(ErrorRef response) {
+        evaluated();
+        consumer.received(response);
+      }
+
+      @Override
+      public void onError(RPCError error) {
+        evaluated();
+        consumer.onError(error);
+      }
+
+      private void evaluated() {
+        if (!keepCachedObjects) {
+          invalidate(isolateId);
+        }
+      }
+    }));
+  }
+
+  void invalidate(@NotNull final String isolateId) {
+    myObjectCache.remove(isolateId);
+  }
+
+  private void getCachedObject(@NotNull final String isolateId,
+                               @NotNull final String cacheKey,
+                               @NotNull final Consumer<GetObjectConsumer> request,
+                               @NotNull final GetObjectConsumer consumer) {
+    final ConcurrentMap<String, CachedObject> cache = getObjectCache(isolateId);
+    if (cache == null) {
+      myRequestScheduler.accept(() -> request.accept(consumer));
+      return;
+    }
+
+    final CachedObject cachedObject = startCachedObjectRequest(cache, cacheKey, consumer);
+    if (cachedObject != null) {
+      myRequestScheduler.accept(() -> request.accept(cachedObject));
+    }
+  }
+
+  @Nullable
+  private ConcurrentMap<String, CachedObject> getObjectCache(@NotNull final String isolateId) {
+    if (!myIsolateSuspended.test(isolateId)) return null;
+    return myObjectCache.computeIfAbsent(isolateId, id -> ContainerUtil.newConcurrentMap());
+  }
+
+  /**
+   * @return new cache entry that must be passed to the VM service request, or {@code null} if the consumer has been attached to an
+   * existing entry
+   */
+  @Nullable
+  private CachedObject startCachedObjectRequest(@NotNull final ConcurrentMap<String, CachedObject> cache,
+                                                @NotNull final String cacheKey,
+                                                @Nullable final GetObjectConsumer consumer) {
+    final CachedObject newCachedObject = new CachedObject(cache, cacheKey);
+    final CachedObject cachedObject = cache.putIfAbsent(cacheKey, newCachedObject);
+    if (cachedObject != null) {
+      if (consumer != null) {
+        cachedObject.addConsumer(consumer);
+      }
+      return null;
+    }
+
+    if (consumer != null) {
+      newCachedObject.addConsumer(consumer);
+    }
+    return newCachedObject;
+  }
+
+  /**
+   * Response to a getObject() request, shared by all consumers interested in the same object. Sentinels and errors are passed to the
+   * consumers waiting for the response but are not cached, the next request for the object goes to the VM again.
+   */
+  private class CachedObject implements GetObjectConsumer {
+    @NotNull private final ConcurrentMap<String, CachedObject> myCache;
+    @NotNull private final String myCacheKey;
+    @Nullable private List<GetObjectConsumer> myConsumers = new SmartList<>(); // null when the response has been received
+    @Nullable private Consumer<GetObjectConsumer> myResponse;
+
+    private CachedObject(@NotNull final ConcurrentMap<String, CachedObject> cache, @NotNull final String cacheKey) {
+      myCache = cache;
+      myCacheKey = cacheKey;
+    }
+
+    private void addConsumer(@NotNull final GetObjectConsumer consumer) {
+      final Consumer<GetObjectConsumer> response;
+      synchronized (this) {
+        if (myConsumers != null) {
+          myConsumers.add(consumer);
+          return;
+        }
+        response = myResponse;
+      }
+
+      assert response != null;
+      // keep consumers called asynchronously as for the requests sent to the VM
+      myRequestScheduler.accept(() -> response.accept(consumer));
+    }
+
+    @Override
+    public void received(final Obj response) {
+      responseReceived(consumer -> consumer.received(response));
+    }
+
+    @Override
+    public void received(final Sentinel response) {
+      myCache.remove(myCacheKey, this);
+      responseReceived(consumer -> consumer.received(response));
+    }
+
+    @Override
+    public void onError(final RPCError error) {
+      myCache.remove(myCacheKey, this);
+      responseReceived(consumer -> consumer.onError(error));
+    }
+
+    private void responseReceived(@NotNull final Consumer<GetObjectConsumer> response) {
+      final List<GetObjectConsumer> consumers;
+      synchronized (this) {
+        myResponse = response;
+        consumers = myConsumers;
+        myConsumers = null;
+      }
+
+      if (consumers != null) {
+        consumers.forEach(response);
+      }
+    }
+  }
+}
@@ -5,9 +5,7 @@ import com.intellij.execution.ui.ConsoleViewContentType;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.Ref;
 import com.intellij.util.Alarm;
-import com.intellij.util.concurrency.Semaphore;
 import com.intellij.xdebugger.XSourcePosition;
 import com.intellij.xdebugger.breakpoints.XBreakpointProperties;
 import com.intellij.xdebugger.breakpoints.XLineBreakpoint;
@@ -25,15 +23,19 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class VmServiceWrapper implements Disposable {
 
   public static final Logger LOG = Logger.getInstance(VmServiceWrapper.class.getName());
   private static final long RESPONSE_WAIT_TIMEOUT = 3000; // millis
+  private static final long SLOW_INITIAL_RESUME_MILLIS = 1000;
 
   private final DartVmServiceDebugProcess myDebugProcess;
   private final VmService myVmService;
@@ -41,6 +43,7 @@ public class VmServiceWrapper implements Disposable {
   private final IsolatesInfo myIsolatesInfo;
   private final DartVmServiceBreakpointHandler myBreakpointHandler;
   private final Alarm myRequestsScheduler;
+  private final VmObjectCache myObjectCache;
 
   private long myVmServiceReceiverThreadId;
 
@@ -57,6 +60,7 @@ public class VmServiceWrapper implements Disposable {
     myIsolatesInfo = isolatesInfo;
     myBreakpointHandler = breakpointHandler;
     myRequestsScheduler = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    myObjectCache = new VmObjectCache(vmService, debugProcess::isIsolateSuspended, this::addRequest);
   }
 
   @Override
@@ -210,7 +214,15 @@ public class VmServiceWrapper implements Disposable {
   }
 
   private void checkInitialResume(IsolateRef isolateRef) {
-    if (myIsolatesInfo.getShouldInitialResume(isolateRef)) {
+    if (myIsolatesInfo.startInitialResume(isolateRef)) {
+      final long millis = myIsolatesInfo.getMillisSincePauseStart(isolateRef);
+      final String message = "Isolate " + isolateRef.getId() + " resumed " + millis + "ms after PauseStart";
+      if (millis > SLOW_INITIAL_RESUME_MILLIS) {
+        LOG.info(message);
+      }
+      else {
+        LOG.debug(message);
+      }
       resumeIsolate(isolateRef.getId(), null);
     }
   }
@@ -237,66 +249,87 @@ public class VmServiceWrapper implements Disposable {
   }
 
   private void doSetInitialBreakpointsAndResume(@NotNull final IsolateRef isolateRef) {
-    doSetBreakpointsForIsolate(myBreakpointHandler.getXBreakpoints(), isolateRef.getId(), () -> {
+    setBreakpointsForIsolate(myBreakpointHandler.getXBreakpoints(), isolateRef.getId()).thenRun(() -> {
       myIsolatesInfo.setBreakpointsSet(isolateRef);
       checkInitialResume(isolateRef);
     });
   }
 
-  private void doSetBreakpointsForIsolate(@NotNull final Set<XLineBreakpoint<XBreakpointProperties>> xBreakpoints,
-                                          @NotNull final String isolateId,
-                                          @Nullable final Runnable onFinished) {
-    if (xBreakpoints.isEmpty()) {
-      if (onFinished != null) {
-        onFinished.run();
-      }
-      return;
-    }
-
-    final AtomicInteger counter = new AtomicInteger(xBreakpoints.size());
-
-    for (final XLineBreakpoint<XBreakpointProperties> xBreakpoint : xBreakpoints) {
-      addBreakpoint(isolateId, xBreakpoint.getSourcePosition(), new VmServiceConsumers.BreakpointConsumerWrapper() {
+  /**
+   * Sends requests for all breakpoints without waiting for responses.
+   *
+   * @return future that is completed when the VM has answered all requests
+   */
+  @NotNull
+  private CompletableFuture<Void> setBreakpointsForIsolate(@NotNull final Set<XLineBreakpoint<XBreakpointProperties>> xBreakpoints,
+                                                           @NotNull final String isolateId) {
+    final List<CompletableFuture<Void>> futures = new ArrayList<>(xBreakpoints.size());
+    for (final XLineBreakpoint<XBreakpointProperties> xBreakpoint : new ArrayList<>(xBreakpoints)) {
+      futures.add(addBreakpoint(isolateId, xBreakpoint.getSourcePosition(), new VmServiceConsumers.BreakpointConsumerWrapper() {
         @Override
         void sourcePositionNotApplicable() {
-          checkDone();
         }
 
         @Override
         public void received(Breakpoint vmBreakpoint) {
           myBreakpointHandler.vmBreakpointAdded(xBreakpoint, isolateId, vmBreakpoint);
-          checkDone();
         }
 
         @Override
         public void onError(RPCError error) {
           myBreakpointHandler.breakpointFailed(xBreakpoint);
-          checkDone();
-        }
-
-        private void checkDone() {
-          if (counter.decrementAndGet() == 0 && onFinished != null) {
-            onFinished.run();
-          }
         }
-      });
+      }));
     }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
   }
 
-  public void addBreakpoint(@NotNull final String isolateId,
-                            @Nullable final XSourcePosition position,
-                            @NotNull final VmServiceConsumers.BreakpointConsumerWrapper consumer) {
+  /**
+   * The breakpoint is added for each URI the VM may know the file by, so the consumer may be called several times.
+   *
+   * @return future that is completed when the VM has answered all requests
+   */
+  @NotNull
+  public CompletableFuture<Void> addBreakpoint(@NotNull final String isolateId,
+                                               @Nullable final XSourcePosition position,
+                                               @NotNull final VmServiceConsumers.BreakpointConsumerWrapper consumer) {
     if (position == null || position.getFile().getFileType() != DartFileType.INSTANCE) {
       consumer.sourcePositionNotApplicable();
-      return;
+      return CompletableFuture.completedFuture(null);
     }
 
+    final CompletableFuture<Void> result = new CompletableFuture<>();
     addRequest(() -> {
       final int line = position.getLine() + 1;
+      final List<CompletableFuture<Void>> responses = new ArrayList<>();
       for (String uri : myDebugProcess.getUrisForFile(position.getFile())) {
-        myVmService.addBreakpointWithScriptUri(isolateId, uri, line, consumer);
+        final CompletableFuture<Void> response = new CompletableFuture<>();
+        responses.add(response);
+        myVmService.addBreakpointWithScriptUri(isolateId, uri, line, new BreakpointConsumer() {
+          @Override
+          public void received(Breakpoint vmBreakpoint) {
+            try {
+              consumer.received(vmBreakpoint);
+            }
+            finally {
+              response.complete(null);
+            }
+          }
+
+          @Override
+          public void onError(RPCError error) {
+            try {
+              consumer.onError(error);
+            }
+            finally {
+              response.complete(null);
+            }
+          }
+        });
       }
+      CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).thenRun(() -> result.complete(null));
     });
+    return result;
   }
 
   public void addBreakpointForIsolates(@NotNull final XLineBreakpoint<XBreakpointProperties> xBreakpoint,
@@ -329,7 +362,10 @@ public class VmServiceWrapper implements Disposable {
     // Remove all existing VM breakpoints for this isolate.
     myBreakpointHandler.removeAllVmBreakpoints(isolateId);
     // Re-set existing breakpoints.
-    doSetBreakpointsForIsolate(myBreakpointHandler.getXBreakpoints(), isolateId, onFinished);
+    final CompletableFuture<Void> breakpointsSet = setBreakpointsForIsolate(myBreakpointHandler.getXBreakpoints(), isolateId);
+    if (onFinished != null) {
+      breakpointsSet.thenRun(onFinished);
+    }
   }
 
   public void addTemporaryBreakpoint(@NotNull final XSourcePosition position,
@@ -355,6 +391,7 @@ public class VmServiceWrapper implements Disposable {
   }
 
   public void resumeIsolate(@NotNull final String isolateId, @Nullable final StepOption stepOption) {
+    invalidateObjectCache(isolateId);
     addRequest(() -> {
       myLatestStep = stepOption;
       myVmService.resume(isolateId, stepOption, null, VmServiceConsumers.EMPTY_SUCCESS_CONSUMER);
@@ -374,6 +411,7 @@ public class VmServiceWrapper implements Disposable {
    * function, so frameIndex must be at least 1.
    */
   public void dropFrame(@NotNull final String isolateId, int frameIndex) {
+    invalidateObjectCache(isolateId);
     addRequest(() -> {
       myLatestStep = StepOption.Rewind;
       myVmService.resume(isolateId, StepOption.Rewind, frameIndex, new SuccessConsumer() {
@@ -413,6 +451,15 @@ public class VmServiceWrapper implements Disposable {
           final List<Frame> vmFrames = Lists.newArrayList(elementList);
           final List<XStackFrame> xStackFrames = new ArrayList<>(vmFrames.size());
 
+          // frames compute their source positions in constructors, let them wait for the scripts in parallel
+          final Set<String> scriptIds = new LinkedHashSet<>();
+          for (Frame vmFrame : vmFrames) {
+            if (vmFrame.getKind() != FrameKind.AsyncSuspensionMarker && vmFrame.getLocation() != null) {
+              scriptIds.add(vmFrame.getLocation().getScript().getId());
+            }
+          }
+          prefetchScripts(isolateId, scriptIds);
+
           for (final Frame vmFrame : vmFrames) {
             if (vmFrame.getKind() == FrameKind.AsyncSuspensionMarker) {
               // Render an asynchronous gap.
@@ -442,47 +489,104 @@ public class VmServiceWrapper implements Disposable {
     }));
   }
 
+  /**
+   * Scripts are cached per isolate, so usually this method doesn't need to wait for the VM.
+   */
   @Nullable
-  public Script getScriptSync(@NotNull final String isolateId, @NotNull final String scriptId) {
-    assertSyncRequestAllowed();
+  public ScriptInfo getScriptSync(@NotNull final String isolateId, @NotNull final String scriptId) {
+    final CompletableFuture<ScriptInfo> scriptFuture = getCachedScript(isolateId, scriptId);
+    if (!scriptFuture.isDone()) {
+      assertSyncRequestAllowed();
+    }
 
-    final Semaphore semaphore = new Semaphore();
-    semaphore.down();
+    try {
+      return scriptFuture.get(RESPONSE_WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException | ExecutionException | TimeoutException e) {
+      return null;
+    }
+  }
 
-    final Ref<Script> resultRef = Ref.create();
+  /**
+   * Starts loading the scripts that are not cached yet, so that following {@link #getScriptSync(String, String)} calls wait for all
+   * of them at once rather than for each one in turn.
+   */
+  public void prefetchScripts(@NotNull final String isolateId, @NotNull final Collection<String> scriptIds) {
+    for (String scriptId : scriptIds) {
+      getCachedScript(isolateId, scriptId);
+    }
+  }
+
+  @NotNull
+  public CompletableFuture<ScriptInfo> getCachedScript(@NotNull final String isolateId, @NotNull final String scriptId) {
+    final CompletableFuture<ScriptInfo> cachedScript =
+      myIsolatesInfo.getCachedScript(isolateId, scriptId, () -> requestScript(isolateId, scriptId));
+    // not cached if the isolate is unknown
+    return cachedScript != null ? cachedScript : requestScript(isolateId, scriptId);
+  }
 
+  @NotNull
+  private CompletableFuture<ScriptInfo> requestScript(@NotNull final String isolateId, @NotNull final String scriptId) {
+    final CompletableFuture<ScriptInfo> scriptFuture = new CompletableFuture<>();
     addRequest(() -> myVmService.getObject(isolateId, scriptId, new GetObjectConsumer() {
       @Override
       public void received(Obj script) {
-        resultRef.set((Script)script);
-        semaphore.up();
+        try {
+          scriptFuture.complete(script instanceof Script ? ScriptInfo.create((Script)script) : null);
+        }
+        catch (RuntimeException e) {
+          LOG.warn(e);
+          scriptFuture.completeExceptionally(e);
+          myIsolatesInfo.removeCachedScript(isolateId, scriptId, scriptFuture);
+        }
       }
 
       @Override
       public void received(Sentinel response) {
-        semaphore.up();
+        scriptFuture.complete(null);
       }
 
       @Override
       public void onError(RPCError error) {
-        semaphore.up();
+        scriptFuture.complete(null);
       }
     }));
-
-    semaphore.waitFor(RESPONSE_WAIT_TIMEOUT);
-    return resultRef.get();
+    return scriptFuture;
   }
 
+  /**
+   * While the isolate is paused the response is cached, and concurrent requests for the same object share a single VM service request.
+   */
   public void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, consumer));
+    myObjectCache.getObject(isolateId, objectId, consumer);
   }
 
+  /**
+   * @see #getObject(String, String, GetObjectConsumer)
+   */
   public void getCollectionObject(@NotNull final String isolateId,
                                   @NotNull final String objectId,
                                   final int offset,
                                   final int count,
                                   @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, offset, count, consumer));
+    myObjectCache.getCollectionObject(isolateId, objectId, offset, count, consumer);
+  }
+
+  /**
+   * Requests the first objects of the given ones in one go, so that they are already in the cache when the user expands them.
+   * Does nothing if the isolate is not paused.
+   */
+  public void prefetchObjects(@NotNull final String isolateId, @NotNull final Collection<String> objectIds) {
+    myObjectCache.prefetchObjects(isolateId, objectIds);
+  }
+
+  /**
+   * Object ids and object states are valid only while the isolate stays paused, so cached objects are dropped when it is resumed,
+   * paused again or exits. Evaluated expressions may change object states, so cached objects are also dropped after user-initiated
+   * evaluations.
+   */
+  public void invalidateObjectCache(@NotNull final String isolateId) {
+    myObjectCache.invalidate(isolateId);
   }
 
   public void evaluateInFrame(@NotNull final String isolateId,
@@ -492,39 +596,47 @@ public class VmServiceWrapper implements Disposable {
     addRequest(() -> myVmService.evaluateInFrame(isolateId, vmFrame.getIndex(), expression, new EvaluateInFrameConsumer() {
       @Override
       public void received(InstanceRef instanceRef) {
+        invalidateObjectCache(isolateId);
         callback.evaluated(new DartVmServiceValue(myDebugProcess, isolateId, "result", instanceRef, null, null, false));
       }
 
       @Override
       public void received(Sentinel sentinel) {
+        invalidateObjectCache(isolateId);
         callback.errorOccurred(sentinel.getValueAsString());
       }
 
       @Override
       public void received(ErrorRef errorRef) {
+        invalidateObjectCache(isolateId);
         callback.errorOccurred(DartVmServiceEvaluator.getPresentableError(errorRef.getMessage()));
       }
 
       @Override
       public void onError(RPCError error) {
+        invalidateObjectCache(isolateId);
         callback.errorOccurred(error.getMessage());
       }
     }));
   }
 
+  /**
+   * Evaluates an expression for value presentation, such as {@code toString()}. Cached objects are kept, otherwise computing the
+   * presentation would drop the children prefetched for the same values.
+   */
   @SuppressWarnings("SameParameterValue")
   public void evaluateInTargetContext(@NotNull final String isolateId,
                                       @NotNull final String targetId,
                                       @NotNull final String expression,
                                       @NotNull final EvaluateConsumer consumer) {
-    addRequest(() -> myVmService.evaluate(isolateId, targetId, expression, consumer));
+    myObjectCache.evaluate(isolateId, targetId, expression, true, consumer);
   }
 
   public void evaluateInTargetContext(@NotNull final String isolateId,
                                       @NotNull final String targetId,
                                       @NotNull final String expression,
                                       @NotNull final XDebuggerEvaluator.XEvaluationCallback callback) {
-    evaluateInTargetContext(isolateId, targetId, expression, new EvaluateConsumer() {
+    myObjectCache.evaluate(isolateId, targetId, expression, false, new EvaluateConsumer() {
       @Override
       public void received(InstanceRef instanceRef) {
         callback.evaluated(new DartVmServiceValue(myDebugProcess, isolateId, "result", instanceRef, null, null, false));
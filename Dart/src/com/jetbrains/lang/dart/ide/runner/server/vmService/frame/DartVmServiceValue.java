@@ -5,6 +5,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.ui.LayeredIcon;
+import com.intellij.util.SmartList;
 import com.intellij.xdebugger.XSourcePosition;
 import com.intellij.xdebugger.frame.*;
 import com.intellij.xdebugger.frame.presentation.XKeywordValuePresentation;
@@ -18,6 +19,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.util.List;
 
 // TODO: implement some combination of XValue.getEvaluationExpression() /
 // XValue.calculateEvaluationExpression() in order to support evaluate expression in variable values.
@@ -389,14 +391,17 @@ public class DartVmServiceValue extends XNamedValue {
       childrenList.add(new DartVmServiceValue(myDebugProcess, myIsolateId, String.valueOf(index++), listElement, null, null, false));
     }
     node.addChildren(childrenList, true);
+    prefetchChildren(listElements);
   }
 
   private void addMapChildren(@NotNull final XCompositeNode node, @NotNull final ElementList<MapAssociation> mapAssociations) {
     final XValueChildrenList childrenList = new XValueChildrenList(mapAssociations.size());
+    final List<InstanceRef> valueInstanceRefs = new SmartList<>();
     int index = myCollectionChildrenAlreadyShown.get();
     for (MapAssociation mapAssociation : mapAssociations) {
       final InstanceRef keyInstanceRef = mapAssociation.getKey();
       final InstanceRef valueInstanceRef = mapAssociation.getValue();
+      valueInstanceRefs.add(valueInstanceRef);
 
       childrenList.add(String.valueOf(index++), new XValue() {
         @Override
@@ -417,18 +422,50 @@ public class DartVmServiceValue extends XNamedValue {
     }
 
     node.addChildren(childrenList, true);
+    prefetchChildren(valueInstanceRefs);
   }
 
   private void addFields(@NotNull final XCompositeNode node, @NotNull final ElementList<BoundField> fields) {
     final XValueChildrenList childrenList = new XValueChildrenList(fields.size());
+    final List<InstanceRef> fieldValues = new SmartList<>();
     for (BoundField field : fields) {
       final InstanceRef value = field.getValue();
       if (value != null) {
         childrenList
           .add(new DartVmServiceValue(myDebugProcess, myIsolateId, field.getDecl().getName(), value, null, field.getDecl(), false));
+        fieldValues.add(value);
       }
     }
     node.addChildren(childrenList, true);
+    prefetchChildren(fieldValues);
+  }
+
+  /**
+   * Children that are shown with their fields are likely to be expanded next, so request them all at once while the user looks at
+   * the current node. Lists and maps are not prefetched because their elements are requested in chunks.
+   */
+  private void prefetchChildren(@NotNull final Iterable<InstanceRef> children) {
+    final List<String> objectIds = new SmartList<>();
+    for (InstanceRef child : children) {
+      if (hasFieldsAsChildren(child.getKind())) {
+        objectIds.add(child.getId());
+      }
+    }
+    myDebugProcess.getVmServiceWrapper().prefetchObjects(myIsolateId, objectIds);
+  }
+
+  private static boolean hasFieldsAsChildren(@NotNull final InstanceKind kind) {
+    switch (kind) {
+      case Null:
+      case Bool:
+      case Double:
+      case Int:
+      case String:
+      case Map:
+        return false;
+      default:
+        return !isListKind(kind);
+    }
   }
 
   @NotNull
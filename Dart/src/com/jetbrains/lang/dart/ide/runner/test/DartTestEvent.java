@@ -0,0 +1,278 @@
+package com.jetbrains.lang.dart.ide.runner.test;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * An event of the package:test JSON reporter protocol, decoded with a streaming reader instead of building a JSON tree.
+ * Only the fields that {@link DartTestEventsConverter} needs are kept. Primitive values are kept as strings, JSON {@code null},
+ * arrays and objects in place of primitives are treated as missing values.
+ */
+class DartTestEvent {
+  @Nullable String type;
+  @Nullable String time;
+  @Nullable String testId;
+  @Nullable String result;
+  @Nullable String isFailure;
+  @Nullable String error;
+  @Nullable String stackTrace;
+  @Nullable String message;
+  @Nullable String count;
+
+  @Nullable Definition test;
+  @Nullable Definition group;
+  @Nullable Definition suite;
+
+  /**
+   * Test, group or suite definition.
+   */
+  static class Definition {
+    @Nullable String id;
+    @Nullable String name;
+    @Nullable String suiteId;
+    @Nullable String parentId;
+    @Nullable int[] groupIds;
+    @Nullable String testCount;
+    @Nullable String line;
+    @Nullable String column;
+    @Nullable String url;
+    @Nullable String path;
+    @Nullable String platform;
+
+    boolean skip;
+    @Nullable String skipReason;
+  }
+
+  private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+  private DartTestEvent() {
+  }
+
+  /**
+   * @return decoded event or {@code null} if {@code text} is empty or valid JSON but not a JSON object
+   * @throws IOException           if {@code text} is not valid JSON
+   * @throws IllegalStateException if {@code text} is not valid JSON
+   */
+  @Nullable
+  static DartTestEvent parse(@NotNull final String text) throws IOException {
+    final JsonReader reader = new JsonReader(new StringReader(text));
+    reader.setLenient(true);
+
+    final JsonToken firstToken;
+    try {
+      firstToken = reader.peek();
+    }
+    catch (EOFException e) {
+      return null; // empty text
+    }
+
+    if (firstToken != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      checkFullyConsumed(reader);
+      return null;
+    }
+
+    final DartTestEvent event = new DartTestEvent();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      switch (name) {
+        case "type":
+          event.type = readPrimitive(reader);
+          break;
+        case "time":
+          event.time = readPrimitive(reader);
+          break;
+        case "testID":
+          event.testId = readPrimitive(reader);
+          break;
+        case "result":
+          event.result = readPrimitive(reader);
+          break;
+        case "isFailure":
+          event.isFailure = readPrimitive(reader);
+          break;
+        case "error":
+          event.error = readPrimitive(reader);
+          break;
+        case "stackTrace":
+          event.stackTrace = readPrimitive(reader);
+          break;
+        case "message":
+          event.message = readPrimitive(reader);
+          break;
+        case "count":
+          event.count = readPrimitive(reader);
+          break;
+        case "test":
+          event.test = readDefinition(reader);
+          break;
+        case "group":
+          event.group = readDefinition(reader);
+          break;
+        case "suite":
+          event.suite = readDefinition(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkFullyConsumed(reader);
+    return event;
+  }
+
+  @Nullable
+  private static Definition readDefinition(@NotNull final JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return null;
+    }
+
+    final Definition definition = new Definition();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      switch (name) {
+        case "id":
+          definition.id = readPrimitive(reader);
+          break;
+        case "name":
+          definition.name = readPrimitive(reader);
+          break;
+        case "suiteID":
+          definition.suiteId = readPrimitive(reader);
+          break;
+        case "parentID":
+          definition.parentId = readPrimitive(reader);
+          break;
+        case "groupIDs":
+          definition.groupIds = readIntArray(reader);
+          break;
+        case "testCount":
+          definition.testCount = readPrimitive(reader);
+          break;
+        case "line":
+          definition.line = readPrimitive(reader);
+          break;
+        case "column":
+          definition.column = readPrimitive(reader);
+          break;
+        case "url":
+          definition.url = readPrimitive(reader);
+          break;
+        case "path":
+          definition.path = readPrimitive(reader);
+          break;
+        case "platform":
+          definition.platform = readPrimitive(reader);
+          break;
+        case "metadata":
+          readMetadata(reader, definition);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return definition;
+  }
+
+  private static void readMetadata(@NotNull final JsonReader reader, @NotNull final Definition definition) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return;
+    }
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if ("skip".equals(name)) {
+        definition.skip = Boolean.parseBoolean(readPrimitive(reader));
+      }
+      else if ("skipReason".equals(name)) {
+        definition.skipReason = readPrimitive(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  @Nullable
+  private static int[] readIntArray(@NotNull final JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+      reader.skipValue();
+      return null;
+    }
+
+    int[] result = EMPTY_INT_ARRAY;
+    int size = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (size == result.length) {
+        result = Arrays.copyOf(result, Math.max(4, size * 2));
+      }
+      result[size++] = reader.nextInt();
+    }
+    reader.endArray();
+    return size == result.length ? result : Arrays.copyOf(result, size);
+  }
+
+  @Nullable
+  private static String readPrimitive(@NotNull final JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case STRING:
+      case NUMBER:
+        return reader.nextString();
+      case BOOLEAN:
+        return String.valueOf(reader.nextBoolean());
+      default:
+        reader.skipValue();
+        return null;
+    }
+  }
+
+  private static void checkFullyConsumed(@NotNull final JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.END_DOCUMENT) {
+      throw new IOException("Did not consume the entire document");
+    }
+  }
+
+  /**
+   * Converts a primitive value the way {@link com.google.gson.JsonPrimitive#getAsInt()} does.
+   *
+   * @throws NumberFormatException if the value is not a number
+   */
+  static int toInt(@NotNull final String value) {
+    try {
+      return Integer.parseInt(value);
+    }
+    catch (NumberFormatException e) {
+      return new BigDecimal(value).intValue();
+    }
+  }
+
+  /**
+   * Converts a primitive value the way {@link com.google.gson.JsonPrimitive#getAsLong()} does.
+   *
+   * @throws NumberFormatException if the value is not a number
+   */
+  static long toLong(@NotNull final String value) {
+    try {
+      return Long.parseLong(value);
+    }
+    catch (NumberFormatException e) {
+      return new BigDecimal(value).longValue();
+    }
+  }
+}
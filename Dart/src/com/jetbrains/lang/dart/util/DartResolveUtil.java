@@ -57,7 +57,8 @@ public class DartResolveUtil {
 
   public static List<PsiElement> findDartRoots(@Nullable final PsiFile psiFile) {
     if (psiFile instanceof XmlFile) {
-      return findDartRootsInXml((XmlFile)psiFile);
+      return CachedValuesManager.getCachedValue(psiFile, () -> new CachedValueProvider.Result<>(
+        Collections.unmodifiableList(findDartRootsInXml((XmlFile)psiFile)), psiFile));
     }
     return psiFile instanceof DartFile ? Collections.singletonList(psiFile) : Collections.emptyList();
   }
@@ -163,6 +164,13 @@ public class DartResolveUtil {
 
   @NotNull
   public static String getLibraryName(@NotNull final PsiFile psiFile) {
+    // 'part of "uri";' makes the name depend on another file
+    return CachedValuesManager.getCachedValue(psiFile, () -> new CachedValueProvider.Result<>(computeLibraryName(psiFile),
+                                                                                               PsiModificationTracker.MODIFICATION_COUNT));
+  }
+
+  @NotNull
+  private static String computeLibraryName(@NotNull final PsiFile psiFile) {
     for (PsiElement root : findDartRoots(psiFile)) {
       final DartLibraryStatement libraryStatement = PsiTreeUtil.getChildOfType(root, DartLibraryStatement.class);
       if (libraryStatement != null) {
@@ -439,6 +447,21 @@ public class DartResolveUtil {
 
   @NotNull
   public static List<DartComponent> findNamedSubComponents(boolean unique, @NotNull DartClass... rootDartClasses) {
+    if (rootDartClasses.length == 1 && rootDartClasses[0] != null) {
+      final DartClass dartClass = rootDartClasses[0];
+      final List<DartComponent> cached = unique
+                                         ? CachedValuesManager.getCachedValue(dartClass, () -> new CachedValueProvider.Result<>(
+                                           computeNamedSubComponents(true, dartClass), PsiModificationTracker.MODIFICATION_COUNT))
+                                         : CachedValuesManager.getCachedValue(dartClass, () -> new CachedValueProvider.Result<>(
+                                           computeNamedSubComponents(false, dartClass), PsiModificationTracker.MODIFICATION_COUNT));
+      // a copy because callers are free to modify the result
+      return new ArrayList<>(cached);
+    }
+    return computeNamedSubComponents(unique, rootDartClasses);
+  }
+
+  @NotNull
+  private static List<DartComponent> computeNamedSubComponents(boolean unique, @NotNull DartClass... rootDartClasses) {
     final List<DartComponent> unfilteredResult = findSubComponents(dartClass -> {
       final List<DartComponent> result = new ArrayList<>();
       for (DartComponent namedComponent : getNamedSubComponents(dartClass)) {
@@ -480,6 +503,34 @@ public class DartResolveUtil {
   }
 
   public static boolean processSuperClasses(PsiElementProcessor<DartClass> processor, @NotNull DartClass... rootDartClasses) {
+    if (rootDartClasses.length == 1 && rootDartClasses[0] != null) {
+      for (DartClass dartClass : getSuperClassesAndSelf(rootDartClasses[0])) {
+        if (!processor.execute(dartClass)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return processSuperClassesImpl(processor, rootDartClasses);
+  }
+
+  /**
+   * The class itself followed by all its superclasses, interfaces and mixins in the order of {@link #processSuperClasses}.
+   * Resolving supertypes of deep hierarchies is expensive and member lookup does it again and again, so the order is cached per class.
+   */
+  @NotNull
+  private static List<DartClass> getSuperClassesAndSelf(@NotNull final DartClass dartClass) {
+    return CachedValuesManager.getCachedValue(dartClass, () -> {
+      final List<DartClass> result = new ArrayList<>();
+      processSuperClassesImpl(superClass -> {
+        result.add(superClass);
+        return true;
+      }, dartClass);
+      return new CachedValueProvider.Result<>(Collections.unmodifiableList(result), PsiModificationTracker.MODIFICATION_COUNT);
+    });
+  }
+
+  private static boolean processSuperClassesImpl(PsiElementProcessor<DartClass> processor, @NotNull DartClass... rootDartClasses) {
     final Set<DartClass> processedClasses = new THashSet<>();
     final LinkedList<DartClass> classes = new LinkedList<>();
     classes.addAll(Arrays.asList(rootDartClasses));
@@ -583,8 +634,17 @@ public class DartResolveUtil {
     return names.toArray(new DartComponentName[0]);
   }
 
+  /**
+   * @return unmodifiable list of members declared in the class itself, cached until PSI changes
+   */
   @NotNull
   public static List<DartComponent> getNamedSubComponents(DartClass dartClass) {
+    return CachedValuesManager.getCachedValue(dartClass, () -> new CachedValueProvider.Result<>(
+      Collections.unmodifiableList(computeDeclaredSubComponents(dartClass)), PsiModificationTracker.MODIFICATION_COUNT));
+  }
+
+  @NotNull
+  private static List<DartComponent> computeDeclaredSubComponents(@NotNull final DartClass dartClass) {
     if (dartClass.isEnum()) {
       final List<DartEnumConstantDeclaration> enumConstants = dartClass.getEnumConstantDeclarationList();
       final List<DartComponent> result = new ArrayList<>(enumConstants.size());
@@ -0,0 +1,169 @@
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.vfs.*;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps {@link DartUrlResolver} instances per pubspec.yaml file (or per module for files that don't belong to a Dart package), so that
+ * resolving {@code package:} URIs doesn't read .packages file and pubspec.yaml files again and again.
+ * <p>
+ * All cached resolvers are dropped when a pubspec.yaml or .packages file is added, changed, moved or deleted anywhere (path packages
+ * make resolvers depend on other pubspec.yaml files), when a folder is created, moved, renamed or deleted (package folders are kept as
+ * {@link VirtualFile}s) and when project roots change (Dart SDK, Dart Packages library). Unsaved changes in pubspec.yaml are caught by
+ * its modification stamp.
+ */
+public class DartUrlResolverCache {
+  private final Project myProject;
+  private final ConcurrentMap<VirtualFile, CachedResolver> myPubspecToResolver = ContainerUtil.newConcurrentMap();
+  private final ConcurrentMap<Module, DartUrlResolver> myModuleToResolver = ContainerUtil.newConcurrentMap();
+  // incremented on each clear(), so that resolvers built concurrently with invalidation are not cached
+  private final AtomicLong myClearCount = new AtomicLong();
+
+  public static DartUrlResolverCache getInstance(@NotNull final Project project) {
+    return ServiceManager.getService(project, DartUrlResolverCache.class);
+  }
+
+  public DartUrlResolverCache(@NotNull final Project project) {
+    myProject = project;
+
+    VirtualFileManager.getInstance().addVirtualFileListener(new VirtualFileListener() {
+      @Override
+      public void beforePropertyChange(@NotNull final VirtualFilePropertyEvent event) {
+        if (VirtualFile.PROP_NAME.equals(event.getPropertyName()) &&
+            (event.getFile().isDirectory() || isRelevantFileName(String.valueOf(event.getNewValue())))) {
+          clear();
+        }
+        else {
+          fileChanged(event);
+        }
+      }
+
+      @Override
+      public void contentsChanged(@NotNull final VirtualFileEvent event) {
+        fileChanged(event);
+      }
+
+      @Override
+      public void fileCreated(@NotNull final VirtualFileEvent event) {
+        if (event.getFile().isDirectory()) {
+          clear();
+        }
+        else {
+          fileChanged(event);
+        }
+      }
+
+      @Override
+      public void beforeFileDeletion(@NotNull final VirtualFileEvent event) {
+        if (event.getFile().isDirectory()) {
+          clear();
+        }
+        else {
+          fileChanged(event);
+        }
+      }
+
+      @Override
+      public void beforeFileMovement(@NotNull final VirtualFileMoveEvent event) {
+        if (event.getFile().isDirectory()) {
+          clear();
+        }
+        else {
+          fileChanged(event);
+        }
+      }
+
+      @Override
+      public void fileCopied(@NotNull final VirtualFileCopyEvent event) {
+        fileChanged(event);
+      }
+    }, project);
+
+    project.getMessageBus().connect(project).subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+      @Override
+      public void rootsChanged(final ModuleRootEvent event) {
+        clear();
+      }
+    });
+  }
+
+  @NotNull
+  DartUrlResolver getResolver(@NotNull final VirtualFile contextFile) {
+    final long clearCount = myClearCount.get();
+    final VirtualFile pubspecYamlFile = PubspecYamlUtil.findPubspecYamlFile(myProject, contextFile);
+    if (pubspecYamlFile != null) {
+      final long stamp = getModificationStamp(pubspecYamlFile);
+      final CachedResolver cached = myPubspecToResolver.get(pubspecYamlFile);
+      if (cached != null && cached.myStamp == stamp) {
+        return cached.myResolver;
+      }
+
+      final DartUrlResolver resolver = new DartUrlResolverImpl(myProject, contextFile, pubspecYamlFile);
+      myPubspecToResolver.put(pubspecYamlFile, new CachedResolver(resolver, stamp));
+      if (myClearCount.get() != clearCount) {
+        myPubspecToResolver.remove(pubspecYamlFile);
+      }
+      return resolver;
+    }
+
+    final Module module = ModuleUtilCore.findModuleForFile(contextFile, myProject);
+    if (module == null) {
+      // resolver depends on the order entries of the file itself
+      return new DartUrlResolverImpl(myProject, contextFile, null);
+    }
+
+    final DartUrlResolver cached = myModuleToResolver.get(module);
+    if (cached != null) return cached;
+
+    final DartUrlResolver resolver = new DartUrlResolverImpl(myProject, contextFile, null);
+    myModuleToResolver.put(module, resolver);
+    if (myClearCount.get() != clearCount) {
+      myModuleToResolver.remove(module);
+    }
+    return resolver;
+  }
+
+  public void clear() {
+    myClearCount.incrementAndGet();
+    myPubspecToResolver.clear();
+    myModuleToResolver.clear();
+  }
+
+  private void fileChanged(@NotNull final VirtualFileEvent event) {
+    if (isRelevantFileName(event.getFileName())) {
+      clear();
+    }
+  }
+
+  private static boolean isRelevantFileName(@NotNull final String fileName) {
+    return PubspecYamlUtil.PUBSPEC_YAML.equals(fileName) || DotPackagesFileUtil.DOT_PACKAGES.equals(fileName);
+  }
+
+  private static long getModificationStamp(@NotNull final VirtualFile pubspecYamlFile) {
+    final Document cachedDocument = FileDocumentManager.getInstance().getCachedDocument(pubspecYamlFile);
+    return cachedDocument != null ? cachedDocument.getModificationStamp() : pubspecYamlFile.getModificationCount();
+  }
+
+  private static class CachedResolver {
+    private final DartUrlResolver myResolver;
+    private final long myStamp;
+
+    private CachedResolver(@NotNull final DartUrlResolver resolver, final long stamp) {
+      myResolver = resolver;
+      myStamp = stamp;
+    }
+  }
+}
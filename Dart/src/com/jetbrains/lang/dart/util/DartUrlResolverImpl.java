@@ -44,9 +44,18 @@ public class DartUrlResolverImpl extends DartUrlResolver {
   @NotNull private final Map<String, List<String>> myPackagesMapFromLib = new THashMap<>();
 
   public DartUrlResolverImpl(final @NotNull Project project, final @NotNull VirtualFile contextFile) {
+    this(project, contextFile, PubspecYamlUtil.findPubspecYamlFile(project, contextFile));
+  }
+
+  /**
+   * @param pubspecYamlFile result of {@link PubspecYamlUtil#findPubspecYamlFile(Project, VirtualFile)} for {@code contextFile}
+   */
+  DartUrlResolverImpl(final @NotNull Project project,
+                      final @NotNull VirtualFile contextFile,
+                      final @Nullable VirtualFile pubspecYamlFile) {
     myProject = project;
     myDartSdk = DartSdk.getDartSdk(project);
-    myPubspecYamlFile = PubspecYamlUtil.findPubspecYamlFile(myProject, contextFile);
+    myPubspecYamlFile = pubspecYamlFile;
 
     initLivePackageNameToDirMap();
 
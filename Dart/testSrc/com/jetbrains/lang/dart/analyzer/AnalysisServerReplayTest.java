@@ -0,0 +1,102 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.ReplayServerSocket;
+import com.google.dart.server.internal.remote.TrafficRecording;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.AnalysisError;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AnalysisServerReplayTest extends TestCase {
+  private static final int FILES = 500;
+  private static final int REGIONS_PER_FILE = 400;
+
+  private TrafficRecording myRecording;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    final File file = FileUtil.createTempFile("analysis-server-traffic", ".txt.gz", true);
+    writeSession(file);
+    myRecording = TrafficRecording.read(file);
+  }
+
+  public void testReplay() throws Exception {
+    final AtomicInteger errorsCount = new AtomicInteger();
+    replay(new AnalysisServerListenerAdapter() {
+      @Override
+      public void computedErrors(String file, List<AnalysisError> errors) {
+        errorsCount.addAndGet(errors.size());
+      }
+    });
+    assertEquals(FILES, errorsCount.get());
+  }
+
+  public void testReplayPerformance() {
+    PlatformTestUtil.startPerformanceTest("Analysis server traffic replay", 10000, () -> {
+      for (int i = 0; i < 3; i++) {
+        // notifications are not decoded if nobody listens to them
+        replay(new AnalysisServerListenerAdapter());
+      }
+    }).assertTiming();
+  }
+
+  private void replay(@NotNull final AnalysisServerListenerAdapter listener) throws Exception {
+    final ReplayServerSocket socket = new ReplayServerSocket(myRecording, false);
+    final RemoteAnalysisServerImpl server = new RemoteAnalysisServerImpl(socket, false);
+    server.addAnalysisServerListener(listener);
+    server.start();
+    try {
+      for (TrafficRecording.Entry entry : myRecording.getEntries()) {
+        if (entry.direction == TrafficRecording.REQUEST) {
+          final JsonObject request = new JsonParser().parse(entry.json).getAsJsonObject();
+          final String id = server.generateUniqueId();
+          request.addProperty("id", id);
+          server.sendRequestToServer(id, request);
+        }
+      }
+      assertTrue("replay timed out", socket.awaitReplayed(1, TimeUnit.MINUTES));
+    }
+    finally {
+      socket.stop();
+    }
+  }
+
+  // a typical start of a session: analysis roots are set, then highlights and errors come for each file
+  private static void writeSession(@NotNull final File file) throws IOException {
+    try (TrafficRecording.Recorder recorder = new TrafficRecording.Recorder(file)) {
+      recorder.write(TrafficRecording.REQUEST,
+                     "{\"id\":\"0\",\"method\":\"analysis.setAnalysisRoots\",\"params\":{\"included\":[\"/project\"],\"excluded\":[]}}");
+      recorder.write(TrafficRecording.RESPONSE, "{\"id\":\"0\",\"result\":{}}");
+
+      for (int i = 0; i < FILES; i++) {
+        final String path = "/project/lib/file" + i + ".dart";
+        final StringBuilder highlights = new StringBuilder();
+        highlights.append("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"").append(path).append("\",\"regions\":[");
+        for (int j = 0; j < REGIONS_PER_FILE; j++) {
+          if (j > 0) highlights.append(',');
+          highlights.append("{\"type\":\"IDENTIFIER_DEFAULT\",\"offset\":").append(j * 10).append(",\"length\":5}");
+        }
+        highlights.append("]}}");
+        recorder.write(TrafficRecording.RESPONSE, highlights.toString());
+
+        recorder.write(TrafficRecording.RESPONSE,
+                       "{\"event\":\"analysis.errors\",\"params\":{\"file\":\"" + path + "\",\"errors\":[{\"severity\":\"WARNING\"," +
+                       "\"type\":\"STATIC_WARNING\",\"location\":{\"file\":\"" + path + "\",\"offset\":10,\"length\":5," +
+                       "\"startLine\":1,\"startColumn\":11},\"message\":\"Unused variable\",\"code\":\"unused_local_variable\"," +
+                       "\"hasFix\":false}]}}");
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import com.intellij.openapi.editor.impl.event.DocumentEventImpl;
+import com.intellij.openapi.util.text.StringUtil;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Edits are applied to the text sent to the server the same way the server applies a ChangeContentOverlay, and the result is compared
+ * with the full document content.
+ */
+public class DartDocumentDeltasTest extends TestCase {
+  private final Document mySentDocument = new DocumentImpl(StringUtil.repeat("void main() {\n  print('hello');\n}\n", 20));
+  private final DartDocumentDeltas myDeltas = new DartDocumentDeltas(mySentDocument);
+  private final StringBuilder myText = new StringBuilder(mySentDocument.getText());
+
+  public void testTyping() {
+    change(28, 0, ", world");
+    change(13, 0, "\n");
+    change(0, 4, "int");
+    assertEditsRestoreText();
+  }
+
+  public void testRandomEditsRestoreText() {
+    final Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      final int offset = random.nextInt(myText.length() + 1);
+      final int oldLength = random.nextInt(3) == 0 ? 0 : random.nextInt(Math.min(3, myText.length() - offset) + 1);
+      final String newText = random.nextInt(3) == 0 ? "" : StringUtil.repeat(random.nextBoolean() ? "x" : "\n", random.nextInt(4));
+      change(offset, oldLength, newText);
+    }
+    assertEditsRestoreText();
+  }
+
+  public void testWholeTextSentIfEditsOutweighDocument() {
+    change(0, myText.length(), StringUtil.repeat("x", 1000));
+    change(0, myText.length(), StringUtil.repeat("y", 1000));
+    assertNull(myDeltas.getEdits(new DocumentImpl(myText), mySentDocument.getModificationStamp()));
+  }
+
+  public void testWholeTextSentIfOtherContentWasSent() {
+    change(0, 0, "x");
+    assertNull(myDeltas.getEdits(new DocumentImpl(myText), mySentDocument.getModificationStamp() - 1));
+  }
+
+  public void testWholeTextSentIfChangeMissed() {
+    change(0, 0, "x");
+    myText.append("y");
+    assertNull(myDeltas.getEdits(new DocumentImpl(myText), mySentDocument.getModificationStamp()));
+  }
+
+  private void change(final int offset, final int oldLength, @NotNull final String newText) {
+    final String oldText = myText.substring(offset, offset + oldLength);
+    myDeltas.add(new DocumentEventImpl(mySentDocument, offset, oldText, newText, 0, false));
+    myText.replace(offset, offset + oldLength, newText);
+  }
+
+  private void assertEditsRestoreText() {
+    final List<SourceEdit> edits = myDeltas.getEdits(new DocumentImpl(myText), mySentDocument.getModificationStamp());
+    assertNotNull(edits);
+
+    final StringBuilder serverText = new StringBuilder(mySentDocument.getText());
+    for (SourceEdit edit : edits) {
+      serverText.replace(edit.getOffset(), edit.getOffset() + edit.getLength(), edit.getReplacement());
+    }
+    assertEquals(myText.toString(), serverText.toString());
+  }
+}
@@ -0,0 +1,199 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import com.intellij.openapi.editor.impl.event.DocumentEventImpl;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.jetbrains.lang.dart.analyzer.DartServerData.DartRegion;
+
+public class DartRegionStoreTest extends TestCase {
+  private final Document myDocument = new DocumentImpl("");
+
+  public void testTypingAtRegionBoundaries() {
+    final DartRegionStore<DartRegion> store = createStore(new int[]{10, 5, 20, 5, 30, 10});
+
+    assertFalse(store.onDocumentChanged(event(10, 0, 2), true)); // at start: shifted
+    assertFalse(store.onDocumentChanged(event(17, 0, 1), true)); // at end: not touched
+    assertRegions(store, 12, 5, 23, 5, 33, 10);
+
+    assertTrue(store.onDocumentChanged(event(25, 0, 1), true)); // inside: deleted
+    assertRegions(store, 12, 5, 34, 10);
+  }
+
+  public void testTypingUpdatesTouchedHighlights() {
+    final DartRegionStore<DartRegion> store = createStore(new int[]{10, 5, 20, 5});
+
+    assertFalse(store.onDocumentChanged(event(12, 0, 3), false));
+    assertRegions(store, 10, 8, 23, 5);
+
+    assertFalse(store.onDocumentChanged(event(11, 2, 0), false));
+    assertRegions(store, 10, 6, 21, 5);
+
+    store.onDocumentChanged(event(21, 5, 0), false); // whole region deleted
+    assertRegions(store, 10, 6);
+  }
+
+  public void testRandomEditsMatchLinearUpdate() {
+    final Random random = new Random(42);
+    for (int iteration = 0; iteration < 50; iteration++) {
+      final boolean deleteTouched = random.nextBoolean();
+      final int regionsCount = random.nextInt(100);
+      int textLength = 1000;
+
+      final int[] regions = new int[regionsCount * 2];
+      for (int i = 0; i < regionsCount; i++) {
+        regions[i * 2] = random.nextInt(textLength - 20);
+        regions[i * 2 + 1] = 1 + random.nextInt(20);
+      }
+      sortByOffset(regions);
+
+      final DartRegionStore<DartRegion> store = createStore(regions);
+      final List<int[]> reference = new ArrayList<>();
+      for (int i = 0; i < regionsCount; i++) {
+        reference.add(new int[]{regions[i * 2], regions[i * 2 + 1]});
+      }
+
+      for (int edit = 0; edit < 200; edit++) {
+        final int offset = randomOffset(random, reference, textLength);
+        final int oldLength = random.nextInt(3) == 0 ? 0 : random.nextInt(Math.min(15, textLength - offset) + 1);
+        final int newLength = random.nextInt(3) == 0 ? 0 : random.nextInt(15);
+        final DocumentEvent e = event(offset, oldLength, newLength);
+        final String message = "iteration " + iteration + ", edit " + edit + " at " + offset + " -" + oldLength + " +" + newLength;
+
+        final boolean referenceDeleted = updateLinearly(reference, e, deleteTouched);
+        final boolean deleted = store.onDocumentChanged(e, deleteTouched);
+        if (deleteTouched) {
+          assertEquals(message, referenceDeleted, deleted);
+        }
+        assertEquals(message, toString(reference), toString(store));
+
+        textLength += newLength - oldLength;
+      }
+    }
+  }
+
+  public void testTypingPerformance() {
+    final int regionsCount = 50000;
+    final int[] regions = new int[regionsCount * 2];
+    for (int i = 0; i < regionsCount; i++) {
+      regions[i * 2] = i * 10;
+      regions[i * 2 + 1] = 5;
+    }
+
+    PlatformTestUtil.startPerformanceTest("Typing into 50k Dart regions", 3000, () -> {
+      final DartRegionStore<DartRegion> highlights = createStore(regions);
+      final DartRegionStore<DartRegion> errors = createStore(regions);
+      int offset = regionsCount * 5;
+      for (int i = 0; i < 20000; i++) {
+        final DocumentEvent e = i % 5 == 4 ? event(--offset, 1, 0) : event(offset++, 0, 1);
+        highlights.onDocumentChanged(e, false);
+        errors.onDocumentChanged(e, true);
+        highlights.getRegions(offset - 100, offset + 100);
+      }
+      assertEquals(regionsCount, highlights.getRegions().size());
+    }).assertTiming();
+  }
+
+  // prefers offsets at and near region boundaries
+  private static int randomOffset(@NotNull final Random random, @NotNull final List<int[]> regions, final int textLength) {
+    if (regions.isEmpty() || random.nextInt(4) == 0) return random.nextInt(textLength);
+    final int[] region = regions.get(random.nextInt(regions.size()));
+    final int boundary = random.nextBoolean() ? region[0] : region[0] + region[1];
+    return Math.max(0, Math.min(textLength, boundary + random.nextInt(3) - 1));
+  }
+
+  /**
+   * The linear update that DartServerData did before regions were kept in DartRegionStore.
+   */
+  private static boolean updateLinearly(@NotNull final List<int[]> regions, @NotNull final DocumentEvent e, final boolean deleteTouched) {
+    final int eventOffset = e.getOffset();
+    final int deltaLength = e.getNewLength() - e.getOldLength();
+    boolean regionDeleted = false;
+
+    for (int i = regions.size() - 1; i >= 0; i--) {
+      final int[] region = regions.get(i);
+      if (deltaLength > 0) {
+        if (eventOffset <= region[0]) {
+          region[0] += deltaLength;
+        }
+        else if (region[0] < eventOffset && eventOffset < region[0] + region[1]) {
+          if (deleteTouched) {
+            regions.remove(i);
+            regionDeleted = true;
+          }
+          else {
+            region[1] += deltaLength;
+          }
+        }
+      }
+      else if (deltaLength < 0) {
+        final int eventRightOffset = eventOffset - deltaLength;
+        final int regionRightOffset = region[0] + region[1];
+        if (eventRightOffset <= region[0]) {
+          region[0] += deltaLength;
+        }
+        else if (!deleteTouched && region[0] <= eventOffset && eventRightOffset <= regionRightOffset && region[1] != -deltaLength) {
+          region[1] += deltaLength;
+        }
+        else if (eventOffset < regionRightOffset) {
+          regions.remove(i);
+          regionDeleted = true;
+        }
+      }
+    }
+    return regionDeleted;
+  }
+
+  @NotNull
+  private DocumentEvent event(final int offset, final int oldLength, final int newLength) {
+    return new DocumentEventImpl(myDocument, offset, StringUtil.repeat(" ", oldLength), StringUtil.repeat("x", newLength), 0, false);
+  }
+
+  @NotNull
+  private static DartRegionStore<DartRegion> createStore(@NotNull final int[] offsetsAndLengths) {
+    final List<DartRegion> regions = new ArrayList<>();
+    for (int i = 0; i < offsetsAndLengths.length; i += 2) {
+      regions.add(new DartRegion(offsetsAndLengths[i], offsetsAndLengths[i + 1]));
+    }
+    return new DartRegionStore<>("/file.dart", regions);
+  }
+
+  private static void sortByOffset(@NotNull final int[] offsetsAndLengths) {
+    final List<int[]> pairs = new ArrayList<>();
+    for (int i = 0; i < offsetsAndLengths.length; i += 2) {
+      pairs.add(new int[]{offsetsAndLengths[i], offsetsAndLengths[i + 1]});
+    }
+    pairs.sort((p1, p2) -> Integer.compare(p1[0], p2[0]));
+    for (int i = 0; i < pairs.size(); i++) {
+      offsetsAndLengths[i * 2] = pairs.get(i)[0];
+      offsetsAndLengths[i * 2 + 1] = pairs.get(i)[1];
+    }
+  }
+
+  private static void assertRegions(@NotNull final DartRegionStore<DartRegion> store, final int... offsetsAndLengths) {
+    final List<int[]> expected = new ArrayList<>();
+    for (int i = 0; i < offsetsAndLengths.length; i += 2) {
+      expected.add(new int[]{offsetsAndLengths[i], offsetsAndLengths[i + 1]});
+    }
+    assertEquals(toString(expected), toString(store));
+  }
+
+  @NotNull
+  private static String toString(@NotNull final List<int[]> regions) {
+    return StringUtil.join(regions, region -> region[0] + ":" + region[1], " ");
+  }
+
+  @NotNull
+  private static String toString(@NotNull final DartRegionStore<DartRegion> store) {
+    return StringUtil.join(store.getRegions(), region -> region.getOffset() + ":" + region.getLength(), " ");
+  }
+}
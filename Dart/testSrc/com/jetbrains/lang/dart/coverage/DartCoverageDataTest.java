@@ -0,0 +1,101 @@
+package com.jetbrains.lang.dart.coverage;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class DartCoverageDataTest extends TestCase {
+
+  public void testHitsOfSameScriptMergedAcrossIsolates() throws IOException {
+    final Map<String, String> hits = readMergedHits(
+      "{\"type\": \"CodeCoverage\", \"coverage\": [\n" +
+      "  {\"source\": \"package:foo/a.dart\", \"script\": {}, \"hits\": [1, 2, 3, 0, 5, 1]},\n" +
+      "  {\"hits\": [1, 1, 4, 7], \"source\": \"package:foo/a.dart\"},\n" +
+      "  {\"source\": \"package:foo/b.dart\", \"hits\": [0, 1]},\n" +
+      "  {\"source\": \"package:foo/a.dart\", \"hits\": [3, 2, 3, 1]}\n" +
+      "]}");
+
+    assertEquals(2, hits.size());
+    assertEquals("[-1, 3, -1, 3, 7, 1]", hits.get("package:foo/a.dart"));
+    assertEquals("[1]", hits.get("package:foo/b.dart"));
+  }
+
+  public void testSourcesWithoutHits() throws IOException {
+    final Map<String, String> hits = readMergedHits(
+      "{\"coverage\": [{\"source\": \"a.dart\"}, {\"source\": \"b.dart\", \"hits\": []}, {\"hits\": [1, 1]}, {\"source\": \"c.dart\", \"hits\": null}]}");
+
+    assertEquals(3, hits.size());
+    assertEquals("[]", hits.get("a.dart"));
+    assertEquals("[]", hits.get("b.dart"));
+    assertEquals("[]", hits.get("c.dart"));
+  }
+
+  public void testIncompleteHitPairsIgnored() throws IOException {
+    final Map<String, String> hits = readMergedHits("{\"coverage\": [{\"source\": \"a.dart\", \"hits\": [-1, 5, 2, 1, 3]}]}");
+    assertEquals("[-1, -1, 1]", hits.get("a.dart"));
+  }
+
+  public void testNoCoverage() throws IOException {
+    assertEquals(0, readMergedHits("{\"type\": \"CodeCoverage\"}").size());
+    assertEquals(0, readMergedHits("{\"coverage\": {}}").size());
+  }
+
+  public void testMalformedJson() {
+    assertNotRead("");
+    assertNotRead("[]");
+    assertNotRead("{\"coverage\": [{\"source\": \"a.dart\", \"hits\": [1, 2]}");
+    assertNotRead("{\"coverage\": [{\"source\": \"a.dart\", \"hits\": [1, 2, 3");
+    assertNotRead("{\"coverage\": [{\"source\": \"a.dart\", \"hits\": [1, \"x\"]}]}");
+    assertNotRead("{\"coverage\": [1, 2]}");
+  }
+
+  public void testReadPerformance() {
+    final int sources = 500;
+    final int linesPerSource = 400;
+    final StringBuilder json = new StringBuilder("{\"type\": \"CodeCoverage\", \"coverage\": [");
+    for (int isolate = 0; isolate < 20; isolate++) {
+      for (int source = 0; source < sources; source++) {
+        if (isolate > 0 || source > 0) json.append(",\n");
+        json.append("{\"source\": \"package:foo/file").append(source).append(".dart\", \"hits\": [");
+        for (int line = 1; line <= linesPerSource; line++) {
+          if (line > 1) json.append(", ");
+          json.append(line).append(", ").append(line % 3);
+        }
+        json.append("]}");
+      }
+    }
+    json.append("]}");
+    final String text = json.toString();
+
+    PlatformTestUtil.startPerformanceTest("Dart coverage data reading", 5000, () -> {
+      final int[] totalHits = new int[1];
+      DartCoverageData.read(new StringReader(text)).processMergedHits((source, lineHits) -> {
+        assertEquals(linesPerSource + 1, lineHits.length);
+        totalHits[0] += lineHits[2];
+      });
+      assertEquals(sources * 20 * 2, totalHits[0]);
+    }).assertTiming();
+  }
+
+  @NotNull
+  private static Map<String, String> readMergedHits(@NotNull final String json) throws IOException {
+    final Map<String, String> result = new TreeMap<>();
+    DartCoverageData.read(new StringReader(json)).processMergedHits((source, lineHits) -> result.put(source, Arrays.toString(lineHits)));
+    return result;
+  }
+
+  private static void assertNotRead(@NotNull final String json) {
+    try {
+      DartCoverageData.read(new StringReader(json));
+      fail("IOException expected for " + json);
+    }
+    catch (IOException ignored) {
+    }
+  }
+}
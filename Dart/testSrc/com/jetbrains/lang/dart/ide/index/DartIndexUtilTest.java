@@ -0,0 +1,161 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.PathUtil;
+import com.intellij.util.io.DataExternalizer;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.DartFileType;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+
+public class DartIndexUtilTest extends DartCodeInsightFixtureTestCase {
+
+  public void testLightIndexerSample() {
+    final String text = "library foo.bar;\n" +
+                        "import 'dart:async' as dartAsync show Future, Stream hide Timer;\n" +
+                        "export \"package:a/b.dart\" hide B;\n" +
+                        "part '''p.dart''';\n" +
+                        "var a, b = 1;\n" +
+                        "get g => 1;\n" +
+                        "typedef void F(int i);\n" +
+                        "enum E { e1, e2 }\n" +
+                        "class C = Object with M;\n" +
+                        "class D extends Object { int x, y; D.named(); factory D() => null; operator +(o) {} m() { var local; } }\n" +
+                        "main() { var local2; }\n";
+    final DartFileIndexData data = DartLightIndexer.indexFile(text, "foo.dart");
+    assertNotNull(data);
+    assertSameData(indexWithPsi("foo.dart", text), data);
+
+    assertEquals("foo.bar", data.getLibraryName());
+    assertFalse(data.isPart());
+    assertSameElements(data.getSymbols(), "a", "b", "g", "F", "E", "e1", "e2", "C", "D", "x", "y", "named", "D", "+", "m", "main");
+    assertSameElements(data.getClassNames(), "E", "C", "D");
+    assertSameElements(data.getPartUris(), "p.dart");
+    assertEquals(2, data.getImportAndExportInfos().size());
+    assertEquals("dartAsync", data.getImportAndExportInfos().get(0).getImportPrefix());
+  }
+
+  public void testLightIndexerFallsBackForPartOfUri() {
+    assertNull(DartLightIndexer.indexFile("part of 'lib.dart';\nclass A {}", "part.dart"));
+
+    final DartFileIndexData data = DartLightIndexer.indexFile("part of lib.name;\nclass A {}", "part.dart");
+    assertNotNull(data);
+    assertTrue(data.isPart());
+    assertEquals("lib.name", data.getLibraryName());
+  }
+
+  public void testLightIndexerMatchesPsi() throws IOException {
+    int lightIndexed = 0;
+    final Map<String, String> files = loadDartFiles("/parsing", "/sdk/lib");
+    for (Map.Entry<String, String> entry : files.entrySet()) {
+      final String fileName = PathUtil.getFileName(entry.getKey());
+      final DartFileIndexData lightData = DartLightIndexer.indexFile(entry.getValue(), fileName);
+      if (lightData != null) {
+        lightIndexed++;
+        assertSameData(entry.getKey(), indexWithPsi(fileName, entry.getValue()), lightData);
+      }
+    }
+    assertTrue(lightIndexed + " of " + files.size(), lightIndexed > files.size() / 2);
+  }
+
+  public void testLightIndexerPerformance() throws IOException {
+    final Collection<String> texts = loadDartFiles("/sdk/lib").values();
+    PlatformTestUtil.startPerformanceTest("Dart SDK indexing", 5000, () -> {
+      for (int i = 0; i < 5; i++) {
+        for (String text : texts) {
+          DartLightIndexer.indexFile(text, "file.dart");
+        }
+      }
+    }).assertTiming();
+  }
+
+  public void testExternalizers() throws IOException {
+    final DartComponentInfoExternalizer componentInfoExternalizer = new DartComponentInfoExternalizer();
+    final DartImportOrExportInfoListExternalizer importsExternalizer = new DartImportOrExportInfoListExternalizer();
+
+    for (Map.Entry<String, String> entry : loadDartFiles("/sdk/lib").entrySet()) {
+      final String fileName = PathUtil.getFileName(entry.getKey());
+      final DartFileIndexData lightData = DartLightIndexer.indexFile(entry.getValue(), fileName);
+      final DartFileIndexData data = lightData != null ? lightData : indexWithPsi(fileName, entry.getValue());
+
+      final List<DartComponentInfo> componentInfos = new ArrayList<>(data.getComponentInfoMap().values());
+      for (DartComponentInfo info : componentInfos) {
+        final DartComponentInfo read = saveAndRead(componentInfoExternalizer, info);
+        assertEquals(entry.getKey(), info, read);
+        assertSame(entry.getKey(), read, saveAndRead(componentInfoExternalizer, info));
+      }
+
+      final List<DartImportOrExportInfo> importInfos = data.getImportAndExportInfos();
+      final List<DartImportOrExportInfo> readImportInfos = saveAndRead(importsExternalizer, importInfos);
+      assertEquals(entry.getKey(), importInfos, readImportInfos);
+      for (int i = 0; i < importInfos.size(); i++) {
+        assertSame(entry.getKey(), readImportInfos.get(i), saveAndRead(importsExternalizer, importInfos).get(i));
+      }
+    }
+  }
+
+  @NotNull
+  private static <T> T saveAndRead(@NotNull final DataExternalizer<T> externalizer, @NotNull final T value) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    externalizer.save(new DataOutputStream(bytes), value);
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    final T result = externalizer.read(in);
+    assertEquals("not fully read", 0, in.available());
+    return result;
+  }
+
+  @NotNull
+  private DartFileIndexData indexWithPsi(@NotNull final String fileName, @NotNull final String text) {
+    final PsiFile psiFile = PsiFileFactory.getInstance(getProject()).createFileFromText(fileName, DartFileType.INSTANCE, text);
+    return DartIndexUtil.indexFileRoots(psiFile);
+  }
+
+  @NotNull
+  private static Map<String, String> loadDartFiles(@NotNull final String... relativePaths) throws IOException {
+    final Map<String, String> result = new TreeMap<>();
+    for (String relativePath : relativePaths) {
+      final List<File> files = new ArrayList<>();
+      FileUtil.processFilesRecursively(new File(DartTestUtils.BASE_TEST_DATA_PATH + relativePath), file -> {
+        if (file.isFile() && file.getName().endsWith(".dart")) {
+          files.add(file);
+        }
+        return true;
+      });
+      for (File file : files) {
+        result.put(FileUtil.toSystemIndependentName(file.getPath()), StringUtil.convertLineSeparators(FileUtil.loadFile(file)));
+      }
+    }
+    return result;
+  }
+
+  private static void assertSameData(@NotNull final DartFileIndexData expected, @NotNull final DartFileIndexData actual) {
+    assertSameData("", expected, actual);
+  }
+
+  // symbols and class names are collected from a set of PSI elements by DartIndexUtil, so their order is not defined
+  private static void assertSameData(@NotNull final String message,
+                                     @NotNull final DartFileIndexData expected,
+                                     @NotNull final DartFileIndexData actual) {
+    assertEquals(message, expected.getLibraryName(), actual.getLibraryName());
+    assertEquals(message, expected.isPart(), actual.isPart());
+    assertEquals(message, sorted(expected.getSymbols()), sorted(actual.getSymbols()));
+    assertEquals(message, sorted(expected.getClassNames()), sorted(actual.getClassNames()));
+    assertEquals(message, expected.getComponentInfoMap(), actual.getComponentInfoMap());
+    assertEquals(message, expected.getImportAndExportInfos(), actual.getImportAndExportInfos());
+    assertEquals(message, expected.getPartUris(), actual.getPartUris());
+  }
+
+  @NotNull
+  private static List<String> sorted(@NotNull final List<String> list) {
+    final List<String> result = new ArrayList<>(list);
+    Collections.sort(result);
+    return result;
+  }
+}
@@ -0,0 +1,149 @@
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonObject;
+import com.intellij.openapi.util.Ref;
+import junit.framework.TestCase;
+import org.dartlang.vm.service.VmService;
+import org.dartlang.vm.service.consumer.EvaluateConsumer;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.*;
+
+import java.util.*;
+
+/**
+ * Requests are run synchronously and the fake VM service answers them immediately, so each request the cache sends is seen in
+ * {@link FakeVmService#myRequests} at once.
+ */
+public class VmObjectCacheTest extends TestCase {
+
+  private static final String ISOLATE_ID = "isolates/1";
+
+  private final FakeVmService myVmService = new FakeVmService();
+  private final Set<String> mySuspendedIsolateIds = new HashSet<>(Collections.singleton(ISOLATE_ID));
+  private final VmObjectCache myCache = new VmObjectCache(myVmService, mySuspendedIsolateIds::contains, Runnable::run);
+
+  public void testPrefetchedChildrenServedFromCacheAfterPresentation() {
+    myCache.prefetchObjects(ISOLATE_ID, Arrays.asList("objects/1", "objects/2"));
+    assertEquals(Arrays.asList("getObject objects/1", "getObject objects/2"), myVmService.myRequests);
+
+    // DartVmServiceValue.computeDefaultPresentation()
+    assertEquals("objects/3.toString()", evaluate("objects/3", "toString()", true));
+
+    assertEquals("objects/1", getObject("objects/1"));
+    assertEquals("objects/2", getObject("objects/2"));
+    assertEquals(Arrays.asList("getObject objects/1", "getObject objects/2", "evaluate objects/3 toString()"), myVmService.myRequests);
+  }
+
+  public void testUserEvaluationDropsCachedObjects() {
+    assertEquals("objects/1", getObject("objects/1"));
+    assertEquals("objects/1", getObject("objects/1"));
+    assertEquals("objects/1.add(1)", evaluate("objects/1", "add(1)", false));
+    assertEquals("objects/1", getObject("objects/1"));
+    assertEquals(Arrays.asList("getObject objects/1", "evaluate objects/1 add(1)", "getObject objects/1"), myVmService.myRequests);
+  }
+
+  public void testNothingCachedWhileIsolateRuns() {
+    mySuspendedIsolateIds.clear();
+    myCache.prefetchObjects(ISOLATE_ID, Collections.singletonList("objects/1"));
+    assertEquals("objects/1", getObject("objects/1"));
+    assertEquals("objects/1", getObject("objects/1"));
+    assertEquals(Arrays.asList("getObject objects/1", "getObject objects/1"), myVmService.myRequests);
+  }
+
+  public void testSentinelNotCached() {
+    myVmService.myCollectedObjectIds.add("objects/1");
+    assertNull(getObject("objects/1"));
+    assertNull(getObject("objects/1"));
+    assertEquals(Arrays.asList("getObject objects/1", "getObject objects/1"), myVmService.myRequests);
+  }
+
+  /**
+   * @return id of the received object or {@code null} if a sentinel is received
+   */
+  private String getObject(final String objectId) {
+    final Ref<String> result = new Ref<>();
+    final Ref<Boolean> received = Ref.create(false);
+    myCache.getObject(ISOLATE_ID, objectId, new GetObjectConsumer() {
+      @Override
+      public void received(Obj response) {
+        received.set(true);
+        result.set(response.getId());
+      }
+
+      @Override
+      public void received(Sentinel response) {
+        received.set(true);
+      }
+
+      @Override
+      public void onError(RPCError error) {
+        fail(error.getMessage());
+      }
+    });
+    assertTrue(received.get());
+    return result.get();
+  }
+
+  private String evaluate(final String targetId, final String expression, final boolean keepCachedObjects) {
+    final Ref<String> result = new Ref<>();
+    myCache.evaluate(ISOLATE_ID, targetId, expression, keepCachedObjects, new EvaluateConsumer() {
+      @Override
+      public void received(InstanceRef response) {
+        result.set(response.getValueAsString());
+      }
+
+      @Override
+      public void received(ErrorRef response) {
+        fail(response.getMessage());
+      }
+
+      @Override
+      public void received(Sentinel response) {
+        fail(response.getValueAsString());
+      }
+
+      @Override
+      public void onError(RPCError error) {
+        fail(error.getMessage());
+      }
+    });
+    assertNotNull(result.get());
+    return result.get();
+  }
+
+  private static class FakeVmService extends VmService {
+    private final List<String> myRequests = new ArrayList<>();
+    private final Set<String> myCollectedObjectIds = new HashSet<>();
+
+    @Override
+    public void getObject(String isolateId, String objectId, GetObjectConsumer consumer) {
+      assertEquals(ISOLATE_ID, isolateId);
+      myRequests.add("getObject " + objectId);
+
+      final JsonObject json = new JsonObject();
+      if (myCollectedObjectIds.contains(objectId)) {
+        json.addProperty("type", "Sentinel");
+        json.addProperty("kind", "Collected");
+        json.addProperty("valueAsString", "<collected>");
+        consumer.received(new Sentinel(json));
+      }
+      else {
+        json.addProperty("type", "Instance");
+        json.addProperty("id", objectId);
+        consumer.received(new Obj(json));
+      }
+    }
+
+    @Override
+    public void evaluate(String isolateId, String targetId, String expression, EvaluateConsumer consumer) {
+      assertEquals(ISOLATE_ID, isolateId);
+      myRequests.add("evaluate " + targetId + " " + expression);
+
+      final JsonObject json = new JsonObject();
+      json.addProperty("type", "@Instance");
+      json.addProperty("kind", "String");
+      json.addProperty("valueAsString", targetId + "." + expression);
+      consumer.received(new InstanceRef(json));
+    }
+  }
+}
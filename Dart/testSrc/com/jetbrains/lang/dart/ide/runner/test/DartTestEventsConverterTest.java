@@ -13,6 +13,7 @@ import com.intellij.execution.ui.ConsoleViewContentType;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
+import com.intellij.testFramework.PlatformTestUtil;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -338,6 +339,41 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     runTest(events, signals, new int[]{});
   }
 
+  public void testManyTestsPerformance() {
+    final int groupCount = 500;
+    final int testsInGroup = 100;
+    final List<String> events = new ArrayList<>();
+    events.add("{'protocolVersion':'0.1.0','runnerVersion':'0.12.30','type':'start','time':0}\n");
+    events.add("{'count':1,'type':'allSuites','time':0}\n");
+    events.add("{'suite':{'id':0,'platform':'vm','path':'test/many_test.dart'},'type':'suite','time':0}\n");
+    events.add("{'group':{'id':1,'suiteID':0,'parentID':null,'name':null,'metadata':{'skip':false,'skipReason':null}," +
+               "'testCount':" + groupCount * testsInGroup + "},'type':'group','time':1}\n");
+    int id = 2;
+    for (int g = 0; g < groupCount; g++) {
+      final int groupId = id++;
+      events.add("{'group':{'id':" + groupId + ",'suiteID':0,'parentID':1,'name':'group " + g + "','metadata':{'skip':false," +
+                 "'skipReason':null},'testCount':" + testsInGroup + ",'line':" + (g + 1) + ",'column':3},'type':'group','time':2}\n");
+      for (int t = 0; t < testsInGroup; t++) {
+        final int testId = id++;
+        events.add("{'test':{'id':" + testId + ",'name':'group " + g + " test " + t + "','suiteID':0,'groupIDs':[1," + groupId + "]," +
+                   "'metadata':{'skip':false,'skipReason':null},'line':" + (t + 1) + ",'column':5},'type':'testStart','time':3}\n");
+        events.add("{'testID':" + testId + ",'message':'output of test " + t + "','type':'print','time':4}\n");
+        events.add("{'testID':" + testId + ",'result':'success','hidden':false,'type':'testDone','time':5}\n");
+      }
+    }
+    events.add("{'success':true,'type':'done','time':6}\n");
+
+    final Key key = new Key("stdout");
+    PlatformTestUtil.startPerformanceTest("Dart test events conversion", 20000, () -> {
+      for (String event : events) {
+        myEventsConverter.process(event, key);
+      }
+    }).setup(() -> myEventsProcessor.signals.clear()).assertTiming();
+
+    // suite, group and 3 signals per test: start, print and finish
+    assertEquals(groupCount * (2 + testsInGroup * 3) + 2, myEventsProcessor.signals.size());
+  }
+
   private void runTest(String[] jsonEvents, String[] signals, int[] parents) {
     DartTestEventsConverter parser = myEventsConverter;
     Key key = new Key("stdout");
@@ -8,12 +8,20 @@ import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
+import com.intellij.psi.impl.PsiModificationTrackerImpl;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.PlatformTestUtil;
 import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
 import com.jetbrains.lang.dart.DartProjectComponent;
 import com.jetbrains.lang.dart.ide.index.DartLibraryIndex;
+import com.jetbrains.lang.dart.psi.DartClass;
+import com.jetbrains.lang.dart.psi.DartReferenceExpression;
 import com.jetbrains.lang.dart.util.DartTestUtils;
 
+import java.util.Collection;
+
 import static com.jetbrains.dart.analysisServer.DartServerResolverTest.doTest;
 
 public class DartResolveTest extends DartCodeInsightFixtureTestCase {
@@ -227,4 +235,44 @@ public class DartResolveTest extends DartCodeInsightFixtureTestCase {
     myFixture.openFileInEditor(psiFile.getVirtualFile());
     doTest(myFixture);
   }
+
+  public void testDeepClassHierarchyPerformance() {
+    final int depth = 40;
+    final int membersPerClass = 20;
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      text.append("class C").append(i).append(i == 0 ? "" : " extends C" + (i - 1)).append(" {\n");
+      for (int j = 0; j < membersPerClass; j++) {
+        text.append("  int f").append(i).append('_').append(j).append(";\n");
+        text.append("  void m").append(i).append('_').append(j).append("() {}\n");
+      }
+      text.append("}\n");
+    }
+    text.append("main(C").append(depth - 1).append(" c) {\n");
+    for (int i = 0; i < depth; i++) {
+      for (int j = 0; j < membersPerClass; j++) {
+        text.append("  c.m").append(i).append('_').append(j).append("();\n");
+        text.append("  c.f").append(i).append('_').append(j).append(";\n");
+      }
+    }
+    text.append("}\n");
+
+    final PsiFile file = myFixture.addFileToProject("deep.dart", text.toString());
+    final Collection<DartReferenceExpression> references = PsiTreeUtil.findChildrenOfType(file, DartReferenceExpression.class);
+    final Collection<DartClass> classes = PsiTreeUtil.findChildrenOfType(file, DartClass.class);
+
+    // each run starts with empty caches, so the benchmark shows how much of the work within a single highlighting pass is shared
+    PlatformTestUtil.startPerformanceTest("Dart resolve in deep class hierarchy", 5000, () -> {
+      for (DartReferenceExpression reference : references) {
+        assertNotNull(reference.getText(), reference.resolve());
+      }
+      for (DartClass dartClass : classes) {
+        assertFalse(dartClass.getMethods().isEmpty());
+        assertFalse(dartClass.getFields().isEmpty());
+      }
+    }).setup(() -> {
+      ((PsiModificationTrackerImpl)PsiManager.getInstance(getProject()).getModificationTracker()).incCounter();
+      ResolveCache.getInstance(getProject()).clearCache(true);
+    }).assertTiming();
+  }
 }
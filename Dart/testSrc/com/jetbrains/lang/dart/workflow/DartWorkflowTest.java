@@ -148,4 +148,17 @@ public class DartWorkflowTest extends DartCodeInsightFixtureTestCase {
     assertEquals(rootPath + "/pub/global/cache/SomePackage/lib/somepack.dart", file.getPath());
     assertEquals("package:SomePackage/somepack.dart", resolver.getDartUrlForFile(file));
   }
+
+  public void testDartUrlResolverSeesCreatedLibFolder() {
+    final VirtualFile pubspec = myFixture.addFileToProject("pubspec.yaml", "name: RootProject").getVirtualFile();
+    myFixture.addFileToProject("bin/main.dart", "");
+
+    assertNull(DartUrlResolver.getInstance(getProject(), pubspec).findFileByDartUrl("package:RootProject/rootlib.dart"));
+
+    myFixture.addFileToProject("lib/rootlib.dart", "");
+
+    final VirtualFile file = DartUrlResolver.getInstance(getProject(), pubspec).findFileByDartUrl("package:RootProject/rootlib.dart");
+    assertNotNull(file);
+    assertEquals("package:RootProject/rootlib.dart", DartUrlResolver.getInstance(getProject(), pubspec).getDartUrlForFile(file));
+  }
 }
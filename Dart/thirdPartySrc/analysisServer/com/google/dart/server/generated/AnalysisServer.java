@@ -613,6 +613,14 @@ public interface AnalysisServer {
    */
   public boolean isSocketOpen();
 
+  /**
+   * Cancel the pending request that was sent with the given {@link Consumer}. The consumer is not
+   * notified anymore, and the response, if the server still sends one, is discarded undecoded.
+   *
+   * @return {@code true} if there was such a pending request
+   */
+  public boolean cancelRequest(Consumer consumer);
+
   /**
    * Remove the given listener from the list of listeners that will receive notification when new
    * analysis results become available.
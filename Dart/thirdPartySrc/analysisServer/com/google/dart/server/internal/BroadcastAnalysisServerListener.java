@@ -44,6 +44,15 @@ public class BroadcastAnalysisServerListener implements AnalysisServerListener {
     }
   }
 
+  /**
+   * Returns {@code true} if there is at least one listener to broadcast events to.
+   */
+  public boolean hasListeners() {
+    synchronized (listeners) {
+      return !listeners.isEmpty();
+    }
+  }
+
   @Override
   public void computedAnalyzedFiles(List<String> directories) {
     for (AnalysisServerListener listener : getListeners()) {
@@ -18,6 +18,8 @@ import com.google.dart.server.internal.remote.utilities.RequestUtilities;
 import com.google.gson.JsonObject;
 
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A {@link RequestSink} that enqueues all but "get version" requests and can be later converted
@@ -36,6 +38,11 @@ public class BlockingRequestSink implements RequestSink {
    */
   private final LinkedList<JsonObject> queue = Lists.newLinkedList();
 
+  /**
+   * The flush barriers requested while there were queued requests.
+   */
+  private final List<CompletableFuture<Void>> barriers = Lists.newArrayList();
+
   public BlockingRequestSink(RequestSink base) {
     this.base = base;
   }
@@ -51,6 +58,33 @@ public class BlockingRequestSink implements RequestSink {
     }
   }
 
+  @Override
+  public CompletableFuture<Void> flush() {
+    synchronized (queue) {
+      if (queue.isEmpty()) {
+        return base.flush();
+      }
+      CompletableFuture<Void> barrier = new CompletableFuture<Void>();
+      barriers.add(barrier);
+      return barrier;
+    }
+  }
+
+  @Override
+  public boolean cancel(String id) {
+    synchronized (queue) {
+      if (queue.removeIf(request -> id.equals(RequestUtilities.getId(request)))) {
+        return true;
+      }
+    }
+    return base.cancel(id);
+  }
+
+  @Override
+  public void setListener(Listener listener) {
+    base.setListener(listener);
+  }
+
   @Override
   public void close() {
     base.close();
@@ -72,6 +106,9 @@ public class BlockingRequestSink implements RequestSink {
       for (JsonObject request : queue) {
         errorRequestSink.add(request);
       }
+      for (CompletableFuture<Void> barrier : barriers) {
+        barrier.complete(null);
+      }
     }
     return errorRequestSink;
   }
@@ -84,6 +121,12 @@ public class BlockingRequestSink implements RequestSink {
       for (JsonObject request : queue) {
         base.add(request);
       }
+      if (!barriers.isEmpty()) {
+        CompletableFuture<Void> baseBarrier = base.flush();
+        for (CompletableFuture<Void> barrier : barriers) {
+          baseBarrier.whenComplete((result, e) -> barrier.complete(null));
+        }
+      }
     }
     return base;
   }
@@ -13,7 +13,9 @@
  */
 package com.google.dart.server.internal.remote;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.io.OutputStream;
@@ -21,16 +23,40 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 /**
  * An {@link OutputStream} based implementation of {@link RequestSink}.
+ * <p>
+ * Requests are written by a single thread that drains all queued requests at once and flushes the
+ * stream once per drained batch. Requests that only replace server state set by a previous request,
+ * such as "analysis.setSubscriptions", are coalesced within a batch: only the latest one is written.
+ * Flush barriers are queued along with the requests and completed right after the batch that
+ * contains them has been flushed, requests are never coalesced across a barrier. Requests
+ * cancelled before being written are dropped as well.
  *
  * @coverage dart.server.remote
  */
 public class ByteRequestSink implements RequestSink {
+  /**
+   * The methods of the requests that fully replace the state set by the previous request with the
+   * same method, and whose responses carry no result.
+   */
+  private static final Set<String> COALESCED_METHODS = ImmutableSet.of(
+      "analysis.setPriorityFiles",
+      "analysis.setSubscriptions");
+
+  private static final QueuedRequest EOF_REQUEST = new QueuedRequest(null, null, ByteResponseStream.EOF_LINE, null);
+
   /**
    * The {@link PrintWriter} to print JSON strings to.
    */
@@ -40,9 +66,21 @@ public class ByteRequestSink implements RequestSink {
    */
   private DebugPrintStream debugStream;
   /**
-   * The queue of lines.
+   * The queue of requests.
+   */
+  private final BlockingQueue<QueuedRequest> requestQueue = new LinkedBlockingQueue<QueuedRequest>();
+  /**
+   * The ids of the queued requests that have not been written yet, mapped to {@code true} if the
+   * request has been cancelled.
+   */
+  private final ConcurrentMap<String, Boolean> unwrittenIds = new ConcurrentHashMap<String, Boolean>();
+
+  private volatile Listener listener;
+
+  /**
+   * {@code true} once the writer thread has stopped, after that no barrier is completed by it.
    */
-  private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>();
+  private volatile boolean writerStopped;
 
   /**
    * Initializes a newly created request sink.
@@ -64,25 +102,96 @@ public class ByteRequestSink implements RequestSink {
         debugStream.println(System.currentTimeMillis() + " => " + text);
       }
     }
-    lineQueue.add(text);
+    String id = getString(request, "id");
+    if (id != null) {
+      unwrittenIds.put(id, Boolean.FALSE);
+    }
+    requestQueue.add(new QueuedRequest(id, getString(request, "method"), text, null));
+  }
+
+  @Override
+  public boolean cancel(String id) {
+    return unwrittenIds.replace(id, Boolean.FALSE, Boolean.TRUE);
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    CompletableFuture<Void> barrier = new CompletableFuture<Void>();
+    requestQueue.add(new QueuedRequest(null, null, null, barrier));
+    if (writerStopped) {
+      // nothing is going to be written anymore
+      barrier.complete(null);
+    }
+    return barrier;
   }
 
   @Override
   public void close() {
     writer.close();
-    lineQueue.add(ByteResponseStream.EOF_LINE);
+    requestQueue.add(EOF_REQUEST);
+  }
+
+  @Override
+  public void setListener(Listener listener) {
+    this.listener = listener;
   }
 
+  /**
+   * Waits until every request added before this call has been written and flushed.
+   */
   public void waitForFlush() {
-    while (true) {
-      if (lineQueue.isEmpty()) {
-        return;
-      }
-      Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS);
+    try {
+      Uninterruptibles.getUninterruptibly(flush());
+    }
+    catch (ExecutionException e) {
+      // barriers are never completed exceptionally
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given request has been cancelled. After this call the request can't
+   * be cancelled anymore.
+   */
+  private boolean isCancelled(QueuedRequest request) {
+    return request.id != null && Boolean.TRUE.equals(unwrittenIds.remove(request.id));
+  }
+
+  private void elide(QueuedRequest request) {
+    if (debugStream != null) {
+      debugStream.println(System.currentTimeMillis() + " elided " + request.method + " " + request.id);
+    }
+    Listener listener = this.listener;
+    if (listener != null && request.id != null) {
+      listener.requestElided(request.id);
+    }
+  }
+
+  private static String getString(JsonObject request, String key) {
+    JsonElement element = request.get(key);
+    return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+  }
+
+  private static class QueuedRequest {
+    private final String id;
+    private final String method;
+    private final String text;
+    /**
+     * The barrier to complete, not {@code null} only for the flush barrier markers.
+     */
+    private final CompletableFuture<Void> barrier;
+
+    QueuedRequest(String id, String method, String text, CompletableFuture<Void> barrier) {
+      this.id = id;
+      this.method = method;
+      this.text = text;
+      this.barrier = barrier;
     }
   }
 
   private class LinesWriterThread extends Thread {
+    private final List<QueuedRequest> batch = new ArrayList<QueuedRequest>();
+    private final Set<String> laterMethods = new HashSet<String>();
+
     public LinesWriterThread() {
       setName("ByteRequestSink.LinesWriterThread");
       setDaemon(true);
@@ -92,17 +201,86 @@ public class ByteRequestSink implements RequestSink {
     public void run() {
       while (true) {
         try {
-          String line = lineQueue.take();
-          if (line == ByteResponseStream.EOF_LINE) {
+          batch.add(requestQueue.take());
+          requestQueue.drainTo(batch);
+          boolean eof = writeBatch();
+          completeBarriers();
+          batch.clear();
+          if (eof) {
+            writerStopped = true;
+            // complete the barriers queued after the end of the stream
+            requestQueue.drainTo(batch);
+            completeBarriers();
+            batch.clear();
             return;
           }
-
-          writer.println(line);
-          writer.flush();
         }
         catch (InterruptedException e) {
         }
       }
     }
+
+    /**
+     * Writes the requests of the current batch except the cancelled and superseded ones, and flushes
+     * the writer.
+     * Returns {@code true} if the end of the stream has been reached.
+     */
+    private boolean writeBatch() {
+      // walk backwards, so that for each coalesced method the latest request is seen first
+      laterMethods.clear();
+      for (int i = batch.size() - 1; i >= 0; i--) {
+        QueuedRequest request = batch.get(i);
+        if (request.barrier != null) {
+          // the requests before the barrier must be written when it completes
+          laterMethods.clear();
+          continue;
+        }
+        if (request == EOF_REQUEST) {
+          continue;
+        }
+        boolean superseded = COALESCED_METHODS.contains(request.method) && !laterMethods.add(request.method);
+        if (isCancelled(request) || superseded) {
+          elide(request);
+          batch.set(i, null);
+        }
+      }
+
+      long writeStartNanos = System.nanoTime();
+      boolean eof = false;
+      int writtenCount = 0;
+      for (QueuedRequest request : batch) {
+        if (request == EOF_REQUEST) {
+          eof = true;
+          break;
+        }
+        if (request != null && request.barrier == null) {
+          writer.println(request.text);
+          writtenCount++;
+        }
+      }
+      writer.flush();
+
+      Listener listener = ByteRequestSink.this.listener;
+      if (listener != null && writtenCount != 0) {
+        long flushedNanos = System.nanoTime();
+        for (QueuedRequest request : batch) {
+          if (request == EOF_REQUEST) {
+            break;
+          }
+          if (request != null && request.barrier == null && request.id != null) {
+            listener.requestWritten(request.id, writeStartNanos, flushedNanos);
+          }
+        }
+      }
+      return eof;
+    }
+
+    private void completeBarriers() {
+      for (QueuedRequest request : batch) {
+        if (request != null && request.barrier != null) {
+          request.barrier.complete(null);
+        }
+      }
+    }
   }
 }
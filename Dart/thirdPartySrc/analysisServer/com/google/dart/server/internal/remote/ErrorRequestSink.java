@@ -18,6 +18,8 @@ import com.google.dart.server.internal.remote.utilities.ResponseUtilities;
 import com.google.dart.server.utilities.logging.Logging;
 import com.google.gson.JsonObject;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A {@link RequestSink} that reports with an error to each request.
  * 
@@ -53,6 +55,12 @@ public class ErrorRequestSink implements RequestSink {
     }
   }
 
+  @Override
+  public CompletableFuture<Void> flush() {
+    // error responses are sent from add() right away
+    return CompletableFuture.completedFuture(null);
+  }
+
   @Override
   public void close() {
   }
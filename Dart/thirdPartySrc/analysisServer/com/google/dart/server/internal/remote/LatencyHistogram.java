@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of durations in microseconds with a bounded relative error, in the spirit
+ * of HdrHistogram. Values are put into buckets whose width doubles every {@link #SUB_BUCKET_COUNT}
+ * buckets, so that percentiles are accurate to about 1/{@link #SUB_BUCKET_COUNT} of the value,
+ * from 1 microsecond up to more than an hour.
+ * <p>
+ * Recording never blocks and allocates nothing, the percentiles read while values are recorded may
+ * be slightly inconsistent.
+ *
+ * @coverage dart.server.remote
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int MAGNITUDE_COUNT = 32;
+
+  private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDE_COUNT * SUB_BUCKET_COUNT);
+  private final AtomicLongArray totals = new AtomicLongArray(3);
+
+  private static final int TOTAL_COUNT = 0;
+  private static final int TOTAL_SUM = 1;
+  private static final int TOTAL_MAX = 2;
+
+  /**
+   * Records the given duration in nanoseconds.
+   */
+  public void recordNanos(long nanos) {
+    record(Math.max(0, nanos / 1000));
+  }
+
+  /**
+   * Records the given value, usually a duration in microseconds.
+   */
+  public void record(long value) {
+    counts.incrementAndGet(getBucketIndex(value));
+    totals.incrementAndGet(TOTAL_COUNT);
+    totals.addAndGet(TOTAL_SUM, value);
+    long max;
+    while ((max = totals.get(TOTAL_MAX)) < value) {
+      if (totals.compareAndSet(TOTAL_MAX, max, value)) {
+        break;
+      }
+    }
+  }
+
+  public long getCount() {
+    return totals.get(TOTAL_COUNT);
+  }
+
+  public long getMax() {
+    return totals.get(TOTAL_MAX);
+  }
+
+  public long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : totals.get(TOTAL_SUM) / count;
+  }
+
+  /**
+   * Returns the upper bound of the bucket that contains the given percentile, or {@code 0} if
+   * nothing has been recorded.
+   *
+   * @param percentile the percentile, between {@code 0} and {@code 100}
+   */
+  public long getPercentile(double percentile) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(count * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(getBucketUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  private static int getBucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int)value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+    if (magnitude >= MAGNITUDE_COUNT) {
+      return MAGNITUDE_COUNT * SUB_BUCKET_COUNT - 1;
+    }
+    int subBucket = (int)(value >>> (magnitude - 1)) - SUB_BUCKET_COUNT;
+    return magnitude * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  private static long getBucketUpperBound(int index) {
+    int magnitude = index / SUB_BUCKET_COUNT;
+    int subBucket = index % SUB_BUCKET_COUNT;
+    if (magnitude == 0) {
+      return subBucket;
+    }
+    return ((long)(SUB_BUCKET_COUNT + subBucket + 1) << (magnitude - 1)) - 1;
+  }
+}
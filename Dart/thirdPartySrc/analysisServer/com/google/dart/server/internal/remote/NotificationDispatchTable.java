@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A table of the files that per-file notifications were last subscribed for, keyed by the
+ * notification event name. It lets {@link RemoteAnalysisServerImpl} drop notifications for files
+ * that are no longer subscribed, such as files closed since the subscriptions were sent, before
+ * their payload is decoded.
+ * <p>
+ * The table is replaced as a whole on every update, so lookups never block.
+ *
+ * @coverage dart.server.remote
+ */
+public class NotificationDispatchTable {
+  /**
+   * A mapping from the per-file notification event names to the analysis services they belong to.
+   */
+  private final Map<String, String> eventToService;
+
+  /**
+   * A mapping from the event names to the subscribed files, or {@code null} if no subscriptions have
+   * been set yet, in which case every notification is dispatched.
+   */
+  private volatile Map<String, Set<String>> eventToFiles;
+
+  public NotificationDispatchTable(Map<String, String> eventToService) {
+    this.eventToService = ImmutableMap.copyOf(eventToService);
+  }
+
+  /**
+   * Records the given "analysis.setSubscriptions" parameters, which replace all the previously set
+   * subscriptions.
+   */
+  public void setSubscriptions(Map<String, List<String>> subscriptions) {
+    ImmutableMap.Builder<String, Set<String>> builder = ImmutableMap.builder();
+    for (Map.Entry<String, String> entry : eventToService.entrySet()) {
+      List<String> files = subscriptions.get(entry.getValue());
+      builder.put(entry.getKey(), files != null ? ImmutableSet.copyOf(files) : ImmutableSet.<String>of());
+    }
+    eventToFiles = builder.build();
+  }
+
+  /**
+   * Returns {@code true} if the given event is a per-file notification whose files are tracked by
+   * this table.
+   */
+  public boolean isTracked(String event) {
+    return eventToFiles != null && eventToService.containsKey(event);
+  }
+
+  /**
+   * Returns {@code true} if the given notification should be dispatched for the given file.
+   * Notifications that are not tracked are always dispatched.
+   */
+  public boolean isSubscribed(String event, String file) {
+    Map<String, Set<String>> eventToFiles = this.eventToFiles;
+    if (eventToFiles == null) {
+      return true;
+    }
+    Set<String> files = eventToFiles.get(event);
+    return files == null || files.contains(file);
+  }
+}
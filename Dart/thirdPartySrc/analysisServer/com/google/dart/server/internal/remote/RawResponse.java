@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single response or notification read from the server, kept in its undecoded UTF-8 form until
+ * somebody asks for its content. Hot notifications can be decoded directly from {@link #openParams()}
+ * without building a {@link JsonObject} tree, everything else goes through {@link #toJsonObject()}.
+ *
+ * @coverage dart.server.remote
+ */
+public class RawResponse {
+  private static final String NO_EVENT = "";
+
+  private final byte[] bytes;
+  private JsonObject jsonObject;
+  private String event;
+
+  private RawResponse(byte[] bytes, JsonObject jsonObject) {
+    this.bytes = bytes;
+    this.jsonObject = jsonObject;
+  }
+
+  /**
+   * Wraps the given UTF-8 encoded JSON object text.
+   */
+  public static RawResponse fromBytes(byte[] bytes) {
+    return new RawResponse(bytes, null);
+  }
+
+  /**
+   * Wraps an already decoded {@link JsonObject}.
+   */
+  public static RawResponse fromJsonObject(JsonObject jsonObject) {
+    return new RawResponse(null, jsonObject);
+  }
+
+  /**
+   * Returns the size of the undecoded response in bytes, or {@code -1} if the response was created
+   * from a {@link JsonObject}.
+   */
+  public int getSize() {
+    return bytes != null ? bytes.length : -1;
+  }
+
+  /**
+   * Returns the notification event name, or {@code null} if this is a response to a request. Only the
+   * top-level keys are scanned, nested values are skipped without being materialized.
+   */
+  public String getEvent() throws IOException {
+    if (event == null) {
+      event = jsonObject != null ? getEvent(jsonObject) : scanEvent();
+    }
+    return event == NO_EVENT ? null : event;
+  }
+
+  /**
+   * Returns the value of the "file" key of the notification parameters, or {@code null} if there is
+   * no such key. Only the keys preceding it are scanned.
+   */
+  public String getParamsFile() throws IOException {
+    if (jsonObject != null) {
+      JsonElement paramsElement = jsonObject.get("params");
+      if (paramsElement == null || !paramsElement.isJsonObject()) {
+        return null;
+      }
+      JsonElement fileElement = paramsElement.getAsJsonObject().get("file");
+      return fileElement != null && fileElement.isJsonPrimitive() ? fileElement.getAsString() : null;
+    }
+    try (JsonReader reader = openParams()) {
+      if (reader == null || reader.peek() != JsonToken.BEGIN_OBJECT) {
+        return null;
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("file".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+          return reader.nextString();
+        }
+        reader.skipValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the id of the request this is a response to, or {@code null} if this is a notification.
+   * Only the top-level keys preceding the id are scanned.
+   */
+  public String getId() throws IOException {
+    if (jsonObject != null) {
+      JsonElement idElement = jsonObject.get("id");
+      return idElement != null && idElement.isJsonPrimitive() ? idElement.getAsString() : null;
+    }
+    try (JsonReader reader = newReader()) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("id".equals(name) && reader.peek() == JsonToken.STRING) {
+          return reader.nextString();
+        }
+        if ("event".equals(name)) {
+          return null;
+        }
+        reader.skipValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a {@link JsonReader} positioned at the value of the top-level "params" key, or
+   * {@code null} if there is no such key or the response has no undecoded form.
+   */
+  public JsonReader openParams() throws IOException {
+    if (bytes == null) {
+      return null;
+    }
+    JsonReader reader = newReader();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("params".equals(reader.nextName())) {
+        return reader;
+      }
+      reader.skipValue();
+    }
+    reader.close();
+    return null;
+  }
+
+  /**
+   * Returns the JSON text of the response.
+   */
+  public String getText() {
+    return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : jsonObject.toString();
+  }
+
+  /**
+   * Returns the response as a {@link JsonObject}, decoding it on the first call.
+   */
+  public JsonObject toJsonObject() {
+    if (jsonObject == null) {
+      String line = new String(bytes, StandardCharsets.UTF_8);
+      try {
+        jsonObject = (JsonObject)new JsonParser().parse(line);
+      }
+      catch (JsonSyntaxException e) {
+        // Include the line in the message so that we can better diagnose the problem
+        throw new JsonSyntaxException("Parse server message failed: " + line, e);
+      }
+    }
+    return jsonObject;
+  }
+
+  private JsonReader newReader() {
+    return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+  }
+
+  private String scanEvent() throws IOException {
+    try (JsonReader reader = newReader()) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("event".equals(name) && reader.peek() == JsonToken.STRING) {
+          return reader.nextString();
+        }
+        if ("id".equals(name)) {
+          // responses to requests always have an id, notifications never do
+          return NO_EVENT;
+        }
+        reader.skipValue();
+      }
+    }
+    return NO_EVENT;
+  }
+
+  private static String getEvent(JsonObject jsonObject) {
+    JsonElement eventElement = jsonObject.get("event");
+    if (eventElement == null || !eventElement.isJsonPrimitive()) {
+      return NO_EVENT;
+    }
+    return eventElement.getAsString();
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.AnalysisServerSocket;
+import com.google.dart.server.utilities.logging.Logging;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link AnalysisServerSocket} that records all the traffic of the wrapped socket to a
+ * {@link TrafficRecording} file, so that the session can be replayed later by a
+ * {@link ReplayServerSocket}.
+ *
+ * @coverage dart.server.remote
+ */
+public class RecordingServerSocket implements AnalysisServerSocket {
+  private final AnalysisServerSocket socket;
+  private final File file;
+  private TrafficRecording.Recorder recorder;
+  private RequestSink requestSink;
+  private ResponseStream responseStream;
+
+  public RecordingServerSocket(AnalysisServerSocket socket, File file) {
+    this.socket = socket;
+    this.file = file;
+  }
+
+  @Override
+  public ByteLineReaderStream getErrorStream() {
+    return socket.getErrorStream();
+  }
+
+  @Override
+  public RequestSink getRequestSink() {
+    return requestSink;
+  }
+
+  @Override
+  public ResponseStream getResponseStream() {
+    return responseStream;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return socket.isOpen();
+  }
+
+  @Override
+  public void start() throws Exception {
+    socket.start();
+    recorder = new TrafficRecording.Recorder(file);
+    requestSink = new RecordingRequestSink(socket.getRequestSink(), recorder);
+    responseStream = new RecordingResponseStream(socket.getResponseStream(), recorder);
+  }
+
+  @Override
+  public void stop() {
+    socket.stop();
+    if (recorder != null) {
+      try {
+        recorder.close();
+      }
+      catch (IOException e) {
+        Logging.getLogger().logError("Failed to write " + file, e);
+      }
+      recorder = null;
+    }
+  }
+
+  private static class RecordingRequestSink implements RequestSink {
+    private final RequestSink base;
+    private final TrafficRecording.Recorder recorder;
+
+    RecordingRequestSink(RequestSink base, TrafficRecording.Recorder recorder) {
+      this.base = base;
+      this.recorder = recorder;
+    }
+
+    @Override
+    public void add(JsonObject request) {
+      recorder.write(TrafficRecording.REQUEST, request.toString());
+      base.add(request);
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+      return base.flush();
+    }
+
+    @Override
+    public boolean cancel(String id) {
+      return base.cancel(id);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+      base.setListener(listener);
+    }
+
+    @Override
+    public void close() {
+      base.close();
+    }
+  }
+
+  private static class RecordingResponseStream implements ResponseStream {
+    private final ResponseStream base;
+    private final TrafficRecording.Recorder recorder;
+
+    RecordingResponseStream(ResponseStream base, TrafficRecording.Recorder recorder) {
+      this.base = base;
+      this.recorder = recorder;
+    }
+
+    @Override
+    public void lastRequestProcessed() {
+      base.lastRequestProcessed();
+    }
+
+    @Override
+    public JsonObject take() throws Exception {
+      JsonObject response = base.take();
+      if (response != null) {
+        recorder.write(TrafficRecording.RESPONSE, response.toString());
+      }
+      return response;
+    }
+
+    @Override
+    public RawResponse takeRaw() throws Exception {
+      RawResponse response = base.takeRaw();
+      if (response != null) {
+        recorder.write(TrafficRecording.RESPONSE, response.getText());
+      }
+      return response;
+    }
+  }
+}
@@ -15,7 +15,9 @@ package com.google.dart.server.internal.remote;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.dart.server.*;
 import com.google.dart.server.generated.AnalysisServer;
 import com.google.dart.server.internal.BroadcastAnalysisServerListener;
@@ -29,6 +31,7 @@ import com.google.dart.server.utilities.logging.Logging;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
 import org.dartlang.analysis.server.protocol.*;
 import org.osgi.framework.Version;
 
@@ -36,6 +39,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -82,6 +86,19 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
 
   // Execution domain
   private static final String LAUNCH_DATA_NOTIFICATION_RESULTS = "execution.launchData";
+  /**
+   * A mapping from the per-file notification event names to the analysis services they belong to.
+   */
+  private static final Map<String, String> SUBSCRIBED_NOTIFICATIONS = ImmutableMap.<String, String>builder()
+    .put(ANALYSIS_NOTIFICATION_HIGHTLIGHTS, AnalysisService.HIGHLIGHTS)
+    .put(ANALYSIS_NOTIFICATION_IMPLEMENTED, AnalysisService.IMPLEMENTED)
+    .put(ANALYSIS_NOTIFICATION_NAVIGATION, AnalysisService.NAVIGATION)
+    .put(ANALYSIS_NOTIFICATION_OCCURRENCES, AnalysisService.OCCURRENCES)
+    .put(ANALYSIS_NOTIFICATION_OUTLINE, AnalysisService.OUTLINE)
+    .put(ANALYSIS_NOTIFICATION_OVERRIDES, AnalysisService.OVERRIDES)
+    .put(ANALYSIS_NOTIFICATION_CLOSING_LABELS, AnalysisService.CLOSING_LABELS)
+    .build();
+
   private final AnalysisServerSocket socket;
   private final Object requestSinkLock = new Object();
   private RequestSink requestSink;
@@ -90,6 +107,11 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   private final AtomicLong lastResponseTime = new AtomicLong(0);
   private final AtomicLong lastRequestTime = new AtomicLong(0);
 
+  /**
+   * The latency statistics of requests and notifications, over all server runs.
+   */
+  private final RequestStatistics statistics = new RequestStatistics();
+
   /**
    * The listener that will receive notification when new analysis results become available.
    */
@@ -110,6 +132,16 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   private final Object consumerMapLock = new Object();
 
+  /**
+   * The ids of the cancelled requests that were already sent, their responses are discarded.
+   */
+  private final Set<String> cancelledIds = Sets.newConcurrentHashSet();
+
+  /**
+   * The files that per-file notifications are currently subscribed for.
+   */
+  private final NotificationDispatchTable dispatchTable = new NotificationDispatchTable(SUBSCRIBED_NOTIFICATIONS);
+
   /**
    * The unique ID for the next request.
    */
@@ -246,6 +278,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     if (subscriptions == null) {
       subscriptions = Maps.newHashMap();
     }
+    dispatchTable.setSubscriptions(subscriptions);
     sendRequestToServer(id, RequestUtilities.generateAnalysisSetSubscriptions(id, subscriptions));
   }
 
@@ -406,6 +439,33 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     return socket.isOpen();
   }
 
+  @Override
+  public boolean cancelRequest(Consumer consumer) {
+    String id = null;
+    synchronized (consumerMapLock) {
+      for (Map.Entry<String, Consumer> entry : consumerMap.entrySet()) {
+        if (entry.getValue() == consumer) {
+          id = entry.getKey();
+          break;
+        }
+      }
+      if (id == null) {
+        return false;
+      }
+      consumerMap.remove(id);
+    }
+    statistics.requestDropped(id);
+    boolean dropped;
+    synchronized (requestSinkLock) {
+      dropped = requestSink.cancel(id);
+    }
+    if (!dropped) {
+      // the protocol has no way to cancel a request that the server has already received
+      cancelledIds.add(id);
+    }
+    return true;
+  }
+
   @Override
   public void removeAnalysisServerListener(AnalysisServerListener listener) {
     this.listener.removeListener(listener);
@@ -592,6 +652,90 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     return true;
   }
 
+  /**
+   * Processes the given {@link RawResponse}. Notifications without an interested listener are dropped
+   * before their payload is decoded, and hot notifications are decoded straight from the token
+   * stream when nobody needs to see the response as a {@link JsonObject}.
+   */
+  private void processResponse(RawResponse response) throws Exception {
+    long receivedNanos = System.nanoTime();
+    String event = response.getEvent();
+    if (event == null) {
+      String id = response.getId();
+      if (id != null && !cancelledIds.isEmpty() && !hasResponseListeners() && cancelledIds.remove(id)) {
+        return;
+      }
+      processResponse(response.toJsonObject());
+      if (id != null) {
+        statistics.responseProcessed(id, receivedNanos);
+      }
+      return;
+    }
+    try {
+      processNotification(event, response);
+    }
+    finally {
+      statistics.notificationProcessed(event, response.getSize(), receivedNanos);
+    }
+  }
+
+  private void processNotification(String event, RawResponse response) throws Exception {
+    if (!hasResponseListeners()) {
+      if (!isDispatched(event, response)) {
+        return;
+      }
+      StreamingNotificationProcessor processor = response.getSize() != -1 ? createStreamingProcessor(event) : null;
+      if (processor != null) {
+        JsonReader paramsReader = response.openParams();
+        if (paramsReader != null) {
+          try {
+            processor.process(paramsReader);
+          }
+          finally {
+            paramsReader.close();
+          }
+          return;
+        }
+      }
+    }
+    processResponse(response.toJsonObject());
+  }
+
+  /**
+   * Returns {@code true} if the given notification has to be decoded and dispatched, i.e. there are
+   * listeners and, for per-file notifications, the file is still subscribed.
+   */
+  private boolean isDispatched(String event, RawResponse response) throws Exception {
+    if (!listener.hasListeners()) {
+      return false;
+    }
+    if (!dispatchTable.isTracked(event)) {
+      return true;
+    }
+    String file = response.getParamsFile();
+    return file == null || dispatchTable.isSubscribed(event, file);
+  }
+
+  /**
+   * Returns a {@link StreamingNotificationProcessor} for the given notification kind, or
+   * {@code null} if the notification is only processed from a {@link JsonObject}.
+   */
+  private StreamingNotificationProcessor createStreamingProcessor(String event) {
+    if (event.equals(ANALYSIS_NOTIFICATION_ERRORS)) {
+      return new NotificationAnalysisErrorsProcessor(listener);
+    }
+    if (event.equals(ANALYSIS_NOTIFICATION_HIGHTLIGHTS)) {
+      return new NotificationAnalysisHighlightsProcessor(listener);
+    }
+    if (event.equals(ANALYSIS_NOTIFICATION_NAVIGATION)) {
+      return new NotificationAnalysisNavigationProcessor(listener);
+    }
+    if (event.equals(ANALYSIS_NOTIFICATION_OUTLINE)) {
+      return new NotificationAnalysisOutlineProcessor(listener);
+    }
+    return null;
+  }
+
   private void processResponse(JsonObject response) throws Exception {
     notifyResponseListeners(response);
     // handle notification
@@ -604,6 +748,9 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
       return;
     }
     String idString = idJsonPrimitive.getAsString();
+    if (cancelledIds.remove(idString)) {
+      return;
+    }
     // prepare consumer
     Consumer consumer;
     synchronized (consumerMapLock) {
@@ -740,6 +887,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
   }
 
+  private boolean hasResponseListeners() {
+    synchronized (responseListenerList) {
+      return !responseListenerList.isEmpty();
+    }
+  }
+
   private void notifyResponseListeners(JsonObject response) {
     synchronized (responseListenerList) {
       List<ResponseListener> listeners = ImmutableList.copyOf(responseListenerList);
@@ -773,6 +926,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     synchronized (consumerMapLock) {
       consumerMap.put(id, consumer);
     }
+    statistics.requestSent(id, RequestUtilities.getRequestMethod(request));
     lastRequestTime.set(System.currentTimeMillis());
     synchronized (requestSinkLock) {
       requestSink.add(request);
@@ -782,7 +936,23 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   private void startServer() throws Exception {
     socket.start();
     consumerMap.clear();
+    cancelledIds.clear();
+    statistics.reset();
     requestSink = socket.getRequestSink();
+    requestSink.setListener(new RequestSink.Listener() {
+      @Override
+      public void requestElided(String id) {
+        statistics.requestElided(id);
+        synchronized (consumerMapLock) {
+          consumerMap.remove(id);
+        }
+      }
+
+      @Override
+      public void requestWritten(String id, long writeStartNanos, long flushedNanos) {
+        statistics.requestWritten(id, writeStartNanos, flushedNanos);
+      }
+    });
     responseStream = socket.getResponseStream();
     errorStream = socket.getErrorStream();
     new ServerResponseReaderThread(responseStream).start();
@@ -934,6 +1104,13 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
   }
 
+  /**
+   * Returns the latency statistics of the requests and notifications.
+   */
+  public RequestStatistics getStatistics() {
+    return statistics;
+  }
+
   public long getLastRequestMillis() {
     return lastRequestTime.get();
   }
@@ -998,7 +1175,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     public void run() {
       while (true) {
         try {
-          JsonObject response = stream.take();
+          RawResponse response = stream.takeRaw();
           if (response == null) {
             return;
           }
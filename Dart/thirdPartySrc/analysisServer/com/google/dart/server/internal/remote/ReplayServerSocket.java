@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.common.collect.Maps;
+import com.google.dart.server.AnalysisServerSocket;
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory {@link AnalysisServerSocket} that plays the server side of a
+ * {@link TrafficRecording}, so that the client can be exercised and measured without a Dart SDK.
+ * <p>
+ * Notifications are replayed in the recorded order, either at the recorded pace or as fast as the
+ * client takes them. A recorded response is replayed only after the client has sent the matching
+ * request, the n-th request with a given method matching the n-th recorded one, and gets the id of
+ * the client's request.
+ *
+ * @coverage dart.server.remote
+ */
+public class ReplayServerSocket implements AnalysisServerSocket {
+  private static final RawResponse EOF = RawResponse.fromBytes(new byte[0]);
+  private static final RawResponse REPLAYED = RawResponse.fromBytes(new byte[0]);
+
+  private final TrafficRecording recording;
+  private final boolean recordedPace;
+
+  /**
+   * The recorded request ids, in the recorded order, keyed by method.
+   */
+  private final Map<String, Deque<String>> recordedIds = Maps.newHashMap();
+
+  /**
+   * The ids of the client requests, keyed by the ids of the matching recorded requests.
+   */
+  private final Map<String, String> recordedToClientId = Maps.newHashMap();
+
+  private final BlockingQueue<RawResponse> responseQueue = new LinkedBlockingQueue<RawResponse>();
+  private final CountDownLatch replayed = new CountDownLatch(1);
+  private volatile boolean open;
+  private RequestSink requestSink;
+  private ResponseStream responseStream;
+
+  /**
+   * @param recordedPace {@code true} to replay the messages at the recorded pace, {@code false} to
+   *                     replay them as fast as possible
+   */
+  public ReplayServerSocket(TrafficRecording recording, boolean recordedPace) {
+    this.recording = recording;
+    this.recordedPace = recordedPace;
+  }
+
+  @Override
+  public ByteLineReaderStream getErrorStream() {
+    return null;
+  }
+
+  @Override
+  public RequestSink getRequestSink() {
+    return requestSink;
+  }
+
+  @Override
+  public ResponseStream getResponseStream() {
+    return responseStream;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void start() {
+    for (TrafficRecording.Entry entry : recording.getEntries()) {
+      if (entry.direction == TrafficRecording.REQUEST) {
+        JsonObject request = new JsonParser().parse(entry.json).getAsJsonObject();
+        String method = RequestUtilities.getRequestMethod(request);
+        if (method != null) {
+          getRecordedIds(method).add(RequestUtilities.getId(request));
+        }
+      }
+    }
+    requestSink = new ReplayRequestSink();
+    responseStream = new ReplayResponseStream();
+    open = true;
+    Thread thread = new Thread(this::replay, "ReplayServerSocket");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void stop() {
+    if (open) {
+      open = false;
+      synchronized (recordedToClientId) {
+        recordedToClientId.notifyAll();
+      }
+      responseQueue.add(EOF);
+    }
+  }
+
+  /**
+   * Waits until all the recorded responses and notifications have been taken and processed by the
+   * client.
+   *
+   * @return {@code true} if the replay has completed, {@code false} if the timeout has elapsed
+   */
+  public boolean awaitReplayed(long timeout, TimeUnit unit) throws InterruptedException {
+    return replayed.await(timeout, unit);
+  }
+
+  private Deque<String> getRecordedIds(String method) {
+    Deque<String> ids = recordedIds.get(method);
+    if (ids == null) {
+      ids = new ArrayDeque<String>();
+      recordedIds.put(method, ids);
+    }
+    return ids;
+  }
+
+  private void replay() {
+    List<TrafficRecording.Entry> entries = recording.getEntries();
+    long startNanos = System.nanoTime();
+    for (TrafficRecording.Entry entry : entries) {
+      if (entry.direction != TrafficRecording.RESPONSE) {
+        continue;
+      }
+      if (recordedPace) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(entry.millis) - (System.nanoTime() - startNanos);
+        if (delayNanos > 0) {
+          try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+      RawResponse response = RawResponse.fromBytes(entry.json.getBytes(StandardCharsets.UTF_8));
+      String recordedId;
+      try {
+        recordedId = response.getId();
+      }
+      catch (IOException e) {
+        continue;
+      }
+      if (recordedId != null) {
+        String clientId = awaitClientId(recordedId);
+        if (clientId == null) {
+          return;
+        }
+        JsonObject json = response.toJsonObject();
+        json.addProperty("id", clientId);
+        response = RawResponse.fromBytes(json.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      if (!open) {
+        return;
+      }
+      responseQueue.add(response);
+    }
+    responseQueue.add(REPLAYED);
+  }
+
+  /**
+   * Waits until the client sends the request that matches the recorded request with the given id.
+   * Returns the id of the client request, or {@code null} if the socket has been stopped.
+   */
+  private String awaitClientId(String recordedId) {
+    synchronized (recordedToClientId) {
+      while (open) {
+        String clientId = recordedToClientId.remove(recordedId);
+        if (clientId != null) {
+          return clientId;
+        }
+        try {
+          recordedToClientId.wait();
+        }
+        catch (InterruptedException e) {
+          return null;
+        }
+      }
+      return null;
+    }
+  }
+
+  private class ReplayRequestSink implements RequestSink {
+    private volatile Listener listener;
+
+    @Override
+    public void add(JsonObject request) {
+      Listener listener = this.listener;
+      if (listener != null) {
+        long nanos = System.nanoTime();
+        listener.requestWritten(RequestUtilities.getId(request), nanos, nanos);
+      }
+      String method = RequestUtilities.getRequestMethod(request);
+      synchronized (recordedToClientId) {
+        Deque<String> ids = method != null ? recordedIds.get(method) : null;
+        String recordedId = ids != null ? ids.poll() : null;
+        if (recordedId != null) {
+          recordedToClientId.put(recordedId, RequestUtilities.getId(request));
+          recordedToClientId.notifyAll();
+        }
+      }
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void close() {
+      stop();
+    }
+  }
+
+  private class ReplayResponseStream implements ResponseStream {
+    @Override
+    public void lastRequestProcessed() {
+    }
+
+    @Override
+    public JsonObject take() throws Exception {
+      RawResponse response = takeRaw();
+      return response != null ? response.toJsonObject() : null;
+    }
+
+    @Override
+    public RawResponse takeRaw() throws Exception {
+      RawResponse response = responseQueue.take();
+      if (response == REPLAYED) {
+        replayed.countDown();
+        response = responseQueue.take();
+      }
+      if (response == EOF) {
+        responseQueue.add(EOF);
+        return null;
+      }
+      return response;
+    }
+  }
+}
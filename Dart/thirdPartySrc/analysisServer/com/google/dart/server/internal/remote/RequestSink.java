@@ -15,12 +15,30 @@ package com.google.dart.server.internal.remote;
 
 import com.google.gson.JsonObject;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A destination for remote server requests.
  * 
  * @coverage dart.server.remote
  */
 public interface RequestSink {
+  /**
+   * A listener notified about what happened to the added requests.
+   */
+  interface Listener {
+    /**
+     * The request was coalesced with a later request of the same kind, or cancelled, and will never
+     * be sent to the server.
+     */
+    void requestElided(String id);
+
+    /**
+     * The request was written and flushed. The times are {@link System#nanoTime()} values.
+     */
+    void requestWritten(String id, long writeStartNanos, long flushedNanos);
+  }
+
   /**
    * Put request into the sink.
    * 
@@ -28,6 +46,30 @@ public interface RequestSink {
    */
   void add(JsonObject request);
 
+  /**
+   * Returns a future that completes once every request added before this call has been written to
+   * the communication channel, or will never be written.
+   */
+  default CompletableFuture<Void> flush() {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Drop the request with the given id if it has not been sent yet.
+   *
+   * @return {@code true} if the request will never be sent, {@code false} if it has already been sent
+   */
+  default boolean cancel(String id) {
+    return false;
+  }
+
+  /**
+   * Set the listener to notify about elided and written requests. Sinks that don't track their
+   * requests never notify it.
+   */
+  default void setListener(Listener listener) {
+  }
+
   /**
    * Close the communication channel.
    */
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency statistics of the requests sent to the server and of the notifications received from it.
+ * <p>
+ * The round-trip of each request is split into:
+ * <ul>
+ * <li>enqueue - from the request being added to the request sink until its batch starts being
+ * written,</li>
+ * <li>write - writing and flushing the batch,</li>
+ * <li>server - from the flush until the response is taken from the response stream,</li>
+ * <li>decode - decoding the response and notifying the consumer.</li>
+ * </ul>
+ * For notifications, the payload size and the decode time are recorded.
+ *
+ * @coverage dart.server.remote
+ */
+public class RequestStatistics {
+  private static final double[] PERCENTILES = {50, 90, 99};
+
+  /**
+   * The statistics of a single request or notification kind.
+   */
+  public static class MethodStatistics {
+    public final LatencyHistogram enqueue = new LatencyHistogram();
+    public final LatencyHistogram write = new LatencyHistogram();
+    public final LatencyHistogram server = new LatencyHistogram();
+    public final LatencyHistogram decode = new LatencyHistogram();
+    public final LatencyHistogram payloadBytes = new LatencyHistogram();
+  }
+
+  private static class PendingRequest {
+    private final String method;
+    private final long sentNanos;
+    private volatile long writeStartNanos;
+    private volatile long flushedNanos;
+
+    PendingRequest(String method, long sentNanos) {
+      this.method = method;
+      this.sentNanos = sentNanos;
+    }
+  }
+
+  private final ConcurrentMap<String, PendingRequest> pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
+  private final ConcurrentMap<String, MethodStatistics> requests = new ConcurrentHashMap<String, MethodStatistics>();
+  private final ConcurrentMap<String, MethodStatistics> notifications = new ConcurrentHashMap<String, MethodStatistics>();
+  private final AtomicInteger elidedCount = new AtomicInteger();
+
+  /**
+   * Records that the request with the given id has been added to the request sink.
+   */
+  public void requestSent(String id, String method) {
+    if (id != null && method != null) {
+      pendingRequests.put(id, new PendingRequest(method, System.nanoTime()));
+    }
+  }
+
+  /**
+   * Records that the request with the given id has been written and flushed.
+   */
+  public void requestWritten(String id, long writeStartNanos, long flushedNanos) {
+    PendingRequest request = pendingRequests.get(id);
+    if (request != null) {
+      request.writeStartNanos = writeStartNanos;
+      request.flushedNanos = flushedNanos;
+    }
+  }
+
+  /**
+   * Forgets the request with the given id, which will never get a response.
+   */
+  public void requestDropped(String id) {
+    pendingRequests.remove(id);
+  }
+
+  /**
+   * Records that the request with the given id has never been written to the server, because it was
+   * coalesced with a later request of the same kind or cancelled before being written.
+   */
+  public void requestElided(String id) {
+    elidedCount.incrementAndGet();
+    pendingRequests.remove(id);
+  }
+
+  /**
+   * Records that the response to the request with the given id, taken from the response stream at
+   * {@code receivedNanos}, has been processed.
+   */
+  public void responseProcessed(String id, long receivedNanos) {
+    PendingRequest request = pendingRequests.remove(id);
+    if (request == null || request.flushedNanos == 0) {
+      return;
+    }
+    MethodStatistics statistics = getStatistics(requests, request.method);
+    statistics.enqueue.recordNanos(request.writeStartNanos - request.sentNanos);
+    statistics.write.recordNanos(request.flushedNanos - request.writeStartNanos);
+    statistics.server.recordNanos(receivedNanos - request.flushedNanos);
+    statistics.decode.recordNanos(System.nanoTime() - receivedNanos);
+  }
+
+  /**
+   * Records that a notification of the given size, or {@code -1} if unknown, taken from the response
+   * stream at {@code receivedNanos}, has been processed.
+   */
+  public void notificationProcessed(String event, int size, long receivedNanos) {
+    MethodStatistics statistics = getStatistics(notifications, event);
+    statistics.decode.recordNanos(System.nanoTime() - receivedNanos);
+    if (size >= 0) {
+      statistics.payloadBytes.record(size);
+    }
+  }
+
+  /**
+   * Forgets all pending requests, which will never get a response from a stopped or crashed server.
+   * The collected statistics are kept.
+   */
+  public void reset() {
+    pendingRequests.clear();
+  }
+
+  /**
+   * Returns the number of requests sent, but not yet responded.
+   */
+  public int getInFlightCount() {
+    return pendingRequests.size();
+  }
+
+  /**
+   * Returns the number of requests that were coalesced with a later request of the same kind or
+   * cancelled, and never written to the server.
+   */
+  public int getElidedCount() {
+    return elidedCount.get();
+  }
+
+  /**
+   * Returns the statistics of the requests, keyed by method.
+   */
+  public Map<String, MethodStatistics> getRequestStatistics() {
+    return new TreeMap<String, MethodStatistics>(requests);
+  }
+
+  /**
+   * Returns the statistics of the notifications, keyed by event.
+   */
+  public Map<String, MethodStatistics> getNotificationStatistics() {
+    return new TreeMap<String, MethodStatistics>(notifications);
+  }
+
+  /**
+   * Returns a human-readable report of all the statistics. Latencies are in microseconds.
+   */
+  public String getReport() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("In-flight requests: ").append(getInFlightCount()).append('\n');
+    sb.append("Elided requests: ").append(getElidedCount()).append('\n');
+    sb.append("\nRequests (count, then mean/p50/p90/p99/max in us)\n");
+    for (Map.Entry<String, MethodStatistics> entry : getRequestStatistics().entrySet()) {
+      MethodStatistics statistics = entry.getValue();
+      sb.append(entry.getKey()).append(" x").append(statistics.server.getCount()).append('\n');
+      appendHistogram(sb, "enqueue", statistics.enqueue);
+      appendHistogram(sb, "write", statistics.write);
+      appendHistogram(sb, "server", statistics.server);
+      appendHistogram(sb, "decode", statistics.decode);
+    }
+    sb.append("\nNotifications (count, then mean/p50/p90/p99/max)\n");
+    for (Map.Entry<String, MethodStatistics> entry : getNotificationStatistics().entrySet()) {
+      MethodStatistics statistics = entry.getValue();
+      sb.append(entry.getKey()).append(" x").append(statistics.decode.getCount()).append('\n');
+      appendHistogram(sb, "decode us", statistics.decode);
+      appendHistogram(sb, "bytes", statistics.payloadBytes);
+    }
+    return sb.toString();
+  }
+
+  private static void appendHistogram(StringBuilder sb, String name, LatencyHistogram histogram) {
+    if (histogram.getCount() == 0) {
+      return;
+    }
+    sb.append("  ").append(name).append(": ").append(histogram.getMean());
+    for (double percentile : PERCENTILES) {
+      sb.append('/').append(histogram.getPercentile(percentile));
+    }
+    sb.append('/').append(histogram.getMax()).append('\n');
+  }
+
+  private static MethodStatistics getStatistics(ConcurrentMap<String, MethodStatistics> map, String key) {
+    MethodStatistics statistics = map.get(key);
+    if (statistics == null) {
+      statistics = new MethodStatistics();
+      MethodStatistics existing = map.putIfAbsent(key, statistics);
+      if (existing != null) {
+        statistics = existing;
+      }
+    }
+    return statistics;
+  }
+}
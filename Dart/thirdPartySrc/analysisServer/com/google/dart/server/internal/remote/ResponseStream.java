@@ -30,4 +30,13 @@ public interface ResponseStream {
    * Takes the the next response from the stream. Blocks if no response available.
    */
   JsonObject take() throws Exception;
+
+  /**
+   * Takes the next response from the stream without necessarily decoding it. Blocks if no response
+   * available. Returns {@code null} at the end of the stream.
+   */
+  default RawResponse takeRaw() throws Exception {
+    JsonObject response = take();
+    return response != null ? RawResponse.fromJsonObject(response) : null;
+  }
 }
@@ -22,6 +22,9 @@ import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A remote server socket over standard input and output.
@@ -53,6 +56,12 @@ public class StdioServerSocket implements AnalysisServerSocket {
    */
   private String clientVersion;
 
+  /**
+   * {@code true} if responses should be read by a {@link StreamingResponseStream} rather than by a
+   * {@link ByteResponseStream}.
+   */
+  private boolean useStreamingDecoder;
+
   public StdioServerSocket(String runtimePath, List<String> additionalVmArguments,
       String analysisServerPath, List<String> additionalServerArguments,
       DebugPrintStream debugStream) {
@@ -109,6 +118,15 @@ public class StdioServerSocket implements AnalysisServerSocket {
     clientVersion = version;
   }
 
+  /**
+   * Set whether responses should be read by a {@link StreamingResponseStream}, which lets hot
+   * notifications be decoded without building JSON trees. Must be set before the server has been
+   * started.
+   */
+  public void setUseStreamingDecoder(boolean useStreamingDecoder) {
+    this.useStreamingDecoder = useStreamingDecoder;
+  }
+
   @Override
   public void start() throws Exception {
     String[] arguments = computeProcessArguments();
@@ -128,13 +146,15 @@ public class StdioServerSocket implements AnalysisServerSocket {
     ProcessBuilder processBuilder = new ProcessBuilder(arguments);
     process = processBuilder.start();
     requestSink = new ByteRequestSink(process.getOutputStream(), debugStream);
-    responseStream = new ByteResponseStream(process.getInputStream(), debugStream, () -> requestSink.close());
+    responseStream = useStreamingDecoder
+                     ? new StreamingResponseStream(process.getInputStream(), debugStream, () -> requestSink.close())
+                     : new ByteResponseStream(process.getInputStream(), debugStream, () -> requestSink.close());
     errorStream = new ByteLineReaderStream(process.getErrorStream());
   }
 
   /**
-   * Wait up to 5 seconds for process to gracefully exit, then forcibly terminate the process if it
-   * is still running.
+   * Wait up to 5 seconds for the pending requests to be written and for the process to gracefully
+   * exit, then forcibly terminate the process if it is still running.
    */
   @Override
   public void stop() {
@@ -144,22 +164,25 @@ public class StdioServerSocket implements AnalysisServerSocket {
     final Process processToStop = process;
     process = null;
     long endTime = System.currentTimeMillis() + 5000;
-    while (System.currentTimeMillis() < endTime) {
-      try {
+    try {
+      if (requestSink != null) {
+        // let the shutdown request reach the server before waiting for it to exit
+        requestSink.flush().get(5000, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+      //$FALL-THROUGH$
+    }
+    try {
+      if (processToStop.waitFor(Math.max(0, endTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
         int exit = processToStop.exitValue();
         if (exit != 0) {
           Logging.getLogger().logInformation(
               "Non-zero exit code: " + exit + " for\n   " + analysisServerPath);
         }
         return;
-      } catch (IllegalThreadStateException e) {
-        //$FALL-THROUGH$
-      }
-      try {
-        Thread.sleep(20);
-      } catch (InterruptedException e) {
-        //$FALL-THROUGH$
       }
+    } catch (InterruptedException e) {
+      //$FALL-THROUGH$
     }
     processToStop.destroy();
     Logging.getLogger().logInformation("Terminated " + analysisServerPath);
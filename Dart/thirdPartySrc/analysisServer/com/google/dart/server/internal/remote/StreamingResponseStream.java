@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * An {@link InputStream} based implementation of {@link ResponseStream} that does not decode lines
+ * into {@link String}s or {@link JsonObject}s up front. Lines are split in a reused byte buffer and
+ * handed out as {@link RawResponse}s, so that hot notifications can be decoded with a token reader
+ * directly into protocol objects. Each line must contain exactly one complete JSON object.
+ *
+ * @coverage dart.server.remote
+ */
+public class StreamingResponseStream implements ResponseStream {
+  private static final RawResponse EOF_RESPONSE = RawResponse.fromBytes(new byte[0]);
+
+  private class LinesReaderThread extends Thread {
+    private final byte[] readBuffer = new byte[64 * 1024];
+    private byte[] lineBuffer = new byte[64 * 1024];
+    private int lineLength;
+
+    public LinesReaderThread() {
+      setName("StreamingResponseStream.LinesReaderThread");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        int count;
+        while ((count = stream.read(readBuffer)) != -1) {
+          int lineStart = 0;
+          for (int i = 0; i < count; i++) {
+            if (readBuffer[i] == '\n') {
+              appendToLine(lineStart, i);
+              processLine();
+              lineStart = i + 1;
+            }
+          }
+          appendToLine(lineStart, count);
+        }
+      }
+      catch (IOException e) {
+        // treat as EOF
+      }
+      if (lineLength > 0) {
+        processLine();
+      }
+      responseQueue.add(EOF_RESPONSE);
+      if (onStreamEndRunnable != null) {
+        onStreamEndRunnable.run();
+      }
+    }
+
+    private void appendToLine(int from, int to) {
+      int length = to - from;
+      if (length <= 0) {
+        return;
+      }
+      if (lineLength + length > lineBuffer.length) {
+        lineBuffer = Arrays.copyOf(lineBuffer, Math.max(lineBuffer.length * 2, lineLength + length));
+      }
+      System.arraycopy(readBuffer, from, lineBuffer, lineLength, length);
+      lineLength += length;
+    }
+
+    private void processLine() {
+      int length = lineLength;
+      lineLength = 0;
+      if (length > 0 && lineBuffer[length - 1] == '\r') {
+        length--;
+      }
+      // debug output
+      if (debugStream != null) {
+        String text = new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+        debugStream.println(System.currentTimeMillis() + " <= " + text);
+      }
+      // ignore non-JSON (debug) lines
+      if (length == 0 || lineBuffer[0] != '{') {
+        return;
+      }
+      responseQueue.add(RawResponse.fromBytes(Arrays.copyOf(lineBuffer, length)));
+    }
+  }
+
+  /**
+   * The {@link InputStream} to read JSON lines from.
+   */
+  private final InputStream stream;
+
+  /**
+   * The {@link DebugPrintStream} to print all lines to.
+   */
+  private final DebugPrintStream debugStream;
+  private final Runnable onStreamEndRunnable;
+
+  /**
+   * The queue of undecoded responses.
+   */
+  private final BlockingQueue<RawResponse> responseQueue = new LinkedBlockingQueue<RawResponse>();
+
+  /**
+   * Initializes a newly created response stream.
+   *
+   * @param stream the byte stream to read JSON lines from
+   * @param debugStream the {@link DebugPrintStream} to print all lines to, may be {@code null}
+   */
+  public StreamingResponseStream(InputStream stream, DebugPrintStream debugStream, Runnable onStreamEndRunnable) {
+    this.stream = stream;
+    this.debugStream = debugStream;
+    this.onStreamEndRunnable = onStreamEndRunnable;
+    new LinesReaderThread().start();
+  }
+
+  @Override
+  public void lastRequestProcessed() {
+  }
+
+  @Override
+  public JsonObject take() throws Exception {
+    RawResponse response = takeRaw();
+    return response != null ? response.toJsonObject() : null;
+  }
+
+  @Override
+  public RawResponse takeRaw() throws Exception {
+    RawResponse response = responseQueue.take();
+    if (response == EOF_RESPONSE) {
+      responseQueue.add(response);
+      return null;
+    }
+    return response;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The traffic between a client and the analysis server, as recorded by a
+ * {@link RecordingServerSocket} and replayed by a {@link ReplayServerSocket}.
+ * <p>
+ * A recording is a gzipped UTF-8 text file with one message per line:
+ * <pre>
+ * &lt;milliseconds since start&gt; &lt;'&gt;' for requests, '&lt;' for responses and notifications&gt; &lt;JSON&gt;
+ * </pre>
+ *
+ * @coverage dart.server.remote
+ */
+public class TrafficRecording {
+  public static final char REQUEST = '>';
+  public static final char RESPONSE = '<';
+
+  /**
+   * A single recorded message.
+   */
+  public static class Entry {
+    public final long millis;
+    public final char direction;
+    public final String json;
+
+    public Entry(long millis, char direction, String json) {
+      this.millis = millis;
+      this.direction = direction;
+      this.json = json;
+    }
+  }
+
+  /**
+   * Writes messages to a recording file. Messages may be written from any thread.
+   */
+  public static class Recorder implements Closeable {
+    private final Writer writer;
+    private final long startMillis = System.currentTimeMillis();
+
+    public Recorder(File file) throws IOException {
+      writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)),
+                                                         StandardCharsets.UTF_8));
+    }
+
+    public synchronized void write(char direction, String json) {
+      try {
+        writer.write(Long.toString(System.currentTimeMillis() - startMillis));
+        writer.write(' ');
+        writer.write(direction);
+        writer.write(' ');
+        writer.write(json);
+        writer.write('\n');
+      }
+      catch (IOException e) {
+        // recording is best effort, the session itself must not fail
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      writer.close();
+    }
+  }
+
+  private final List<Entry> entries;
+
+  private TrafficRecording(List<Entry> entries) {
+    this.entries = Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Reads the recording from the given file.
+   */
+  public static TrafficRecording read(File file) throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)),
+                                                                          StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int space = line.indexOf(' ');
+        if (space == -1 || line.length() < space + 3) {
+          continue;
+        }
+        entries.add(new Entry(Long.parseLong(line.substring(0, space)), line.charAt(space + 1), line.substring(space + 3)));
+      }
+    }
+    return new TrafficRecording(entries);
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+}
@@ -16,15 +16,18 @@ package com.google.dart.server.internal.remote.processor;
 import com.google.dart.server.AnalysisServerListener;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import org.dartlang.analysis.server.protocol.AnalysisError;
 
+import java.util.List;
+
 /**
  * Processor for "analysis.errors" notification.
  * 
  * @coverage dart.server.remote
  */
-public class NotificationAnalysisErrorsProcessor extends NotificationProcessor {
+public class NotificationAnalysisErrorsProcessor extends NotificationProcessor implements StreamingNotificationProcessor {
 
   public NotificationAnalysisErrorsProcessor(AnalysisServerListener listener) {
     super(listener);
@@ -42,4 +45,26 @@ public class NotificationAnalysisErrorsProcessor extends NotificationProcessor {
     // notify listener
     getListener().computedErrors(file, AnalysisError.fromJsonArray(errorsElement.getAsJsonArray()));
   }
+
+  @Override
+  public void process(JsonReader paramsReader) throws Exception {
+    String file = null;
+    List<AnalysisError> errors = AnalysisError.EMPTY_LIST;
+    paramsReader.beginObject();
+    while (paramsReader.hasNext()) {
+      String name = paramsReader.nextName();
+      if ("file".equals(name)) {
+        file = paramsReader.nextString();
+      }
+      else if ("errors".equals(name)) {
+        errors = StreamingProtocolDecoder.readAnalysisErrors(paramsReader);
+      }
+      else {
+        paramsReader.skipValue();
+      }
+    }
+    paramsReader.endObject();
+    // notify listener
+    getListener().computedErrors(file, errors);
+  }
 }
@@ -15,6 +15,7 @@ package com.google.dart.server.internal.remote.processor;
 
 import com.google.dart.server.AnalysisServerListener;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import org.dartlang.analysis.server.protocol.HighlightRegion;
 
@@ -25,7 +26,7 @@ import java.util.List;
  * 
  * @coverage dart.server.remote
  */
-public class NotificationAnalysisHighlightsProcessor extends NotificationProcessor {
+public class NotificationAnalysisHighlightsProcessor extends NotificationProcessor implements StreamingNotificationProcessor {
 
   public NotificationAnalysisHighlightsProcessor(AnalysisServerListener listener) {
     super(listener);
@@ -42,4 +43,26 @@ public class NotificationAnalysisHighlightsProcessor extends NotificationProcess
     // notify listener
     getListener().computedHighlights(file, regions);
   }
+
+  @Override
+  public void process(JsonReader paramsReader) throws Exception {
+    String file = null;
+    List<HighlightRegion> regions = HighlightRegion.EMPTY_LIST;
+    paramsReader.beginObject();
+    while (paramsReader.hasNext()) {
+      String name = paramsReader.nextName();
+      if ("file".equals(name)) {
+        file = paramsReader.nextString();
+      }
+      else if ("regions".equals(name)) {
+        regions = StreamingProtocolDecoder.readHighlightRegions(paramsReader);
+      }
+      else {
+        paramsReader.skipValue();
+      }
+    }
+    paramsReader.endObject();
+    // notify listener
+    getListener().computedHighlights(file, regions);
+  }
 }
@@ -14,8 +14,10 @@
 package com.google.dart.server.internal.remote.processor;
 
 import com.google.dart.server.AnalysisServerListener;
+import com.google.dart.server.utilities.general.StringUtilities;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import org.dartlang.analysis.server.protocol.NavigationRegion;
 import org.dartlang.analysis.server.protocol.NavigationTarget;
@@ -27,7 +29,7 @@ import java.util.List;
  * 
  * @coverage dart.server.remote
  */
-public class NotificationAnalysisNavigationProcessor extends NotificationProcessor {
+public class NotificationAnalysisNavigationProcessor extends NotificationProcessor implements StreamingNotificationProcessor {
   public NotificationAnalysisNavigationProcessor(AnalysisServerListener listener) {
     super(listener);
   }
@@ -54,4 +56,41 @@ public class NotificationAnalysisNavigationProcessor extends NotificationProcess
     // notify listener
     getListener().computedNavigation(file, regions);
   }
+
+  @Override
+  public void process(JsonReader paramsReader) throws Exception {
+    String file = null;
+    String[] targetFiles = StringUtilities.EMPTY_ARRAY;
+    List<NavigationTarget> targets = NavigationTarget.EMPTY_LIST;
+    List<NavigationRegion> regions = NavigationRegion.EMPTY_LIST;
+    paramsReader.beginObject();
+    while (paramsReader.hasNext()) {
+      String name = paramsReader.nextName();
+      if ("file".equals(name)) {
+        file = paramsReader.nextString();
+      }
+      else if ("files".equals(name)) {
+        targetFiles = StreamingProtocolDecoder.readStringArray(paramsReader);
+      }
+      else if ("targets".equals(name)) {
+        targets = StreamingProtocolDecoder.readNavigationTargets(paramsReader);
+      }
+      else if ("regions".equals(name)) {
+        regions = StreamingProtocolDecoder.readNavigationRegions(paramsReader);
+      }
+      else {
+        paramsReader.skipValue();
+      }
+    }
+    paramsReader.endObject();
+    // indexes may only be resolved once all arrays have been read
+    for (NavigationTarget target : targets) {
+      target.lookupFile(targetFiles);
+    }
+    for (NavigationRegion region : regions) {
+      region.lookupTargets(targets);
+    }
+    // notify listener
+    getListener().computedNavigation(file, regions);
+  }
 }
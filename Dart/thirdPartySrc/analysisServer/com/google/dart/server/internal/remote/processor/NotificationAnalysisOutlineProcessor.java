@@ -15,6 +15,7 @@ package com.google.dart.server.internal.remote.processor;
 
 import com.google.dart.server.AnalysisServerListener;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import org.dartlang.analysis.server.protocol.Outline;
 
@@ -23,7 +24,7 @@ import org.dartlang.analysis.server.protocol.Outline;
  * 
  * @coverage dart.server.remote
  */
-public class NotificationAnalysisOutlineProcessor extends NotificationProcessor {
+public class NotificationAnalysisOutlineProcessor extends NotificationProcessor implements StreamingNotificationProcessor {
 
   public NotificationAnalysisOutlineProcessor(AnalysisServerListener listener) {
     super(listener);
@@ -41,4 +42,25 @@ public class NotificationAnalysisOutlineProcessor extends NotificationProcessor
     getListener().computedOutline(file, Outline.fromJson(null, outlineObject));
   }
 
+  @Override
+  public void process(JsonReader paramsReader) throws Exception {
+    String file = null;
+    Outline outline = null;
+    paramsReader.beginObject();
+    while (paramsReader.hasNext()) {
+      String name = paramsReader.nextName();
+      if ("file".equals(name)) {
+        file = paramsReader.nextString();
+      }
+      else if ("outline".equals(name)) {
+        outline = StreamingProtocolDecoder.readOutline(null, paramsReader);
+      }
+      else {
+        paramsReader.skipValue();
+      }
+    }
+    paramsReader.endObject();
+    // notify listener
+    getListener().computedOutline(file, outline);
+  }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote.processor;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * A {@link NotificationProcessor} that can also decode its notification straight from a token
+ * stream, without building a {@link com.google.gson.JsonObject} tree first.
+ *
+ * @coverage dart.server.remote
+ */
+public interface StreamingNotificationProcessor {
+  /**
+   * Process the notification parameters and notify the listener. The given reader is positioned at
+   * the value of the "params" key.
+   */
+  void process(JsonReader paramsReader) throws Exception;
+}
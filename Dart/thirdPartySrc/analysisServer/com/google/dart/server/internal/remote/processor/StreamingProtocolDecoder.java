@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote.processor;
+
+import com.google.dart.server.utilities.general.StringUtilities;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.dartlang.analysis.server.protocol.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes protocol objects directly from a {@link JsonReader}, without building an intermediate
+ * {@link com.google.gson.JsonElement} tree. The produced objects are equal to the ones produced by
+ * the corresponding {@code fromJson} methods. Keys may come in any order, unknown keys are skipped.
+ *
+ * @coverage dart.server.remote
+ */
+public final class StreamingProtocolDecoder {
+  private StreamingProtocolDecoder() {
+  }
+
+  public static List<AnalysisError> readAnalysisErrors(JsonReader reader) throws IOException {
+    List<AnalysisError> errors = new ArrayList<AnalysisError>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      errors.add(readAnalysisError(reader));
+    }
+    reader.endArray();
+    return errors;
+  }
+
+  public static AnalysisError readAnalysisError(JsonReader reader) throws IOException {
+    String severity = null;
+    String type = null;
+    Location location = null;
+    String message = null;
+    String correction = null;
+    String code = null;
+    Boolean hasFix = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("severity".equals(name)) {
+        severity = reader.nextString();
+      }
+      else if ("type".equals(name)) {
+        type = reader.nextString();
+      }
+      else if ("location".equals(name)) {
+        location = readLocation(reader);
+      }
+      else if ("message".equals(name)) {
+        message = reader.nextString();
+      }
+      else if ("correction".equals(name)) {
+        correction = readNullableString(reader);
+      }
+      else if ("code".equals(name)) {
+        code = readNullableString(reader);
+      }
+      else if ("hasFix".equals(name)) {
+        hasFix = reader.nextBoolean();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new AnalysisError(severity, type, location, message, correction, code, hasFix);
+  }
+
+  public static Element readElement(JsonReader reader) throws IOException {
+    String kind = null;
+    String name = null;
+    Location location = null;
+    int flags = 0;
+    String parameters = null;
+    String returnType = null;
+    String typeParameters = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      if ("kind".equals(key)) {
+        kind = reader.nextString();
+      }
+      else if ("name".equals(key)) {
+        name = reader.nextString();
+      }
+      else if ("location".equals(key)) {
+        location = readLocation(reader);
+      }
+      else if ("flags".equals(key)) {
+        flags = reader.nextInt();
+      }
+      else if ("parameters".equals(key)) {
+        parameters = readNullableString(reader);
+      }
+      else if ("returnType".equals(key)) {
+        returnType = readNullableString(reader);
+      }
+      else if ("typeParameters".equals(key)) {
+        typeParameters = readNullableString(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Element(kind, name, location, flags, parameters, returnType, typeParameters);
+  }
+
+  public static List<HighlightRegion> readHighlightRegions(JsonReader reader) throws IOException {
+    List<HighlightRegion> regions = new ArrayList<HighlightRegion>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String type = null;
+      int offset = 0;
+      int length = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("type".equals(name)) {
+          type = reader.nextString();
+        }
+        else if ("offset".equals(name)) {
+          offset = reader.nextInt();
+        }
+        else if ("length".equals(name)) {
+          length = reader.nextInt();
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      regions.add(new HighlightRegion(type, offset, length));
+    }
+    reader.endArray();
+    return regions;
+  }
+
+  public static int[] readIntArray(JsonReader reader) throws IOException {
+    int[] ints = new int[4];
+    int count = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (count == ints.length) {
+        ints = Arrays.copyOf(ints, count * 2);
+      }
+      ints[count++] = reader.nextInt();
+    }
+    reader.endArray();
+    return count == ints.length ? ints : Arrays.copyOf(ints, count);
+  }
+
+  public static Location readLocation(JsonReader reader) throws IOException {
+    String file = null;
+    int offset = 0;
+    int length = 0;
+    int startLine = 0;
+    int startColumn = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("file".equals(name)) {
+        file = reader.nextString();
+      }
+      else if ("offset".equals(name)) {
+        offset = reader.nextInt();
+      }
+      else if ("length".equals(name)) {
+        length = reader.nextInt();
+      }
+      else if ("startLine".equals(name)) {
+        startLine = reader.nextInt();
+      }
+      else if ("startColumn".equals(name)) {
+        startColumn = reader.nextInt();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Location(file, offset, length, startLine, startColumn);
+  }
+
+  public static List<NavigationRegion> readNavigationRegions(JsonReader reader) throws IOException {
+    List<NavigationRegion> regions = new ArrayList<NavigationRegion>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      int offset = 0;
+      int length = 0;
+      int[] targets = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("offset".equals(name)) {
+          offset = reader.nextInt();
+        }
+        else if ("length".equals(name)) {
+          length = reader.nextInt();
+        }
+        else if ("targets".equals(name)) {
+          targets = readIntArray(reader);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      regions.add(new NavigationRegion(offset, length, targets != null ? targets : new int[0]));
+    }
+    reader.endArray();
+    return regions;
+  }
+
+  public static List<NavigationTarget> readNavigationTargets(JsonReader reader) throws IOException {
+    List<NavigationTarget> targets = new ArrayList<NavigationTarget>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String kind = null;
+      int fileIndex = 0;
+      int offset = 0;
+      int length = 0;
+      int startLine = 0;
+      int startColumn = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("kind".equals(name)) {
+          kind = reader.nextString();
+        }
+        else if ("fileIndex".equals(name)) {
+          fileIndex = reader.nextInt();
+        }
+        else if ("offset".equals(name)) {
+          offset = reader.nextInt();
+        }
+        else if ("length".equals(name)) {
+          length = reader.nextInt();
+        }
+        else if ("startLine".equals(name)) {
+          startLine = reader.nextInt();
+        }
+        else if ("startColumn".equals(name)) {
+          startColumn = reader.nextInt();
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      targets.add(new NavigationTarget(kind, fileIndex, offset, length, startLine, startColumn));
+    }
+    reader.endArray();
+    return targets;
+  }
+
+  /**
+   * Reads an {@link Outline} and its children. The node is created before its keys are read, so
+   * that children can reference their parent regardless of the key order.
+   */
+  public static Outline readOutline(Outline parent, JsonReader reader) throws IOException {
+    Outline outline = new Outline(parent, null, 0, 0);
+    List<Outline> children = new ArrayList<Outline>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("element".equals(name)) {
+        outline.setElement(readElement(reader));
+      }
+      else if ("offset".equals(name)) {
+        outline.setOffset(reader.nextInt());
+      }
+      else if ("length".equals(name)) {
+        outline.setLength(reader.nextInt());
+      }
+      else if ("children".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          children.add(readOutline(outline, reader));
+        }
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    outline.setChildren(children);
+    return outline;
+  }
+
+  public static String[] readStringArray(JsonReader reader) throws IOException {
+    List<String> strings = new ArrayList<String>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      strings.add(reader.nextString());
+    }
+    reader.endArray();
+    return strings.isEmpty() ? StringUtilities.EMPTY_ARRAY : strings.toArray(new String[strings.size()]);
+  }
+
+  private static String readNullableString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+}
@@ -986,9 +986,9 @@ public class RequestUtilities {
   }
 
   /**
-   * Returns the request method, or {@code null}.
+   * Return the method of the given request, or {@code null} if it has no method.
    */
-  private static String getRequestMethod(JsonObject request) {
+  public static String getRequestMethod(JsonObject request) {
     JsonElement child = request.get(METHOD);
     if (child instanceof JsonPrimitive) {
       return child.getAsString();
@@ -1,9 +1,12 @@
 package com.intellij.flex;
 
+import com.intellij.flex.bc.FlexCompilationManagerTest;
 import com.intellij.flex.bc.FlexCompilerConfigTest;
+import com.intellij.flex.bc.FlexCompilerDependenciesCacheTest;
 import com.intellij.flex.bc.FlexProjectConfigTest;
 import com.intellij.flex.codeInsight.*;
 import com.intellij.flex.completion.*;
+import com.intellij.flex.debug.FdbOutputScannerTest;
 import com.intellij.flex.editor.FlexEditorTest;
 import com.intellij.flex.editor.FlexExtendSelectionTest;
 import com.intellij.flex.editor.FlexLiveTemplatesTest;
@@ -24,6 +27,9 @@ import com.intellij.flex.refactoring.*;
 import com.intellij.flex.resolver.ActionScriptResolveTest;
 import com.intellij.flex.resolver.FlexCssNavigationTest;
 import com.intellij.flex.uml.FlashUmlTest;
+import com.intellij.jps.flex.build.FlexCompilerFrameTest;
+import com.intellij.jps.flex.build.JpsBuiltInFlexCompilerHandlerTest;
+import com.intellij.lang.javascript.flex.debug.FdbCommandPipelineTest;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -35,8 +41,12 @@ public class FlexTestSuite extends TestCase {
     final TestSuite testSuite = new TestSuite(FlexTestSuite.class.getSimpleName());
 
     // com.intellij.flex.bc.*
+    testSuite.addTestSuite(FlexCompilationManagerTest.class);
     testSuite.addTestSuite(FlexCompilerConfigTest.class);
+    testSuite.addTestSuite(FlexCompilerDependenciesCacheTest.class);
     testSuite.addTestSuite(FlexProjectConfigTest.class);
+    testSuite.addTestSuite(FlexCompilerFrameTest.class);
+    testSuite.addTestSuite(JpsBuiltInFlexCompilerHandlerTest.class);
 
     // com.intellij.flex.codeInsight.*
     testSuite.addTestSuite(ActionScriptRearrangerTest.class);
@@ -56,6 +66,10 @@ public class FlexTestSuite extends TestCase {
     testSuite.addTestSuite(FlexCompletionTest.class);
     testSuite.addTestSuite(FlexCssCompletionTest.class);
 
+    //com.intellij.flex.debug.*
+    testSuite.addTestSuite(FdbOutputScannerTest.class);
+    testSuite.addTestSuite(FdbCommandPipelineTest.class);
+
     //com.intellij.flex.editor.*
     testSuite.addTestSuite(FlexEditorTest.class);
     testSuite.addTestSuite(FlexExtendSelectionTest.class);
@@ -0,0 +1,193 @@
+package com.intellij.flex.bc;
+
+import com.intellij.javascript.flex.css.FlexStylesIndexableSetContributor;
+import com.intellij.lang.javascript.flex.FlexBundle;
+import com.intellij.lang.javascript.flex.FlexModuleType;
+import com.intellij.lang.javascript.flex.build.FlexCompilationManager;
+import com.intellij.lang.javascript.flex.build.FlexCompilationTask;
+import com.intellij.lang.javascript.flex.build.FlexCompilerHandler;
+import com.intellij.lang.javascript.flex.build.FlexCompilerProjectConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.ModifiableFlexBuildConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.impl.Factory;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompilerMessageCategory;
+import com.intellij.openapi.module.ModuleType;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.impl.VfsRootAccess;
+import com.intellij.testFramework.PlatformTestCase;
+import com.intellij.util.containers.ContainerUtil;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static com.intellij.openapi.vfs.VfsUtilCore.convertFromUrl;
+import static com.intellij.openapi.vfs.VfsUtilCore.urlToPath;
+
+public class FlexCompilationManagerTest extends PlatformTestCase {
+
+  private final List<String> myEvents = new ArrayList<>();
+  private final List<String> myMessages = new ArrayList<>();
+  private final ProgressIndicatorBase myProgressIndicator = new ProgressIndicatorBase();
+  private CompileContext myCompileContext;
+  private String myOutputFolder;
+
+  @Override
+  protected void setUp() throws Exception {
+    VfsRootAccess.allowRootAccess(getTestRootDisposable(),
+                                  urlToPath(convertFromUrl(FlexStylesIndexableSetContributor.class.getResource("FlexStyles.as"))));
+    super.setUp();
+
+    // output files are never created, so the dependencies cache always reports tasks as not compiled yet
+    myOutputFolder = FileUtil.toSystemIndependentName(new File(createTempDirectory(), "out").getPath());
+    FlexCompilerHandler.getInstance(myProject).getCompilerDependenciesCache().clear();
+    FlexCompilerProjectConfiguration.getInstance(myProject).MAX_PARALLEL_COMPILATIONS = 2;
+
+    myCompileContext = (CompileContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{CompileContext.class},
+                                                             (proxy, method, args) -> {
+                                                               switch (method.getName()) {
+                                                                 case "getProject":
+                                                                   return myProject;
+                                                                 case "getProgressIndicator":
+                                                                   return myProgressIndicator;
+                                                                 case "isMake":
+                                                                   return true;
+                                                                 case "addMessage":
+                                                                   myMessages.add(args[0] + ": " + args[1]);
+                                                                   return null;
+                                                                 default:
+                                                                   throw new UnsupportedOperationException(method.getName());
+                                                               }
+                                                             });
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FlexCompilerProjectConfiguration.getInstance(myProject).MAX_PARALLEL_COMPILATIONS = 4;
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  @Override
+  protected ModuleType getModuleType() {
+    return FlexModuleType.getInstance();
+  }
+
+  public void testDiamondDependency() {
+    final FakeTask a = new FakeTask("A");
+    final FakeTask b = new FakeTask("B", a);
+    final FakeTask c = new FakeTask("C", a);
+    final FakeTask d = new FakeTask("D", b, c);
+
+    // dependencies are compiled first even if listed later, ready tasks are started in the order of the list
+    compile(d, b, c, a);
+
+    assertEquals(Arrays.asList("start A", "post A",
+                               "start B", "start C", "post B", "post C",
+                               "start D", "post D"), myEvents);
+  }
+
+  public void testFailedUpstreamTask() {
+    final FakeTask a = new FakeTask("A");
+    final FakeTask b = new FakeTask("B", a).failing();
+    final FakeTask c = new FakeTask("C", a);
+    final FakeTask d = new FakeTask("D", b, c);
+    final FakeTask e = new FakeTask("E", d);
+
+    compile(a, b, c, d, e);
+
+    assertEquals(Arrays.asList("start A", "post A",
+                               "start B", "start C", "cancel D", "cancel E", "post C"), myEvents);
+    assertSkipped(d);
+    assertSkipped(e);
+    assertFalse(c.isCompilationFailed());
+  }
+
+  public void testCancel() {
+    final FakeTask a = new FakeTask("A");
+    final FakeTask b = new FakeTask("B").cancellingProgress();
+    final FakeTask c = new FakeTask("C", a);
+    final FakeTask d = new FakeTask("D", b);
+
+    compile(a, b, c, d);
+
+    // B is still running when the cancellation is noticed, so it is cancelled and no more tasks are started
+    assertEquals(Arrays.asList("start A", "start B", "post A", "cancel B"), myEvents);
+    assertTrue(b.isFinished());
+    assertFalse(c.isFinished());
+    assertFalse(d.isFinished());
+  }
+
+  private void assertSkipped(final FakeTask task) {
+    final String message = CompilerMessageCategory.INFORMATION + ": [" + task.getPresentableName() + "] " +
+                           FlexBundle.message("compilation.skipped");
+    assertTrue(myMessages.toString(), myMessages.contains(message));
+  }
+
+  private void compile(final FakeTask... tasks) {
+    new FlexCompilationManager(myCompileContext, Arrays.asList(tasks)).compile();
+  }
+
+  private class FakeTask extends FlexCompilationTask {
+    private final String myName;
+    private boolean myFailing;
+    private boolean myCancellingProgress;
+
+    private FakeTask(final String name, final FakeTask... dependencies) {
+      super(myModule, createBC(name), ContainerUtil.map(dependencies, FlexCompilationTask::getBC));
+      myName = name;
+    }
+
+    private FakeTask failing() {
+      myFailing = true;
+      return this;
+    }
+
+    // simulates a long compilation that is still in progress when the user cancels the build
+    private FakeTask cancellingProgress() {
+      myCancellingProgress = true;
+      return this;
+    }
+
+    @Override
+    protected List<VirtualFile> createConfigFiles() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    protected void doStart(final FlexCompilationManager compilationManager) {
+      myEvents.add("start " + myName);
+      if (myCancellingProgress) {
+        myProgressIndicator.cancel();
+      }
+      else {
+        myCompilationFailed = myFailing;
+        setFinished();
+      }
+    }
+
+    @Override
+    protected void doCancel() {
+      myEvents.add("cancel " + myName);
+    }
+
+    @Override
+    protected void performPostCompileActions(final List<String> compileInfoMessages) {
+      myEvents.add("post " + myName);
+    }
+  }
+
+  private FlexBuildConfiguration createBC(final String name) {
+    final ModifiableFlexBuildConfiguration bc = Factory.createBuildConfiguration();
+    bc.setName(name);
+    bc.setOutputFolder(myOutputFolder);
+    bc.setOutputFileName(name + ".swf");
+    return bc;
+  }
+}
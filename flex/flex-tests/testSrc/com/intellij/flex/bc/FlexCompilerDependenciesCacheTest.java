@@ -0,0 +1,135 @@
+package com.intellij.flex.bc;
+
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.javascript.flex.css.FlexStylesIndexableSetContributor;
+import com.intellij.lang.javascript.flex.FlexModuleType;
+import com.intellij.lang.javascript.flex.build.FlexCompilerDependenciesCache;
+import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfigurationManager;
+import com.intellij.openapi.module.ModuleType;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.impl.VfsRootAccess;
+import com.intellij.testFramework.PlatformTestCase;
+import com.intellij.testFramework.PsiTestUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static com.intellij.openapi.vfs.VfsUtilCore.convertFromUrl;
+import static com.intellij.openapi.vfs.VfsUtilCore.urlToPath;
+
+public class FlexCompilerDependenciesCacheTest extends PlatformTestCase {
+
+  private File myRootDir;
+  private FlexBuildConfiguration myBC;
+
+  @Override
+  protected void setUp() throws Exception {
+    VfsRootAccess.allowRootAccess(getTestRootDisposable(),
+                                  urlToPath(convertFromUrl(FlexStylesIndexableSetContributor.class.getResource("FlexStyles.as"))));
+    super.setUp();
+
+    myRootDir = createTempDirectory();
+    FileUtil.writeToFile(new File(myRootDir, "src/foo/Main.as"), "package foo { public class Main {} }");
+    FileUtil.writeToFile(new File(myRootDir, "src/generated/Generated.as"), "package generated { public class Generated {} }");
+    FileUtil.writeToFile(new File(myRootDir, "out/Main.swf"), "swf");
+
+    final VirtualFile rootDir = getVirtualFile(myRootDir);
+    VfsUtil.markDirtyAndRefresh(false, true, true, rootDir);
+    PsiTestUtil.addSourceRoot(myModule, rootDir.findChild("src"));
+    PsiTestUtil.addExcludedRoot(myModule, rootDir.findFileByRelativePath("src/generated"));
+
+    FlexTestUtils.modifyBuildConfiguration(myModule, bc -> {
+      bc.setOutputFolder(FileUtil.toSystemIndependentName(new File(myRootDir, "out").getPath()));
+      bc.setOutputFileName("Main.swf");
+    });
+    myBC = FlexBuildConfigurationManager.getInstance(myModule).getActiveConfiguration();
+  }
+
+  @Override
+  protected ModuleType getModuleType() {
+    return FlexModuleType.getInstance();
+  }
+
+  public void testChangedFileDetectedAfterReopen() throws IOException {
+    FlexCompilerDependenciesCache cache = createCompiledCache();
+    Disposer.dispose(cache);
+
+    cache = new FlexCompilerDependenciesCache(myProject);
+    assertNull(cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+
+    final File mainFile = new File(myRootDir, "src/foo/Main.as");
+    FileUtil.writeToFile(mainFile, "package foo { public class Main { public var foo; } }");
+
+    cache = new FlexCompilerDependenciesCache(myProject);
+    assertEquals("source file changed: " + mainFile.getPath(), cache.findChangeSincePreviousCompilation(myModule, myBC));
+    assertEquals("not compiled yet", cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+  }
+
+  public void testTouchedFileNotChanged() throws IOException {
+    final FlexCompilerDependenciesCache cache = createCompiledCache();
+
+    final File mainFile = new File(myRootDir, "src/foo/Main.as");
+    assertTrue(mainFile.setLastModified(mainFile.lastModified() + 10000));
+    assertNull(cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+  }
+
+  public void testRefreshedTimestampSaved() throws IOException {
+    FlexCompilerDependenciesCache cache = createCompiledCache();
+
+    final File mainFile = new File(myRootDir, "src/foo/Main.as");
+    final long timestamp = mainFile.lastModified() + 10000;
+    assertTrue(mainFile.setLastModified(timestamp));
+    assertNull(cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+
+    // same length and timestamp, so the change is noticed only if the file is hashed again
+    FileUtil.writeToFile(mainFile, "package foo { public class Mine {} }");
+    assertTrue(mainFile.setLastModified(timestamp));
+    cache = new FlexCompilerDependenciesCache(myProject);
+    assertNull(cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+  }
+
+  public void testExcludedFilesIgnored() throws IOException {
+    final FlexCompilerDependenciesCache cache = createCompiledCache();
+
+    FileUtil.writeToFile(new File(myRootDir, "src/generated/Generated2.as"), "package generated { public class Generated2 {} }");
+    FileUtil.writeToFile(new File(myRootDir, "src/generated/Generated.as"), "package generated { public class Generated { var foo; } }");
+    VfsUtil.markDirtyAndRefresh(false, true, true, getVirtualFile(myRootDir));
+    assertNull(cache.findChangeSincePreviousCompilation(myModule, myBC));
+
+    FileUtil.writeToFile(new File(myRootDir, "src/foo/Main2.as"), "package foo { public class Main2 {} }");
+    VfsUtil.markDirtyAndRefresh(false, true, true, getVirtualFile(myRootDir));
+    assertEquals("source files added or removed", cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+  }
+
+  public void testClear() {
+    FlexCompilerDependenciesCache cache = createCompiledCache();
+    cache.clear();
+    assertEquals("not compiled yet", cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+
+    cache = new FlexCompilerDependenciesCache(myProject);
+    assertEquals("not compiled yet", cache.findChangeSincePreviousCompilation(myModule, myBC));
+    Disposer.dispose(cache);
+  }
+
+  private FlexCompilerDependenciesCache createCompiledCache() {
+    final FlexCompilerDependenciesCache cache = new FlexCompilerDependenciesCache(myProject);
+    cache.clear();
+    assertEquals("not compiled yet", cache.findChangeSincePreviousCompilation(myModule, myBC));
+
+    cache.cacheBC(myModule, myBC, Collections.emptyList());
+    assertNull(cache.findChangeSincePreviousCompilation(myModule, myBC));
+    return cache;
+  }
+}
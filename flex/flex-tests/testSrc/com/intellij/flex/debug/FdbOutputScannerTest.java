@@ -0,0 +1,118 @@
+package com.intellij.flex.debug;
+
+import com.intellij.lang.javascript.flex.debug.FdbOutputScanner;
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FdbOutputScannerTest extends TestCase {
+
+  private static final String SESSION =
+    "Adobe fdb (Flash Player Debugger) [build 23201]\n" +
+    "Copyright (c) 2004-2007 Adobe, Inc. All rights reserved.\n" +
+    "(fdb) " +
+    "Player connected; session starting.\n" +
+    "Set breakpoints and then type 'continue' to resume the session.\n" +
+    "[SWF] Main.swf - 1,234 bytes after decompression\n" +
+    "(fdb) " +
+    "Breakpoint 1 at 0x1c8: file Main.as, line 10\n" +
+    "(fdb) " +
+    "[trace] hello (fdb\n" +
+    "Breakpoint 1, Main() at Main.as:10\n" +
+    " 10            trace(\"hello\");\n" +
+    "(fdb) " +
+    "Do you want to terminate? (y or n)";
+
+  private static FdbOutputScanner createScanner() {
+    return new FdbOutputScanner(new String[]{"(fdb) ", "(y or n)"},
+                                new String[]{"Waiting for Player to connect", "Trying to connect to Player"});
+  }
+
+  public void testPrompts() {
+    final List<String> chunks = readChunks(SESSION, SESSION.length());
+    assertEquals(Arrays.asList("Adobe fdb (Flash Player Debugger) [build 23201]\n" +
+                               "Copyright (c) 2004-2007 Adobe, Inc. All rights reserved.\n",
+                               "Player connected; session starting.\n" +
+                               "Set breakpoints and then type 'continue' to resume the session.\n" +
+                               "[SWF] Main.swf - 1,234 bytes after decompression\n",
+                               "Breakpoint 1 at 0x1c8: file Main.as, line 10\n",
+                               "[trace] hello (fdb\n" +
+                               "Breakpoint 1, Main() at Main.as:10\n" +
+                               " 10            trace(\"hello\");\n",
+                               "Do you want to terminate? "), chunks);
+  }
+
+  public void testPromptsSplitBetweenReads() {
+    final List<String> expected = readChunks(SESSION, SESSION.length());
+    for (int partLength = 1; partLength < SESSION.length(); partLength++) {
+      assertEquals("part length " + partLength, expected, readChunks(SESSION, partLength));
+    }
+  }
+
+  public void testFlushMarkers() {
+    final FdbOutputScanner scanner = createScanner();
+    append(scanner, "Waiting for Player");
+    assertNull(scanner.nextChunk(false));
+    append(scanner, " to connect\n");
+    assertEquals("Waiting for Player to connect\n", scanner.nextChunk(false));
+    assertFalse(scanner.isLastChunkEndedWithPrompt());
+    assertNull(scanner.nextChunk(false));
+
+    append(scanner, "Player connected\n");
+    assertNull(scanner.nextChunk(false));
+    assertEquals("Player connected\n", scanner.nextChunk(true));
+    assertFalse(scanner.isLastChunkEndedWithPrompt());
+
+    append(scanner, "Set breakpoints\n(fdb) ");
+    assertEquals("Set breakpoints\n", scanner.nextChunk(true));
+    assertTrue(scanner.isLastChunkEndedWithPrompt());
+    assertNull(scanner.nextChunk(true));
+  }
+
+  /**
+   * Replays a session in which the debugged application traces a lot and a big object is dumped before the prompt.
+   */
+  public void testHeavyTracePerformance() {
+    final StringBuilder session = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      session.append("[trace] frame ").append(i).append(": x=").append(i * 3).append(", y=").append(i * 7).append('\n');
+      if (i % 1000 == 0) {
+        session.append("Breakpoint 1, onEnterFrame() at Main.as:42\n 42            trace(x);\n(fdb) ");
+      }
+    }
+    session.append("$1 = [Object 12345, class='Array']\n");
+    for (int i = 0; i < 100000; i++) {
+      session.append("  ").append(i).append(" = [Object ").append(20000 + i).append(", class='flash.geom::Point']\n");
+    }
+    session.append("(fdb) ");
+    final String text = session.toString();
+
+    PlatformTestUtil.startPerformanceTest("fdb output reading", 3000, () -> {
+      for (int i = 0; i < 5; i++) {
+        final List<String> chunks = readChunks(text, 8192);
+        assertEquals(21, chunks.size());
+      }
+    }).assertTiming();
+  }
+
+  private static List<String> readChunks(final String text, final int partLength) {
+    final FdbOutputScanner scanner = createScanner();
+    final List<String> result = new ArrayList<>();
+    for (int start = 0; start < text.length(); start += partLength) {
+      append(scanner, text.substring(start, Math.min(text.length(), start + partLength)));
+      String chunk;
+      while ((chunk = scanner.nextChunk(false)) != null) {
+        assertTrue(scanner.isLastChunkEndedWithPrompt());
+        result.add(chunk);
+      }
+    }
+    return result;
+  }
+
+  private static void append(final FdbOutputScanner scanner, final String text) {
+    scanner.append(text.toCharArray(), 0, text.length());
+  }
+}
@@ -0,0 +1,70 @@
+package com.intellij.jps.flex.build;
+
+import com.intellij.openapi.util.text.StringUtil;
+import junit.framework.TestCase;
+
+import java.io.*;
+
+public class FlexCompilerFrameTest extends TestCase {
+
+  public void testFramesReadInOrder() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    FlexCompilerFrame.write(out, 1, FlexCompilerFrame.COMPILE, "mxmlc -load-config=\"C:/\u0414\u043e\u043a/flex config.xml\"");
+    FlexCompilerFrame.write(out, 1, FlexCompilerFrame.CANCEL, "");
+    FlexCompilerFrame.write(out, 0, FlexCompilerFrame.FINISH, "");
+
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertFrame(FlexCompilerFrame.read(in), 1, FlexCompilerFrame.COMPILE, "mxmlc -load-config=\"C:/\u0414\u043e\u043a/flex config.xml\"");
+    assertFrame(FlexCompilerFrame.read(in), 1, FlexCompilerFrame.CANCEL, "");
+    assertFrame(FlexCompilerFrame.read(in), 0, FlexCompilerFrame.FINISH, "");
+    assertEquals(-1, in.read());
+  }
+
+  public void testPayloadLongerThanWriteUtfLimit() throws IOException {
+    // line protocol uses DataOutputStream.writeUTF() that fails for strings longer than 65535 bytes
+    final String payload = StringUtil.repeat("Error: Type was not found ", 5000);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FlexCompilerFrame.write(new DataOutputStream(bytes), 42, FlexCompilerFrame.TEXT, payload);
+
+    assertEquals(4 + 1 + 4 + payload.length(), bytes.size());
+    assertFrame(FlexCompilerFrame.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))),
+                42, FlexCompilerFrame.TEXT, payload);
+  }
+
+  public void testTruncatedFrame() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FlexCompilerFrame.write(new DataOutputStream(bytes), 1, FlexCompilerFrame.FINISHED, "1000 2000");
+    final byte[] truncated = new byte[bytes.size() - 1];
+    System.arraycopy(bytes.toByteArray(), 0, truncated, 0, truncated.length);
+
+    try {
+      FlexCompilerFrame.read(new DataInputStream(new ByteArrayInputStream(truncated)));
+      fail("EOFException expected");
+    }
+    catch (EOFException ignored) {
+    }
+  }
+
+  public void testNegativeLength() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(1);
+    out.writeByte(FlexCompilerFrame.TEXT);
+    out.writeInt(-5);
+
+    try {
+      FlexCompilerFrame.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      fail("IOException expected");
+    }
+    catch (IOException e) {
+      assertEquals("Incorrect frame length: -5", e.getMessage());
+    }
+  }
+
+  private static void assertFrame(final FlexCompilerFrame frame, final int commandNumber, final byte kind, final String payload) {
+    assertEquals(commandNumber, frame.commandNumber);
+    assertEquals(kind, frame.kind);
+    assertEquals(payload, frame.payload);
+  }
+}
@@ -0,0 +1,333 @@
+package com.intellij.jps.flex.build;
+
+import junit.framework.TestCase;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the daemon pool against fake compilers connected by sockets, so the tests need neither a Flex SDK nor compiler processes.
+ */
+public class JpsBuiltInFlexCompilerHandlerTest extends TestCase {
+
+  private static final String FINISHED = "<finished>";
+  private static final String CLOSED = "<closed>";
+  private static final int TIMEOUT_SECONDS = 10;
+
+  private final List<FakeCompiler> myCompilers = Collections.synchronizedList(new ArrayList<>());
+  private JpsBuiltInFlexCompilerHandler myHandler;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myHandler = new JpsBuiltInFlexCompilerHandler(null, 2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myHandler.stopCompilerProcess();
+      for (FakeCompiler compiler : myCompilers) {
+        compiler.close();
+      }
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testIdleDaemonReused() throws Exception {
+    final RecordingListener listener1 = compile("sdk", true, "mxmlc A");
+    final FakeCompiler compiler = myCompilers.get(0);
+    compiler.assertReceived("compile 1 mxmlc A");
+    compiler.sendText(1, "Warning: unused variable");
+    compiler.sendFinished(1, "1000 2000");
+    listener1.assertEvents("Warning: unused variable", FINISHED);
+
+    final RecordingListener listener2 = compile("sdk", true, "compc B");
+    compiler.assertReceived("compile 2 compc B");
+    compiler.sendFinished(2, "1500 2000");
+    listener2.assertEvents(FINISHED);
+
+    assertEquals(1, myCompilers.size());
+    assertEquals(0, myHandler.getActiveCompilationsNumber());
+    final List<JpsBuiltInFlexCompilerHandler.DaemonStats> stats = myHandler.getDaemonStats();
+    assertEquals(1, stats.size());
+    assertEquals(2, stats.get(0).finishedCompilations);
+    assertEquals(1500, stats.get(0).usedHeapBytes);
+    assertEquals(2000, stats.get(0).maxHeapBytes);
+  }
+
+  public void testBusyDaemonsUpToLimit() throws Exception {
+    final RecordingListener listener1 = compile("sdk", true, "mxmlc A");
+    final RecordingListener listener2 = compile("sdk", true, "mxmlc B");
+    final RecordingListener listener3 = compile("sdk", true, "mxmlc C");
+
+    // the pool is full, so the third compilation goes to the least loaded daemon
+    assertEquals(2, myCompilers.size());
+    final FakeCompiler compiler1 = myCompilers.get(0);
+    final FakeCompiler compiler2 = myCompilers.get(1);
+    compiler1.assertReceived("compile 1 mxmlc A", "compile 3 mxmlc C");
+    compiler2.assertReceived("compile 2 mxmlc B");
+    assertEquals(3, myHandler.getActiveCompilationsNumber());
+
+    compiler2.sendFinished(2, "");
+    listener2.assertEvents(FINISHED);
+
+    // the idle daemon is preferred to starting a new one
+    final RecordingListener listener4 = compile("sdk", true, "mxmlc D");
+    compiler2.assertReceived("compile 4 mxmlc D");
+    assertEquals(2, myCompilers.size());
+
+    compiler1.sendFinished(3, "");
+    compiler1.sendFinished(1, "");
+    compiler2.sendFinished(4, "");
+    listener3.assertEvents(FINISHED);
+    listener1.assertEvents(FINISHED);
+    listener4.assertEvents(FINISHED);
+    assertEquals(0, myHandler.getActiveCompilationsNumber());
+  }
+
+  public void testDaemonsPerSdk() throws Exception {
+    final RecordingListener listener1 = compile("sdk1", true, "mxmlc A");
+    myCompilers.get(0).sendFinished(1, "");
+    listener1.assertEvents(FINISHED);
+
+    compile("sdk2", true, "mxmlc B");
+    assertEquals(2, myCompilers.size());
+    myCompilers.get(1).assertReceived("compile 2 mxmlc B");
+  }
+
+  public void testCancel() throws Exception {
+    final RecordingListener listener1 = compile("sdk", true, "mxmlc A");
+    final FakeCompiler compiler = myCompilers.get(0);
+    compiler.assertReceived("compile 1 mxmlc A");
+
+    myHandler.removeListener(listener1);
+    compiler.assertReceived("cancel 1");
+    assertEquals(0, myHandler.getActiveCompilationsNumber());
+
+    // output of the cancelled compilation is ignored
+    compiler.sendText(1, "Error: late");
+    compiler.sendFinished(1, "");
+    final RecordingListener listener2 = compile("sdk", true, "mxmlc B");
+    compiler.assertReceived("compile 2 mxmlc B");
+    compiler.sendFinished(2, "");
+    listener2.assertEvents(FINISHED);
+    listener1.assertEvents();
+
+    // a finished compilation is not cancelled
+    myHandler.removeListener(listener2);
+    myHandler.stopCompilerProcess();
+    compiler.assertReceived("finish 0", CLOSED);
+  }
+
+  public void testCancelOneOfCompilationsOnDaemon() throws Exception {
+    myHandler = new JpsBuiltInFlexCompilerHandler(null, 1);
+    final RecordingListener listener1 = compile("sdk", true, "mxmlc A");
+    final RecordingListener listener2 = compile("sdk", true, "mxmlc B");
+    final FakeCompiler compiler = myCompilers.get(0);
+    compiler.assertReceived("compile 1 mxmlc A", "compile 2 mxmlc B");
+
+    myHandler.removeListener(listener1);
+    compiler.assertReceived("cancel 1");
+    compiler.sendFinished(2, "");
+    listener2.assertEvents(FINISHED);
+    listener1.assertEvents();
+  }
+
+  public void testStop() throws Exception {
+    final RecordingListener listener = compile("sdk", true, "mxmlc A");
+    final FakeCompiler compiler = myCompilers.get(0);
+    compiler.assertReceived("compile 1 mxmlc A");
+
+    myHandler.stopCompilerProcess();
+    compiler.assertReceived("finish 0", CLOSED);
+    listener.assertEvents("Error: Compilation terminated", FINISHED);
+    assertEquals(0, myHandler.getActiveCompilationsNumber());
+  }
+
+  public void testCompilerProcessExited() throws Exception {
+    final RecordingListener listener1 = compile("sdk", true, "mxmlc A");
+    myCompilers.get(0).assertReceived("compile 1 mxmlc A");
+    myCompilers.get(0).close();
+    listener1.assertEvents("Error: Compilation terminated", FINISHED);
+
+    compile("sdk", true, "mxmlc B");
+    assertEquals(2, myCompilers.size());
+    myCompilers.get(1).assertReceived("compile 2 mxmlc B");
+  }
+
+  public void testLineProtocolFallback() throws Exception {
+    final RecordingListener listener1 = compile("sdk", false, "mxmlc A");
+    final FakeCompiler compiler = myCompilers.get(0);
+    compiler.assertReceived("1:mxmlc A\n");
+    compiler.sendText(1, "Warning: unused variable");
+    compiler.sendText(1, JpsBuiltInFlexCompilerHandler.COMPILATION_FINISHED);
+    listener1.assertEvents("Warning: unused variable", FINISHED);
+
+    final RecordingListener listener2 = compile("sdk", false, "mxmlc B");
+    compiler.assertReceived("2:mxmlc B\n");
+    myHandler.removeListener(listener2);
+    compiler.assertReceived("Cancel\n");
+
+    myHandler.stopCompilerProcess();
+    compiler.assertReceived("Finish\n", CLOSED);
+    assertEquals(1, myCompilers.size());
+  }
+
+  public void testLineProtocolCancelKeepsOtherCompilations() throws Exception {
+    myHandler = new JpsBuiltInFlexCompilerHandler(null, 1);
+    final RecordingListener listener1 = compile("sdk", false, "mxmlc A");
+    final RecordingListener listener2 = compile("sdk", false, "mxmlc B");
+    final FakeCompiler compiler = myCompilers.get(0);
+    compiler.assertReceived("1:mxmlc A\n", "2:mxmlc B\n");
+
+    // "Cancel" would cancel B too, so it is not sent
+    myHandler.removeListener(listener1);
+    compiler.sendText(2, JpsBuiltInFlexCompilerHandler.COMPILATION_FINISHED);
+    listener2.assertEvents(FINISHED);
+    listener1.assertEvents();
+
+    myHandler.stopCompilerProcess();
+    compiler.assertReceived("Finish\n", CLOSED);
+  }
+
+  private RecordingListener compile(final String sdkHome, final boolean framedProtocol, final String command) throws IOException {
+    final RecordingListener listener = new RecordingListener();
+    myHandler.sendCompilationCommand(sdkHome, () -> {
+      final FakeCompiler compiler = new FakeCompiler(framedProtocol);
+      myCompilers.add(compiler);
+      return compiler.start();
+    }, command, listener);
+    return listener;
+  }
+
+  private static class RecordingListener implements JpsBuiltInFlexCompilerHandler.Listener {
+    private final BlockingQueue<String> myEvents = new LinkedBlockingQueue<>();
+
+    @Override
+    public void textAvailable(final String text) {
+      myEvents.add(text);
+    }
+
+    @Override
+    public void compilationFinished() {
+      myEvents.add(FINISHED);
+    }
+
+    private void assertEvents(final String... expected) throws InterruptedException {
+      for (String event : expected) {
+        assertEquals(event, myEvents.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      }
+      assertTrue(myEvents.toString(), myEvents.isEmpty());
+    }
+  }
+
+  /**
+   * Answers the handshake like the compiler of the current version, or like the compilers that support only the line protocol. Received
+   * frames are recorded as "kind command-number payload", lines as is.
+   */
+  private static class FakeCompiler {
+    private final boolean myFramedProtocol;
+    private final BlockingQueue<String> myReceived = new LinkedBlockingQueue<>();
+    private Socket mySocket;
+    private DataOutputStream myOutputStream;
+
+    private FakeCompiler(final boolean framedProtocol) {
+      myFramedProtocol = framedProtocol;
+    }
+
+    private Socket start() throws IOException {
+      final Socket ideSocket;
+      try (ServerSocket serverSocket = new ServerSocket(0)) {
+        ideSocket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        mySocket = serverSocket.accept();
+      }
+      myOutputStream = new DataOutputStream(mySocket.getOutputStream());
+
+      final DataInputStream in = new DataInputStream(mySocket.getInputStream());
+      final Thread thread = new Thread(() -> {
+        try {
+          final String handshake = in.readUTF();
+          if (myFramedProtocol) {
+            assertEquals("0:" + JpsBuiltInFlexCompilerHandler.FRAMED_PROTOCOL + "\n", handshake);
+            sendLine("0:" + JpsBuiltInFlexCompilerHandler.FRAMED_PROTOCOL);
+            while (true) {
+              final FlexCompilerFrame frame = FlexCompilerFrame.read(in);
+              myReceived.add(getKindName(frame.kind) + " " + frame.commandNumber + (frame.payload.isEmpty() ? "" : " " + frame.payload));
+            }
+          }
+          else {
+            // exactly what FlexCompiler of flex-compiler.jar built before the framed protocol sends: no command number prefix
+            sendLine("Error: Incorrect compilation command: [" + JpsBuiltInFlexCompilerHandler.FRAMED_PROTOCOL + "]");
+            sendLine(JpsBuiltInFlexCompilerHandler.COMPILATION_FINISHED);
+            while (true) {
+              myReceived.add(in.readUTF());
+            }
+          }
+        }
+        catch (IOException e) {
+          myReceived.add(CLOSED);
+        }
+      }, "Fake Flex compiler");
+      thread.setDaemon(true);
+      thread.start();
+
+      return ideSocket;
+    }
+
+    private static String getKindName(final byte kind) {
+      switch (kind) {
+        case FlexCompilerFrame.COMPILE:
+          return "compile";
+        case FlexCompilerFrame.CANCEL:
+          return "cancel";
+        case FlexCompilerFrame.FINISH:
+          return "finish";
+        default:
+          return String.valueOf(kind);
+      }
+    }
+
+    private synchronized void sendLine(final String line) throws IOException {
+      myOutputStream.writeUTF(line + "\n");
+      myOutputStream.flush();
+    }
+
+    private synchronized void sendText(final int commandNumber, final String text) throws IOException {
+      if (myFramedProtocol) {
+        FlexCompilerFrame.write(myOutputStream, commandNumber, FlexCompilerFrame.TEXT, text);
+        myOutputStream.flush();
+      }
+      else {
+        sendLine(commandNumber + ":" + text);
+      }
+    }
+
+    private synchronized void sendFinished(final int commandNumber, final String heapUsage) throws IOException {
+      FlexCompilerFrame.write(myOutputStream, commandNumber, FlexCompilerFrame.FINISHED, heapUsage);
+      myOutputStream.flush();
+    }
+
+    private void assertReceived(final String... expected) throws InterruptedException {
+      for (String message : expected) {
+        assertEquals(message, myReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      }
+    }
+
+    private void close() throws IOException {
+      mySocket.close();
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import com.intellij.openapi.util.Ref;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Runs {@link FdbCommandPipeline} against a scripted fdb the same way {@link FlexDebugProcess} does for commands with special output
+ * processing while the VM is suspended.
+ */
+public class FdbCommandPipelineTest extends TestCase {
+
+  private final ScriptedFdb myFdb = new ScriptedFdb();
+  private final FdbCommandPipeline myPipeline = new FdbCommandPipeline(myFdb);
+  private final LinkedList<DebuggerCommand> myCommandsToWrite = new LinkedList<>();
+
+  public void testBatchStopsAtFrameSwitch() throws IOException {
+    final PrintCommand a = new PrintCommand(1, "a");
+    final PrintCommand b = new PrintCommand(1, "b");
+    final PrintCommand c = new PrintCommand(2, "c");
+    final PrintCommand d = new PrintCommand(null, "d");
+    myCommandsToWrite.addAll(Arrays.asList(a, b, c, d));
+
+    processOneCommand();
+    assertEquals(Arrays.asList("frame 1", "print a", "frame 1", "print b"), myFdb.myExecutedCommands);
+    assertEquals("a@1#1", a.myResult);
+    assertNull(b.myResult);
+
+    processOneCommand();
+    assertEquals("b@1#2", b.myResult);
+
+    processOneCommand();
+    assertEquals(Arrays.asList("frame 1", "print a", "frame 1", "print b", "frame 2", "print c", "print d"), myFdb.myExecutedCommands);
+    assertEquals("c@2#3", c.myResult);
+    assertNull(d.myResult);
+
+    processOneCommand();
+    assertEquals("d@2#4", d.myResult);
+    assertTrue(myCommandsToWrite.isEmpty());
+  }
+
+  public void testBatchStopsAtModifyingCommand() throws IOException {
+    final PrintCommand a = new PrintCommand(1, "a");
+    final PrintCommand set = new PrintCommand(1, "a = 5", false);
+    final PrintCommand b = new PrintCommand(1, "b");
+    myCommandsToWrite.addAll(Arrays.asList(a, set, b));
+
+    processOneCommand();
+    assertEquals(Arrays.asList("frame 1", "print a"), myFdb.myExecutedCommands);
+
+    processOneCommand();
+    processOneCommand();
+    assertEquals("a@1#1", a.myResult);
+    assertEquals("a = 5@1#2", set.myResult);
+    assertEquals("b@1#3", b.myResult);
+  }
+
+  public void testReplayOnlyIfSameFrameSelected() throws IOException {
+    assertEquals("a@1#1", print(1, "a"));
+    assertEquals("a@1#1", print(1, "a"));
+    assertEquals("scopechain@1#2", print(null, "scopechain"));
+    assertEquals("scopechain@1#2", print(null, "scopechain"));
+    assertEquals(3, myFdb.myExecutedCommands.size());
+
+    assertEquals("b@2#3", print(2, "b"));
+    // fdb would select frame 1 again, so the command can't be replayed while frame 2 is selected
+    assertEquals("a@1#4", print(1, "a"));
+    assertEquals("b@2#5", print(2, "b"));
+    assertEquals("scopechain@2#6", print(null, "scopechain"));
+    assertEquals("a@1#7", print(1, "a"));
+    assertEquals("a@1#7", print(1, "a"));
+    assertEquals("scopechain@1#2", print(null, "scopechain"));
+  }
+
+  public void testCacheInvalidatedByModifyingCommands() throws IOException {
+    assertEquals("a@1#1", print(1, "a"));
+
+    processCommand(new DebuggerCommand("continue", CommandOutputProcessingType.NO_PROCESSING, VMState.SUSPENDED, VMState.RUNNING));
+    assertEquals("a@1#2", print(1, "a"));
+    assertEquals("a@1#2", print(1, "a"));
+
+    processCommand(new DebuggerCommand("step", CommandOutputProcessingType.NO_PROCESSING, VMState.SUSPENDED, VMState.RUNNING));
+    assertEquals("a@1#3", print(1, "a"));
+
+    final PrintCommand set = new PrintCommand(1, "a = 5", false);
+    processCommand(set);
+    assertEquals("a = 5@1#4", set.myResult);
+    assertEquals("a@1#5", print(1, "a"));
+    assertEquals("a@1#5", print(1, "a"));
+    assertEquals(Arrays.asList("frame 1", "print a", "continue", "frame 1", "print a", "step", "frame 1", "print a",
+                               "frame 1", "print a = 5", "frame 1", "print a"), myFdb.myExecutedCommands);
+  }
+
+  public void testNestedCommandsSentFromBatchedResponseHandlers() throws IOException {
+    // like FlexStackFrame.ensureQName2IdMapLoaded(): the scope chain is published only when its response is processed. Nested commands
+    // aren't batched, so each handler gets the response to its own command
+    final Ref<String> scopeChain = new Ref<>();
+    final List<String> results = new ArrayList<>();
+    final List<PrintCommand> commands = new ArrayList<>();
+    for (String name : new String[]{"a", "b", "c"}) {
+      commands.add(new PrintCommand(1, name) {
+        @Override
+        void processResult() {
+          if (scopeChain.isNull()) {
+            final PrintCommand scopeChainCommand = new PrintCommand(null, "scopechain");
+            sendAndProcessOneCommand(scopeChainCommand);
+            scopeChain.set(scopeChainCommand.myResult);
+          }
+          results.add(myResult + " in " + scopeChain.get());
+        }
+      });
+    }
+    myCommandsToWrite.addAll(commands);
+
+    processOneCommand();
+
+    assertTrue(myCommandsToWrite.isEmpty());
+    assertEquals(Arrays.asList("c@1#3 in scopechain@1#4", "b@1#2 in scopechain@1#4", "a@1#1 in scopechain@1#4"), results);
+    assertEquals(Arrays.asList("frame 1", "print a", "frame 1", "print b", "frame 1", "print c", "print scopechain"),
+                 myFdb.myExecutedCommands);
+
+    // all responses are cached after the batch
+    for (PrintCommand command : commands) {
+      assertEquals(command.myResult, print(1, command.myExpression));
+    }
+    assertEquals("scopechain@1#4", print(null, "scopechain"));
+    assertEquals(7, myFdb.myExecutedCommands.size());
+  }
+
+  private String print(@Nullable final Integer frame, final String expression) throws IOException {
+    final PrintCommand command = new PrintCommand(frame, expression);
+    processCommand(command);
+    return command.myResult;
+  }
+
+  private void processCommand(final DebuggerCommand command) throws IOException {
+    myCommandsToWrite.addLast(command);
+    processOneCommand();
+    assertTrue(myCommandsToWrite.isEmpty());
+  }
+
+  // FlexDebugProcess.sendAndProcessOneCommand()
+  private void sendAndProcessOneCommand(final DebuggerCommand command) {
+    myCommandsToWrite.addFirst(command);
+    myPipeline.nestedCommandStarted();
+    try {
+      while (myPipeline.hasPostedCommands()) {
+        processOneCommand();
+      }
+      processOneCommand();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    finally {
+      myPipeline.nestedCommandFinished();
+    }
+  }
+
+  // FlexDebugProcess.processOneCommandLoop() and postCommand() for the suspended VM
+  private void processOneCommand() throws IOException {
+    DebuggerCommand command = myPipeline.pollPostedCommand();
+    if (command == null) {
+      command = myCommandsToWrite.removeFirst();
+      myPipeline.send(command);
+      myPipeline.postFollowingReadOnlyCommands(command, myCommandsToWrite);
+    }
+
+    if (command.getOutputProcessingMode() == CommandOutputProcessingType.NO_PROCESSING) return;
+
+    while (true) {
+      myPipeline.resetLastReadCommand();
+      final String response = myPipeline.read(command);
+      final DebuggerCommand readCommand = myPipeline.getLastReadCommand();
+      if (response == null) break;
+      if (command.onTextAvailable(response) == CommandOutputProcessingMode.DONE) {
+        myPipeline.responseProcessed(readCommand);
+        break;
+      }
+    }
+  }
+
+  /**
+   * Evaluates the expression in the given frame, or in the currently selected frame if it is {@code null}. Modifying commands are sent as
+   * {@code print} too, because the scripted fdb only needs to see them.
+   */
+  private static class PrintCommand extends DebuggerCommand {
+    private final boolean myReadOnly;
+    private final boolean myHasFrame;
+    final String myExpression;
+    String myResult;
+
+    PrintCommand(@Nullable final Integer frame, final String expression) {
+      this(frame, expression, true);
+    }
+
+    PrintCommand(@Nullable final Integer frame, final String expression, final boolean readOnly) {
+      super((frame == null ? "" : "frame " + frame + "\n") + "print " + expression, CommandOutputProcessingType.SPECIAL_PROCESSING);
+      myExpression = expression;
+      myHasFrame = frame != null;
+      myReadOnly = readOnly;
+    }
+
+    @Override
+    boolean isReadOnly() {
+      return myReadOnly;
+    }
+
+    @Override
+    CommandOutputProcessingMode onTextAvailable(final String s) {
+      if (myHasFrame && s.startsWith("#")) return CommandOutputProcessingMode.PROCEEDING;
+      myResult = s;
+      processResult();
+      return CommandOutputProcessingMode.DONE;
+    }
+
+    void processResult() {
+    }
+  }
+
+  /**
+   * Answers each line of a command text: {@code frame N} selects the frame, {@code print x} answers {@code x@<selected frame>#<number of
+   * evaluations so far>}, so that replayed responses can be told from the new ones.
+   */
+  private static class ScriptedFdb implements FdbCommandPipeline.Fdb {
+    private final List<String> myExecutedCommands = new ArrayList<>();
+    private final Queue<String> myResponses = new LinkedList<>();
+    private int mySelectedFrame;
+    private int myEvaluationsCount;
+
+    @Override
+    public void sendText(@NotNull final DebuggerCommand command) {
+      for (String line : command.getText().split("\n")) {
+        myExecutedCommands.add(line);
+        if (line.startsWith("frame ")) {
+          mySelectedFrame = Integer.parseInt(line.substring("frame ".length()));
+          myResponses.add("#" + mySelectedFrame + "   this = [Object 1, class='Main'] at Main.as:10");
+        }
+        else if (line.startsWith("print ")) {
+          myResponses.add(line.substring("print ".length()) + "@" + mySelectedFrame + "#" + ++myEvaluationsCount);
+        }
+      }
+    }
+
+    @Override
+    public String readLine(@NotNull final DebuggerCommand command) {
+      final String response = myResponses.poll();
+      assertNotNull("No response for " + command.getText(), response);
+      return response;
+    }
+  }
+}
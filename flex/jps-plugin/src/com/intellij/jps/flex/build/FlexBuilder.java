@@ -359,8 +359,7 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
                           (JpsFlexCompilerProjectExtension.getInstance(bc.getModule().getProject()).PREFER_ASC_20 ||
                            FlexCommonUtils.isAirSdkWithoutFlex(sdk));
     final boolean builtIn = !asc20 &&
-                            JpsFlexCompilerProjectExtension.getInstance(bc.getModule().getProject()).USE_BUILT_IN_COMPILER &&
-                            builtInCompilerHandler.canBeUsedForSdk(sdk.getHomePath());
+                            JpsFlexCompilerProjectExtension.getInstance(bc.getModule().getProject()).USE_BUILT_IN_COMPILER;
 
     if (builtIn) {
       return doCompileWithBuiltInCompiler(context, bc, configFiles, compilerName, builtInCompilerHandler);
@@ -398,14 +397,6 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
                                                      final List<File> configFiles,
                                                      final String compilerName,
                                                      final JpsBuiltInFlexCompilerHandler builtInCompilerHandler) {
-    try {
-      builtInCompilerHandler.startCompilerIfNeeded(bc.getSdk(), context, compilerName);
-    }
-    catch (IOException e) {
-      context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, e.toString()));
-      return Status.Failed;
-    }
-
     final List<String> mxmlcOrCompc = Collections.singletonList(bc.getOutputType() == OutputType.Library ? "compc" : "mxmlc");
     final List<String> command = buildCommand(mxmlcOrCompc, configFiles, bc);
     final String plainCommand = StringUtil.join(command,
@@ -418,7 +409,13 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
 
     final BuiltInCompilerListener listener = new BuiltInCompilerListener(context, compilerName, () -> semaphore.up());
 
-    builtInCompilerHandler.sendCompilationCommand(plainCommand, listener);
+    try {
+      builtInCompilerHandler.sendCompilationCommand(bc.getSdk(), context, compilerName, plainCommand, listener);
+    }
+    catch (IOException e) {
+      context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, e.toString()));
+      return Status.Failed;
+    }
 
     semaphore.waitFor();
     builtInCompilerHandler.removeListener(listener);
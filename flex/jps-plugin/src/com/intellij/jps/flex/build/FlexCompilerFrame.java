@@ -0,0 +1,61 @@
+package com.intellij.jps.flex.build;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Message of the framed protocol of the built-in compiler: command number (int), frame kind (byte), payload length (int) and UTF-8 payload.
+ * Must be kept in sync with {@code com.intellij.flex.compiler.FlexCompiler}.
+ */
+final class FlexCompilerFrame {
+
+  // frames sent to the compiler
+  static final byte COMPILE = 1;
+  static final byte CANCEL = 2;
+  static final byte FINISH = 3;
+
+  // frames received from the compiler, payload of FINISHED is used and max heap size in bytes separated by space
+  static final byte TEXT = 1;
+  static final byte FINISHED = 2;
+
+  final int commandNumber;
+  final byte kind;
+  final String payload;
+
+  FlexCompilerFrame(final int commandNumber, final byte kind, final String payload) {
+    this.commandNumber = commandNumber;
+    this.kind = kind;
+    this.payload = payload;
+  }
+
+  /**
+   * @throws java.io.EOFException if the stream ends before the whole frame is read
+   */
+  static FlexCompilerFrame read(final DataInputStream in) throws IOException {
+    final int commandNumber = in.readInt();
+    final byte kind = in.readByte();
+    final int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Incorrect frame length: " + length);
+    }
+
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new FlexCompilerFrame(commandNumber, kind, new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  static void write(final DataOutputStream out, final int commandNumber, final byte kind, final String payload) throws IOException {
+    final byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(commandNumber);
+    out.writeByte(kind);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return "[" + commandNumber + ", " + kind + ", " + payload + "]";
+  }
+}
@@ -3,9 +3,10 @@ package com.intellij.jps.flex.build;
 import com.intellij.flex.FlexCommonUtils;
 import com.intellij.flex.model.sdk.JpsFlexSdkType;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.ThrowableComputable;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
@@ -17,25 +18,39 @@ import org.jetbrains.jps.service.SharedThreadPool;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs compilations in a pool of built-in compiler processes (daemons). Daemons are started on demand, separately for each Flex SDK, up to
+ * {@link #MAX_DAEMONS_PER_SDK_PROPERTY} daemons per SDK. A compilation is sent to an idle daemon of its SDK, to a newly started one if all
+ * are busy, or to the least loaded one if the pool is full.
+ * <p>
+ * Each daemon has its own socket and reader thread, so compilations in different daemons don't block each other. Commands and messages
+ * are sent in {@link FlexCompilerFrame frames} if the compiler confirms the {@link #FRAMED_PROTOCOL} handshake. Compilers built before
+ * the framed protocol reject it as an incorrect command, then text lines prefixed with the command number are used.
+ */
 public class JpsBuiltInFlexCompilerHandler {
 
   private static final Logger LOG = Logger.getInstance(JpsBuiltInFlexCompilerHandler.class.getName());
   private static final String CONNECTION_SUCCESSFUL = "Connection successful";
   public static final String COMPILATION_FINISHED = "Compilation finished";
 
-  private final JpsProject myProject;
+  public static final String MAX_DAEMONS_PER_SDK_PROPERTY = "flex.builtin.compiler.daemons";
 
-  private String mySdkHome;
+  // sent and confirmed as a text line of command 0, command numbers of compilations start with 1
+  static final String FRAMED_PROTOCOL = "Framed";
+  private static final String CANCEL_COMMAND = "Cancel";
+  private static final String FINISH_COMMAND = "Finish";
+  private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000;
 
-  private ServerSocket myServerSocket;
-  private DataInputStream myDataInputStream;
-  private DataOutputStream myDataOutputStream;
+  private final JpsProject myProject;
+  private final int myMaxDaemonsPerSdk;
 
-  private int commandNumber = 1;
-  private final Map<String, Listener> myActiveListeners = new THashMap<>();
+  private final Map<String, List<CompilerDaemon>> mySdkHomeToDaemons = new THashMap<>();
+  private final AtomicInteger myCommandNumber = new AtomicInteger(1);
 
   public interface Listener {
     void textAvailable(String text);
@@ -44,44 +59,90 @@ public class JpsBuiltInFlexCompilerHandler {
   }
 
   JpsBuiltInFlexCompilerHandler(final JpsProject project) {
+    this(project, Integer.getInteger(MAX_DAEMONS_PER_SDK_PROPERTY, Math.min(4, Runtime.getRuntime().availableProcessors() / 4)));
+  }
+
+  JpsBuiltInFlexCompilerHandler(final JpsProject project, final int maxDaemonsPerSdk) {
     myProject = project;
+    myMaxDaemonsPerSdk = Math.max(1, maxDaemonsPerSdk);
   }
 
-  public synchronized boolean canBeUsedForSdk(final String sdkHome) {
-    return mySdkHome == null || mySdkHome.equals(sdkHome);
+  /**
+   * Sends the command to a daemon for the given SDK, starting the daemon if needed. The listener is notified about compiler output and
+   * about compilation end, also if the daemon stops during the compilation.
+   *
+   * @throws IOException if the compiler process can't be started
+   */
+  public void sendCompilationCommand(final JpsSdk<?> sdk,
+                                     final CompileContext context,
+                                     final String compilerName,
+                                     final String command,
+                                     final Listener listener) throws IOException {
+    sendCompilationCommand(sdk.getHomePath(), () -> startCompilerProcess(sdk, context, compilerName), command, listener);
   }
 
-  public synchronized void startCompilerIfNeeded(final JpsSdk<?> sdk,
-                                                 final CompileContext context,
-                                                 final String compilerName) throws IOException {
-    if (!Comparing.equal(sdk.getHomePath(), mySdkHome)) {
-      stopCompilerProcess();
-    }
+  /**
+   * @param compilerStarter starts a compiler process for the SDK and returns the socket connected to it
+   */
+  void sendCompilationCommand(final String sdkHome,
+                              final ThrowableComputable<Socket, IOException> compilerStarter,
+                              final String command,
+                              final Listener listener) throws IOException {
+    final int commandNumber = myCommandNumber.getAndIncrement();
+    final CompilerDaemon daemon = reserveDaemon(sdkHome, compilerStarter, commandNumber, listener);
+    daemon.sendCompilationCommand(commandNumber, command, listener);
+  }
 
-    if (myServerSocket == null) {
-      try {
-        //context.processMessage(new ProgressMessage("Starting Flex compiler"));
-        myServerSocket = new ServerSocket(0);
-        myServerSocket.setSoTimeout(10000);
-        final int port = myServerSocket.getLocalPort();
+  private synchronized CompilerDaemon reserveDaemon(final String sdkHome,
+                                                    final ThrowableComputable<Socket, IOException> compilerStarter,
+                                                    final int commandNumber,
+                                                    final Listener listener) throws IOException {
+    List<CompilerDaemon> daemons = mySdkHomeToDaemons.get(sdkHome);
+    if (daemons == null) {
+      daemons = new ArrayList<>();
+      mySdkHomeToDaemons.put(sdkHome, daemons);
+    }
+    daemons.removeIf(CompilerDaemon::isStopped);
 
-        startCompilerProcess(sdk, port, context, compilerName);
+    CompilerDaemon daemon = null;
+    for (CompilerDaemon each : daemons) {
+      if (daemon == null || each.getActiveCompilationsNumber() < daemon.getActiveCompilationsNumber()) {
+        daemon = each;
+      }
+    }
 
-        final Socket socket = myServerSocket.accept();
-        myDataInputStream = new DataInputStream(socket.getInputStream());
-        myDataOutputStream = new DataOutputStream(socket.getOutputStream());
-        mySdkHome = sdk.getHomePath();
-        scheduleInputReading();
+    if (daemon == null || daemon.getActiveCompilationsNumber() > 0 && daemons.size() < myMaxDaemonsPerSdk) {
+      // starting is done under the lock, it happens a few times per build at most
+      try {
+        final CompilerDaemon newDaemon = CompilerDaemon.connect(sdkHome, compilerStarter.compute());
+        daemons.add(newDaemon);
+        daemon = newDaemon;
       }
       catch (IOException e) {
-        stopCompilerProcess();
-        throw e;
+        if (daemon == null) throw e;
+        LOG.warn("Failed to start one more Flex compiler process", e);
       }
     }
+
+    daemon.addListener(commandNumber, listener);
+    return daemon;
+  }
+
+  private Socket startCompilerProcess(final JpsSdk<?> sdk, final CompileContext context, final String compilerName) throws IOException {
+    final ServerSocket serverSocket = new ServerSocket(0);
+    try {
+      //context.processMessage(new ProgressMessage("Starting Flex compiler"));
+      serverSocket.setSoTimeout(10000);
+      startCompilerProcess(sdk, serverSocket, context, compilerName);
+      return serverSocket.accept();
+    }
+    finally {
+      closeServerSocket(serverSocket);
+    }
   }
 
   private void startCompilerProcess(final JpsSdk<?> sdk,
-                                    final int port,
+                                    final ServerSocket serverSocket,
                                     final CompileContext context,
                                     final String compilerName) throws IOException {
     final StringBuilder classpath = new StringBuilder();
@@ -96,7 +157,7 @@ public class JpsBuiltInFlexCompilerHandler {
 
     final List<String> commandLine =
       FlexCommonUtils.getCommandLineForSdkTool(myProject, sdk, classpath.toString(), "com.intellij.flex.compiler.FlexCompiler");
-    commandLine.add(String.valueOf(port));
+    commandLine.add(String.valueOf(serverSocket.getLocalPort()));
 
     final ProcessBuilder processBuilder = new ProcessBuilder(commandLine);
     processBuilder.redirectErrorStream(true);
@@ -106,10 +167,13 @@ public class JpsBuiltInFlexCompilerHandler {
     context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.INFO, "Starting Flex compiler:\n" + plainCommand));
 
     final Process process = processBuilder.start();
-    readInputStreamUntilConnected(process, context, compilerName);
+    readInputStreamUntilConnected(process, serverSocket, context, compilerName);
   }
 
-  private void readInputStreamUntilConnected(final Process process, final CompileContext context, final String compilerName) {
+  private static void readInputStreamUntilConnected(final Process process,
+                                                    final ServerSocket serverSocket,
+                                                    final CompileContext context,
+                                                    final String compilerName) {
     SharedThreadPool.getInstance().executeOnPooledThread(() -> {
       final InputStreamReader reader = FlexCommonUtils.createInputStreamReader(process.getInputStream());
 
@@ -122,13 +186,13 @@ public class JpsBuiltInFlexCompilerHandler {
             break;
           }
           else {
-            closeSocket();
+            closeServerSocket(serverSocket);
             context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, output));
           }
         }
       }
       catch (IOException e) {
-        closeSocket();
+        closeServerSocket(serverSocket);
         context.processMessage(
           new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, "Failed to start Flex compiler: " + e.toString()));
       }
@@ -141,142 +205,394 @@ public class JpsBuiltInFlexCompilerHandler {
     });
   }
 
-  private void scheduleInputReading() {
-    SharedThreadPool.getInstance().executeOnPooledThread(() -> {
+  private static void closeServerSocket(final ServerSocket serverSocket) {
+    try {
+      serverSocket.close();
+    }
+    catch (IOException ignored) {/**/}
+  }
+
+  public synchronized void stopCompilerProcess() {
+    for (List<CompilerDaemon> daemons : mySdkHomeToDaemons.values()) {
+      for (CompilerDaemon daemon : daemons) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(daemon.getStats().toString());
+        }
+        daemon.finish();
+      }
+    }
+    mySdkHomeToDaemons.clear();
+  }
+
+  /**
+   * If the compilation of the listener is not finished yet, i.e. it has been cancelled, the compiler is asked to cancel it too.
+   */
+  public void removeListener(final Listener listener) {
+    final List<CompilerDaemon> allDaemons = new ArrayList<>();
+    synchronized (this) {
+      for (List<CompilerDaemon> daemons : mySdkHomeToDaemons.values()) {
+        allDaemons.addAll(daemons);
+      }
+    }
+
+    for (CompilerDaemon daemon : allDaemons) {
+      daemon.removeListener(listener);
+    }
+  }
+
+  public synchronized int getActiveCompilationsNumber() {
+    int result = 0;
+    for (List<CompilerDaemon> daemons : mySdkHomeToDaemons.values()) {
+      for (CompilerDaemon daemon : daemons) {
+        result += daemon.getActiveCompilationsNumber();
+      }
+    }
+    return result;
+  }
+
+  public synchronized List<DaemonStats> getDaemonStats() {
+    final List<DaemonStats> result = new ArrayList<>();
+    for (List<CompilerDaemon> daemons : mySdkHomeToDaemons.values()) {
+      for (CompilerDaemon daemon : daemons) {
+        result.add(daemon.getStats());
+      }
+    }
+    return result;
+  }
+
+  public static class DaemonStats {
+    public final String sdkHome;
+    public final int activeCompilations;
+    public final int finishedCompilations;
+    public final long aliveMillis;
+    public final long busyMillis;
+    /**
+     * -1 if unknown, i.e. no compilation has finished yet
+     */
+    public final long usedHeapBytes;
+    public final long maxHeapBytes;
+
+    private DaemonStats(final String sdkHome,
+                        final int activeCompilations,
+                        final int finishedCompilations,
+                        final long aliveMillis,
+                        final long busyMillis,
+                        final long usedHeapBytes,
+                        final long maxHeapBytes) {
+      this.sdkHome = sdkHome;
+      this.activeCompilations = activeCompilations;
+      this.finishedCompilations = finishedCompilations;
+      this.aliveMillis = aliveMillis;
+      this.busyMillis = busyMillis;
+      this.usedHeapBytes = usedHeapBytes;
+      this.maxHeapBytes = maxHeapBytes;
+    }
+
+    /**
+     * @return part of the daemon lifetime when it had at least one active compilation
+     */
+    public double getUtilization() {
+      return aliveMillis == 0 ? 0 : (double)busyMillis / aliveMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "Flex compiler daemon [" + sdkHome + "]: " + finishedCompilations + " compilations finished, " + activeCompilations +
+             " active, utilization " + Math.round(getUtilization() * 100) + "%, heap " + (usedHeapBytes >> 20) + " of " +
+             (maxHeapBytes >> 20) + " MB";
+    }
+  }
+
+  private static class CompilerDaemon {
+    private final String mySdkHome;
+    private final Socket mySocket;
+    private final DataInputStream myDataInputStream;
+    private final DataOutputStream myDataOutputStream;
+    private final long myStartTime = System.currentTimeMillis();
+    private boolean myFramedProtocol;
+
+    private final Map<Integer, Listener> myActiveListeners = ContainerUtil.newConcurrentMap();
+    private volatile boolean myStopped;
+
+    // guarded by this
+    private int myFinishedCompilations;
+    private long myBusyMillis;
+    private long myBusySince;
+
+    private volatile long myUsedHeapBytes = -1;
+    private volatile long myMaxHeapBytes = -1;
+
+    private CompilerDaemon(final String sdkHome, final Socket socket) throws IOException {
+      mySdkHome = sdkHome;
+      mySocket = socket;
+      myDataInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      myDataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    private static CompilerDaemon connect(final String sdkHome, final Socket socket) throws IOException {
+      try {
+        final CompilerDaemon daemon = new CompilerDaemon(sdkHome, socket);
+        daemon.negotiateProtocol();
+        daemon.scheduleInputReading();
+        return daemon;
+      }
+      catch (IOException e) {
+        try {
+          socket.close();
+        }
+        catch (IOException ignored) {/**/}
+        throw e;
+      }
+    }
+
+    /**
+     * Compiler answers the handshake with the same line if it supports the framed protocol. Older compilers report an incorrect command
+     * and finish it with lines that have no command number prefix.
+     */
+    private void negotiateProtocol() throws IOException {
+      mySocket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+      myDataOutputStream.writeUTF("0:" + FRAMED_PROTOCOL + "\n");
+      myDataOutputStream.flush();
+
       final StringBuilder buffer = new StringBuilder();
       while (true) {
-        final DataInputStream dataInputStream = myDataInputStream;
-        if (dataInputStream != null) {
-          try {
-            buffer.append(dataInputStream.readUTF());
+        buffer.append(myDataInputStream.readUTF());
 
-            int index;
-            while ((index = buffer.indexOf("\n")) > -1) {
-              final String line = buffer.substring(0, index);
-              buffer.delete(0, index + 1);
-              handleInputLine(line);
+        int index;
+        while ((index = buffer.indexOf("\n")) > -1) {
+          final String line = buffer.substring(0, index);
+          buffer.delete(0, index + 1);
+          LOG.debug("RECEIVED: [" + line + "]");
+
+          if (line.equals("0:" + FRAMED_PROTOCOL)) {
+            myFramedProtocol = true;
+          }
+          else if (!line.startsWith(COMPILATION_FINISHED) && !line.startsWith("0:" + COMPILATION_FINISHED)) {
+            continue;
+          }
+
+          mySocket.setSoTimeout(0);
+          return;
+        }
+      }
+    }
+
+    private boolean isStopped() {
+      return myStopped;
+    }
+
+    private void scheduleInputReading() {
+      SharedThreadPool.getInstance().executeOnPooledThread(() -> {
+        try {
+          if (myFramedProtocol) {
+            while (true) {
+              handleFrame(FlexCompilerFrame.read(myDataInputStream));
             }
           }
-          catch (IOException e) {
-            if (dataInputStream == myDataInputStream) {
-              stopCompilerProcess();
+          else {
+            final StringBuilder buffer = new StringBuilder();
+            while (true) {
+              buffer.append(myDataInputStream.readUTF());
+
+              int index;
+              while ((index = buffer.indexOf("\n")) > -1) {
+                final String line = buffer.substring(0, index);
+                buffer.delete(0, index + 1);
+                handleInputLine(line);
+              }
             }
-            break;
           }
         }
-        else {
-          break;
+        catch (IOException e) {
+          stop();
         }
-      }
-    });
-  }
+      });
+    }
 
-  private synchronized void handleInputLine(final String line) {
-    LOG.debug("RECEIVED: [" + line + "]");
+    private void handleFrame(final FlexCompilerFrame frame) {
+      LOG.debug("RECEIVED: " + frame);
 
-    final int colonPos = line.indexOf(":");
-    if (colonPos <= 0) {
-      LOG.error("Incorrect command: [" + line + "]");
-      return;
-    }
+      if (frame.kind == FlexCompilerFrame.FINISHED) {
+        final int spaceIndex = frame.payload.indexOf(' ');
+        if (spaceIndex > 0) {
+          try {
+            myUsedHeapBytes = Long.parseLong(frame.payload.substring(0, spaceIndex));
+            myMaxHeapBytes = Long.parseLong(frame.payload.substring(spaceIndex + 1));
+          }
+          catch (NumberFormatException ignored) {/**/}
+        }
 
-    final String prefix = line.substring(0, colonPos + 1);
-    final Listener listener = myActiveListeners.get(prefix);
-    if (listener == null) {
-      LOG.warn("No active listener for input line: [" + line + "]");  // could be message from cancelled compilation
+        compilationFinished(frame.commandNumber);
+      }
+      else if (frame.kind == FlexCompilerFrame.TEXT) {
+        textAvailable(frame.commandNumber, frame.payload);
+      }
+      else {
+        LOG.error("Incorrect frame kind: " + frame.kind);
+      }
     }
-    else {
+
+    private void handleInputLine(final String line) {
+      LOG.debug("RECEIVED: [" + line + "]");
+
+      final int colonPos = line.indexOf(":");
+      int commandNumber = -1;
+      if (colonPos > 0) {
+        try {
+          commandNumber = Integer.parseInt(line.substring(0, colonPos));
+        }
+        catch (NumberFormatException ignored) {/**/}
+      }
+      if (commandNumber < 0) {
+        LOG.error("Incorrect command: [" + line + "]");
+        return;
+      }
+
       final String text = line.substring(colonPos + 1);
       if (text.startsWith(COMPILATION_FINISHED)) {
-        listener.compilationFinished();
-        myActiveListeners.remove(prefix);
+        compilationFinished(commandNumber);
+      }
+      else {
+        textAvailable(commandNumber, text);
+      }
+    }
+
+    private void textAvailable(final int commandNumber, final String text) {
+      final Listener listener = myActiveListeners.get(commandNumber);
+      if (listener == null) {
+        LOG.warn("No active listener for message: [" + text + "]");  // could be message from cancelled compilation
       }
       else {
         listener.textAvailable(text);
       }
     }
-  }
 
-  public synchronized void sendCompilationCommand(final String command, final Listener listener) {
-    if (myDataOutputStream == null) {
-      listener.textAvailable("Error: Compiler process is not started.");
-      listener.compilationFinished();
-      return;
+    private void compilationFinished(final int commandNumber) {
+      final Listener listener = finishCompilation(commandNumber);
+      if (listener != null) {
+        listener.compilationFinished();
+      }
     }
 
-    try {
-      final String prefix = String.valueOf(commandNumber++) + ":";
-      final String commandToSend = prefix + command + "\n";
-      LOG.debug("SENDING: [" + commandToSend + "]");
-      myDataOutputStream.writeUTF(commandToSend);
-      myActiveListeners.put(prefix, listener);
+    private void sendCompilationCommand(final int commandNumber, final String command, final Listener listener) {
+      try {
+        send(commandNumber, FlexCompilerFrame.COMPILE, command);
+      }
+      catch (IOException e) {
+        if (finishCompilation(commandNumber) != null) {
+          listener.textAvailable("Error: Can't start compilation: " + e.toString());
+          listener.compilationFinished();
+        }
+      }
+    }
+
+    /**
+     * @param kind one of the frames sent to the compiler, in the line protocol it is sent as the corresponding command
+     */
+    private void send(final int commandNumber, final byte kind, final String command) throws IOException {
+      LOG.debug("SENDING: [" + commandNumber + ", " + kind + ", " + command + "]");
+      synchronized (myDataOutputStream) {
+        if (myFramedProtocol) {
+          FlexCompilerFrame.write(myDataOutputStream, commandNumber, kind, command);
+        }
+        else if (kind == FlexCompilerFrame.COMPILE) {
+          myDataOutputStream.writeUTF(commandNumber + ":" + command + "\n");
+        }
+        else {
+          // the line protocol can only cancel or finish all compilations of the process
+          myDataOutputStream.writeUTF((kind == FlexCompilerFrame.CANCEL ? CANCEL_COMMAND : FINISH_COMMAND) + "\n");
+        }
+        myDataOutputStream.flush();
+      }
     }
-    catch (IOException e) {
-      listener.textAvailable("Error: Can't start compilation: " + e.toString());
-      listener.compilationFinished();
+
+    private synchronized void addListener(final int commandNumber, final Listener listener) {
+      if (myActiveListeners.isEmpty()) {
+        myBusySince = System.currentTimeMillis();
+      }
+      myActiveListeners.put(commandNumber, listener);
     }
-  }
 
-  private synchronized void cancelAllCompilations(final boolean reportError) {
-    for (final Listener listener : myActiveListeners.values()) {
-      if (reportError) {
-        listener.textAvailable("Error: Compilation terminated");
+    private synchronized Listener finishCompilation(final int commandNumber) {
+      final Listener listener = myActiveListeners.remove(commandNumber);
+      if (listener != null) {
+        myFinishedCompilations++;
+        if (myActiveListeners.isEmpty()) {
+          myBusyMillis += System.currentTimeMillis() - myBusySince;
+        }
       }
-      listener.compilationFinished();
+      return listener;
     }
-    myActiveListeners.clear();
-  }
 
-  public synchronized void stopCompilerProcess() {
-    cancelAllCompilations(true);
-    closeSocket();
-  }
+    private void removeListener(final Listener listener) {
+      Integer cancelledCommandNumber = null;
+      synchronized (this) {
+        for (Map.Entry<Integer, Listener> entry : myActiveListeners.entrySet()) {
+          if (entry.getValue() == listener) {
+            cancelledCommandNumber = entry.getKey();
+            finishCompilation(cancelledCommandNumber);
+            break;
+          }
+        }
 
-  private synchronized void closeSocket() {
-    // compiler process exits when socket closes, so it's enough just to close streams
+        // "Cancel" of the line protocol would cancel compilations of other build targets too, and their listeners would wait forever
+        if (!myFramedProtocol && !myActiveListeners.isEmpty()) {
+          cancelledCommandNumber = null;
+        }
+      }
 
-    if (myDataInputStream != null) {
-      try {
-        myDataInputStream.close();
+      if (cancelledCommandNumber != null && !myStopped) {
+        try {
+          send(cancelledCommandNumber, FlexCompilerFrame.CANCEL, "");
+        }
+        catch (IOException e) {
+          LOG.debug(e);  // the daemon is stopped by the reader thread
+        }
       }
-      catch (IOException ignored) {/**/}
     }
 
-    if (myDataOutputStream != null) {
-      try {
-        myDataOutputStream.close();
-      }
-      catch (IOException ignored) {/**/}
+    private int getActiveCompilationsNumber() {
+      return myActiveListeners.size();
     }
 
-    if (myServerSocket != null) {
-      try {
-        myServerSocket.close();
+    private synchronized DaemonStats getStats() {
+      final long now = System.currentTimeMillis();
+      final long busyMillis = myBusyMillis + (myActiveListeners.isEmpty() ? 0 : now - myBusySince);
+      return new DaemonStats(mySdkHome, myActiveListeners.size(), myFinishedCompilations, now - myStartTime, busyMillis,
+                             myUsedHeapBytes, myMaxHeapBytes);
+    }
+
+    /**
+     * Asks the compiler process to exit and stops the daemon.
+     */
+    private void finish() {
+      if (!myStopped) {
+        try {
+          send(0, FlexCompilerFrame.FINISH, "");
+        }
+        catch (IOException e) {
+          LOG.debug(e);
+        }
       }
-      catch (IOException ignored) {/**/}
+      stop();
     }
 
-    myServerSocket = null;
-    myDataInputStream = null;
-    myDataOutputStream = null;
-  }
+    private void stop() {
+      myStopped = true;
 
-  public synchronized void removeListener(final Listener listener) {
-    String toRemove = null;
-    for (final Map.Entry<String, Listener> entry : myActiveListeners.entrySet()) {
-      if (entry.getValue() == listener) {
-        toRemove = entry.getKey();
-        break;
+      // compiler process exits when socket closes
+      try {
+        mySocket.close();
       }
-    }
+      catch (IOException ignored) {/**/}
 
-    if (toRemove != null) {
-      myActiveListeners.remove(toRemove);
+      for (Integer commandNumber : new ArrayList<>(myActiveListeners.keySet())) {
+        final Listener listener = finishCompilation(commandNumber);
+        if (listener != null) {
+          listener.textAvailable("Error: Compilation terminated");
+          listener.compilationFinished();
+        }
+      }
     }
   }
-
-  public synchronized int getActiveCompilationsNumber() {
-    return myActiveListeners.size();
-  }
 }
-
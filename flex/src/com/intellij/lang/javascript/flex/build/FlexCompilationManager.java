@@ -9,28 +9,50 @@ import com.intellij.lang.javascript.flex.projectStructure.options.BCUtils;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.compiler.CompileContext;
-import com.intellij.openapi.compiler.CompilerMessage;
 import com.intellij.openapi.compiler.CompilerMessageCategory;
-import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.util.NullableComputable;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import gnu.trove.THashMap;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Compiles build configurations as a dependency graph: a task waits for the tasks that compile the BCs it depends on and RLM tasks wait
+ * for the main application. A task is started as soon as its last dependency finishes. Tasks signal their completion through a queue,
+ * so that the compile thread doesn't need to poll them.
+ */
 public class FlexCompilationManager {
 
+  // only to notice cancellation of the progress indicator, finished tasks wake up the compile thread immediately
+  private static final long CANCELLATION_CHECK_INTERVAL_MS = 200;
+
   private final CompileContext myCompileContext;
   private final int myMaxParallelCompilations;
   private final int myTasksAmount;
-  private final Collection<FlexCompilationTask> myNotStartedTasks;
-  private final Collection<FlexCompilationTask> myInProgressTasks;
-  private final Collection<FlexCompilationTask> myFinishedTasks;
+
+  private final TObjectIntHashMap<FlexCompilationTask> myTaskIndices = new TObjectIntHashMap<>();
+  private final Map<FlexCompilationTask, Collection<FlexCompilationTask>> myDependentTasks = new THashMap<>();
+  private final TObjectIntHashMap<FlexCompilationTask> myUnfinishedDependenciesCount = new TObjectIntHashMap<>();
+
+  private final Set<FlexCompilationTask> myNotStartedTasks = new LinkedHashSet<>();
+  // not started tasks without unfinished dependencies, in the initial order of tasks
+  private final Queue<FlexCompilationTask> myReadyTasks;
+  private final Set<FlexCompilationTask> myInProgressTasks = new LinkedHashSet<>();
+  private int myFinishedTasksCount;
+  private final BlockingQueue<FlexCompilationTask> myFinishedTasksQueue = new LinkedBlockingQueue<>();
+
+  // information messages per task, needed for post compile actions
+  private final Map<FlexCompilationTask, List<String>> myTaskMessages = new THashMap<>();
 
   private boolean myCompilationFinished;
   private final FlexCompilerDependenciesCache myCompilerDependenciesCache;
@@ -40,13 +62,33 @@ public class FlexCompilationManager {
 
   public FlexCompilationManager(final CompileContext context, final Collection<FlexCompilationTask> compilationTasks) {
     myCompileContext = context;
-    myMaxParallelCompilations = FlexCompilerProjectConfiguration.getInstance(context.getProject()).MAX_PARALLEL_COMPILATIONS;
+    myMaxParallelCompilations =
+      Math.max(1, FlexCompilerProjectConfiguration.getInstance(context.getProject()).MAX_PARALLEL_COMPILATIONS);
     myTasksAmount = compilationTasks.size();
-    myNotStartedTasks = new LinkedList<>(compilationTasks);
-    myInProgressTasks = new LinkedList<>();
-    myFinishedTasks = new LinkedList<>();
     myCompilationFinished = false;
     myCompilerDependenciesCache = FlexCompilerHandler.getInstance(context.getProject()).getCompilerDependenciesCache();
+
+    for (FlexCompilationTask task : compilationTasks) {
+      myTaskIndices.put(task, myTaskIndices.size());
+      myDependentTasks.put(task, new ArrayList<>());
+      myNotStartedTasks.add(task);
+    }
+
+    for (FlexCompilationTask task : compilationTasks) {
+      for (FlexCompilationTask otherTask : compilationTasks) {
+        if (otherTask != task && (dependsOnBC(task, otherTask.getBC()) || isMainAppForRLM(otherTask, task))) {
+          myDependentTasks.get(otherTask).add(task);
+          myUnfinishedDependenciesCount.adjustOrPutValue(task, 1, 1);
+        }
+      }
+    }
+
+    myReadyTasks = new PriorityQueue<>(Math.max(1, myTasksAmount), Comparator.comparingInt(myTaskIndices::get));
+    for (FlexCompilationTask task : compilationTasks) {
+      if (myUnfinishedDependenciesCount.get(task) == 0) {
+        myReadyTasks.add(task);
+      }
+    }
   }
 
   public void compile() {
@@ -60,13 +102,17 @@ public class FlexCompilationManager {
           break;
         }
 
-        checkFinishedTasks();
-        startNewTaskIfPossible();
+        startReadyTasks();
         updateProgressIndicator();
 
+        if (myInProgressTasks.isEmpty()) continue;
+
         try {
-          //noinspection BusyWait
-          Thread.sleep(200);
+          FlexCompilationTask finishedTask = myFinishedTasksQueue.poll(CANCELLATION_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+          while (finishedTask != null) {
+            processFinishedTask(finishedTask);
+            finishedTask = myFinishedTasksQueue.poll();
+          }
         }
         catch (InterruptedException e) {
           assert false;
@@ -77,10 +123,18 @@ public class FlexCompilationManager {
       //noinspection SynchronizeOnThis
       synchronized (this) {
         myCompilationFinished = true;
+        myTaskMessages.clear();
       }
     }
   }
 
+  /**
+   * Called by a started task when it is finished, successfully or not. May be called on any thread.
+   */
+  void taskFinished(final FlexCompilationTask task) {
+    myFinishedTasksQueue.offer(task);
+  }
+
   public synchronized void addMessage(final FlexCompilationTask task,
                                       CompilerMessageCategory category,
                                       final String message,
@@ -94,6 +148,13 @@ public class FlexCompilationManager {
       }
 
       if (category == CompilerMessageCategory.INFORMATION) {
+        List<String> taskMessages = myTaskMessages.get(task);
+        if (taskMessages == null) {
+          taskMessages = new ArrayList<>();
+          myTaskMessages.put(task, taskMessages);
+        }
+        taskMessages.add(message);
+
         final int bytesWrittenIndex = message.indexOf(BYTES_WRITTEN_TO);
 
         if (bytesWrittenIndex > 0) {
@@ -136,55 +197,59 @@ public class FlexCompilationManager {
     return !myCompileContext.isMake();
   }
 
-  private void checkFinishedTasks() {
-    final Iterator<FlexCompilationTask> iterator = myInProgressTasks.iterator();
-    while (iterator.hasNext()) {
-      FlexCompilationTask task = iterator.next();
-      if (task.isFinished()) {
-        iterator.remove();
-        myFinishedTasks.add(task);
-
-        if (task.isCompilationFailed()) {
-          final Collection<FlexCompilationTask> cancelledTasks = cancelNotStartedDependentTasks(task);
-          if (cancelledTasks.isEmpty()) {
-            addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed"), null, -1, -1);
-          }
-          else {
-            addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped"),
-                       null, -1, -1);
-            for (final FlexCompilationTask cancelledTask : cancelledTasks) {
-              addMessage(cancelledTask, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped"), null, -1, -1);
-            }
-          }
-        }
-        else {
-          addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.successful"), null, -1, -1);
+  private synchronized List<String> takeTaskMessages(final FlexCompilationTask task) {
+    final List<String> messages = myTaskMessages.remove(task);
+    return messages == null ? Collections.emptyList() : messages;
+  }
 
-          final String prefix = getMessagePrefix(task);
-          final List<String> taskMessages = new ArrayList<>();
-          for (CompilerMessage message : myCompileContext.getMessages(CompilerMessageCategory.INFORMATION)) {
-            if (message.getMessage().startsWith(prefix)) {
-              taskMessages.add(message.getMessage().substring(prefix.length()));
-            }
-          }
+  private void processFinishedTask(final FlexCompilationTask task) {
+    if (!myInProgressTasks.remove(task)) return;
+    myFinishedTasksCount++;
 
-          try {
-            FlexCompilationUtils.performPostCompileActions(task.getModule(), task.getBC(), taskMessages);
-          }
-          catch (FlexCompilerException e) {
-            addMessage(task, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
-          }
+    if (task.isCompilationFailed()) {
+      final Collection<FlexCompilationTask> cancelledTasks = cancelNotStartedDependentTasks(task);
+      if (cancelledTasks.isEmpty()) {
+        addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed"), null, -1, -1);
+      }
+      else {
+        addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped"),
+                   null, -1, -1);
+        for (final FlexCompilationTask cancelledTask : cancelledTasks) {
+          addMessage(cancelledTask, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped"), null, -1, -1);
+          takeTaskMessages(cancelledTask);
         }
+      }
+      takeTaskMessages(task);
+    }
+    else {
+      addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.successful"), null, -1, -1);
 
-        if (task.isCompilationFailed()) {
-          myCompilerDependenciesCache.markBCDirty(task.getModule(), task.getBC());
-        }
-        else {
-          //noinspection SynchronizeOnThis
-          synchronized (this) {
-            myCompilerDependenciesCache.cacheBC(task.getModule(), task.getBC(), task.getConfigFiles());
-          }
-        }
+      try {
+        task.performPostCompileActions(takeTaskMessages(task));
+      }
+      catch (FlexCompilerException e) {
+        addMessage(task, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
+      }
+    }
+
+    if (task.isCompilationFailed()) {
+      myCompilerDependenciesCache.markBCDirty(task.getModule(), task.getBC());
+    }
+    else {
+      //noinspection SynchronizeOnThis
+      synchronized (this) {
+        myCompilerDependenciesCache.cacheBC(task.getModule(), task.getBC(), task.getConfigFiles());
+      }
+    }
+
+    onTaskCompleted(task);
+  }
+
+  private void onTaskCompleted(final FlexCompilationTask task) {
+    for (FlexCompilationTask dependentTask : myDependentTasks.get(task)) {
+      if (myNotStartedTasks.contains(dependentTask) &&
+          myUnfinishedDependenciesCount.adjustOrPutValue(dependentTask, -1, 0) == 0) {
+        myReadyTasks.add(dependentTask);
       }
     }
   }
@@ -194,135 +259,77 @@ public class FlexCompilationManager {
   }
 
   private Collection<FlexCompilationTask> cancelNotStartedDependentTasks(final FlexCompilationTask failedTask) {
-    final Collection<FlexCompilationTask> tasksToCancel = new LinkedList<>();
-    appendAndCancelNotStartedDependentTasks(tasksToCancel, failedTask);
-
-    if (BCUtils.canHaveRLMsAndRuntimeStylesheets(failedTask.getBC())) {
-      appendAndCancelNotStartedRLMTasks(tasksToCancel, failedTask.getModule(), failedTask.getBC());
-    }
-
-    return tasksToCancel;
+    final Collection<FlexCompilationTask> cancelledTasks = new ArrayList<>();
+    appendAndCancelNotStartedDependentTasks(cancelledTasks, failedTask);
+    return cancelledTasks;
   }
 
   private void appendAndCancelNotStartedDependentTasks(final Collection<FlexCompilationTask> cancelledTasks,
                                                        final FlexCompilationTask task) {
-    final Collection<FlexCompilationTask> tasksToCancel = new ArrayList<>();
-
-    for (FlexCompilationTask notStartedTask : myNotStartedTasks) {
-      //noinspection ConstantConditions
-      if (notStartedTask.getDependencies().contains(task.getBC())) {
-        tasksToCancel.add(notStartedTask);
-      }
-    }
-
-    for (FlexCompilationTask taskToCancel : tasksToCancel) {
-      taskToCancel.cancel();
-      if (myNotStartedTasks.remove(taskToCancel)) {
-        myFinishedTasks.add(taskToCancel);
-        cancelledTasks.add(taskToCancel);
-        appendAndCancelNotStartedDependentTasks(cancelledTasks, taskToCancel);
+    for (FlexCompilationTask dependentTask : myDependentTasks.get(task)) {
+      if (myNotStartedTasks.remove(dependentTask)) {
+        myReadyTasks.remove(dependentTask);
+        dependentTask.cancel();
+        myFinishedTasksCount++;
+        cancelledTasks.add(dependentTask);
+        appendAndCancelNotStartedDependentTasks(cancelledTasks, dependentTask);
       }
     }
   }
 
-  private void appendAndCancelNotStartedRLMTasks(final Collection<FlexCompilationTask> tasks,
-                                                 final Module module,
-                                                 final FlexBuildConfiguration bc) {
-    final Iterator<FlexCompilationTask> iterator = myNotStartedTasks.iterator();
-    while (iterator.hasNext()) {
-      final FlexCompilationTask task = iterator.next();
-      if (module == task.getModule() && bc.getName().equals(task.getBC().getName()) && BCUtils.isRLMTemporaryBC(task.getBC())) {
-        iterator.remove();
-        myFinishedTasks.add(task);
-        tasks.add(task);
+  private void startReadyTasks() {
+    while (myInProgressTasks.size() < myMaxParallelCompilations && !myNotStartedTasks.isEmpty()) {
+      FlexCompilationTask taskToStart = myReadyTasks.poll();
+      if (taskToStart == null) {
+        if (!myInProgressTasks.isEmpty()) return;
+        taskToStart = myNotStartedTasks.iterator().next(); // cyclic dependencies, just take any task from the cycle
       }
-    }
-  }
 
-  private void startNewTaskIfPossible() {
-    FlexCompilationTask taskToStart = null;
+      myNotStartedTasks.remove(taskToStart);
 
-    if (!myNotStartedTasks.isEmpty() && myInProgressTasks.size() < myMaxParallelCompilations) {
-      boolean allTasksHaveDependenciesOnlyInNotStarted = true; // to handle cyclic dependencies
+      if (myCompilerDependenciesCache.isNothingChangedSincePreviousCompilation(taskToStart.getModule(), taskToStart.getBC())) {
+        addMessage(taskToStart, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped.because.nothing.changed"),
+                   null, -1, -1);
+        takeTaskMessages(taskToStart);
+        taskToStart.cancel();
+        myFinishedTasksCount++;
 
-      for (FlexCompilationTask task : myNotStartedTasks) {
-
-        if (BCUtils.isRLMTemporaryBC(task.getBC()) && !isMainAppCompiledForRLM(task.getModule(), task.getBC())) {
-          allTasksHaveDependenciesOnlyInNotStarted = false;
-          continue;
-        }
-
-        if (hasDependenciesIn(task, myInProgressTasks)) {
-          allTasksHaveDependenciesOnlyInNotStarted = false;
-          continue;
+        try {
+          taskToStart.performPostCompileActions(Collections.emptyList());
         }
-        if (hasDependenciesIn(task, myNotStartedTasks)) {
-          continue;
+        catch (FlexCompilerException e) {
+          addMessage(taskToStart, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
         }
 
-        taskToStart = task;
-        break;
+        onTaskCompleted(taskToStart);
       }
-
-      if (taskToStart == null && allTasksHaveDependenciesOnlyInNotStarted) {
-        taskToStart = myNotStartedTasks.iterator().next(); // just take any from cycle dependencies
-      }
-
-      if (taskToStart != null) {
-        myNotStartedTasks.remove(taskToStart);
-
-        if (myCompilerDependenciesCache.isNothingChangedSincePreviousCompilation(taskToStart.getModule(), taskToStart.getBC())) {
-          addMessage(taskToStart, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped.because.nothing.changed"),
-                     null, -1, -1);
-          taskToStart.cancel();
-          myFinishedTasks.add(taskToStart);
-
-          try {
-            FlexCompilationUtils.performPostCompileActions(taskToStart.getModule(), taskToStart.getBC(), Collections.emptyList());
-          }
-          catch (FlexCompilerException e) {
-            addMessage(taskToStart, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
-          }
-        }
-        else {
-          taskToStart.start(this);
-          myInProgressTasks.add(taskToStart);
-        }
-
-        startNewTaskIfPossible();
+      else {
+        myInProgressTasks.add(taskToStart);
+        taskToStart.start(this);
       }
     }
   }
 
-  private boolean isMainAppCompiledForRLM(final Module module, final FlexBuildConfiguration rlmBC) {
-    for (FlexCompilationTask task : myFinishedTasks) {
-      final FlexBuildConfiguration bc = task.getBC();
-      if (task.getModule() == module &&
-          bc.getName().equals(rlmBC.getName()) &&
-          !BCUtils.isRLMTemporaryBC(bc) &&
-          !BCUtils.isRuntimeStyleSheetBC(bc) &&
-          BCUtils.canHaveRLMsAndRuntimeStylesheets(bc) &&
-          bc.getRLMs().size() > 0) {
-        return true;
-      }
-    }
-    return false;
+  private static boolean dependsOnBC(final FlexCompilationTask task, final FlexBuildConfiguration bc) {
+    final Collection<FlexBuildConfiguration> dependencies = task.getDependencies();
+    return dependencies != null && dependencies.contains(bc);
   }
 
-  private static boolean hasDependenciesIn(final FlexCompilationTask task,
-                                           final Collection<FlexCompilationTask> tasksToSearchDependencies) {
-    for (final FlexCompilationTask otherTask : tasksToSearchDependencies) {
-      //noinspection ConstantConditions
-      if (task.getDependencies().contains(otherTask.getBC())) {
-        return true;
-      }
-    }
-    return false;
+  private static boolean isMainAppForRLM(final FlexCompilationTask mainAppTask, final FlexCompilationTask rlmTask) {
+    final FlexBuildConfiguration bc = mainAppTask.getBC();
+    final FlexBuildConfiguration rlmBC = rlmTask.getBC();
+    return BCUtils.isRLMTemporaryBC(rlmBC) &&
+           mainAppTask.getModule() == rlmTask.getModule() &&
+           bc.getName().equals(rlmBC.getName()) &&
+           !BCUtils.isRLMTemporaryBC(bc) &&
+           !BCUtils.isRuntimeStyleSheetBC(bc) &&
+           BCUtils.canHaveRLMsAndRuntimeStylesheets(bc) &&
+           bc.getRLMs().size() > 0;
   }
 
   private void updateProgressIndicator() {
     final ProgressIndicator progressIndicator = myCompileContext.getProgressIndicator();
-    progressIndicator.setFraction(1. * myFinishedTasks.size() / myTasksAmount);
+    progressIndicator.setFraction(1. * myFinishedTasksCount / myTasksAmount);
     final StringBuilder builder = new StringBuilder();
 
     if (!myInProgressTasks.isEmpty()) {
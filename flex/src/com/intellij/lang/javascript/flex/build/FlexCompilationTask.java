@@ -22,8 +22,9 @@ public abstract class FlexCompilationTask {
 
   private List<VirtualFile> myConfigFiles;
 
-  protected boolean myFinished;
-  protected boolean myCompilationFailed;
+  private boolean myFinished;
+  protected volatile boolean myCompilationFailed;
+  private FlexCompilationManager myCompilationManager;
 
   protected FlexCompilationTask(final Module module,
                                 final FlexBuildConfiguration bc,
@@ -42,6 +43,10 @@ public abstract class FlexCompilationTask {
   }
 
   public void start(final FlexCompilationManager compilationManager) {
+    synchronized (this) {
+      myCompilationManager = compilationManager;
+    }
+
     try {
       myConfigFiles = createConfigFiles();
       final String outputFilePath = myBC.getActualOutputFilePath();
@@ -82,12 +87,35 @@ public abstract class FlexCompilationTask {
 
   public void cancel() {
     doCancel();
-    myFinished = true;
+    setFinished();
   }
 
   protected abstract void doCancel();
 
-  public boolean isFinished() {
+  /**
+   * Called by the compilation manager after successful compilation or if compilation was skipped because nothing changed.
+   */
+  protected void performPostCompileActions(final List<String> compileInfoMessages) throws FlexCompilerException {
+    FlexCompilationUtils.performPostCompileActions(myModule, myBC, compileInfoMessages);
+  }
+
+  /**
+   * Marks the task as finished and notifies the compilation manager that started it. Only the first call has an effect.
+   */
+  protected void setFinished() {
+    final FlexCompilationManager compilationManager;
+    synchronized (this) {
+      if (myFinished) return;
+      myFinished = true;
+      compilationManager = myCompilationManager;
+    }
+
+    if (compilationManager != null) {
+      compilationManager.taskFinished(this);
+    }
+  }
+
+  public synchronized boolean isFinished() {
     return myFinished;
   }
 
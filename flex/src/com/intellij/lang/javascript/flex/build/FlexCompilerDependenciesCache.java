@@ -5,28 +5,57 @@ import com.intellij.flex.model.bc.BuildConfigurationNature;
 import com.intellij.lang.javascript.flex.FlexUtils;
 import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
 import com.intellij.lang.javascript.flex.projectStructure.model.impl.Factory;
+import com.intellij.lang.javascript.flex.projectStructure.options.BCUtils;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.ModuleListener;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleFileIndex;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.roots.ProjectRootManager;
-import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
 import gnu.trove.THashMap;
+import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
-public class FlexCompilerDependenciesCache {
+/**
+ * Remembers which files each compiled build configuration depends on: the output file, config files, files referenced from config files
+ * (SWCs, manifests, etc.), AIR descriptors and the files under module source roots. Files are fingerprinted by length, timestamp and
+ * content hash, so touching a file without changing it doesn't make the BC dirty. Fingerprints are stored in a persistent map under the
+ * system directory, so that up-to-date BCs are not recompiled after IDE restart.
+ */
+public class FlexCompilerDependenciesCache implements Disposable {
+
+  private static final Logger LOG = Logger.getInstance(FlexCompilerDependenciesCache.class.getName());
+
+  private static final int STORAGE_VERSION = 1;
 
   private final Project myProject;
-  private final Map<Module, Collection<BCInfo>> myCache = new THashMap<>();
+  private final File myStorageDir;
+  // key is the result of getBCKey(), value is null if it is known that the BC is not in the persistent storage
+  private final Map<String, BCInfo> myCache = new THashMap<>();
+  private PersistentHashMap<String, BCInfo> myStorage;
+  // storage files are deleted when the storage is opened next time, so that clear() doesn't touch the disk
+  private boolean myStorageInvalid;
 
   private static final String[] TAGS_FOR_FILE_PATHS_IN_CONFIG_FILE =
     {"<flex-config><compiler><external-library-path><path-element>", "<flex-config><compiler><local-font-paths><path-element>",
@@ -43,34 +72,47 @@ public class FlexCompilerDependenciesCache {
 
   public FlexCompilerDependenciesCache(final Project project) {
     myProject = project;
+    myStorageDir = new File(PathManager.getSystemPath(),
+                            "flex-compiler-dependencies/" + project.getLocationHash() + "/v" + STORAGE_VERSION);
 
     project.getMessageBus().connect(project).subscribe(ProjectTopics.MODULES, new ModuleListener() {
       public void moduleRemoved(@NotNull final Project project, @NotNull final Module module) {
-        myCache.remove(module);
+        markModuleDirty(module);
       }
     });
+
+    Disposer.register(project, this);
   }
 
-  public void clear() {
-    myCache.clear();
+  @Override
+  public void dispose() {
+    closeStorage();
   }
 
-  public void markModuleDirty(final Module module) {
-    myCache.remove(module);
+  public synchronized void clear() {
+    myCache.clear();
+    closeStorage();
+    myStorageInvalid = true;
   }
 
-  public void markBCDirty(final Module module, final FlexBuildConfiguration bc) {
-    final Collection<BCInfo> infosForModule = myCache.get(module);
-    final BCInfo existingInfo = infosForModule == null ? null : findCacheForBC(infosForModule, bc);
-    if (existingInfo != null) {
-      infosForModule.remove(existingInfo);
-      if (infosForModule.isEmpty()) {
-        myCache.remove(module);
+  public synchronized void markModuleDirty(final Module module) {
+    final String prefix = getModuleKeyPrefix(module);
+    for (Iterator<String> iterator = myCache.keySet().iterator(); iterator.hasNext(); ) {
+      final String key = iterator.next();
+      if (key.startsWith(prefix)) {
+        iterator.remove();
+        removeFromStorage(key);
       }
     }
   }
 
-  public void markModuleDirtyIfInSourceRoot(final VirtualFile file) {
+  public synchronized void markBCDirty(final Module module, final FlexBuildConfiguration bc) {
+    final String key = getBCKey(module, bc);
+    myCache.remove(key);
+    removeFromStorage(key);
+  }
+
+  public synchronized void markModuleDirtyIfInSourceRoot(final VirtualFile file) {
     if (myCache.isEmpty()) return;
 
     final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(myProject).getFileIndex();
@@ -81,125 +123,421 @@ public class FlexCompilerDependenciesCache {
   }
 
   public boolean isNothingChangedSincePreviousCompilation(final Module module, final FlexBuildConfiguration bc) {
-    final Collection<BCInfo> infosForModule = myCache.get(module);
-    final BCInfo existingInfo = infosForModule == null ? null : findCacheForBC(infosForModule, bc);
-    if (existingInfo == null) {
-      return false;
+    final long start = System.currentTimeMillis();
+    final String reason = findChangeSincePreviousCompilation(module, bc);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(FlexCompilationTask.getPresentableName(module, bc) + ": " + (reason == null ? "nothing changed" : reason) +
+                " (checked in " + (System.currentTimeMillis() - start) + " ms)");
     }
+    return reason == null;
+  }
 
-    final String[] currentSourceRoots = ModuleRootManager.getInstance(module).getSourceRootUrls();
-    if (!Arrays.equals(existingInfo.mySourceRootUrls, currentSourceRoots) || existingInfo.timestampsChanged()) {
-      infosForModule.remove(existingInfo);
-      if (infosForModule.isEmpty()) {
-        myCache.remove(module);
-      }
-      return false;
+  /**
+   * @return description of the change that makes the BC dirty, or {@code null} if nothing changed since the previous compilation
+   */
+  @Nullable
+  public synchronized String findChangeSincePreviousCompilation(final Module module, final FlexBuildConfiguration bc) {
+    final String key = getBCKey(module, bc);
+    final BCInfo info = getInfo(key);
+    if (info == null) {
+      return "not compiled yet";
+    }
+
+    final String reason;
+    if (!info.mySettingsHash.equals(getSettingsHash(module, bc))) {
+      reason = "build configuration changed";
+    }
+    else if (!Arrays.equals(info.mySourceRootUrls, ModuleRootManager.getInstance(module).getSourceRootUrls())) {
+      reason = "source roots changed";
+    }
+    else {
+      reason = info.findChangedFile(collectSourceFiles(module));
     }
 
-    return true;
+    if (reason != null) {
+      myCache.remove(key);
+      removeFromStorage(key);
+    }
+    else if (info.myTimestampsRefreshed) {
+      info.myTimestampsRefreshed = false;
+      putToStorage(key, info);
+    }
+    return reason;
   }
 
+  /**
+   * Files are hashed without holding the lock, so that checks of other BCs don't wait for it.
+   */
   public void cacheBC(final Module module, final FlexBuildConfiguration bc, final List<VirtualFile> configFiles) {
-    Collection<BCInfo> infosForModule = myCache.get(module);
-    if (infosForModule == null) {
-      infosForModule = new ArrayList<>();
-      myCache.put(module, infosForModule);
-    }
-    else {
-      final BCInfo existingInfo = findCacheForBC(infosForModule, bc);
-      if (existingInfo != null) {
-        infosForModule.remove(existingInfo);
-      }
+    final String key = getBCKey(module, bc);
+    synchronized (this) {
+      myCache.remove(key);
+      removeFromStorage(key);
     }
 
     final VirtualFile outputFile = FlexCompilationManager.refreshAndFindFileInWriteAction(bc.getActualOutputFilePath());
     if (outputFile == null) return;
 
-    final BCInfo bcInfo = new BCInfo(Factory.getCopy(bc), ModuleRootManager.getInstance(module).getSourceRootUrls());
-    infosForModule.add(bcInfo);
-
-    bcInfo.addFileDependency(outputFile.getPath());
+    final Collection<File> dependencies = new LinkedHashSet<>();
+    addFileDependency(dependencies, outputFile.getPath());
 
     final String workDirPath = FlexUtils.getFlexCompilerWorkDirPath(module.getProject(), null);
     for (VirtualFile configFile : configFiles) {
-      addFileDependencies(bcInfo, configFile, workDirPath);
+      addFileDependencies(dependencies, configFile, workDirPath);
     }
 
     if (bc.isTempBCForCompilation() && !bc.getCompilerOptions().getAdditionalConfigFilePath().isEmpty()) {
-      bcInfo.addFileDependency(bc.getCompilerOptions().getAdditionalConfigFilePath());
+      addFileDependency(dependencies, bc.getCompilerOptions().getAdditionalConfigFilePath());
     }
 
     final BuildConfigurationNature nature = bc.getNature();
     if (nature.isApp() && !nature.isWebPlatform()) {
       if (nature.isDesktopPlatform()) {
         if (!bc.getAirDesktopPackagingOptions().isUseGeneratedDescriptor()) {
-          bcInfo.addFileDependency(bc.getAirDesktopPackagingOptions().getCustomDescriptorPath());
+          addFileDependency(dependencies, bc.getAirDesktopPackagingOptions().getCustomDescriptorPath());
         }
       }
       else {
         if (bc.getAndroidPackagingOptions().isEnabled() && !bc.getAndroidPackagingOptions().isUseGeneratedDescriptor()) {
-          bcInfo.addFileDependency(bc.getAndroidPackagingOptions().getCustomDescriptorPath());
+          addFileDependency(dependencies, bc.getAndroidPackagingOptions().getCustomDescriptorPath());
         }
         if (bc.getIosPackagingOptions().isEnabled() && !bc.getIosPackagingOptions().isUseGeneratedDescriptor()) {
-          bcInfo.addFileDependency(bc.getIosPackagingOptions().getCustomDescriptorPath());
+          addFileDependency(dependencies, bc.getIosPackagingOptions().getCustomDescriptorPath());
         }
       }
     }
+
+    final BCInfo info = new BCInfo(getSettingsHash(module, bc), ModuleRootManager.getInstance(module).getSourceRootUrls(),
+                                   FileFingerprint.create(dependencies), FileFingerprint.create(collectSourceFiles(module)));
+    synchronized (this) {
+      myCache.put(key, info);
+      putToStorage(key, info);
+    }
+  }
+
+  private static String getModuleKeyPrefix(final Module module) {
+    return module.getName() + "\n";
+  }
+
+  private static String getBCKey(final Module module, final FlexBuildConfiguration bc) {
+    final String specifier = BCUtils.getBCSpecifier(bc);
+    return getModuleKeyPrefix(module) + bc.getName() + (specifier == null ? "" : "\n" + specifier);
+  }
+
+  private static String getSettingsHash(final Module module, final FlexBuildConfiguration bc) {
+    final String state = Factory.getSerializedState(bc, module) + "\n" + bc.getMainClass();
+    return toHex(createDigest().digest(state.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Nullable
+  private BCInfo getInfo(final String key) {
+    if (myCache.containsKey(key)) {
+      return myCache.get(key);
+    }
+
+    BCInfo info = null;
+    final PersistentHashMap<String, BCInfo> storage = getStorage();
+    if (storage != null) {
+      try {
+        info = storage.get(key);
+      }
+      catch (IOException e) {
+        handleStorageError(e);
+      }
+    }
+    myCache.put(key, info);
+    return info;
+  }
+
+  private void putToStorage(final String key, final BCInfo info) {
+    final PersistentHashMap<String, BCInfo> storage = getStorage();
+    if (storage != null) {
+      try {
+        storage.put(key, info);
+      }
+      catch (IOException e) {
+        handleStorageError(e);
+      }
+    }
+  }
+
+  private void removeFromStorage(final String key) {
+    final PersistentHashMap<String, BCInfo> storage = getStorage();
+    if (storage != null) {
+      try {
+        storage.remove(key);
+      }
+      catch (IOException e) {
+        handleStorageError(e);
+      }
+    }
   }
 
   @Nullable
-  private static BCInfo findCacheForBC(final @NotNull Collection<BCInfo> bcInfos, @NotNull final FlexBuildConfiguration bc) {
-    return ContainerUtil.find(bcInfos, info -> info.myBC.isEqual(bc));
+  private PersistentHashMap<String, BCInfo> getStorage() {
+    if (myStorage == null && !myProject.isDisposed()) {
+      if (myStorageInvalid) {
+        FileUtil.delete(myStorageDir);
+        myStorageInvalid = false;
+      }
+      final File file = new File(myStorageDir, "bcInfos");
+      try {
+        myStorage = new PersistentHashMap<>(file, EnumeratorStringDescriptor.INSTANCE, new BCInfoExternalizer());
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        FileUtil.delete(myStorageDir);
+        try {
+          myStorage = new PersistentHashMap<>(file, EnumeratorStringDescriptor.INSTANCE, new BCInfoExternalizer());
+        }
+        catch (IOException e1) {
+          LOG.warn(e1);
+        }
+      }
+    }
+    return myStorage;
   }
 
-  private static void addFileDependencies(final BCInfo bcInfo, final VirtualFile configFile, final String workDirPath) {
-    bcInfo.addFileDependency(configFile.getPath());
+  private void handleStorageError(final IOException e) {
+    LOG.info(e);
+    closeStorage();
+    myStorageInvalid = true;
+  }
+
+  private synchronized void closeStorage() {
+    if (myStorage != null) {
+      try {
+        myStorage.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+      myStorage = null;
+    }
+  }
+
+  /**
+   * Excluded folders and ignored files are skipped, as well as test sources if a test source root is nested in a production one.
+   */
+  private static Collection<File> collectSourceFiles(final Module module) {
+    return ReadAction.compute(() -> {
+      final Collection<File> result = new ArrayList<>();
+      final ModuleRootManager rootManager = ModuleRootManager.getInstance(module);
+      final ModuleFileIndex fileIndex = rootManager.getFileIndex();
+      for (VirtualFile sourceRoot : rootManager.getSourceRoots(false)) {
+        fileIndex.iterateContentUnderDirectory(sourceRoot, file -> {
+          if (!file.isDirectory() && !fileIndex.isInTestSourceContent(file)) {
+            result.add(VfsUtilCore.virtualToIoFile(file));
+          }
+          return true;
+        });
+      }
+      return result;
+    });
+  }
+
+  private static void addFileDependencies(final Collection<File> dependencies, final VirtualFile configFile, final String workDirPath) {
+    addFileDependency(dependencies, configFile.getPath());
 
     try {
       final Map<String, List<String>> elementsMap =
         FlexUtils.findXMLElements(configFile.getInputStream(), Arrays.asList(TAGS_FOR_FILE_PATHS_IN_CONFIG_FILE));
       for (List<String> filePathList : elementsMap.values()) {
         for (String filePath : filePathList) {
-          bcInfo.addFileDependency(filePath, configFile.getParent().getPath(), workDirPath);
+          addFileDependency(dependencies, filePath, configFile.getParent().getPath(), workDirPath);
         }
       }
     }
     catch (IOException e) {/*ignore*/}
   }
 
+  private static void addFileDependency(final Collection<File> dependencies, final String filePath, final String... potentialBaseDirs) {
+    final File file = new File(FileUtil.toSystemDependentName(filePath));
+    if (file.exists()) {
+      dependencies.add(file);
+    }
+    else if (potentialBaseDirs != null) {
+      for (String baseDir : potentialBaseDirs) {
+        final File file1 = new File(FileUtil.toSystemDependentName(baseDir + '/' + filePath));
+        if (file1.exists()) {
+          dependencies.add(file1);
+          break;
+        }
+      }
+    }
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHex(final byte[] bytes) {
+    final StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+
   private static class BCInfo {
-    private final FlexBuildConfiguration myBC;
+    private final String mySettingsHash;
     private final String[] mySourceRootUrls;
-    private final Collection<Pair<File, Long>> myFileToTimestamp = new ArrayList<>();
+    private final FileFingerprint[] myDependencies;
+    private final FileFingerprint[] mySources;
+    // set when a touched but not modified file got its new timestamp, so that the fingerprints are saved again
+    private volatile boolean myTimestampsRefreshed;
 
-    private BCInfo(final FlexBuildConfiguration bc, final String[] sourceRootUrls) {
-      myBC = bc;
+    private BCInfo(final String settingsHash,
+                   final String[] sourceRootUrls,
+                   final FileFingerprint[] dependencies,
+                   final FileFingerprint[] sources) {
+      mySettingsHash = settingsHash;
       mySourceRootUrls = sourceRootUrls;
+      myDependencies = dependencies;
+      mySources = sources;
     }
 
-    private void addFileDependency(final String filePath, final String... potentialBaseDirs) {
-      final File file = new File(FileUtil.toSystemDependentName(filePath));
-      if (file.exists()) {
-        myFileToTimestamp.add(Pair.create(file, file.lastModified()));
+    /**
+     * Files are checked in parallel, in most cases it is just a comparison of length and timestamp.
+     *
+     * @return description of the first found change or {@code null} if all files are the same as at compilation time
+     */
+    @Nullable
+    private String findChangedFile(final Collection<File> currentSources) {
+      if (currentSources.size() != mySources.length) {
+        return "source files added or removed";
       }
-      else if (potentialBaseDirs != null) {
-        for (String baseDir : potentialBaseDirs) {
-          final File file1 = new File(FileUtil.toSystemDependentName(baseDir + '/' + filePath));
-          if (file1.exists()) {
-            myFileToTimestamp.add(Pair.create(file1, file1.lastModified()));
-            break;
-          }
+      final Set<String> sourcePaths = new THashSet<>(mySources.length);
+      for (FileFingerprint source : mySources) {
+        sourcePaths.add(source.myPath);
+      }
+      for (File source : currentSources) {
+        if (!sourcePaths.contains(source.getPath())) {
+          return "source file added: " + source.getPath();
         }
       }
+
+      final Optional<FileFingerprint> changed = Arrays.stream(myDependencies).parallel().filter(this::isChanged).findAny();
+      if (changed.isPresent()) {
+        return "dependency changed: " + changed.get().myPath;
+      }
+
+      final Optional<FileFingerprint> changedSource = Arrays.stream(mySources).parallel().filter(this::isChanged).findAny();
+      return changedSource.map(source -> "source file changed: " + source.myPath).orElse(null);
     }
 
-    public boolean timestampsChanged() {
-      for (Pair<File, Long> fileAndTimestamp : myFileToTimestamp) {
-        if (fileAndTimestamp.first.lastModified() != fileAndTimestamp.second) {
-          return true;
-        }
+    private boolean isChanged(final FileFingerprint fingerprint) {
+      final long timestamp = fingerprint.myTimestamp;
+      if (fingerprint.isChanged()) return true;
+      if (fingerprint.myTimestamp != timestamp) {
+        myTimestampsRefreshed = true;
       }
       return false;
     }
   }
+
+  private static class FileFingerprint {
+    private final String myPath;
+    private final long myLength;
+    private volatile long myTimestamp;
+    private final byte[] myContentHash;
+
+    private FileFingerprint(final String path, final long length, final long timestamp, final byte[] contentHash) {
+      myPath = path;
+      myLength = length;
+      myTimestamp = timestamp;
+      myContentHash = contentHash;
+    }
+
+    private static FileFingerprint[] create(final Collection<File> files) {
+      return files.parallelStream().map(FileFingerprint::create).filter(Objects::nonNull).toArray(FileFingerprint[]::new);
+    }
+
+    @Nullable
+    private static FileFingerprint create(final File file) {
+      final long timestamp = file.lastModified();
+      final byte[] contentHash = computeContentHash(file);
+      return contentHash == null ? null : new FileFingerprint(file.getPath(), file.length(), timestamp, contentHash);
+    }
+
+    private boolean isChanged() {
+      final File file = new File(myPath);
+      final long timestamp = file.lastModified();
+      if (timestamp == 0 || file.length() != myLength) return true;
+      if (timestamp == myTimestamp) return false;
+
+      // touched, but may be not modified, e.g. after VCS update
+      if (!Arrays.equals(myContentHash, computeContentHash(file))) return true;
+      myTimestamp = timestamp;
+      return false;
+    }
+
+    @Nullable
+    private static byte[] computeContentHash(final File file) {
+      final MessageDigest digest = createDigest();
+      try (InputStream stream = new FileInputStream(file)) {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) > 0) {
+          digest.update(buffer, 0, read);
+        }
+      }
+      catch (IOException e) {
+        return null;
+      }
+      return digest.digest();
+    }
+  }
+
+  private static class BCInfoExternalizer implements DataExternalizer<BCInfo> {
+    @Override
+    public void save(@NotNull final DataOutput out, final BCInfo info) throws IOException {
+      IOUtil.writeUTF(out, info.mySettingsHash);
+      DataInputOutputUtil.writeINT(out, info.mySourceRootUrls.length);
+      for (String url : info.mySourceRootUrls) {
+        IOUtil.writeUTF(out, url);
+      }
+      saveFingerprints(out, info.myDependencies);
+      saveFingerprints(out, info.mySources);
+    }
+
+    @Override
+    public BCInfo read(@NotNull final DataInput in) throws IOException {
+      final String settingsHash = IOUtil.readUTF(in);
+      final String[] sourceRootUrls = new String[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < sourceRootUrls.length; i++) {
+        sourceRootUrls[i] = IOUtil.readUTF(in);
+      }
+      return new BCInfo(settingsHash, sourceRootUrls, readFingerprints(in), readFingerprints(in));
+    }
+
+    private static void saveFingerprints(final DataOutput out, final FileFingerprint[] fingerprints) throws IOException {
+      DataInputOutputUtil.writeINT(out, fingerprints.length);
+      for (FileFingerprint fingerprint : fingerprints) {
+        IOUtil.writeUTF(out, fingerprint.myPath);
+        DataInputOutputUtil.writeLONG(out, fingerprint.myLength);
+        DataInputOutputUtil.writeTIME(out, fingerprint.myTimestamp);
+        DataInputOutputUtil.writeINT(out, fingerprint.myContentHash.length);
+        out.write(fingerprint.myContentHash);
+      }
+    }
+
+    private static FileFingerprint[] readFingerprints(final DataInput in) throws IOException {
+      final FileFingerprint[] fingerprints = new FileFingerprint[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < fingerprints.length; i++) {
+        final String path = IOUtil.readUTF(in);
+        final long length = DataInputOutputUtil.readLONG(in);
+        final long timestamp = DataInputOutputUtil.readTIME(in);
+        final byte[] contentHash = new byte[DataInputOutputUtil.readINT(in)];
+        in.readFully(contentHash);
+        fingerprints[i] = new FileFingerprint(path, length, timestamp, contentHash);
+      }
+      return fingerprints;
+    }
+  }
 }
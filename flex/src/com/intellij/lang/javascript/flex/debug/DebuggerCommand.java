@@ -37,6 +37,15 @@ class DebuggerCommand {
     return myStartVMState;
   }
 
+  /**
+   * Read-only commands neither resume the VM nor change any values, so their responses are reused while the VM stays suspended, and
+   * they may be sent before responses to previously sent commands are read. Such commands must be sent and read by {@link #post} and
+   * {@link #read} of this class.
+   */
+  boolean isReadOnly() {
+    return false;
+  }
+
   CommandOutputProcessingMode onTextAvailable(@NonNls String s) {
     assert myOutputProcessingType != CommandOutputProcessingType.NO_PROCESSING;
     return CommandOutputProcessingMode.DONE;
@@ -0,0 +1,195 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Sends {@link DebuggerCommand#isReadOnly() read-only} fdb commands in batches and reuses responses to them while the VM stays suspended.
+ * <p>
+ * Commands of a batch are sent without waiting for responses to the previous ones, so that fdb and the player process them while previous
+ * responses are parsed. fdb answers in the order of commands, so a command sent while some batched responses are not read yet gets its
+ * response only after them, see {@link FlexDebugProcess#sendAndProcessOneCommand}.
+ * <p>
+ * Responses are cached by the frame selected in fdb and the command text. A command is replayed only if fdb already has the frame that
+ * would be selected after sending it, so fdb state stays the same as if the command had been sent. Any other command clears the cache.
+ * <p>
+ * Used by the debugger manager thread only.
+ */
+class FdbCommandPipeline {
+
+  interface Fdb {
+    void sendText(@NotNull DebuggerCommand command) throws IOException;
+
+    @Nullable
+    String readLine(@NotNull DebuggerCommand command) throws IOException;
+  }
+
+  private static final Logger LOG = Logger.getInstance(FdbCommandPipeline.class.getName());
+  @NonNls private static final String FRAME_COMMAND = "frame ";
+
+  private final Fdb myFdb;
+
+  // commands sent in a batch whose responses are not read yet
+  private final LinkedList<DebuggerCommand> myPostedCommands = new LinkedList<>();
+  private final Map<String, List<String>> myResponseCache = new THashMap<>();
+  private final Map<DebuggerCommand, Pair<String, List<String>>> myRecordedResponses = new THashMap<>();
+  private final Map<DebuggerCommand, Iterator<String>> myReplayedResponses = new THashMap<>();
+  private int mySelectedFrame = -1; // -1 if unknown
+  private DebuggerCommand myLastReadCommand;
+  private int myNestedCommandsLevel;
+
+  FdbCommandPipeline(@NotNull final Fdb fdb) {
+    myFdb = fdb;
+  }
+
+  boolean hasPostedCommands() {
+    return !myPostedCommands.isEmpty();
+  }
+
+  /**
+   * @return the first command of a batch whose response is not read yet
+   */
+  @Nullable
+  DebuggerCommand pollPostedCommand() {
+    return myPostedCommands.pollFirst();
+  }
+
+  /**
+   * Called when a response handler sends a command and waits for its response. Such commands are not batched: a command queued after it may
+   * be the one that a handler of an outer level waits for, so it must stay in the queue.
+   */
+  void nestedCommandStarted() {
+    myNestedCommandsLevel++;
+  }
+
+  void nestedCommandFinished() {
+    myNestedCommandsLevel--;
+  }
+
+  /**
+   * Sends read-only commands queued after the given one, which is already sent. All commands of a batch select the same frame, so commands
+   * sent by response handlers (e.g. 'info scopechain') and processed after the batch see the frame they expect.
+   */
+  void postFollowingReadOnlyCommands(@NotNull final DebuggerCommand command, @NotNull final Deque<DebuggerCommand> commandsToWrite)
+    throws IOException {
+    if (myNestedCommandsLevel > 0 || !canBePostedInBatch(command)) return;
+
+    int frame = getSelectedFrame(command.getText());
+    DebuggerCommand nextCommand;
+    while ((nextCommand = commandsToWrite.peek()) != null && canBePostedInBatch(nextCommand)) {
+      final int nextFrame = getSelectedFrame(nextCommand.getText());
+      if (nextFrame != -1) {
+        if (frame != -1 && frame != nextFrame) break;
+        frame = nextFrame;
+      }
+
+      commandsToWrite.removeFirst();
+      send(nextCommand);
+      myPostedCommands.addLast(nextCommand);
+    }
+  }
+
+  void send(@NotNull final DebuggerCommand command) throws IOException {
+    final String text = command.getText();
+
+    if (command.isReadOnly()) {
+      final List<String> cachedResponse = myResponseCache.get(mySelectedFrame + "\n" + text);
+      if (cachedResponse != null) {
+        LOG.debug("Cached: " + text);
+        myReplayedResponses.put(command, cachedResponse.iterator());
+        return;
+      }
+
+      final int frame = getSelectedFrame(text);
+      if (frame != -1) mySelectedFrame = frame;
+      if (mySelectedFrame != -1) {
+        myRecordedResponses.put(command, Pair.create(mySelectedFrame + "\n" + text, new ArrayList<>()));
+      }
+    }
+    else {
+      invalidateResponseCache();
+    }
+
+    myFdb.sendText(command);
+  }
+
+  @Nullable
+  String read(@NotNull final DebuggerCommand command) throws IOException {
+    myLastReadCommand = command;
+
+    final Iterator<String> replayedResponse = myReplayedResponses.get(command);
+    if (replayedResponse != null) {
+      if (replayedResponse.hasNext()) return replayedResponse.next();
+      myReplayedResponses.remove(command);
+      return null;
+    }
+
+    final String response = myFdb.readLine(command);
+    final Pair<String, List<String>> recordedResponse = myRecordedResponses.get(command);
+    if (recordedResponse != null && response != null) {
+      recordedResponse.second.add(response);
+    }
+    return response;
+  }
+
+  /**
+   * @return the command whose response was read last by {@link #read}; it differs from the processed command if that is a composite one
+   */
+  @Nullable
+  DebuggerCommand getLastReadCommand() {
+    return myLastReadCommand;
+  }
+
+  void resetLastReadCommand() {
+    myLastReadCommand = null;
+  }
+
+  /**
+   * Called when the whole response to the command is processed, so that it can be reused.
+   */
+  void responseProcessed(@Nullable final DebuggerCommand command) {
+    if (command == null) return;
+    myReplayedResponses.remove(command);
+    final Pair<String, List<String>> recordedResponse = myRecordedResponses.remove(command);
+    if (recordedResponse != null) {
+      myResponseCache.put(recordedResponse.first, recordedResponse.second);
+    }
+  }
+
+  private void invalidateResponseCache() {
+    myResponseCache.clear();
+    myRecordedResponses.clear();
+    mySelectedFrame = -1;
+  }
+
+  private static boolean canBePostedInBatch(final DebuggerCommand command) {
+    return command.isReadOnly() &&
+           !(command instanceof CompositeDebuggerCommand) &&
+           command.getOutputProcessingMode() == CommandOutputProcessingType.SPECIAL_PROCESSING &&
+           command.getStartVMState() == VMState.SUSPENDED &&
+           command.getEndVMState() == VMState.SUSPENDED;
+  }
+
+  /**
+   * @return index of the frame selected by the command, i.e. by its first line "frame [index]", or -1 if the command doesn't select a frame
+   */
+  private static int getSelectedFrame(final String commandText) {
+    if (!commandText.startsWith(FRAME_COMMAND)) return -1;
+    final int lineEnd = commandText.indexOf('\n');
+    final String index = commandText.substring(FRAME_COMMAND.length(), lineEnd == -1 ? commandText.length() : lineEnd).trim();
+    if (index.isEmpty()) return 0;
+    try {
+      return Integer.parseInt(index);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
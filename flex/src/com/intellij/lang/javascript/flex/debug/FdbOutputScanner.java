@@ -0,0 +1,220 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits fdb output into chunks: text up to a prompt (e.g. {@code "(fdb) "}), or all available text if there's no prompt but fdb is
+ * waiting for something else, e.g. for the Flash Player to connect.
+ * <p>
+ * Output is scanned once by an Aho-Corasick automaton that keeps its state between appended parts, so prompts split between reads are
+ * found too. Consumed text is dropped by moving the start index, and the buffer is compacted only when it is full, so the total work is
+ * linear in the output size even if the debugged application traces a lot.
+ */
+public class FdbOutputScanner {
+  private static final int INITIAL_CAPACITY = 8192;
+
+  private final int myPromptsCount;
+  private final int[] myPatternLengths;
+
+  // automaton: goto function keyed by (state << 16 | char), failure function, matched pattern (or -1) and the nearest matching state in
+  // the failure chain (or 0)
+  private final TLongIntHashMap myGoto = new TLongIntHashMap();
+  private final int[] myFailure;
+  private final int[] myMatchedPattern;
+  private final int[] myOutputLink;
+  private int myState;
+
+  private char[] myBuffer = new char[INITIAL_CAPACITY];
+  private long myBufferOffset; // absolute position of myBuffer[0] in the output
+  private int myStart;
+  private int myEnd;
+
+  // absolute end positions and lengths of found prompts that are not consumed yet
+  private final TLongArrayList myPromptEnds = new TLongArrayList();
+  private final TIntArrayList myPromptLengths = new TIntArrayList();
+  private int myNextPrompt;
+
+  private long myLastFlushMarkerEnd = -1;
+  private boolean myLastChunkEndedWithPrompt;
+
+  /**
+   * @param prompts      end of each chunk, not included in the chunk text
+   * @param flushMarkers text that makes {@link #nextChunk(boolean)} return all available text even if there's no prompt
+   */
+  public FdbOutputScanner(@NotNull final String[] prompts, @NotNull final String[] flushMarkers) {
+    final List<String> patterns = new ArrayList<>(Arrays.asList(prompts));
+    patterns.addAll(Arrays.asList(flushMarkers));
+    myPromptsCount = prompts.length;
+    myPatternLengths = new int[patterns.size()];
+
+    int maxStates = 1;
+    for (String pattern : patterns) {
+      maxStates += pattern.length();
+    }
+    myFailure = new int[maxStates];
+    myMatchedPattern = new int[maxStates];
+    myOutputLink = new int[maxStates];
+    Arrays.fill(myMatchedPattern, -1);
+
+    int statesCount = 1;
+    for (int i = 0; i < patterns.size(); i++) {
+      final String pattern = patterns.get(i);
+      myPatternLengths[i] = pattern.length();
+      int state = 0;
+      for (int j = 0; j < pattern.length(); j++) {
+        final long key = key(state, pattern.charAt(j));
+        if (myGoto.containsKey(key)) {
+          state = myGoto.get(key);
+        }
+        else {
+          myGoto.put(key, statesCount);
+          state = statesCount++;
+        }
+      }
+      myMatchedPattern[state] = i;
+    }
+
+    // failure function in BFS order, i.e. by depth of the state
+    final int[] queue = new int[statesCount];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = 0;
+    while (head < tail) {
+      final int state = queue[head++];
+      for (long key : myGoto.keys()) {
+        if ((int)(key >>> 16) != state) continue;
+        final char c = (char)(key & 0xFFFF);
+        final int next = myGoto.get(key);
+        final int failure = state == 0 ? 0 : step(myFailure[state], c);
+        myFailure[next] = failure;
+        myOutputLink[next] = myMatchedPattern[failure] >= 0 ? failure : myOutputLink[failure];
+        queue[tail++] = next;
+      }
+    }
+  }
+
+  private static long key(final int state, final char c) {
+    return ((long)state << 16) | c;
+  }
+
+  private int step(int state, final char c) {
+    while (true) {
+      final int next = myGoto.get(key(state, c)); // 0 if absent, the root is never a goto target
+      if (next != 0) return next;
+      if (state == 0) return 0;
+      state = myFailure[state];
+    }
+  }
+
+  public void append(@NotNull final char[] chars, final int offset, final int length) {
+    ensureCapacity(length);
+    System.arraycopy(chars, offset, myBuffer, myEnd, length);
+
+    for (int i = myEnd; i < myEnd + length; i++) {
+      myState = step(myState, myBuffer[i]);
+      for (int state = myState; state != 0; state = myOutputLink[state]) {
+        final int pattern = myMatchedPattern[state];
+        if (pattern < 0) continue;
+
+        final long end = myBufferOffset + i + 1;
+        if (pattern < myPromptsCount) {
+          myPromptEnds.add(end);
+          myPromptLengths.add(myPatternLengths[pattern]);
+        }
+        else {
+          myLastFlushMarkerEnd = end;
+        }
+      }
+    }
+    myEnd += length;
+  }
+
+  private void ensureCapacity(final int length) {
+    if (myEnd + length <= myBuffer.length) return;
+
+    // copying only when the buffer is full and growing it if it is more than half full keeps appending linear
+    final int remaining = myEnd - myStart;
+    final char[] target = remaining + length > myBuffer.length / 2
+                          ? new char[Math.max(myBuffer.length * 2, remaining + length)]
+                          : myBuffer;
+    System.arraycopy(myBuffer, myStart, target, 0, remaining);
+    myBufferOffset += myStart;
+    myBuffer = target;
+    myStart = 0;
+    myEnd = remaining;
+  }
+
+  /**
+   * @param allowWithoutPrompt whether to return all available text if there's no prompt
+   * @return text before the next prompt, or all available text if there's no prompt but it is allowed or fdb waits for something;
+   * {@code null} if more output is needed
+   */
+  @Nullable
+  public String nextChunk(final boolean allowWithoutPrompt) {
+    if (myNextPrompt < myPromptEnds.size()) {
+      final int promptEnd = (int)(myPromptEnds.get(myNextPrompt) - myBufferOffset);
+      final int promptStart = promptEnd - myPromptLengths.get(myNextPrompt);
+      myNextPrompt++;
+      if (myNextPrompt == myPromptEnds.size()) {
+        myPromptEnds.resetQuick();
+        myPromptLengths.resetQuick();
+        myNextPrompt = 0;
+      }
+
+      final String result = new String(myBuffer, myStart, promptStart - myStart);
+      myStart = promptEnd;
+      if (isBlank(myStart, myEnd)) {
+        clear();
+      }
+      myLastChunkEndedWithPrompt = true;
+      return result;
+    }
+
+    if (myStart < myEnd && (allowWithoutPrompt || myLastFlushMarkerEnd > myBufferOffset + myStart)) {
+      final String result = new String(myBuffer, myStart, myEnd - myStart);
+      clear();
+      myLastChunkEndedWithPrompt = false;
+      return result;
+    }
+
+    return null;
+  }
+
+  /**
+   * @return whether the chunk returned by the last {@link #nextChunk(boolean)} call ended with a prompt
+   */
+  public boolean isLastChunkEndedWithPrompt() {
+    return myLastChunkEndedWithPrompt;
+  }
+
+  private boolean isBlank(final int start, final int end) {
+    for (int i = start; i < end; i++) {
+      if (myBuffer[i] != ' ') return false;
+    }
+    return true;
+  }
+
+  /**
+   * Drops all available text. Patterns are not matched across the dropped text.
+   */
+  private void clear() {
+    myBufferOffset += myEnd;
+    myStart = 0;
+    myEnd = 0;
+    myState = 0;
+    myPromptEnds.resetQuick();
+    myPromptLengths.resetQuick();
+    myNextPrompt = 0;
+    if (myBuffer.length > INITIAL_CAPACITY) {
+      myBuffer = new char[INITIAL_CAPACITY];
+    }
+  }
+}
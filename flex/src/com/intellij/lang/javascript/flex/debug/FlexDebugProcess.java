@@ -155,6 +155,11 @@ public class FlexDebugProcess extends XDebugProcess {
       notify();
     }
 
+    @Override
+    public synchronized DebuggerCommand peek() {
+      return super.peek();
+    }
+
     // TODO: other methods
 
     private void waitForData() {
@@ -169,6 +174,18 @@ public class FlexDebugProcess extends XDebugProcess {
     }
   };
 
+  private final FdbCommandPipeline myCommandPipeline = new FdbCommandPipeline(new FdbCommandPipeline.Fdb() {
+    @Override
+    public void sendText(@NotNull final DebuggerCommand command) throws IOException {
+      doSendText(command);
+    }
+
+    @Override
+    public String readLine(@NotNull final DebuggerCommand command) throws IOException {
+      return reader.readLine(command.getEndVMState() == VMState.RUNNING);
+    }
+  });
+
   private boolean suspended;
   private boolean fdbWaitingForPlayerStateReached;
   private boolean startupDone;
@@ -508,6 +525,7 @@ public class FlexDebugProcess extends XDebugProcess {
       }
 
       @NonNls String commandOutput = null;
+      myCommandPipeline.resetLastReadCommand();
       try {
         commandOutput = command.read(this);
       }
@@ -516,6 +534,7 @@ public class FlexDebugProcess extends XDebugProcess {
           throw e;
         }
       }
+      final DebuggerCommand readCommand = myCommandPipeline.getLastReadCommand(); // differs from the command if it is a composite one
 
       if (command instanceof QuitCommand) {
         Thread.currentThread().interrupt();  // request to finish
@@ -532,7 +551,10 @@ public class FlexDebugProcess extends XDebugProcess {
 
       if (outputProcessingType == CommandOutputProcessingType.SPECIAL_PROCESSING) {
         log("Processed by " + command);
-        if (command.onTextAvailable(commandOutput) == CommandOutputProcessingMode.DONE) break;
+        if (command.onTextAvailable(commandOutput) == CommandOutputProcessingMode.DONE) {
+          myCommandPipeline.responseProcessed(readCommand);
+          break;
+        }
         explicitlyContinueRead = true;
         continue;
       }
@@ -698,7 +720,7 @@ public class FlexDebugProcess extends XDebugProcess {
   }
 
   String defaultReadCommand(DebuggerCommand command) throws IOException {
-    return reader.readLine(command.getEndVMState() == VMState.RUNNING);
+    return myCommandPipeline.read(command);
   }
 
   private boolean handleStdResponse(String line, ResponseLineIterator iterator) {
@@ -952,6 +974,9 @@ public class FlexDebugProcess extends XDebugProcess {
   }
 
   private DebuggerCommand postCommand() throws IOException {
+    final DebuggerCommand postedCommand = myCommandPipeline.pollPostedCommand();
+    if (postedCommand != null) return postedCommand;
+
     DebuggerCommand command = commandsToWrite.removeFirst();
     final boolean currentlyExecuting = !suspended && startupDone;
 
@@ -980,6 +1005,7 @@ public class FlexDebugProcess extends XDebugProcess {
     }
 
     command.post(this);
+    if (!currentlyExecuting) myCommandPipeline.postFollowingReadOnlyCommands(command, commandsToWrite);
     return command;
   }
 
@@ -993,8 +1019,11 @@ public class FlexDebugProcess extends XDebugProcess {
   }
 
   void doSendCommandText(final DebuggerCommand command) throws IOException {
-    final String text = command.getText();
+    myCommandPipeline.send(command);
+  }
 
+  private void doSendText(final DebuggerCommand command) throws IOException {
+    final String text = command.getText();
     setSuspended(
       command.getOutputProcessingMode() == CommandOutputProcessingType.NO_PROCESSING && command.getEndVMState() == VMState.SUSPENDED);
     log("Sent:" + text);
@@ -1170,7 +1199,14 @@ public class FlexDebugProcess extends XDebugProcess {
 
   public void sendAndProcessOneCommand(final DebuggerCommand command, final @Nullable Function<Exception, Void> onException) {
     insertCommand(command);
+    myCommandPipeline.nestedCommandStarted();
     try {
+      // fdb answers in the order of commands, so responses to the commands sent in a batch are processed first. Their handlers may call
+      // this method too, so state shared between handlers must be published only when completely initialized, see
+      // FlexStackFrame.ensureQName2IdMapLoaded()
+      while (myCommandPipeline.hasPostedCommands()) {
+        processOneCommandLoop();
+      }
       processOneCommandLoop();
     }
     catch (Exception e) {
@@ -1182,6 +1218,9 @@ public class FlexDebugProcess extends XDebugProcess {
         throw new RuntimeException(e);
       }
     }
+    finally {
+      myCommandPipeline.nestedCommandFinished();
+    }
   }
 
   private void setSuspended(final boolean suspended) {
@@ -1223,8 +1262,8 @@ public class FlexDebugProcess extends XDebugProcess {
   class MyFdbOutputReader {
     private final InputStreamReader myReader;
     private final char[] buf = new char[8192];
-    private final StringBuilder lastText = new StringBuilder();
-    private int lastTextMarkerScanningStart;
+    private final FdbOutputScanner myScanner = new FdbOutputScanner(new String[]{FDB_MARKER, "(y or n)"},
+                                                                    new String[]{WAITING_PLAYER_MARKER_1, WAITING_PLAYER_MARKER_2});
     private final InputStream myInputStream;
 
     public MyFdbOutputReader(final InputStream _inputStream) {
@@ -1237,63 +1276,28 @@ public class FlexDebugProcess extends XDebugProcess {
     }
 
     String readLine(boolean nonblock) throws IOException {
-      if (lastText != null) {
-        final String lastText = getNextLine(nonblock);
-        if (lastText != null) return lastText;
-      }
+      final String lastText = getNextLine(nonblock);
+      if (lastText != null) return lastText;
 
       while (true) {
         int read = myReader.read(buf, 0, buf.length);
         if (read == -1) return null;
-        lastText.append(buf, 0, read);
+        myScanner.append(buf, 0, read);
 
         if (read < buf.length) {
-          final String lastText = getNextLine(nonblock);
-          if (lastText != null) return lastText;
+          final String text = getNextLine(nonblock);
+          if (text != null) return text;
         }
       }
     }
 
     private String getNextLine(boolean allowEmptyMarker) {
-      String result;
-      String marker = FDB_MARKER;
-      int i = lastText.indexOf(marker, lastTextMarkerScanningStart);
-
-      if (i == -1) {
-        marker = "(y or n)";
-        i = lastText.indexOf(marker, lastTextMarkerScanningStart);
-      }
-
-      if (i == -1 &&
-          (allowEmptyMarker ||
-           lastText.indexOf(WAITING_PLAYER_MARKER_1, lastTextMarkerScanningStart) >= 0 ||
-           lastText.indexOf(WAITING_PLAYER_MARKER_2, lastTextMarkerScanningStart) >= 0) &&
-          lastText.length() > 0) {
-        i = lastText.length();
-        marker = "";
-      }
-
-      if (i != -1) {
-        result = lastText.substring(0, i);
-        lastText.delete(0, i + marker.length());
-        lastTextMarkerScanningStart = 0;
-        if (isBlank(lastText)) lastText.setLength(0);
-        setSuspended(marker.length() != 0);
-        return result;
-      }
-      else {
-        lastTextMarkerScanningStart = lastText.length();
-        result = null;
+      final String result = myScanner.nextChunk(allowEmptyMarker);
+      if (result != null) {
+        setSuspended(myScanner.isLastChunkEndedWithPrompt());
       }
       return result;
     }
-
-    private boolean isBlank(StringBuilder lastText) {
-      for (int i = 0; i < lastText.length(); ++i) {
-        if (lastText.charAt(i) != ' ') return false;
-      }
-      return true;
-    }
   }
 
   @Override
@@ -194,35 +194,58 @@ public class FlexStackFrame extends XStackFrame {
     myFrameIndex = frameIndex;
   }
 
-  private @NonNls String buildCommandForExpression(final String _expression) {
-    if (_expression.indexOf('=') != -1) {
-      String evalCommand = ReadAction.compute(() -> {
-        final PsiFile fromText =
-          PsiFileFactory.getInstance(myDebugProcess.getSession().getProject())
-            .createFileFromText("A.js2", JavaScriptSupportLoader.ECMA_SCRIPT_L4, _expression);
-        final PsiElement[] elements = fromText.getChildren();
-
-        if (elements.length == 1 && elements[0] instanceof JSExpressionStatement) {
-          final JSExpression expression = ((JSExpressionStatement)elements[0]).getExpression();
-
-          if (expression instanceof JSAssignmentExpression) {
-            JSAssignmentExpression expr = (JSAssignmentExpression)expression;
-            final JSExpression lOperand = expr.getLOperand();
-            final String lOperandText = lOperand == null ? null : lOperand.getText();
-            final JSExpression rOperand = expr.getROperand();
-
-            if (lOperandText != null && rOperand != null) {
-              return addFrameOffset("set " + lOperandText + " = " + rOperand.getText() + "\nprint " + lOperandText);
-            }
+  /**
+   * @return fdb command text and whether the command is read-only, i.e. the expression can't change anything in the VM
+   */
+  private Pair<String, Boolean> buildCommandForExpression(final String _expression) {
+    return ReadAction.compute(() -> {
+      final PsiFile fromText =
+        PsiFileFactory.getInstance(myDebugProcess.getSession().getProject())
+          .createFileFromText("A.js2", JavaScriptSupportLoader.ECMA_SCRIPT_L4, _expression);
+      final PsiElement[] elements = fromText.getChildren();
+
+      if (elements.length == 1 && elements[0] instanceof JSExpressionStatement) {
+        final JSExpression expression = ((JSExpressionStatement)elements[0]).getExpression();
+
+        if (expression instanceof JSAssignmentExpression) {
+          JSAssignmentExpression expr = (JSAssignmentExpression)expression;
+          final JSExpression lOperand = expr.getLOperand();
+          final String lOperandText = lOperand == null ? null : lOperand.getText();
+          final JSExpression rOperand = expr.getROperand();
+
+          if (lOperandText != null && rOperand != null) {
+            return Pair.create(addFrameOffset("set " + lOperandText + " = " + rOperand.getText() + "\nprint " + lOperandText), false);
           }
         }
-        return null;
-      });
 
-      if (evalCommand != null) return evalCommand;
-    }
+        final boolean readOnly = !PsiTreeUtil.hasErrorElements(fromText) && isReadOnlyExpression(expression);
+        return Pair.create(addFrameOffset("print " + _expression), readOnly);
+      }
 
-    return addFrameOffset("print " + _expression);
+      return Pair.create(addFrameOffset("print " + _expression), false);
+    });
+  }
+
+  /**
+   * Only references, property accesses and literals are read-only, anything else (calls, increments, compound assignments, 'new') may
+   * change values.
+   */
+  private static boolean isReadOnlyExpression(@Nullable final JSExpression expression) {
+    if (expression instanceof JSParenthesizedExpression) {
+      return isReadOnlyExpression(((JSParenthesizedExpression)expression).getInnerExpression());
+    }
+    if (expression instanceof JSLiteralExpression || expression instanceof JSThisExpression) {
+      return true;
+    }
+    if (expression instanceof JSReferenceExpression) {
+      final JSExpression qualifier = ((JSReferenceExpression)expression).getQualifier();
+      return qualifier == null || isReadOnlyExpression(qualifier);
+    }
+    if (expression instanceof JSIndexedPropertyAccessExpression) {
+      final JSIndexedPropertyAccessExpression access = (JSIndexedPropertyAccessExpression)expression;
+      return isReadOnlyExpression(access.getQualifier()) && isReadOnlyExpression(access.getIndexExpression());
+    }
+    return false;
   }
 
   private void ensureQName2IdMapLoaded() {
@@ -230,8 +253,13 @@ public class FlexStackFrame extends XStackFrame {
     qName2IdMap = myDebugProcess.getQName2IdIfSameEqualityObject(getEqualityObject());
 
     if (qName2IdMap != null) return;
-    qName2IdMap = new LinkedHashMap<>();
+    final Map<String, String> map = new LinkedHashMap<>();
     final DebuggerCommand command = new DebuggerCommand("info scopechain", CommandOutputProcessingType.SPECIAL_PROCESSING) {
+      @Override
+      boolean isReadOnly() {
+        return true;
+      }
+
       @Override
       CommandOutputProcessingMode onTextAvailable(@NonNls final String s) {
         final StringTokenizer tokenizer = new StringTokenizer(s, "\r\n");
@@ -245,10 +273,11 @@ public class FlexStackFrame extends XStackFrame {
           String id = line.substring(line.indexOf(' ') + 1, line.indexOf(','));
           String qName = line.substring(line.indexOf('\'') + 1, line.lastIndexOf('\''));
           qName = qName.replace("::",".");
-          qName2IdMap.put(qName, id);
+          map.put(qName, id);
         }
 
-        myDebugProcess.setQName2Id(qName2IdMap, getEqualityObject());
+        qName2IdMap = map;
+        myDebugProcess.setQName2Id(map, getEqualityObject());
         return CommandOutputProcessingMode.DONE;
       }
 
@@ -258,21 +287,35 @@ public class FlexStackFrame extends XStackFrame {
       FlexDebugProcess.log(e);
       return null;
     });
+    // the map is assigned only when filled: evaluations sent in the same batch are processed before 'info scopechain' and must load the
+    // map themselves rather than see an empty one
+    if (qName2IdMap == null) qName2IdMap = map;
   }
 
   class EvaluateCommand extends DebuggerCommand {
     private String result;
     private final XDebuggerEvaluator.XEvaluationCallback callback;
     private final String expression;
+    private final boolean myReadOnly;
     private int responseCount;
     private boolean myFinished;
 
     EvaluateCommand(String _expression, final XDebuggerEvaluator.XEvaluationCallback _callback) {
-      super(buildCommandForExpression(_expression), CommandOutputProcessingType.SPECIAL_PROCESSING);
+      this(_expression, buildCommandForExpression(_expression), _callback);
+    }
+
+    private EvaluateCommand(String _expression, Pair<String, Boolean> commandAndReadOnly, XDebuggerEvaluator.XEvaluationCallback _callback) {
+      super(commandAndReadOnly.first, CommandOutputProcessingType.SPECIAL_PROCESSING);
       expression = _expression;
+      myReadOnly = commandAndReadOnly.second;
       callback = _callback;
     }
 
+    @Override
+    boolean isReadOnly() {
+      return myReadOnly;
+    }
+
     @Override
     CommandOutputProcessingMode onTextAvailable(@NonNls String line) {
       if (myDebugProcess.filterStdResponse(line)) return CommandOutputProcessingMode.PROCEEDING;
@@ -511,6 +554,11 @@ public class FlexStackFrame extends XStackFrame {
       myValueType = valueType;
     }
 
+    @Override
+    boolean isReadOnly() {
+      return true;
+    }
+
     @Override
     CommandOutputProcessingMode onTextAvailable(@NonNls final String s) {
       final int offsetIndex = hasFrame ? 1:0; // frame command
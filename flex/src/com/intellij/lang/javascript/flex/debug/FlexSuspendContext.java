@@ -58,6 +58,11 @@ public class FlexSuspendContext extends XSuspendContext {
       }
       else {
         myTopFrame.getDebugProcess().sendCommand(new DebuggerCommand("bt", CommandOutputProcessingType.SPECIAL_PROCESSING) {
+          @Override
+          boolean isReadOnly() {
+            return true;
+          }
+
           @Override
           CommandOutputProcessingMode onTextAvailable(@NonNls final String s) {
             if (container.isObsolete()) return CommandOutputProcessingMode.DONE;
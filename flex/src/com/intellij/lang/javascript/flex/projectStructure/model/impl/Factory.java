@@ -1,7 +1,12 @@
 package com.intellij.lang.javascript.flex.projectStructure.model.impl;
 
 import com.intellij.lang.javascript.flex.projectStructure.model.*;
+import com.intellij.openapi.components.ComponentManager;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.util.xmlb.SkipDefaultValuesSerializationFilters;
+import com.intellij.util.xmlb.XmlSerializer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class Factory {
 
@@ -30,4 +35,14 @@ public class Factory {
     copy.setTempBCForCompilation(true);
     return copy;
   }
+
+  /**
+   * Serialized settings of the BC. Can be compared instead of {@link FlexBuildConfiguration#isEqual(FlexBuildConfiguration)} when the BC
+   * copy can't be kept, e.g. in persistent caches.
+   */
+  public static String getSerializedState(@NotNull FlexBuildConfiguration bc, @Nullable ComponentManager componentManager) {
+    final FlexBuildConfigurationImpl impl = (FlexBuildConfigurationImpl)bc;
+    return JDOMUtil.writeElement(XmlSerializer.serialize(impl.getState(componentManager), new SkipDefaultValuesSerializationFilters())) +
+           "\n" + impl.isTempBCForCompilation();
+  }
 }
@@ -1,5 +1,7 @@
 package com.intellij.flex.compiler;
 
 public interface MessageSender {
-  void sendMessage(final String message);
+  void sendMessage(final int commandNumber, final String message);
+
+  void compilationFinished(final int commandNumber);
 }
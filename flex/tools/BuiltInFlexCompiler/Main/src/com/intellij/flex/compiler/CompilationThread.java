@@ -3,11 +3,14 @@ package com.intellij.flex.compiler;
 import flex2.compiler.ILocalizableMessage;
 import flex2.compiler.common.Configuration;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class CompilationThread extends Thread {
 
   private static int omitTraceCompilationsCount = 0;
   private static int traceCompilationsCount = 0;
   private static final Object lock = new Object();
+  private static final AtomicInteger activeCompilationsCount = new AtomicInteger();
 
   private final boolean mySwf;
   private final SdkSpecificHandler mySdkSpecificHandler;
@@ -34,6 +37,7 @@ public class CompilationThread extends Thread {
   }
 
   public void run() {
+    activeCompilationsCount.incrementAndGet();
     try {
       mySdkSpecificHandler.initThreadLocals(myLogger);
 
@@ -81,9 +85,12 @@ public class CompilationThread extends Thread {
       System.exit(1);
     }
     finally {
-      myLogger.log(FlexCompiler.COMPILATION_FINISHED);
+      myLogger.compilationFinished();
       mySdkSpecificHandler.cleanThreadLocals();
-      System.gc();
+      // full GC pauses all compilations running in this process, so do it only when the process becomes idle
+      if (activeCompilationsCount.decrementAndGet() == 0) {
+        System.gc();
+      }
     }
   }
 
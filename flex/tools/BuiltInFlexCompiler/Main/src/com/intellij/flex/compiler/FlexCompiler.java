@@ -9,9 +9,27 @@ import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
 
+/**
+ * Compiler process started by the IDE. Connects to the port passed as the first argument and runs each received compilation command in
+ * a separate {@link CompilationThread}.
+ * <p>
+ * Commands and messages are text lines prefixed with the command number until the IDE sends {@link #FRAMED_PROTOCOL} as command 0. The
+ * compiler confirms it with the same line, after that commands and messages are sent in frames: command number (int), frame kind (byte),
+ * payload length (int) and UTF-8 payload. Older compilers report an incorrect command instead, so the IDE keeps using text lines with them.
+ */
 public class FlexCompiler implements MessageSender {
 
   private static final String CONNECTION_SUCCESSFUL = "Connection successful";
+  private static final String FRAMED_PROTOCOL = "Framed";
+
+  // frames received from the IDE
+  private static final byte COMPILE_FRAME = 1;
+  private static final byte CANCEL_FRAME = 2;
+  private static final byte FINISH_FRAME = 3;
+
+  // frames sent to the IDE, payload of FINISHED_FRAME is used and max heap size in bytes separated by space
+  private static final byte TEXT_FRAME = 1;
+  private static final byte FINISHED_FRAME = 2;
 
   private static final String FINISH_COMMAND = "Finish";
   public static final String CANCEL_COMMAND = "Cancel";
@@ -21,6 +39,7 @@ public class FlexCompiler implements MessageSender {
   public static String SDK_MINOR_VERSION = VersionInfo.FLEX_MINOR_VERSION;
   public static String SDK_REVISION_VERSION = VersionInfo.FLEX_NANO_VERSION;
 
+  private volatile boolean myFramedProtocol;
   private DataInputStream myDataInputStream;
   private DataOutputStream myDataOutputStream;
 
@@ -30,8 +49,8 @@ public class FlexCompiler implements MessageSender {
     for (int i = 0; i < maxAttempts; i++) {
       try {
         socket = new Socket(InetAddress.getLocalHost(), port);
-        myDataInputStream = new DataInputStream(socket.getInputStream());
-        myDataOutputStream = new DataOutputStream(socket.getOutputStream());
+        myDataInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        myDataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
         System.out.println(CONNECTION_SUCCESSFUL);
         break;
       }
@@ -49,8 +68,9 @@ public class FlexCompiler implements MessageSender {
   }
 
   public static void main(String[] args) {
-    if (args.length != 1) {
+    if (args.length < 1) {
       System.out.println("Missing port parameter");
+      return;
     }
     final int port;
     try {
@@ -69,16 +89,72 @@ public class FlexCompiler implements MessageSender {
     }
   }
 
-  public synchronized void sendMessage(final String message) {
+  public synchronized void sendMessage(final int commandNumber, final String message) {
     try {
       //System.out.println("OUT: [" + message + "]");
-      myDataOutputStream.writeUTF(message.replace('\n', ' ').replace('\r', ' ').trim() + "\n");
+      final String text = message.replace('\n', ' ').replace('\r', ' ').trim();
+      if (myFramedProtocol) {
+        writeFrame(commandNumber, TEXT_FRAME, text);
+      }
+      else {
+        myDataOutputStream.writeUTF(commandNumber + ":" + text + "\n");
+      }
+      myDataOutputStream.flush();
     }
     catch (IOException e) {
       e.printStackTrace();
     }
   }
 
+  public synchronized void compilationFinished(final int commandNumber) {
+    if (!myFramedProtocol) {
+      sendMessage(commandNumber, COMPILATION_FINISHED);
+      return;
+    }
+
+    try {
+      final Runtime runtime = Runtime.getRuntime();
+      writeFrame(commandNumber, FINISHED_FRAME, (runtime.totalMemory() - runtime.freeMemory()) + " " + runtime.maxMemory());
+      myDataOutputStream.flush();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void writeFrame(final int commandNumber, final byte kind, final String payload) throws IOException {
+    final byte[] bytes = payload.getBytes("UTF-8");
+    myDataOutputStream.writeInt(commandNumber);
+    myDataOutputStream.writeByte(kind);
+    myDataOutputStream.writeInt(bytes.length);
+    myDataOutputStream.write(bytes);
+  }
+
+  private void processFrames() throws IOException {
+    while (true) {
+      final int commandNumber = myDataInputStream.readInt();
+      final byte kind = myDataInputStream.readByte();
+      final byte[] bytes = new byte[myDataInputStream.readInt()];
+      myDataInputStream.readFully(bytes);
+      final String payload = new String(bytes, "UTF-8");
+
+      if (kind == CANCEL_FRAME) {
+        cancelCompilation(commandNumber);
+      }
+      else if (kind == FINISH_FRAME) {
+        exit();
+        return;
+      }
+      else if (kind == COMPILE_FRAME) {
+        startCompilationThread(commandNumber, payload);
+      }
+      else {
+        sendMessage(commandNumber, "Error: Incorrect frame kind: " + kind);
+        compilationFinished(commandNumber);
+      }
+    }
+  }
+
   private void processInput() throws IOException {
     final StringBuilder buffer = new StringBuilder();
     while (true) {
@@ -89,6 +165,10 @@ public class FlexCompiler implements MessageSender {
       if (finish) {
         return;
       }
+      if (myFramedProtocol) {
+        processFrames();
+        return;
+      }
     }
   }
 
@@ -103,6 +183,11 @@ public class FlexCompiler implements MessageSender {
       } else if (FINISH_COMMAND.equals(command)) {
         exit();
         return true;
+      } else if (("0:" + FRAMED_PROTOCOL).equals(command)) {
+        // the IDE waits for the confirmation before sending anything else
+        sendMessage(0, FRAMED_PROTOCOL);
+        myFramedProtocol = true;
+        return false;
       } else {
         startCompilationThread(command);
       }
@@ -114,38 +199,40 @@ public class FlexCompiler implements MessageSender {
   private void startCompilationThread(final String command) {
     final int colonPos = command.indexOf(":");
     if (colonPos <= 0) {
-      sendMessage("Error: Incorrect command: [" + command + "]");
-      sendMessage(COMPILATION_FINISHED);
+      sendMessage(0, "Error: Incorrect command: [" + command + "]");
+      compilationFinished(0);
       return;
     }
 
     final String commandNumberStr = command.substring(0, colonPos);
+    final int commandNumber;
     try {
-      Integer.parseInt(commandNumberStr);
+      commandNumber = Integer.parseInt(commandNumberStr);
     } catch (NumberFormatException e) {
-      sendMessage("Error: Incorrect command number: [" + commandNumberStr + "]");
-      sendMessage(COMPILATION_FINISHED);
+      sendMessage(0, "Error: Incorrect command number: [" + commandNumberStr + "]");
+      compilationFinished(0);
       return;
     }
 
-    final String compilationCommand = command.substring(colonPos + 1);
+    startCompilationThread(commandNumber, command.substring(colonPos + 1));
+  }
 
+  private void startCompilationThread(final int commandNumber, final String compilationCommand) {
     final boolean isSwf = compilationCommand.startsWith("mxmlc ");
     if (!isSwf && !compilationCommand.startsWith("compc")) {
-      sendMessage("Error: Incorrect compilation command: [" + compilationCommand + "]");
-      sendMessage(COMPILATION_FINISHED);
+      sendMessage(commandNumber, "Error: Incorrect compilation command: [" + compilationCommand + "]");
+      compilationFinished(commandNumber);
       return;
     }
 
-    final String logMessagePrefix = commandNumberStr + ":";
-    final OutputLogger logger = new OutputLogger(this, logMessagePrefix);
+    final OutputLogger logger = new OutputLogger(this, commandNumber);
     final SdkSpecificHandler sdkSpecificHandler = getSdkSpecificHandler();
     if (sdkSpecificHandler == null) {
       logger.log(
         "Error: Flex SDK " + SDK_MAJOR_VERSION + '.' + SDK_MINOR_VERSION + '.' + SDK_REVISION_VERSION
           + " is not supported by built-in compiler shell. Please change compiler at " +
           CommonBundle.settingsActionPath() + " | Compiler | Flex Compiler.");
-      logger.log(COMPILATION_FINISHED);
+      logger.compilationFinished();
       return;
     }
 
@@ -191,4 +278,11 @@ public class FlexCompiler implements MessageSender {
   private void cancelAllCompilations() {
     // todo implement
   }
+
+  /**
+   * Other compilations of this process belong to other build targets, so they must keep running.
+   */
+  private void cancelCompilation(final int commandNumber) {
+    // todo implement
+  }
 }
@@ -31,12 +31,12 @@ public class OutputLogger extends LoggerAdapter implements Logger {
   */
 
   private final MessageSender myMessageSender;
-  private final String myLogMessagePrefix;
+  private final int myCommandNumber;
   private boolean myErrorsReported = false;
 
-  public OutputLogger(final MessageSender messageSender, final String logMessagePrefix) {
+  public OutputLogger(final MessageSender messageSender, final int commandNumber) {
     myMessageSender = messageSender;
-    myLogMessagePrefix = logMessagePrefix;
+    myCommandNumber = commandNumber;
   }
 
   public void log(final String message) {
@@ -64,7 +64,11 @@ public class OutputLogger extends LoggerAdapter implements Logger {
       }
     }
 
-    myMessageSender.sendMessage(myLogMessagePrefix + message);
+    myMessageSender.sendMessage(myCommandNumber, message);
+  }
+
+  public void compilationFinished() {
+    myMessageSender.compilationFinished(myCommandNumber);
   }
 
   public void log(final Message msg, final int errorCode, final String source) {